@@ -0,0 +1,643 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.thiagotgm.bot_utils.storage.Database;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMXBean;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMXBean.CacheInfo;
+import com.github.thiagotgm.bot_utils.storage.DatabaseManager;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMetrics;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMetrics.Operation;
+import com.github.thiagotgm.bot_utils.storage.LatencyHistogram;
+import com.github.thiagotgm.bot_utils.storage.TranslatorMetrics;
+import com.github.thiagotgm.bot_utils.storage.impl.AbstractDatabase;
+import com.github.thiagotgm.bot_utils.utils.AsyncTools;
+import com.github.thiagotgm.bot_utils.utils.KeyedExecutorMXBean;
+import com.github.thiagotgm.bot_utils.utils.Management;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the metrics of BotUtils over HTTP, in the
+ * <a href="https://prometheus.io/docs/instrumenting/exposition_formats/">text
+ * format</a> scraped by Prometheus, using the HTTP server built into the JDK.
+ * <p>
+ * The exporter is opt-in: {@link #start()} only starts serving if the port in
+ * the settings is positive. Once started, the metrics are served at
+ * {@value #PATH} until {@link #stop()} is called or the program
+ * {@link ExitManager exits}.
+ * <p>
+ * The exported metrics are:
+ * <ul>
+ * <li>The {@link DatabaseMetrics metrics} of each tree and map, labeled by
+ * database and structure name (latencies as summaries, in seconds);</li>
+ * <li>The latencies of the <tt>encode</tt> and <tt>decode</tt> calls of each
+ * {@link TranslatorMetrics translator} class, labeled by class name;</li>
+ * <li>The fill level of the caches of the running database (and its memory
+ * budget and off-heap tier, if any);</li>
+ * <li>The {@link SaveManager auto-save} count and last duration;</li>
+ * <li>The load of each {@link KeyedExecutorMXBean keyed executor} registered
+ * for management, labeled by executor name and stripe.</li>
+ * </ul>
+ *
+ * @version 1.1
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class MetricsExporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger( MetricsExporter.class );
+    private static final String PORT_SETTING = "Metrics port";
+    private static final String ADDRESS_SETTING = "Metrics address";
+
+    /**
+     * Path that the metrics are served at.
+     */
+    public static final String PATH = "/metrics";
+    /**
+     * Content type of the served metrics.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final ThreadGroup THREADS = new ThreadGroup( "Metrics Exporter" );
+
+    private static HttpServer server;
+    private static ExecutorService executor;
+
+    static {
+        // Stop serving before exiting.
+        ExitManager.registerListener( () -> stop() );
+
+    }
+
+    /**
+     * Should not be instantiated.
+     */
+    private MetricsExporter() {}
+
+    /**
+     * Starts serving metrics on the address and port specified by the settings,
+     * if the port is positive.
+     *
+     * @return <tt>true</tt> if the exporter was started. <tt>false</tt> if it is
+     *         disabled by the settings or could not be started.
+     * @throws IllegalStateException
+     *             if the exporter is already running.
+     */
+    public static synchronized boolean start() throws IllegalStateException {
+
+        int port = Settings.getIntSetting( PORT_SETTING );
+        if ( port <= 0 ) {
+            LOG.debug( "Metrics exporter disabled." );
+            return false;
+        }
+        return start( Settings.getStringSetting( ADDRESS_SETTING ), port );
+
+    }
+
+    /**
+     * Starts serving metrics on the given address and port.
+     *
+     * @param address
+     *            The address to bind to.
+     * @param port
+     *            The port to bind to. If 0, an ephemeral port is used (which can
+     *            be obtained from {@link #getPort()}).
+     * @return <tt>true</tt> if the exporter was started. <tt>false</tt> if it
+     *         could not be bound to the given address and port.
+     * @throws IllegalStateException
+     *             if the exporter is already running.
+     * @throws IllegalArgumentException
+     *             if the port is out of range.
+     */
+    public static synchronized boolean start( String address, int port )
+            throws IllegalStateException, IllegalArgumentException {
+
+        if ( server != null ) {
+            throw new IllegalStateException( "Metrics exporter already running." );
+        }
+
+        try {
+            server = HttpServer.create( new InetSocketAddress( address, port ), 0 );
+        } catch ( IOException e ) {
+            LOG.error( "Could not start metrics exporter on {}:{}.", address, port, e );
+            return false;
+        }
+        executor = AsyncTools.createFixedThreadPool( 1, THREADS, ( t, e ) -> {
+
+            LOG.error( "Uncaught exception thrown while serving metrics.", e );
+
+        } );
+        server.setExecutor( executor );
+        server.createContext( PATH, MetricsExporter::handle );
+        server.start();
+        LOG.info( "Serving metrics at http://{}:{}{}.", address, getPort(), PATH );
+        return true;
+
+    }
+
+    /**
+     * Retrieves the port that metrics are being served on.
+     *
+     * @return The port, or -1 if the exporter is not running.
+     */
+    public static synchronized int getPort() {
+
+        return server == null ? -1 : server.getAddress().getPort();
+
+    }
+
+    /**
+     * Stops serving metrics. If the exporter is not running, nothing happens.
+     */
+    public static synchronized void stop() {
+
+        if ( server == null ) {
+            return;
+        }
+
+        server.stop( 0 );
+        executor.shutdown();
+        server = null;
+        executor = null;
+        LOG.info( "Metrics exporter stopped." );
+
+    }
+
+    /**
+     * Handles a request to the exporter.
+     *
+     * @param exchange
+     *            The request.
+     * @throws IOException
+     *             if an error occurred while sending the response.
+     */
+    private static void handle( HttpExchange exchange ) throws IOException {
+
+        try {
+            if ( !exchange.getRequestURI().getPath().equals( PATH ) ) {
+                exchange.sendResponseHeaders( 404, -1 );
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            boolean head = method.equals( "HEAD" );
+            if ( !head && !method.equals( "GET" ) ) {
+                exchange.getResponseHeaders().set( "Allow", "GET, HEAD" );
+                exchange.sendResponseHeaders( 405, -1 );
+                return;
+            }
+
+            byte[] body = scrape().getBytes( StandardCharsets.UTF_8 );
+            exchange.getResponseHeaders().set( "Content-Type", CONTENT_TYPE );
+            exchange.sendResponseHeaders( 200, head ? -1 : body.length );
+            if ( !head ) {
+                try ( OutputStream out = exchange.getResponseBody() ) {
+                    out.write( body );
+                }
+            }
+        } catch ( RuntimeException e ) {
+            LOG.error( "Could not collect metrics.", e );
+            exchange.sendResponseHeaders( 500, -1 );
+        } finally {
+            exchange.close();
+        }
+
+    }
+
+    /**
+     * Collects the current value of all metrics.
+     *
+     * @return The metrics, in the Prometheus text format.
+     */
+    public static String scrape() {
+
+        Exposition out = new Exposition();
+        writeDatabaseMetrics( out );
+        writeTranslatorMetrics( out );
+        writeCaches( out );
+        writeAutoSave( out );
+        writeExecutors( out );
+        return out.toString();
+
+    }
+
+    /* Metric collection */
+
+    /**
+     * Writes a counter or gauge with a value for each tree and map.
+     *
+     * @param out
+     *            The output.
+     * @param all
+     *            The metrics of the trees and maps.
+     * @param name
+     *            The name of the metric.
+     * @param type
+     *            The type of the metric.
+     * @param help
+     *            The description of the metric.
+     * @param value
+     *            The function that obtains the value from the metrics of a tree or
+     *            map.
+     */
+    private static void perStructure( Exposition out, List<DatabaseMetrics> all, String name, String type,
+            String help, ToLongFunction<DatabaseMetrics> value ) {
+
+        out.family( name, type, help );
+        for ( DatabaseMetrics metrics : all ) {
+
+            out.sample( name, value.applyAsLong( metrics ), "database", metrics.getDatabase(), "structure",
+                    metrics.getStructure() );
+
+        }
+
+    }
+
+    /**
+     * Writes a latency summary for each tree and map.
+     *
+     * @param out
+     *            The output.
+     * @param all
+     *            The metrics of the trees and maps.
+     * @param name
+     *            The name of the metric.
+     * @param help
+     *            The description of the metric.
+     * @param latency
+     *            The function that obtains the latencies from the metrics of a
+     *            tree or map.
+     */
+    private static void perStructure( Exposition out, List<DatabaseMetrics> all, String name, String help,
+            Function<DatabaseMetrics, LatencyHistogram> latency ) {
+
+        out.family( name, "summary", help );
+        for ( DatabaseMetrics metrics : all ) {
+
+            out.summary( name, latency.apply( metrics ), "database", metrics.getDatabase(), "structure",
+                    metrics.getStructure() );
+
+        }
+
+    }
+
+    /**
+     * Writes the metrics of all the trees and maps.
+     *
+     * @param out
+     *            The output.
+     */
+    private static void writeDatabaseMetrics( Exposition out ) {
+
+        List<DatabaseMetrics> all = DatabaseMetrics.getAll();
+
+        String name = "botutils_operation_duration_seconds";
+        out.family( name, "summary", "Latency of the operations on database trees and maps." );
+        for ( DatabaseMetrics metrics : all ) {
+
+            for ( Operation operation : Operation.values() ) {
+
+                out.summary( name, metrics.getLatency( operation ), "database", metrics.getDatabase(), "structure",
+                        metrics.getStructure(), "operation", operation.name().toLowerCase() );
+
+            }
+
+        }
+        perStructure( out, all, "botutils_backend_call_duration_seconds", "Latency of the calls to the database "
+                + "backend.", DatabaseMetrics::getBackendCalls );
+
+        name = "botutils_backend_fetches_total";
+        out.family( name, "counter", "Keys fetched from the database backend, by whether a value was found." );
+        for ( DatabaseMetrics metrics : all ) {
+
+            out.sample( name, metrics.getFetchSuccesses().getCount(), "database", metrics.getDatabase(),
+                    "structure", metrics.getStructure(), "result", "found" );
+            out.sample( name, metrics.getFetchFailures().getCount(), "database", metrics.getDatabase(),
+                    "structure", metrics.getStructure(), "result", "missing" );
+
+        }
+
+        perStructure( out, all, "botutils_cache_hits_total", "counter", "Cache hits.",
+                DatabaseMetrics::getCacheHits );
+        perStructure( out, all, "botutils_cache_misses_total", "counter", "Cache misses.",
+                DatabaseMetrics::getCacheMisses );
+        perStructure( out, all, "botutils_cache_negative_hits_total", "counter",
+                "Cache hits on keys known to not exist.", DatabaseMetrics::getNegativeCacheHits );
+        perStructure( out, all, "botutils_cache_offheap_hits_total", "counter",
+                "Cache misses found in the off-heap tier.", DatabaseMetrics::getOffHeapHits );
+        perStructure( out, all, "botutils_cache_evictions_total", "counter", "Mappings evicted from the cache.",
+                DatabaseMetrics::getEvictions );
+
+        perStructure( out, all, "botutils_write_behind_pending", "gauge",
+                "Writes currently held in the write-behind buffer.", DatabaseMetrics::getWriteBehindBufferSize );
+        perStructure( out, all, "botutils_write_behind_coalesced_total", "counter",
+                "Buffered writes that replaced an earlier buffered write.",
+                DatabaseMetrics::getWriteBehindCoalesced );
+        perStructure( out, all, "botutils_write_behind_writes_total", "counter",
+                "Buffered writes flushed to the database.", DatabaseMetrics::getWriteBehindWrites );
+        perStructure( out, all, "botutils_write_behind_failures_total", "counter",
+                "Flushes of the write-behind buffer that failed.", DatabaseMetrics::getWriteBehindFailures );
+        perStructure( out, all, "botutils_write_behind_flush_duration_seconds",
+                "Latency of the successful flushes of the write-behind buffer.",
+                DatabaseMetrics::getWriteBehindFlushes );
+
+    }
+
+    /**
+     * Writes the metrics of all the translator classes.
+     *
+     * @param out
+     *            The output.
+     */
+    private static void writeTranslatorMetrics( Exposition out ) {
+
+        String name = "botutils_translator_duration_seconds";
+        out.family( name, "summary", "Latency of the encode and decode calls of translators." );
+        for ( TranslatorMetrics metrics : TranslatorMetrics.getAll() ) {
+
+            out.summary( name, metrics.getEncodes(), "translator", metrics.getTranslator(), "operation",
+                    "encode" );
+            out.summary( name, metrics.getDecodes(), "translator", metrics.getTranslator(), "operation",
+                    "decode" );
+
+        }
+
+    }
+
+    /**
+     * Writes the state of the caches of the running database, if any.
+     *
+     * @param out
+     *            The output.
+     */
+    private static void writeCaches( Exposition out ) {
+
+        DatabaseMXBean bean;
+        try {
+            Database database = DatabaseManager.getDatabase();
+            if ( !( database instanceof AbstractDatabase ) ) {
+                return; // No caches.
+            }
+            bean = ( (AbstractDatabase) database ).getMXBean();
+        } catch ( IllegalStateException e ) {
+            return; // Not running.
+        }
+        if ( bean.isClosed() ) {
+            return;
+        }
+
+        String database = bean.getName();
+        List<CacheInfo> caches = bean.getCaches();
+        out.family( "botutils_cache_size", "gauge", "Mappings currently in the cache." );
+        for ( CacheInfo cache : caches ) {
+
+            out.sample( "botutils_cache_size", cache.getSize(), "database", database, "structure",
+                    cache.getName() );
+
+        }
+        out.family( "botutils_cache_weighted_size", "gauge",
+                "Total weight of the mappings in the cache (bytes if bounded by memory)." );
+        for ( CacheInfo cache : caches ) {
+
+            out.sample( "botutils_cache_weighted_size", cache.getWeightedSize(), "database", database,
+                    "structure", cache.getName() );
+
+        }
+        out.family( "botutils_cache_maximum_weight", "gauge",
+                "Maximum total weight of the cache (bytes if bounded by memory)." );
+        for ( CacheInfo cache : caches ) {
+
+            out.sample( "botutils_cache_maximum_weight", cache.getMaximumWeight(), "database", database,
+                    "structure", cache.getName() );
+
+        }
+
+        out.family( "botutils_cache_budget_bytes", "gauge", "Memory budget shared by the caches (0 if none)." );
+        out.sample( "botutils_cache_budget_bytes", bean.getCacheBudget(), "database", database );
+        out.family( "botutils_cache_budget_used_bytes", "gauge", "Memory used by the caches in the budget." );
+        out.sample( "botutils_cache_budget_used_bytes", bean.getCacheBudgetUsed(), "database", database );
+        out.family( "botutils_offheap_capacity_bytes", "gauge", "Capacity of the off-heap cache tier (0 if none)." );
+        out.sample( "botutils_offheap_capacity_bytes", bean.getOffHeapCapacity(), "database", database );
+        out.family( "botutils_offheap_size", "gauge", "Mappings currently in the off-heap cache tier." );
+        out.sample( "botutils_offheap_size", bean.getOffHeapSize(), "database", database );
+
+    }
+
+    /**
+     * Writes the auto-save metrics.
+     *
+     * @param out
+     *            The output.
+     */
+    private static void writeAutoSave( Exposition out ) {
+
+        out.family( "botutils_saves_total", "counter", "Saves completed." );
+        out.sample( "botutils_saves_total", SaveManager.getSaveCount() );
+        long duration = SaveManager.getLastSaveDuration();
+        if ( duration >= 0 ) {
+            out.family( "botutils_last_save_duration_seconds", "gauge", "How long the last save took." );
+            out.sample( "botutils_last_save_duration_seconds", duration / 1000.0 );
+            out.family( "botutils_last_save_timestamp_seconds", "gauge", "When the last save completed." );
+            out.sample( "botutils_last_save_timestamp_seconds", SaveManager.getLastSaveTime() / 1000.0 );
+        }
+
+    }
+
+    /**
+     * Writes the metrics of the keyed executors that are registered for
+     * management.
+     *
+     * @param out
+     *            The output.
+     */
+    private static void writeExecutors( Exposition out ) {
+
+        MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+        Map<String, KeyedExecutorMXBean> executors = new LinkedHashMap<>();
+        try {
+            for ( ObjectName name : mbeans
+                    .queryNames( new ObjectName( Management.DOMAIN + ":type=KeyedExecutor,*" ), null ) ) {
+
+                executors.put( ObjectName.unquote( name.getKeyProperty( "name" ) ),
+                        JMX.newMXBeanProxy( mbeans, name, KeyedExecutorMXBean.class ) );
+
+            }
+        } catch ( MalformedObjectNameException e ) {
+            throw new IllegalStateException( "Invalid executor name pattern.", e ); // Should never happen.
+        }
+
+        out.family( "botutils_executor_queue_size", "gauge", "Tasks waiting to be executed, by stripe." );
+        for ( Map.Entry<String, KeyedExecutorMXBean> executor : executors.entrySet() ) {
+
+            int[] queues = executor.getValue().getQueueSizes();
+            for ( int i = 0; i < queues.length; i++ ) {
+
+                out.sample( "botutils_executor_queue_size", queues[i], "executor", executor.getKey(), "stripe",
+                        String.valueOf( i ) );
+
+            }
+
+        }
+        out.family( "botutils_executor_active_threads", "gauge", "Threads currently executing a task." );
+        for ( Map.Entry<String, KeyedExecutorMXBean> executor : executors.entrySet() ) {
+
+            out.sample( "botutils_executor_active_threads", executor.getValue().getActiveCount(), "executor",
+                    executor.getKey() );
+
+        }
+        out.family( "botutils_executor_completed_tasks_total", "counter", "Tasks that finished executing." );
+        for ( Map.Entry<String, KeyedExecutorMXBean> executor : executors.entrySet() ) {
+
+            out.sample( "botutils_executor_completed_tasks_total", executor.getValue().getCompletedTaskCount(),
+                    "executor", executor.getKey() );
+
+        }
+
+    }
+
+    /**
+     * Builder of a text in the Prometheus exposition format.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    private static class Exposition {
+
+        private final StringBuilder out = new StringBuilder();
+
+        /**
+         * Starts a metric family. All of its samples must be written before the
+         * next family is started.
+         *
+         * @param name
+         *            The name of the metric.
+         * @param type
+         *            The type of the metric.
+         * @param help
+         *            The description of the metric.
+         */
+        public void family( String name, String type, String help ) {
+
+            out.append( "# HELP " ).append( name ).append( ' ' )
+                    .append( help.replace( "\\", "\\\\" ).replace( "\n", "\\n" ) ).append( '\n' );
+            out.append( "# TYPE " ).append( name ).append( ' ' ).append( type ).append( '\n' );
+
+        }
+
+        /**
+         * Writes a sample.
+         *
+         * @param name
+         *            The name of the sample.
+         * @param value
+         *            The value.
+         * @param labels
+         *            The names and values of the labels, alternating.
+         */
+        public void sample( String name, double value, String... labels ) {
+
+            out.append( name );
+            if ( labels.length > 0 ) {
+                out.append( '{' );
+                for ( int i = 0; i < labels.length; i += 2 ) {
+
+                    if ( i > 0 ) {
+                        out.append( ',' );
+                    }
+                    out.append( labels[i] ).append( "=\"" ).append( labels[i + 1].replace( "\\", "\\\\" )
+                            .replace( "\"", "\\\"" ).replace( "\n", "\\n" ) ).append( '"' );
+
+                }
+                out.append( '}' );
+            }
+            out.append( ' ' );
+            if ( Double.isNaN( value ) ) {
+                out.append( "NaN" );
+            } else if ( Double.isInfinite( value ) ) {
+                out.append( value > 0 ? "+Inf" : "-Inf" );
+            } else if ( ( value == Math.rint( value ) ) && ( Math.abs( value ) < 1e15 ) ) {
+                out.append( (long) value ); // Integral.
+            } else {
+                out.append( value );
+            }
+            out.append( '\n' );
+
+        }
+
+        /**
+         * Writes the samples of a latency summary, in seconds. The quantiles of
+         * an empty summary are <tt>NaN</tt>.
+         *
+         * @param name
+         *            The name of the metric.
+         * @param latency
+         *            The latencies.
+         * @param labels
+         *            The names and values of the labels, alternating.
+         */
+        public void summary( String name, LatencyHistogram latency, String... labels ) {
+
+            long count = latency.getCount();
+            String[] quantileLabels = new String[labels.length + 2];
+            System.arraycopy( labels, 0, quantileLabels, 0, labels.length );
+            quantileLabels[labels.length] = "quantile";
+            for ( double quantile : QUANTILES ) {
+
+                quantileLabels[labels.length + 1] = String.valueOf( quantile );
+                sample( name, count == 0 ? Double.NaN // No observations.
+                        : latency.getPercentile( quantile * 100 ) / NANOS_PER_SECOND, quantileLabels );
+
+            }
+            sample( name + "_sum", latency.getSum() / NANOS_PER_SECOND, labels );
+            sample( name + "_count", count, labels );
+
+        }
+
+        @Override
+        public String toString() {
+
+            return out.toString();
+
+        }
+
+    }
+
+}
@@ -27,12 +27,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.thiagotgm.bot_utils.utils.AsyncTools;
+import com.github.thiagotgm.bot_utils.utils.Management;
 
 /**
  * Class that manages objects that save their state to disk. All registered listeners are
  * auto-saved every time a certain time delay passes, and right before the program is terminated.
+ * <p>
+ * The auto-save settings and the duration of the last save are exposed through a
+ * {@link SaveManagerMXBean management interface}, which can also trigger a save.
  *
- * @version 1.0
+ * @version 1.1
  * @author ThiagoTGM
  * @since 2017-09-11
  */
@@ -61,6 +65,10 @@ public class SaveManager implements ExitManager.ExitListener {
         
     };
     private static ScheduledFuture<?> currentTask;
+    private static volatile long autoSaveDelay;
+    private static volatile long saveCount = 0;
+    private static volatile long lastSaveTime = 0;
+    private static volatile long lastSaveDuration = -1;
     
     static {
         // Schedule initial autosave.
@@ -77,11 +85,12 @@ public class SaveManager implements ExitManager.ExitListener {
      *
      * @param delay The time between auto-saves, in minutes.
      */
-    protected static void setAutoSave( long delay ) {
+    protected synchronized static void setAutoSave( long delay ) {
         
         if ( currentTask != null ) { // Stops current task if any.
             currentTask.cancel( false );
         }
+        autoSaveDelay = delay;
         
         if ( delay >= MIN_DELAY ) { // Set new task.
             currentTask = EXECUTOR.scheduleAtFixedRate( AUTO_SAVE, delay, delay, TimeUnit.MINUTES );
@@ -108,6 +117,42 @@ public class SaveManager implements ExitManager.ExitListener {
         
     }
     
+    /**
+     * Retrieves the amount of saves completed since the program started.
+     *
+     * @return The amount of saves.
+     * @since 2018-09-17
+     */
+    public static long getSaveCount() {
+        
+        return saveCount;
+        
+    }
+    
+    /**
+     * Retrieves when the last save completed.
+     *
+     * @return The time, in milliseconds since the epoch, or 0 if there were no saves yet.
+     * @since 2018-09-17
+     */
+    public static long getLastSaveTime() {
+        
+        return lastSaveTime;
+        
+    }
+    
+    /**
+     * Retrieves how long the last save took.
+     *
+     * @return The duration, in milliseconds, or -1 if there were no saves yet.
+     * @since 2018-09-17
+     */
+    public static long getLastSaveDuration() {
+        
+        return lastSaveDuration;
+        
+    }
+    
     /**
      * Registers a listener to be called when a save event happens.
      *
@@ -136,18 +181,23 @@ public class SaveManager implements ExitManager.ExitListener {
     public synchronized static void save() {
         
         LOG.debug( "Saving all listeners..." );
+        long start = System.nanoTime();
         for ( Saveable listener : LISTENERS ) { // Save each listener.
             
             listener.save();
             
         }
-        LOG.debug( "Save completed." );
+        lastSaveDuration = TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+        lastSaveTime = System.currentTimeMillis();
+        saveCount++; // Only written while synchronized.
+        LOG.debug( "Save completed in {}ms.", lastSaveDuration );
         
     }
     
     static {
         // Register an instance with the ExitManager for pre-exit save.
         ExitManager.registerListener( new SaveManager() );
+        Management.register( "SaveManager", null, new ManagementBean() );
         
     }
     
@@ -172,6 +222,76 @@ public class SaveManager implements ExitManager.ExitListener {
         
     }
     
+    /**
+     * Implementation of the management interface, which delegates to the manager.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    private static class ManagementBean implements SaveManagerMXBean {
+
+        @Override
+        public long getAutoSaveDelay() {
+
+            return autoSaveDelay;
+
+        }
+
+        @Override
+        public void setAutoSaveDelay( long delay ) {
+
+            SaveManager.setAutoSaveDelay( delay );
+
+        }
+
+        @Override
+        public boolean isAutoSaveEnabled() {
+
+            return autoSaveDelay >= MIN_DELAY;
+
+        }
+
+        @Override
+        public int getListenerCount() {
+
+            synchronized ( SaveManager.class ) {
+                return LISTENERS.size();
+            }
+
+        }
+
+        @Override
+        public long getSaveCount() {
+
+            return SaveManager.getSaveCount();
+
+        }
+
+        @Override
+        public long getLastSaveTime() {
+
+            return SaveManager.getLastSaveTime();
+
+        }
+
+        @Override
+        public long getLastSaveDuration() {
+
+            return SaveManager.getLastSaveDuration();
+
+        }
+
+        @Override
+        public void save() {
+
+            LOG.info( "Saving (requested through management interface)." );
+            SaveManager.save();
+
+        }
+
+    }
+    
     /**
      * An object that can have its state saved.
      *
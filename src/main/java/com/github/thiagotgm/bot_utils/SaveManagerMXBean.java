@@ -0,0 +1,88 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils;
+
+/**
+ * Management interface of the {@link SaveManager}.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ * @see com.github.thiagotgm.bot_utils.utils.Management
+ */
+public interface SaveManagerMXBean {
+
+    /**
+     * Retrieves the time between auto-saves.
+     *
+     * @return The delay, in minutes. If smaller than {@value SaveManager#MIN_DELAY},
+     *         auto-save is disabled.
+     */
+    long getAutoSaveDelay();
+
+    /**
+     * Sets the time between auto-saves.
+     *
+     * @param delay
+     *            The delay, in minutes.
+     * @see SaveManager#setAutoSaveDelay(long)
+     */
+    void setAutoSaveDelay( long delay );
+
+    /**
+     * Determines whether auto-save is currently enabled.
+     *
+     * @return <tt>true</tt> if auto-save is enabled.
+     */
+    boolean isAutoSaveEnabled();
+
+    /**
+     * Retrieves the amount of registered listeners.
+     *
+     * @return The amount of listeners.
+     */
+    int getListenerCount();
+
+    /**
+     * Retrieves the amount of saves completed since the program started.
+     *
+     * @return The amount of saves.
+     */
+    long getSaveCount();
+
+    /**
+     * Retrieves when the last save completed.
+     *
+     * @return The time, in milliseconds since the epoch, or 0 if there were no
+     *         saves yet.
+     */
+    long getLastSaveTime();
+
+    /**
+     * Retrieves how long the last save took.
+     *
+     * @return The duration, in milliseconds, or -1 if there were no saves yet.
+     */
+    long getLastSaveDuration();
+
+    /**
+     * Saves all registered listeners immediately.
+     */
+    void save();
+
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Map that can perform its basic operations asynchronously, returning a future
+ * that completes once the operation finishes instead of blocking the calling
+ * thread (for example, while waiting on a request to a remote database).
+ * <p>
+ * If the operation fails, the returned future completes exceptionally with the
+ * exception that the equivalent synchronous method would have thrown.
+ * <p>
+ * The default implementations just perform the synchronous operation in the
+ * calling thread, and return an already-completed future.
+ * <p>
+ * The maps obtained from a {@link Database} implement this interface.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ * @param <K>
+ *            The type of keys used by the map.
+ * @param <V>
+ *            The type of values stored in the map.
+ */
+public interface AsyncMap<K, V> extends Map<K, V> {
+
+    /**
+     * Asynchronously retrieves the value mapped to the given key.
+     *
+     * @param key
+     *            The key to retrieve.
+     * @return A future that completes with the value that the key is mapped to,
+     *         or <tt>null</tt> if there is no such mapping.
+     * @see #get(Object)
+     */
+    default CompletableFuture<V> getAsync( Object key ) {
+
+        return CompletableFuture.supplyAsync( () -> get( key ), Runnable::run );
+
+    }
+
+    /**
+     * Asynchronously determines if this map contains a mapping for the given
+     * key.
+     *
+     * @param key
+     *            The key to check for.
+     * @return A future that completes with <tt>true</tt> if the map contains a
+     *         mapping for the key, <tt>false</tt> otherwise.
+     * @see #containsKey(Object)
+     */
+    default CompletableFuture<Boolean> containsKeyAsync( Object key ) {
+
+        return CompletableFuture.supplyAsync( () -> containsKey( key ), Runnable::run );
+
+    }
+
+    /**
+     * Asynchronously maps the given key to the given value.
+     *
+     * @param key
+     *            The key to map.
+     * @param value
+     *            The value to map the key to.
+     * @return A future that completes with the value that the key was previously
+     *         mapped to, or <tt>null</tt> if there was no such mapping.
+     * @see #put(Object, Object)
+     */
+    default CompletableFuture<V> putAsync( K key, V value ) {
+
+        return CompletableFuture.supplyAsync( () -> put( key, value ), Runnable::run );
+
+    }
+
+    /**
+     * Asynchronously removes the mapping of the given key.
+     *
+     * @param key
+     *            The key to remove.
+     * @return A future that completes with the value that the key was mapped to,
+     *         or <tt>null</tt> if there was no such mapping.
+     * @see #remove(Object)
+     */
+    default CompletableFuture<V> removeAsync( Object key ) {
+
+        return CompletableFuture.supplyAsync( () -> remove( key ), Runnable::run );
+
+    }
+
+}
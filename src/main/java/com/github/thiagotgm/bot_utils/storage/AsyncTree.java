@@ -0,0 +1,112 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.github.thiagotgm.bot_utils.utils.graph.Tree;
+
+/**
+ * Tree that can perform its basic operations asynchronously, returning a
+ * future that completes once the operation finishes instead of blocking the
+ * calling thread (for example, while waiting on a request to a remote
+ * database).
+ * <p>
+ * If the operation fails, the returned future completes exceptionally with the
+ * exception that the equivalent synchronous method would have thrown.
+ * <p>
+ * The default implementations just perform the synchronous operation in the
+ * calling thread, and return an already-completed future.
+ * <p>
+ * The trees obtained from a {@link Database} implement this interface.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ * @param <K>
+ *            The type of keys in the paths used by the tree.
+ * @param <V>
+ *            The type of values stored in the tree.
+ */
+public interface AsyncTree<K, V> extends Tree<K, V> {
+
+    /**
+     * Asynchronously retrieves the value at the end of the given path.
+     *
+     * @param path
+     *            The path to retrieve.
+     * @return A future that completes with the value at the end of the path, or
+     *         <tt>null</tt> if there is no such value.
+     * @see #get(List)
+     */
+    default CompletableFuture<V> getAsync( List<?> path ) {
+
+        return CompletableFuture.supplyAsync( () -> get( path ), Runnable::run );
+
+    }
+
+    /**
+     * Asynchronously determines if this tree contains a value at the end of the
+     * given path.
+     *
+     * @param path
+     *            The path to check for.
+     * @return A future that completes with <tt>true</tt> if the tree contains
+     *         the path, <tt>false</tt> otherwise.
+     * @see #containsPath(List)
+     */
+    default CompletableFuture<Boolean> containsPathAsync( List<?> path ) {
+
+        return CompletableFuture.supplyAsync( () -> containsPath( path ), Runnable::run );
+
+    }
+
+    /**
+     * Asynchronously maps the given path to the given value.
+     *
+     * @param path
+     *            The path to map.
+     * @param value
+     *            The value to map the path to.
+     * @return A future that completes with the value that was previously at the
+     *         end of the path, or <tt>null</tt> if there was no such value.
+     * @see #put(List, Object)
+     */
+    default CompletableFuture<V> putAsync( List<K> path, V value ) {
+
+        return CompletableFuture.supplyAsync( () -> put( path, value ), Runnable::run );
+
+    }
+
+    /**
+     * Asynchronously removes the value at the end of the given path.
+     *
+     * @param path
+     *            The path to remove.
+     * @return A future that completes with the value that was at the end of the
+     *         path, or <tt>null</tt> if there was no such value.
+     * @see #remove(List)
+     */
+    default CompletableFuture<V> removeAsync( List<?> path ) {
+
+        return CompletableFuture.supplyAsync( () -> remove( path ), Runnable::run );
+
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Map that can retrieve the values of several keys at once, which may be
+ * significantly faster than calling {@link #get(Object)} for each key (for
+ * example, when each call requires a request to a remote database).
+ * <p>
+ * It can also remove several keys at once, without retrieving the values that
+ * they were mapped to. Likewise, single keys can be {@link #set(Object, Object)
+ * set} or {@link #delete(Object) deleted} without retrieving the values they
+ * were previously mapped to.
+ * <p>
+ * The maps obtained from a {@link Database} implement this interface.
+ *
+ * @version 1.2
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ * @param <K>
+ *            The type of keys used by the map.
+ * @param <V>
+ *            The type of values stored in the map.
+ */
+public interface BulkMap<K, V> extends Map<K, V> {
+
+    /**
+     * Retrieves the values mapped to each of the given keys.
+     * <p>
+     * The returned map contains a mapping for each of the given keys that this
+     * map contains a mapping for (including mappings to <tt>null</tt>, if this map
+     * supports them), and no others. Changes to the returned map do not affect
+     * this map.
+     *
+     * @param keys
+     *            The keys to retrieve.
+     * @return The mappings of the given keys.
+     * @throws NullPointerException
+     *             if the given collection is <tt>null</tt>.
+     */
+    Map<K, V> getAll( Collection<? extends K> keys ) throws NullPointerException;
+
+    /**
+     * Maps the given key to the given value, without retrieving the value that
+     * the key was previously mapped to.
+     * <p>
+     * Unlike {@link #put(Object, Object)}, the previous value is not returned, so
+     * implementations may write the mapping without reading (or decoding) the
+     * previous value.
+     * <p>
+     * By default, calls {@link #put(Object, Object)}.
+     *
+     * @param key
+     *            The key to map.
+     * @param value
+     *            The value to map the key to.
+     * @throws UnsupportedOperationException
+     *             if this map does not support adding mappings.
+     * @throws NullPointerException
+     *             if the key or value is <tt>null</tt> and this map does not
+     *             support <tt>null</tt> keys or values.
+     * @throws IllegalArgumentException
+     *             if some property of the key or value prevents it from being
+     *             stored in this map.
+     * @since 2018-09-17
+     */
+    default void set( K key, V value )
+            throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+
+        put( key, value );
+
+    }
+
+    /**
+     * Removes the mapping of the given key (if present), without retrieving the
+     * value that it was mapped to.
+     * <p>
+     * Unlike {@link #remove(Object)}, the previous value is not returned, so
+     * implementations may remove the mapping without reading (or decoding) the
+     * previous value.
+     * <p>
+     * By default, calls {@link #remove(Object)}.
+     *
+     * @param key
+     *            The key to remove.
+     * @throws UnsupportedOperationException
+     *             if this map does not support removal.
+     * @since 2018-09-17
+     */
+    default void delete( Object key ) throws UnsupportedOperationException {
+
+        remove( key );
+
+    }
+
+    /**
+     * Removes the mappings of all the given keys (if present).
+     * <p>
+     * Unlike calling {@link #remove(Object)} for each key, the values that the
+     * keys were mapped to are not returned, so implementations may remove the
+     * keys without retrieving them.
+     * <p>
+     * By default, calls {@link #remove(Object)} for each key.
+     *
+     * @param keys
+     *            The keys to remove.
+     * @throws NullPointerException
+     *             if the given collection is <tt>null</tt>.
+     * @throws UnsupportedOperationException
+     *             if this map does not support removal.
+     */
+    default void removeAll( Collection<?> keys ) throws NullPointerException, UnsupportedOperationException {
+
+        for ( Object key : keys ) {
+
+            remove( key );
+
+        }
+
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.thiagotgm.bot_utils.utils.graph.Tree;
+
+/**
+ * Tree that can retrieve the values of several paths at once, which may be
+ * significantly faster than calling {@link #get(List)} for each path (for
+ * example, when each call requires a request to a remote database).
+ * <p>
+ * It can also retrieve or remove a whole subtree (all the paths that start with
+ * a given prefix). The default implementations of these operations go through
+ * all the entries of the tree, but implementations that store the paths in a
+ * way that allows finding a subtree directly are encouraged to override them.
+ * <p>
+ * Single paths can also be {@link #set(List, Object) set} or
+ * {@link #delete(List) deleted} without retrieving the values that were
+ * previously at the end of them.
+ * <p>
+ * The trees obtained from a {@link Database} implement this interface.
+ *
+ * @version 1.2
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ * @param <K>
+ *            The type of keys in the paths used by the tree.
+ * @param <V>
+ *            The type of values stored in the tree.
+ */
+public interface BulkTree<K, V> extends Tree<K, V> {
+
+    /**
+     * Retrieves the values mapped to each of the given paths.
+     * <p>
+     * The returned map contains a mapping for each of the given paths that this
+     * tree contains a value for (including <tt>null</tt> values, if this tree
+     * supports them), and no others. Changes to the returned map do not affect
+     * this tree.
+     * <p>
+     * Unlike {@link #getAll(List)}, which retrieves the values along a single
+     * path, this retrieves the value at the end of each of the given paths.
+     *
+     * @param paths
+     *            The paths to retrieve.
+     * @return The mappings of the given paths.
+     * @throws NullPointerException
+     *             if the given collection is <tt>null</tt>.
+     * @throws IllegalArgumentException
+     *             if one of the paths is empty and the tree does not support a
+     *             value at the root.
+     */
+    Map<List<K>, V> getPaths( Collection<? extends List<K>> paths )
+            throws NullPointerException, IllegalArgumentException;
+
+    /**
+     * Maps the given path to the given value, without retrieving the value that
+     * was previously at the end of the path.
+     * <p>
+     * Unlike {@link #put(List, Object)}, the previous value is not returned, so
+     * implementations may write the mapping without reading (or decoding) the
+     * previous value.
+     * <p>
+     * By default, calls {@link #put(List, Object)}.
+     *
+     * @param path
+     *            The path to map.
+     * @param value
+     *            The value to map the path to.
+     * @throws UnsupportedOperationException
+     *             if this tree does not support adding mappings.
+     * @throws NullPointerException
+     *             if the value is <tt>null</tt> and this tree does not support
+     *             <tt>null</tt> values.
+     * @throws IllegalArgumentException
+     *             if the path is empty and the tree does not support a value at
+     *             the root.
+     * @since 2018-09-17
+     */
+    default void set( List<K> path, V value )
+            throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+
+        put( path, value );
+
+    }
+
+    /**
+     * Removes the value at the end of the given path (if present), without
+     * retrieving it.
+     * <p>
+     * Unlike {@link #remove(List)}, the previous value is not returned, so
+     * implementations may remove the mapping without reading (or decoding) the
+     * previous value.
+     * <p>
+     * By default, calls {@link #remove(List)}.
+     *
+     * @param path
+     *            The path to remove.
+     * @throws UnsupportedOperationException
+     *             if this tree does not support removing mappings.
+     * @throws IllegalArgumentException
+     *             if the path is empty and the tree does not support a value at
+     *             the root.
+     * @since 2018-09-17
+     */
+    default void delete( List<?> path ) throws UnsupportedOperationException, IllegalArgumentException {
+
+        remove( path );
+
+    }
+
+    /**
+     * Retrieves the mappings of all the paths that start with the given prefix,
+     * including the prefix itself.
+     * <p>
+     * Changes to the returned map do not affect this tree.
+     *
+     * @param prefix
+     *            The prefix of the paths to retrieve. If empty, retrieves all the
+     *            mappings in the tree.
+     * @return The mappings of the paths in the subtree.
+     * @throws NullPointerException
+     *             if the given prefix is <tt>null</tt>.
+     * @since 2018-09-17
+     */
+    default Map<List<K>, V> getSubtree( List<?> prefix ) throws NullPointerException {
+
+        Map<List<K>, V> found = new LinkedHashMap<>();
+        for ( Entry<K, V> entry : entrySet() ) {
+
+            List<K> path = entry.getPath();
+            if ( path.size() >= prefix.size() && path.subList( 0, prefix.size() ).equals( prefix ) ) {
+                found.put( path, entry.getValue() );
+            }
+
+        }
+        return found;
+
+    }
+
+    /**
+     * Removes the mappings of all the paths that start with the given prefix,
+     * including the prefix itself.
+     *
+     * @param prefix
+     *            The prefix of the paths to remove. If empty, removes all the
+     *            mappings in the tree.
+     * @return <tt>true</tt> if any mapping was removed.
+     * @throws NullPointerException
+     *             if the given prefix is <tt>null</tt>.
+     * @throws UnsupportedOperationException
+     *             if this tree does not support removing mappings.
+     * @since 2018-09-17
+     */
+    default boolean removeSubtree( List<?> prefix ) throws NullPointerException, UnsupportedOperationException {
+
+        boolean changed = false;
+        for ( Iterator<Entry<K, V>> iter = entrySet().iterator(); iter.hasNext(); ) {
+
+            List<K> path = iter.next().getPath();
+            if ( path.size() >= prefix.size() && path.subList( 0, prefix.size() ).equals( prefix ) ) {
+                iter.remove();
+                changed = true;
+            }
+
+        }
+        return changed;
+
+    }
+
+}
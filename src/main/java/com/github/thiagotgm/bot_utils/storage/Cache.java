@@ -17,23 +17,78 @@
 
 package com.github.thiagotgm.bot_utils.storage;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
-
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
 
 /**
  * Class that provides a cache to avoid frequent calls to expensive query
- * operations in database implementations. <tt>null</tt> values are allowed.
+ * operations in database implementations. <tt>null</tt> keys and values are
+ * allowed.
  * <p>
  * The capacity of the cache is provided at startup. Whenever the cache is
  * currently at full capacity and an addition is requested, one of the currently
- * cached mappings is removed using an LRU algorithm (the mapping that was
+ * cached mappings is removed, as chosen by the {@link Policy eviction policy}
+ * of the cache. By default, an LRU algorithm is used (the mapping that was
  * requested the longest ago is removed).
  * <p>
+ * Mappings are stored in a concurrent hash table, so lookups never block. The
+ * eviction order, on the other hand, is kept in linked lists that are guarded by
+ * a single lock. In order to avoid having every read contend for that lock,
+ * reads are only <i>recorded</i> into one of several striped buffers (selected
+ * by the reading thread), and the recorded reads are replayed onto the eviction
+ * policy in batches by whichever thread manages to acquire the lock (using a
+ * non-blocking attempt, in the case of reads). The read buffers are lossy: if a
+ * buffer is full, the read is simply not recorded. As such, the eviction order
+ * is an approximation under heavy concurrent load, but is exact when the cache
+ * is used by a single thread.
+ * <p>
+ * Since the buffers are drained when a new mapping is added, the amount of
+ * mappings may temporarily exceed the capacity by (at most) the amount of
+ * threads concurrently adding new mappings.
+ * <p>
+ * Instead of a maximum amount of mappings, a cache may be bounded by a maximum
+ * total <i>weight</i>, where the weight of each mapping is determined by a
+ * {@link Weigher} (for example, its estimated size in memory). The total weight
+ * may also be bounded by a {@link Budget} that is shared with other caches.
+ * <p>
+ * Mappings may optionally expire after a fixed time since they were last
+ * written (<i>expire-after-write</i>) and/or since they were last read
+ * (<i>expire-after-access</i>). Expiration is lazy: an expired mapping is
+ * treated as absent (and removed) when it is found by an operation, so it
+ * requires no timers or extra locking. Expired mappings that are never looked
+ * up again are eventually evicted like any other mapping, or can be purged with
+ * {@link #cleanUp()}. Until then, they are included in {@link #size()}.
+ * <p>
+ * If a <i>refresh-after-write</i> time is given, reading a mapping that was
+ * written longer ago than that time calls {@link #refresh(Object)} (at most
+ * once per refresh period for each mapping), which subclasses can override to
+ * reload the value in the background while the current value is still returned.
+ * Setting the refresh time a bit lower than the expire-after-write time allows
+ * frequently used mappings to be kept up to date without readers ever having to
+ * wait for a reload.
+ * <p>
+ * Subclasses may override {@link #onEviction(Object, Object)} to be notified
+ * of mappings that were evicted to respect the capacity (for example, to keep
+ * them in a slower but larger tier). Since the notification happens after the
+ * mapping left the cache, subclasses that need to know whether the key was
+ * written since can also override {@link #evictionStamp(Object)}, and receive
+ * its result in {@link #onEviction(Object, Object, long)}.
+ * <p>
  * <b>This class is <i>thread-safe</i>.</b>
- * 
- * @version 1.0
+ *
+ * @version 2.8
  * @author ThiagoTGM
  * @since 2018-08-09
  * @param <K>
@@ -43,25 +98,395 @@ import com.google.common.collect.HashBiMap;
  */
 public class Cache<K, V> {
 
-    private final CacheList data;
-    private final BiMap<K, CacheList.Node> keyMap;
-    private final BiMap<CacheList.Node, K> nodeMap;
-    private final int capacity;
+    /**
+     * Object used in the backing table to represent a <tt>null</tt> key.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    /**
+     * Amount of read buffers used. A power of two, so that a thread can be mapped
+     * to a buffer by masking.
+     */
+    private static final int BUFFER_COUNT = ceilingPowerOfTwo( Runtime.getRuntime().availableProcessors() * 2 );
+    /**
+     * Capacity of each read buffer. Must be a power of two.
+     */
+    private static final int BUFFER_SIZE = 32;
+    /**
+     * Amount of pending reads in a buffer that triggers an attempt to drain the
+     * buffers.
+     */
+    private static final int DRAIN_THRESHOLD = BUFFER_SIZE / 2;
+    /**
+     * Used to atomically claim the refresh of a node.
+     */
+    @SuppressWarnings( "rawtypes" )
+    private static final AtomicLongFieldUpdater<Node> REFRESH_TIME = AtomicLongFieldUpdater.newUpdater( Node.class,
+            "refreshTime" );
+
+    private final ConcurrentHashMap<Object, Node<K, V>> data;
+    private final ReadBuffer<K, V>[] readBuffers;
+    private final ReentrantLock evictionLock;
+    private final Eviction<K, V> eviction; // Guarded by evictionLock.
+    private final ConcurrentLinkedQueue<Node<K, V>> evicted; // Waiting for onEviction.
+    private final ConcurrentLinkedQueue<Node<K, V>> expired; // Waiting to be unlinked from the policy.
+    private volatile long weightedSize; // Written only while holding evictionLock.
+    private final long maximumWeight;
+    private final Weigher<? super K, ? super V> weigher; // null if all weigh 1.
+    private final Budget budget;
+    private final Policy policy;
+    private final long expireAfterWrite; // In nanoseconds. 0 if disabled.
+    private final long expireAfterAccess; // In nanoseconds. 0 if disabled.
+    private final long refreshAfterWrite; // In nanoseconds. 0 if disabled.
+
+    /**
+     * Initializes a cache with the given capacity, that uses the
+     * {@link Policy#LRU LRU} eviction policy.
+     *
+     * @param capacity
+     *            The capacity of the cache.
+     * @throws IllegalArgumentException
+     *             if the given capacity is not positive.
+     */
+    public Cache( int capacity ) throws IllegalArgumentException {
+
+        this( capacity, Policy.LRU );
+
+    }
+
+    /**
+     * Initializes a cache with the given capacity and eviction policy.
+     *
+     * @param capacity
+     *            The capacity of the cache.
+     * @param policy
+     *            The policy to use to choose which mappings to evict.
+     * @throws IllegalArgumentException
+     *             if the given capacity is not positive.
+     * @throws NullPointerException
+     *             if the given policy is <tt>null</tt>.
+     * @since 2018-09-16
+     */
+    public Cache( int capacity, Policy policy ) throws IllegalArgumentException, NullPointerException {
+
+        this( capacity, policy, 0, 0, 0, TimeUnit.NANOSECONDS );
+
+    }
 
     /**
-     * Initializes a cache with the given capacity.
-     * 
+     * Initializes a cache with the given capacity, eviction policy, and
+     * expiration times.
+     *
      * @param capacity
      *            The capacity of the cache.
+     * @param policy
+     *            The policy to use to choose which mappings to evict.
+     * @param expireAfterWrite
+     *            How long a mapping stays valid after it was last written. If 0,
+     *            mappings do not expire based on write time.
+     * @param expireAfterAccess
+     *            How long a mapping stays valid after it was last read or written.
+     *            If 0, mappings do not expire based on access time.
+     * @param refreshAfterWrite
+     *            How long after a mapping was last written that reading it triggers
+     *            a {@link #refresh(Object) refresh}. If 0, mappings are never
+     *            refreshed.
+     * @param unit
+     *            The unit of the given times.
+     * @throws IllegalArgumentException
+     *             if the given capacity is not positive, or one of the given times
+     *             is negative.
+     * @throws NullPointerException
+     *             if the given policy or unit is <tt>null</tt>.
+     * @since 2018-09-16
+     */
+    public Cache( int capacity, Policy policy, long expireAfterWrite, long expireAfterAccess,
+            long refreshAfterWrite, TimeUnit unit ) throws IllegalArgumentException, NullPointerException {
+
+        this( capacity, null, null, policy, expireAfterWrite, expireAfterAccess, refreshAfterWrite, unit );
+
+    }
+
+    /**
+     * Initializes a cache that is bounded by the total weight of its mappings,
+     * with the given eviction policy and expiration times.
+     *
+     * @param maximumWeight
+     *            The maximum total weight of the mappings in the cache.
+     * @param weigher
+     *            The weigher used to determine the weight of each mapping.
+     * @param policy
+     *            The policy to use to choose which mappings to evict.
+     * @param expireAfterWrite
+     *            How long a mapping stays valid after it was last written. If 0,
+     *            mappings do not expire based on write time.
+     * @param expireAfterAccess
+     *            How long a mapping stays valid after it was last read or written.
+     *            If 0, mappings do not expire based on access time.
+     * @param refreshAfterWrite
+     *            How long after a mapping was last written that reading it triggers
+     *            a {@link #refresh(Object) refresh}. If 0, mappings are never
+     *            refreshed.
+     * @param unit
+     *            The unit of the given times.
+     * @throws IllegalArgumentException
+     *             if the given maximum weight is not positive, or one of the given
+     *             times is negative.
+     * @throws NullPointerException
+     *             if the given weigher, policy, or unit is <tt>null</tt>.
+     * @since 2018-09-17
+     */
+    public Cache( long maximumWeight, Weigher<? super K, ? super V> weigher, Policy policy, long expireAfterWrite,
+            long expireAfterAccess, long refreshAfterWrite, TimeUnit unit )
+            throws IllegalArgumentException, NullPointerException {
+
+        this( maximumWeight, Objects.requireNonNull( weigher, "Weigher cannot be null." ), null, policy,
+                expireAfterWrite, expireAfterAccess, refreshAfterWrite, unit );
+
+    }
+
+    /**
+     * Initializes a cache whose mappings count towards the given budget, with the
+     * given eviction policy and expiration times.
+     * <p>
+     * The cache may hold up to the total weight allowed by the budget. However,
+     * whenever the total weight of all the caches that share the budget exceeds it,
+     * mappings are evicted from the caches that are using more than their fair
+     * share of the budget (the budget divided by the amount of caches that share
+     * it).
+     *
+     * @param budget
+     *            The budget that limits the total weight of the mappings.
+     * @param weigher
+     *            The weigher used to determine the weight of each mapping.
+     * @param policy
+     *            The policy to use to choose which mappings to evict.
+     * @param expireAfterWrite
+     *            How long a mapping stays valid after it was last written. If 0,
+     *            mappings do not expire based on write time.
+     * @param expireAfterAccess
+     *            How long a mapping stays valid after it was last read or written.
+     *            If 0, mappings do not expire based on access time.
+     * @param refreshAfterWrite
+     *            How long after a mapping was last written that reading it triggers
+     *            a {@link #refresh(Object) refresh}. If 0, mappings are never
+     *            refreshed.
+     * @param unit
+     *            The unit of the given times.
+     * @throws IllegalArgumentException
+     *             if one of the given times is negative.
+     * @throws NullPointerException
+     *             if the given budget, weigher, policy, or unit is <tt>null</tt>.
+     * @since 2018-09-17
+     */
+    public Cache( Budget budget, Weigher<? super K, ? super V> weigher, Policy policy, long expireAfterWrite,
+            long expireAfterAccess, long refreshAfterWrite, TimeUnit unit )
+            throws IllegalArgumentException, NullPointerException {
+
+        this( Objects.requireNonNull( budget, "Budget cannot be null." ).maximumWeight(),
+                Objects.requireNonNull( weigher, "Weigher cannot be null." ), budget, policy, expireAfterWrite,
+                expireAfterAccess, refreshAfterWrite, unit );
+
+    }
+
+    /**
+     * Initializes a cache, optionally weighted and part of a budget. If it is part
+     * of a budget, the given maximum weight should be the one of the budget.
+     *
+     * @param maximumWeight
+     *            The maximum total weight of the mappings in the cache.
+     * @param weigher
+     *            The weigher used to determine the weight of each mapping, or
+     *            <tt>null</tt> if each mapping weighs 1.
+     * @param budget
+     *            The budget that the cache is part of, or <tt>null</tt> if none.
+     * @param policy
+     *            The policy to use to choose which mappings to evict.
+     * @param expireAfterWrite
+     *            How long a mapping stays valid after it was last written.
+     * @param expireAfterAccess
+     *            How long a mapping stays valid after it was last read or written.
+     * @param refreshAfterWrite
+     *            How long after a mapping was last written that reading it triggers
+     *            a refresh.
+     * @param unit
+     *            The unit of the given times.
+     * @throws IllegalArgumentException
+     *             if the given maximum weight is not positive, or one of the given
+     *             times is negative.
+     * @throws NullPointerException
+     *             if the given policy or unit is <tt>null</tt>.
+     * @since 2018-09-17
+     */
+    protected Cache( long maximumWeight, Weigher<? super K, ? super V> weigher, Budget budget, Policy policy,
+            long expireAfterWrite, long expireAfterAccess, long refreshAfterWrite, TimeUnit unit )
+            throws IllegalArgumentException, NullPointerException {
+
+        if ( maximumWeight <= 0 ) {
+            throw new IllegalArgumentException( "Capacity must be positive." );
+        }
+        if ( policy == null ) {
+            throw new NullPointerException( "Policy cannot be null." );
+        }
+        if ( unit == null ) {
+            throw new NullPointerException( "Time unit cannot be null." );
+        }
+        if ( ( expireAfterWrite < 0 ) || ( expireAfterAccess < 0 ) || ( refreshAfterWrite < 0 ) ) {
+            throw new IllegalArgumentException( "Times cannot be negative." );
+        }
+
+        data = weigher == null ? new ConcurrentHashMap<>( (int) Math.min( maximumWeight, 1 << 16 ) )
+                : new ConcurrentHashMap<>();
+
+        @SuppressWarnings( "unchecked" )
+        ReadBuffer<K, V>[] buffers = new ReadBuffer[BUFFER_COUNT];
+        for ( int i = 0; i < buffers.length; i++ ) {
+
+            buffers[i] = new ReadBuffer<>();
+
+        }
+        readBuffers = buffers;
+
+        evictionLock = new ReentrantLock();
+        evicted = new ConcurrentLinkedQueue<>();
+        expired = new ConcurrentLinkedQueue<>();
+        switch ( policy ) {
+
+            case W_TINY_LFU: // Sketch is sized by the expected amount of mappings.
+                eviction = new WindowTinyLfuEviction<>( maximumWeight,
+                        weigher == null ? (int) Math.min( maximumWeight, 1 << 24 ) : 1 << 16 );
+                break;
+
+            case LRU:
+            default:
+                eviction = new LruEviction<>();
+
+        }
+
+        this.weightedSize = 0;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.budget = budget;
+        this.policy = policy;
+        if ( budget != null ) {
+            budget.members.add( new WeakReference<>( this ) );
+        }
+        this.expireAfterWrite = unit.toNanos( expireAfterWrite );
+        this.expireAfterAccess = unit.toNanos( expireAfterAccess );
+        this.refreshAfterWrite = unit.toNanos( refreshAfterWrite );
+
+    }
+
+    /**
+     * Calculates the smallest power of two that is greater or equal to the given
+     * number.
+     *
+     * @param n
+     *            The number.
+     * @return The smallest power of two that is not smaller than <tt>n</tt>.
+     */
+    private static int ceilingPowerOfTwo( int n ) {
+
+        return n <= 1 ? 1 : Integer.highestOneBit( n - 1 ) << 1;
+
+    }
+
+    /**
+     * Converts a key into the object used to represent it in the backing table.
+     *
+     * @param key
+     *            The key.
+     * @return The key to use in the backing table.
+     */
+    private static Object mask( Object key ) {
+
+        return key == null ? NULL_KEY : key;
+
+    }
+
+    /**
+     * Determines whether mappings in this cache can expire.
+     *
+     * @return <tt>true</tt> if expire-after-write or expire-after-access is
+     *         enabled.
+     */
+    private boolean expires() {
+
+        return ( expireAfterWrite > 0 ) || ( expireAfterAccess > 0 );
+
+    }
+
+    /**
+     * Determines whether the given node is expired.
+     *
+     * @param node
+     *            The node to check.
+     * @param now
+     *            The current time, as given by {@link System#nanoTime()}.
+     * @return <tt>true</tt> if the node is expired.
+     */
+    private boolean isExpired( Node<K, V> node, long now ) {
+
+        return ( ( expireAfterWrite > 0 ) && ( ( now - node.writeTime ) >= expireAfterWrite ) )
+                || ( ( expireAfterAccess > 0 ) && ( ( now - node.accessTime ) >= expireAfterAccess ) );
+
+    }
+
+    /**
+     * Retrieves the node for the given key, if it exists and is not expired. If
+     * the node is expired, it is removed.
+     *
+     * @param masked
+     *            The masked key.
+     * @param now
+     *            The current time, as given by {@link System#nanoTime()}. Ignored
+     *            if mappings do not expire.
+     * @return The node, or <tt>null</tt> if there is no valid node for the key.
      */
-    public Cache( int capacity ) {
+    private Node<K, V> getValidNode( Object masked, long now ) {
 
-        data = new CacheList();
+        Node<K, V> node = data.get( masked );
+        if ( ( node != null ) && expires() && isExpired( node, now ) ) {
+            expire( node );
+            return null;
+        }
+        return node;
+
+    }
+
+    /**
+     * Removes an expired node.
+     *
+     * @param node
+     *            The node to remove.
+     */
+    private void expire( Node<K, V> node ) {
+
+        if ( data.remove( node.maskedKey, node ) ) {
+            node.retired = true;
+            if ( evictionLock.tryLock() ) {
+                try {
+                    eviction.remove( node );
+                    weightedSize = eviction.weight();
+                } finally {
+                    evictionLock.unlock();
+                }
+            } else { // Let the next maintenance unlink it (read buffers may drop it).
+                expired.add( node );
+            }
+        }
+
+    }
 
-        keyMap = HashBiMap.create( capacity );
-        nodeMap = keyMap.inverse();
+    /**
+     * Retrieves the current time, if it is needed by this cache.
+     *
+     * @return The current time, as given by {@link System#nanoTime()}, or 0 if
+     *         this cache does not use timestamps.
+     */
+    private long now() {
 
-        this.capacity = capacity;
+        return ( expires() || ( refreshAfterWrite > 0 ) ) ? System.nanoTime() : 0;
 
     }
 
@@ -75,9 +500,9 @@ public class Cache<K, V> {
      * @return <tt>true</tt> if this cache contains the given key. Else, returns
      *         <tt>false</tt>.
      */
-    public synchronized boolean containsKey( Object key ) {
+    public boolean containsKey( Object key ) {
 
-        return keyMap.containsKey( key );
+        return getValidNode( mask( key ), now() ) != null;
 
     }
 
@@ -91,35 +516,56 @@ public class Cache<K, V> {
      * @return <tt>true</tt> if this cache contains the given value. Else, returns
      *         <tt>false</tt>.
      */
-    public synchronized boolean containsValue( Object value ) {
+    public boolean containsValue( Object value ) {
 
-        return data.contains( value );
+        long now = now();
+        for ( Node<K, V> node : data.values() ) {
+
+            if ( Objects.equals( value, node.value ) && !( expires() && isExpired( node, now ) ) ) {
+                return true; // Found value.
+            }
+
+        }
+        return false; // Did not find value.
 
     }
 
     /**
      * Retrieves the cached value mapped to the given key.
      * <p>
-     * If there is a cached mapping, it is moved back to the end of the LRU deletion
-     * list.
+     * If there is a cached mapping, the access is (eventually) recorded by the
+     * eviction policy (for LRU, it is moved back to the end of the deletion
+     * list).
      * <p>
      * The return value will be <tt>null</tt> if no mapping exists for the given
      * key. However, since this cache allows <tt>null</tt> values, a return value of
      * <tt>null</tt> does not necessarily indicate that there is no mapping, it may
      * just be the value <tt>null</tt>. In that situation,
      * {@link #containsKey(Object)} should be used to differentiate those cases.
-     * 
+     * <p>
+     * This method never blocks.
+     *
      * @param key
      *            The key to get the cached value for.
      * @return The cached value, or <tt>null</tt> if there is no value currently
      *         cached to the given key.
      */
-    public synchronized V get( Object key ) {
+    public V get( Object key ) {
 
-        CacheList.Node node = keyMap.get( key ); // Look for node.
+        long now = now();
+        Node<K, V> node = getValidNode( mask( key ), now ); // Look for node.
         if ( node != null ) { // Node found.
-            data.moveToFront( node ); // Move node to front.
-            return node.getValue();
+            afterRead( node ); // Record access.
+            if ( expireAfterAccess > 0 ) {
+                node.accessTime = now;
+            }
+            V value = node.value;
+            if ( ( refreshAfterWrite > 0 ) && ( ( now - node.writeTime ) >= refreshAfterWrite )
+                    && ( ( now - node.refreshTime ) >= refreshAfterWrite )
+                    && REFRESH_TIME.compareAndSet( node, node.refreshTime, now ) ) {
+                refresh( node.key ); // Due for refresh, and not refreshed recently.
+            }
+            return value;
         } else { // Not found.
             return null;
         }
@@ -129,8 +575,8 @@ public class Cache<K, V> {
     /**
      * Caches a mapping.
      * <p>
-     * The mapping will be at the end of the LRU deletion list.
-     * 
+     * The mapping will be at the end of the deletion list (for LRU).
+     *
      * @param key
      *            The key of the mapping.
      * @param value
@@ -138,30 +584,53 @@ public class Cache<K, V> {
      * @return The value that was previously cached for the given key, or
      *         <tt>null</tt> if there wasn't one.
      */
-    public synchronized V put( K key, V value ) {
+    public V put( K key, V value ) {
 
-        CacheList.Node node = keyMap.get( key ); // Look for node.
-        if ( node != null ) { // Already has a node for this key.
-            data.moveToFront( node );
-            return node.setValue( value ); // Set new value.
-        } else { // No existing node.
-            if ( keyMap.size() >= capacity ) { // Already reached capacity.
-                nodeMap.remove( data.removeLast() ); // Remove least recently used node.
+        Object masked = mask( key );
+        long now = now();
+        Node<K, V> node;
+        while ( true ) {
+
+            node = getValidNode( masked, now ); // Look for node.
+            if ( node != null ) {
+                break; // Already has a node for this key.
             }
-            keyMap.put( key, data.add( value ) ); // Add new data.
-            return null;
+            Node<K, V> newNode = new Node<>( masked, key, value );
+            newNode.weight = weigh( key, value );
+            newNode.writeTime = now;
+            newNode.accessTime = now;
+            newNode.refreshTime = now;
+            node = data.putIfAbsent( masked, newNode );
+            if ( node == null ) { // Added new node.
+                afterWrite( newNode );
+                return null;
+            }
+            if ( !( expires() && isExpired( node, now ) ) ) {
+                break; // Another thread added a node first.
+            }
+            expire( node ); // Other node is expired, try again.
+
         }
 
+        // Already has a node for this key.
+        V old = node.value;
+        node.value = value; // Set new value.
+        node.writeTime = now;
+        node.accessTime = now;
+        afterRead( node );
+        afterUpdate( node, key, value );
+        return old;
+
     }
 
     /**
      * Updates the value mapped to the given key. If there are no values mapped to
      * the key, does nothing.
      * <p>
-     * This method does not change the LRU list, so the updated mapping will be in
-     * the same position in the delete queue as the previous mapping of the given
-     * key.
-     * 
+     * This method does not count as an access to the mapping, so the updated
+     * mapping will be in the same position in the delete queue as the previous
+     * mapping of the given key.
+     *
      * @param key
      *            The key of the mapping.
      * @param value
@@ -170,11 +639,16 @@ public class Cache<K, V> {
      *         <tt>null</tt> if there wasn't one (in which case no changes were
      *         made).
      */
-    public synchronized V update( K key, V value ) {
+    public V update( K key, V value ) {
 
-        CacheList.Node node = keyMap.get( key ); // Look for node.
+        long now = now();
+        Node<K, V> node = getValidNode( mask( key ), now ); // Look for node.
         if ( node != null ) { // Already has a node for this key.
-            return node.setValue( value ); // Set new value.
+            V old = node.value;
+            node.value = value; // Set new value.
+            node.writeTime = now;
+            afterUpdate( node, key, value );
+            return old;
         } else { // No existing node.
             return null;
         }
@@ -183,18 +657,26 @@ public class Cache<K, V> {
 
     /**
      * Removes from the cache the mapping that has the given key.
-     * 
+     *
      * @param key
      *            The key of the mapping to remove.
      * @return The value that was cached to the given key, or <tt>null</tt> if there
      *         wasn't one.
      */
-    public synchronized V remove( Object key ) {
+    public V remove( Object key ) {
 
-        CacheList.Node node = keyMap.remove( key ); // Remove node.
+        Node<K, V> node = data.remove( mask( key ) ); // Remove node.
         if ( node != null ) { // A node was removed.
-            data.remove( node );
-            return node.getValue();
+            node.retired = true;
+            evictionLock.lock();
+            try {
+                unlinkExpired();
+                eviction.remove( node );
+                weightedSize = eviction.weight();
+            } finally {
+                evictionLock.unlock();
+            }
+            return ( expires() && isExpired( node, System.nanoTime() ) ) ? null : node.value;
         } else { // No node with given key.
             return null;
         }
@@ -202,350 +684,1588 @@ public class Cache<K, V> {
     }
 
     /**
-     * Removes all mappings from the cache.
+     * Removes from the cache the mappings that have the given keys.
      * <p>
-     * The cache will be empty after this.
+     * Same as {@link #remove(Object) removing} each key, but the eviction policy
+     * is only updated once for all of them.
+     *
+     * @param keys
+     *            The keys of the mappings to remove.
+     * @since 2018-09-17
      */
-    public synchronized void clear() {
+    public void invalidateAll( Collection<?> keys ) {
 
-        keyMap.clear();
-        data.clear();
-
-    }
+        List<Node<K, V>> removed = new ArrayList<>();
+        for ( Object key : keys ) {
 
-    /**
-     * Retrieves the amount of mappings currently stored in this cache.
-     *
-     * @return The amount of mappings.
-     */
-    public synchronized int size() {
+            Node<K, V> node = data.remove( mask( key ) );
+            if ( node != null ) { // A node was removed.
+                node.retired = true;
+                removed.add( node );
+            }
 
-        return keyMap.size();
+        }
+        unlinkAll( removed );
 
     }
 
     /**
-     * Retrieves the maximum amount of mappings that this cache can store. If this
-     * cache contains this many mappings, adding a new mapping will delete the least
-     * recently accessed mapping first.
+     * Removes from the cache all the mappings that satisfy the given predicate.
+     * <p>
+     * The eviction policy is only updated once for all the removed mappings, and
+     * the predicate is not called while holding any lock. Takes time proportional
+     * to the amount of mappings in the cache.
      *
-     * @return The maximum amount of mappings.
+     * @param filter
+     *            The predicate that determines which mappings to remove, given the
+     *            key and the value of each mapping.
+     * @since 2018-09-17
      */
-    public synchronized int capacity() {
+    public void removeIf( BiPredicate<? super K, ? super V> filter ) {
 
-        return capacity;
-
-    }
+        List<Node<K, V>> removed = new ArrayList<>();
+        for ( Node<K, V> node : data.values() ) {
 
-    /**
-     * Determines whether this cache is empty (contains no mappings).
-     *
-     * @return <tt>true</tt> if this cache is empty, <tt>false</tt> otherwise.
-     */
-    public synchronized boolean isEmpty() {
+            if ( filter.test( node.key, node.value ) && data.remove( node.maskedKey, node ) ) {
+                node.retired = true;
+                removed.add( node );
+            }
 
-        return keyMap.isEmpty();
+        }
+        unlinkAll( removed );
 
     }
 
     /**
-     * Customized version of a linked list that provides (limited) references to its
-     * internal nodes, allowing access, removal and moving elements to the front in
-     * <tt>O(1)</tt> time when the node is already known.
-     * 
-     * @version 1.0
-     * @author ThiagoTGM
-     * @since 2018-08-09
+     * Removes the given nodes, that were already removed from the table, from
+     * the eviction policy.
+     *
+     * @param removed
+     *            The removed nodes.
      */
-    protected class CacheList {
-
-        private final ListNode head;
-        private final ListNode tail;
-
-        /**
-         * Instantiates an empty list.
-         */
-        public CacheList() {
-
-            head = new ListNode();
-            tail = new ListNode( null, head, null );
+    private void unlinkAll( List<Node<K, V>> removed ) {
 
+        if ( removed.isEmpty() ) {
+            return; // Nothing to do.
         }
+        evictionLock.lock();
+        try {
+            unlinkExpired();
+            for ( Node<K, V> node : removed ) {
 
-        /**
-         * Determines whether this list contains the given value. More formally, returns
-         * <tt>true</tt> if there is some value <tt>v</tt> in this list such that
-         * <tt>value == null ? v == null : value.equals(v)</tt>.
-         *
-         * @param value
-         *            The value to look for.
-         * @return <tt>true</tt> if this list contains the given value. Else, returns
-         *         <tt>false</tt>.
-         */
-        public boolean contains( Object value ) {
-
-            for ( ListNode cur = head.getNext(); cur != tail; cur = cur.getNext() ) {
-
-                if ( Objects.equals( value, cur.getValue() ) ) {
-                    return true; // Found value.
-                }
+                eviction.remove( node );
 
             }
-            return false; // Did not find value.
-
+            weightedSize = eviction.weight();
+        } finally {
+            evictionLock.unlock();
         }
 
-        /**
-         * Adds a value to the list, returning a reference to the node where it is
-         * stored.
-         * 
-         * @param value
-         *            The value to be added.
-         * @return The node that stores the value.
-         */
-        public synchronized Node add( V value ) {
+    }
 
-            return new ListNode( value, head, head.getNext() ); // Add to head of list.
+    /**
+     * Removes all mappings from the cache.
+     * <p>
+     * The cache will be empty after this, unless other threads add mappings
+     * concurrently.
+     */
+    public void clear() {
 
-        }
+        evictionLock.lock();
+        try {
+            drainReadBuffers(); // Discard pending reads.
+            for ( Node<K, V> node : data.values() ) {
 
-        /**
-         * Removes a node (and thus the stored value) from the list.
-         * 
-         * @param node
-         *            The node to be removed.
-         */
-        public synchronized void remove( Node node ) {
+                if ( data.remove( node.maskedKey, node ) ) {
+                    node.retired = true;
+                    eviction.remove( node );
+                }
 
-            if ( !( node instanceof Cache.CacheList.ListNode ) ) { // Ensure right type.
-                throw new IllegalArgumentException( "Not a valid list node." );
             }
-
-            @SuppressWarnings( "unchecked" )
-            ListNode theNode = (ListNode) node;
-            theNode.remove(); // Removes node.
-
+            weightedSize = eviction.weight();
+        } finally {
+            evictionLock.unlock();
         }
 
-        /**
-         * Removes the last node of the list.
-         * 
-         * @return The removed node.
-         */
-        public synchronized Node removeLast() {
+    }
 
-            ListNode last = tail.getPrevious(); // Get last.
-            last.remove(); // Remove from list.
-            return last;
+    /**
+     * Removes all the expired mappings from this cache.
+     * <p>
+     * Expired mappings are normally only removed when they are found by another
+     * operation (or evicted). This method can be called periodically to free the
+     * memory used by expired mappings that are not being looked up anymore.
+     * Takes time proportional to the amount of mappings in the cache.
+     *
+     * @since 2018-09-16
+     */
+    public void cleanUp() {
 
+        if ( !expires() ) {
+            return; // Nothing can expire.
         }
 
-        /**
-         * Moves the given node to the front of the list.
-         * 
-         * @param node
-         *            The node to be moved.
-         */
-        public synchronized void moveToFront( Node node ) {
+        long now = System.nanoTime();
+        for ( Node<K, V> node : data.values() ) {
 
-            if ( !( node instanceof Cache.CacheList.ListNode ) ) { // Ensure right type.
-                throw new IllegalArgumentException( "Not a valid list node." );
+            if ( isExpired( node, now ) ) {
+                expire( node );
             }
 
-            @SuppressWarnings( "unchecked" )
-            ListNode theNode = (ListNode) node;
-            theNode.move( head, head.getNext() ); // Move to front.
-
         }
 
-        /**
-         * Removes all nodes from the list.
-         */
-        public synchronized void clear() {
+    }
 
-            tail.place( head, null );
+    /**
+     * Called when a mapping that is due for a refresh is read (when it was last
+     * written longer ago than the refresh-after-write time). Called at most once
+     * per refresh period for each mapping, by the thread that read it.
+     * <p>
+     * Subclasses may override this to reload the value of the mapping (preferably
+     * asynchronously, since the reading thread is blocked until this returns),
+     * and then {@link #update(Object, Object) update} the cache with the new
+     * value. The default implementation does nothing.
+     *
+     * @param key
+     *            The key of the mapping that is due for a refresh.
+     * @since 2018-09-16
+     */
+    protected void refresh( K key ) {
 
-        }
+        // Does nothing by default.
 
-        /* Node subclasses */
+    }
 
-        /**
-         * Node in the list that stores a value.
-         * 
-         * @version 1.0
-         * @author ThiagoTGM
-         * @since 2018-08-09
-         */
-        public class Node {
+    /**
+     * Called after a mapping was evicted to keep the cache within its capacity
+     * (or within its share of the {@link Budget}). Not called for mappings that
+     * were removed, replaced, cleared, or that expired.
+     * <p>
+     * Called by the thread that caused the eviction, without holding any lock, so
+     * implementations should be fast. The default implementation does nothing.
+     *
+     * @param key
+     *            The key of the evicted mapping.
+     * @param value
+     *            The value of the evicted mapping.
+     * @since 2018-09-17
+     */
+    protected void onEviction( K key, V value ) {
 
-            private V value;
+        // Does nothing by default.
 
-            /**
-             * Instantiates a node that stores the given value.
-             * 
-             * @param value
-             *            The value to be stored initially.
-             */
-            protected Node( V value ) {
+    }
 
-                this.value = value;
+    /**
+     * Called after a mapping was evicted, like {@link #onEviction(Object, Object)},
+     * with the stamp that {@link #evictionStamp(Object)} returned for the key right
+     * before the mapping was removed from the cache. Since this is called after the
+     * eviction lock is released, the key may have been written again in the
+     * meantime, which subclasses can detect by comparing the stamp.
+     * <p>
+     * The default implementation calls {@link #onEviction(Object, Object)}.
+     *
+     * @param key
+     *            The key of the evicted mapping.
+     * @param value
+     *            The value of the evicted mapping.
+     * @param stamp
+     *            The stamp of the key when it was evicted.
+     * @since 2018-09-17
+     */
+    protected void onEviction( K key, V value, long stamp ) {
 
-            }
+        onEviction( key, value );
 
-            /**
-             * Retrieves the value stored by this node.
-             * 
-             * @return The value stored in this node.
-             */
-            public V getValue() {
+    }
 
-                return value;
+    /**
+     * Obtains a stamp for a key that is about to be evicted, which is then given to
+     * {@link #onEviction(Object, Object, long)}. Subclasses may use it to tag keys
+     * with a version that changes whenever they are written.
+     * <p>
+     * Called while holding the eviction lock, so it must be fast, and must not
+     * call any method of this cache. The default implementation returns 0.
+     *
+     * @param key
+     *            The key of the mapping being evicted.
+     * @return The stamp of the key.
+     * @since 2018-09-17
+     */
+    protected long evictionStamp( K key ) {
 
-            }
+        return 0;
 
-            /**
-             * Sets the value stored by this node.
-             * 
-             * @param value
-             *            The value to be stored.
-             * @return The value that is currently stored, that got replaced.
-             */
-            public V setValue( V value ) {
+    }
 
-                V old = this.value;
-                this.value = value;
-                return old;
+    /**
+     * Retrieves the amount of mappings currently stored in this cache.
+     * <p>
+     * May include mappings that are expired but were not removed yet.
+     *
+     * @return The amount of mappings.
+     */
+    public int size() {
 
-            }
+        return data.size();
 
-        }
+    }
+
+    /**
+     * Retrieves the maximum amount of mappings that this cache can store. If this
+     * cache contains this many mappings, adding a new mapping will delete one of
+     * the existing mappings first (or, depending on the policy, the new mapping
+     * itself).
+     * <p>
+     * If this cache is bounded by weight, this is the same as the
+     * {@link #maximumWeight() maximum weight} (capped to the maximum
+     * <tt>int</tt> value).
+     *
+     * @return The maximum amount of mappings.
+     */
+    public int capacity() {
+
+        return (int) Math.min( maximumWeight, Integer.MAX_VALUE );
+
+    }
+
+    /**
+     * Retrieves the maximum total weight of the mappings in this cache. If the
+     * cache is not bounded by weight, each mapping weighs 1, so this is the
+     * {@link #capacity() capacity}.
+     *
+     * @return The maximum weight.
+     * @since 2018-09-17
+     */
+    public long maximumWeight() {
+
+        return maximumWeight;
+
+    }
+
+    /**
+     * Retrieves the current total weight of the mappings in this cache. If the
+     * cache is not bounded by weight, each mapping weighs 1.
+     * <p>
+     * Only reflects changes that were already applied to the eviction policy, so
+     * it may lag slightly behind concurrent additions.
+     *
+     * @return The total weight.
+     * @since 2018-09-17
+     */
+    public long weightedSize() {
+
+        return weightedSize;
+
+    }
+
+    /**
+     * Retrieves the policy used by this cache to choose which mappings to evict.
+     *
+     * @return The eviction policy.
+     * @since 2018-09-16
+     */
+    public Policy policy() {
+
+        return policy;
+
+    }
+
+    /**
+     * Retrieves the keys of the mappings that the eviction policy currently
+     * considers the most valuable, from most to least valuable (the reverse of
+     * the order they would be evicted in, for LRU). Expired mappings are not
+     * included.
+     * <p>
+     * Useful for recording which keys should be loaded first the next time the
+     * cache is created.
+     *
+     * @param limit
+     *            The maximum amount of keys to retrieve.
+     * @return The keys of the most valuable mappings.
+     * @throws IllegalArgumentException
+     *             if the limit is negative.
+     * @since 2018-09-17
+     */
+    public List<K> hottest( int limit ) throws IllegalArgumentException {
+
+        if ( limit < 0 ) {
+            throw new IllegalArgumentException( "Limit cannot be negative." );
+        }
+
+        List<Node<K, V>> nodes = new ArrayList<>( Math.min( limit, data.size() ) );
+        evictionLock.lock();
+        try {
+            drainReadBuffers(); // Make order current.
+            eviction.hottest( nodes, limit );
+        } finally {
+            evictionLock.unlock();
+        }
+
+        long now = now();
+        List<K> keys = new ArrayList<>( nodes.size() );
+        for ( Node<K, V> node : nodes ) {
+
+            if ( !node.retired && !( expires() && isExpired( node, now ) ) ) {
+                keys.add( node.key );
+            }
+
+        }
+        return keys;
+
+    }
+
+    /**
+     * Determines whether this cache is empty (contains no mappings).
+     *
+     * @return <tt>true</tt> if this cache is empty, <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+
+        return data.isEmpty();
+
+    }
+
+    /* Buffer management */
+
+    /**
+     * Records that the given node was accessed, and drains the read buffers if
+     * enough reads are pending and no other thread is currently doing
+     * maintenance.
+     *
+     * @param node
+     *            The node that was accessed.
+     */
+    private void afterRead( Node<K, V> node ) {
+
+        ReadBuffer<K, V> buffer = readBuffers[bufferIndex()];
+        int pending = buffer.offer( node );
+        if ( ( pending >= DRAIN_THRESHOLD ) && evictionLock.tryLock() ) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+
+    }
+
+    /**
+     * Adds a newly added node to the eviction policy, evicting mappings if the
+     * capacity was exceeded.
+     *
+     * @param node
+     *            The node that was added.
+     */
+    private void afterWrite( Node<K, V> node ) {
+
+        evictionLock.lock();
+        try {
+            drainReadBuffers(); // Apply pending reads first so eviction order is current.
+            if ( !node.retired ) { // Make sure it wasn't removed in the meantime.
+                eviction.add( node );
+            }
+            evict( maximumWeight );
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyEvicted();
+        if ( budget != null ) {
+            budget.enforce();
+        }
+
+    }
+
+    /**
+     * Calculates the weight of a mapping.
+     *
+     * @param key
+     *            The key of the mapping.
+     * @param value
+     *            The value of the mapping.
+     * @return The weight of the mapping.
+     * @throws IllegalArgumentException
+     *             if the weigher returned a negative weight.
+     */
+    private int weigh( K key, V value ) throws IllegalArgumentException {
+
+        if ( weigher == null ) {
+            return 1;
+        }
+        int weight = weigher.weigh( key, value );
+        if ( weight < 0 ) {
+            throw new IllegalArgumentException( "Weight cannot be negative." );
+        }
+        return weight;
+
+    }
+
+    /**
+     * Updates the weight of a node whose value was changed, evicting mappings if
+     * the maximum weight was exceeded.
+     *
+     * @param node
+     *            The node that was changed.
+     * @param key
+     *            The key of the mapping.
+     * @param value
+     *            The new value of the mapping.
+     */
+    private void afterUpdate( Node<K, V> node, K key, V value ) {
+
+        if ( weigher == null ) {
+            return; // Weight never changes.
+        }
+
+        int weight = weigh( key, value );
+        evictionLock.lock();
+        try {
+            if ( weight == node.weight ) {
+                return; // Nothing to change.
+            }
+            if ( !node.retired && ( node.next != null ) ) { // In the policy.
+                eviction.reweigh( node, weight );
+            } else {
+                node.weight = weight; // Not added to the policy yet (or already removed).
+            }
+            evict( maximumWeight );
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyEvicted();
+        if ( budget != null ) {
+            budget.enforce();
+        }
+
+    }
+
+    /**
+     * Evicts mappings until the total weight is within the given limit.
+     *
+     * @param limit
+     *            The maximum weight to keep.
+     */
+    private void trimTo( long limit ) {
+
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            evict( limit );
+        } finally {
+            evictionLock.unlock();
+        }
+        notifyEvicted();
+
+    }
+
+    /**
+     * Calls {@link #onEviction(Object, Object, long)} for the mappings that were
+     * evicted so far.
+     * <p>
+     * Must be called while <i>not</i> holding the eviction lock.
+     */
+    private void notifyEvicted() {
+
+        Node<K, V> node;
+        while ( ( node = evicted.poll() ) != null ) {
+
+            onEviction( node.key, node.value, node.evictionStamp );
+
+        }
+
+    }
+
+    /**
+     * Determines the read buffer to be used by the current thread.
+     *
+     * @return The index of the buffer.
+     */
+    private static int bufferIndex() {
+
+        long id = Thread.currentThread().getId();
+        int hash = (int) ( id ^ ( id >>> 32 ) ) * 0x9E3779B9; // Spread sequential IDs.
+        return ( hash >>> 16 ) & ( BUFFER_COUNT - 1 );
+
+    }
+
+    /**
+     * Replays all the reads that are pending in the read buffers onto the
+     * eviction policy.
+     * <p>
+     * Must be called while holding the eviction lock.
+     */
+    private void drainReadBuffers() {
+
+        unlinkExpired();
+        for ( ReadBuffer<K, V> buffer : readBuffers ) {
+
+            Node<K, V> node;
+            while ( ( node = buffer.poll() ) != null ) {
+
+                if ( node.next == null ) {
+                    continue; // Not in the policy.
+                }
+                if ( node.retired ) { // Removed after it was read.
+                    eviction.remove( node );
+                    weightedSize = eviction.weight();
+                } else {
+                    eviction.access( node );
+                }
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Removes the nodes that expired while another thread was doing maintenance
+     * from the eviction policy, so that their weight is no longer counted.
+     * <p>
+     * Must be called while holding the eviction lock.
+     */
+    private void unlinkExpired() {
+
+        Node<K, V> node;
+        while ( ( node = expired.poll() ) != null ) {
+
+            eviction.remove( node );
+
+        }
+        weightedSize = eviction.weight();
+
+    }
+
+    /**
+     * Evicts mappings, as chosen by the eviction policy, until the total weight of
+     * the mappings is within the given limit.
+     * <p>
+     * Must be called while holding the eviction lock.
+     *
+     * @param limit
+     *            The maximum weight to keep.
+     */
+    private void evict( long limit ) {
+
+        unlinkExpired(); // Expired mappings should not cause evictions.
+        while ( eviction.weight() > limit ) {
+
+            Node<K, V> victim = eviction.evict();
+            long stamp = evictionStamp( victim.key ); // Before it can be written again.
+            if ( data.remove( victim.maskedKey, victim ) ) {
+                victim.evictionStamp = stamp;
+                victim.retired = true;
+                evicted.add( victim );
+            }
+
+        }
+        weightedSize = eviction.weight();
+
+    }
+
+    /* Eviction policies */
+
+    /**
+     * The policies that can be used to choose which mapping to evict when a cache
+     * exceeds its capacity.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-16
+     */
+    public enum Policy {
+
+        /**
+         * Evicts the least recently used mapping.
+         * <p>
+         * Performs well when recently used keys are likely to be used again, but a
+         * single scan over many keys that are only used once (such as iterating over
+         * a large map) flushes the entire cache.
+         */
+        LRU,
+
+        /**
+         * Window TinyLFU. New mappings are first added to a small LRU
+         * <i>admission window</i> (1% of the capacity). When a mapping leaves the
+         * window, it is only admitted into the main area of the cache if it was
+         * used more often (according to a compact frequency sketch that also
+         * remembers keys that are no longer cached) than the mapping that would be
+         * evicted to make room for it. The main area is a segmented LRU, where
+         * mappings that are accessed again get promoted to a <i>protected</i>
+         * segment (80% of the main area).
+         * <p>
+         * Keeps frequently used mappings cached through scans and bursts of
+         * one-off keys, at the cost of slightly more bookkeeping per operation.
+         */
+        W_TINY_LFU;
+
+        /**
+         * Parses a policy from its name. Case, spaces, <tt>-</tt> and <tt>_</tt>
+         * are ignored, so that <tt>W-TinyLFU</tt> is accepted.
+         *
+         * @param name
+         *            The name of the policy.
+         * @return The policy with the given name.
+         * @throws IllegalArgumentException
+         *             if there is no policy with the given name.
+         * @throws NullPointerException
+         *             if the given name is <tt>null</tt>.
+         */
+        public static Policy parse( String name ) throws IllegalArgumentException, NullPointerException {
+
+            String simplified = name.replaceAll( "[\\s_-]", "" );
+            for ( Policy policy : values() ) {
+
+                if ( policy.name().replace( "_", "" ).equalsIgnoreCase( simplified ) ) {
+                    return policy;
+                }
+
+            }
+            throw new IllegalArgumentException( "No cache policy named \"" + name + "\"." );
+
+        }
+
+    }
+
+    /**
+     * Calculates the weight of cache mappings.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     * @param <K>
+     *            Type of keys.
+     * @param <V>
+     *            Type of values.
+     */
+    @FunctionalInterface
+    public interface Weigher<K, V> {
+
+        /**
+         * Calculates the weight of a mapping. The weight of a mapping is calculated
+         * when it is written, and is not recalculated until it is written again.
+         *
+         * @param key
+         *            The key of the mapping.
+         * @param value
+         *            The value of the mapping.
+         * @return The weight of the mapping. Must not be negative.
+         */
+        int weigh( K key, V value );
+
+    }
+
+    /**
+     * Limit on the total weight of the mappings in a group of caches.
+     * <p>
+     * Each cache in the group may use up to the whole budget while the others do
+     * not need it. Whenever the total weight of the group exceeds the budget,
+     * mappings are evicted from the cache that exceeds its <i>fair share</i> (the
+     * budget divided equally among the caches in the group) by the most, until
+     * the group is back within the budget or no cache exceeds its fair share.
+     * <p>
+     * Caches join a budget when they are created with it. The budget only holds
+     * weak references to them, so a cache leaves the budget once it is
+     * garbage-collected (for example, after the database that used it was
+     * closed), and the fair share of the remaining caches grows accordingly.
+     * <p>
+     * <b>This class is <i>thread-safe</i>.</b>
+     *
+     * @version 1.1
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    public static final class Budget {
+
+        private final long maximumWeight;
+        private final List<WeakReference<Cache<?, ?>>> members;
+
+        /**
+         * Instantiates a budget.
+         *
+         * @param maximumWeight
+         *            The maximum total weight of the caches that share the budget.
+         * @throws IllegalArgumentException
+         *             if the given weight is not positive.
+         */
+        public Budget( long maximumWeight ) throws IllegalArgumentException {
+
+            if ( maximumWeight <= 0 ) {
+                throw new IllegalArgumentException( "Maximum weight must be positive." );
+            }
+
+            this.maximumWeight = maximumWeight;
+            this.members = new CopyOnWriteArrayList<>();
+
+        }
+
+        /**
+         * Retrieves the maximum total weight of the caches that share this budget.
+         *
+         * @return The maximum weight.
+         */
+        public long maximumWeight() {
+
+            return maximumWeight;
+
+        }
+
+        /**
+         * Retrieves the caches that currently share this budget, and drops the
+         * ones that were already garbage-collected.
+         *
+         * @return The caches.
+         */
+        private List<Cache<?, ?>> members() {
+
+            List<Cache<?, ?>> live = new ArrayList<>( members.size() );
+            boolean collected = false;
+            for ( WeakReference<Cache<?, ?>> member : members ) {
+
+                Cache<?, ?> cache = member.get();
+                if ( cache != null ) {
+                    live.add( cache );
+                } else {
+                    collected = true;
+                }
+
+            }
+            if ( collected ) {
+                members.removeIf( member -> member.get() == null );
+            }
+            return live;
+
+        }
+
+        /**
+         * Retrieves the current total weight of the caches that share this budget.
+         *
+         * @return The total weight.
+         */
+        public long weightedSize() {
+
+            return weightedSize( members() );
+
+        }
+
+        /**
+         * Calculates the total weight of the given caches.
+         *
+         * @param caches
+         *            The caches.
+         * @return The total weight.
+         */
+        private static long weightedSize( List<Cache<?, ?>> caches ) {
+
+            long total = 0;
+            for ( Cache<?, ?> member : caches ) {
+
+                total += member.weightedSize();
+
+            }
+            return total;
+
+        }
+
+        /**
+         * Retrieves the amount of caches that share this budget.
+         *
+         * @return The amount of caches.
+         */
+        public int cacheCount() {
+
+            return members().size();
+
+        }
+
+        /**
+         * Evicts mappings from the caches that exceed their fair share until the
+         * group is within budget.
+         */
+        void enforce() {
+
+            List<Cache<?, ?>> members = members();
+            for ( int i = 0; i < members.size(); i++ ) {
+
+                long excess = weightedSize( members ) - maximumWeight;
+                if ( excess <= 0 ) {
+                    return; // Within budget.
+                }
+
+                long share = maximumWeight / members.size();
+                Cache<?, ?> largest = null;
+                for ( Cache<?, ?> member : members ) {
+
+                    if ( ( largest == null ) || ( member.weightedSize() > largest.weightedSize() ) ) {
+                        largest = member;
+                    }
+
+                }
+                if ( largest.weightedSize() <= share ) {
+                    return; // No cache is over its share.
+                }
+                largest.trimTo( Math.max( share, largest.weightedSize() - excess ) );
+
+            }
+
+        }
+
+    }
+
+    /**
+     * Doubly-linked list of nodes, ordered from most recently accessed (first) to
+     * least recently accessed (last). Also keeps track of the total weight of the
+     * nodes in it.
+     * <p>
+     * Not thread-safe. Must only be used while holding the eviction lock.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-16
+     * @param <K>
+     *            Type of key.
+     * @param <V>
+     *            Type of value.
+     */
+    private static final class AccessOrderDeque<K, V> {
+
+        private final Node<K, V> head; // Sentinel.
+        private int size;
+        private long weight;
+
+        /**
+         * Instantiates an empty list.
+         */
+        AccessOrderDeque() {
+
+            head = new Node<>( null, null, null );
+            head.prev = head;
+            head.next = head;
+            size = 0;
+            weight = 0;
+
+        }
+
+        /**
+         * Inserts a node at the front of the list.
+         *
+         * @param node
+         *            The node to insert. Must not be in any list.
+         */
+        void linkFirst( Node<K, V> node ) {
+
+            node.prev = head;
+            node.next = head.next;
+            head.next.prev = node;
+            head.next = node;
+            size++;
+            weight += node.weight;
+
+        }
+
+        /**
+         * Removes a node from the list.
+         *
+         * @param node
+         *            The node to remove. Must be in this list.
+         */
+        void unlink( Node<K, V> node ) {
+
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            size--;
+            weight -= node.weight;
+
+        }
+
+        /**
+         * Moves a node to the front of the list.
+         *
+         * @param node
+         *            The node to move. Must be in this list.
+         */
+        void moveToFront( Node<K, V> node ) {
+
+            unlink( node );
+            linkFirst( node );
+
+        }
+
+        /**
+         * Adds the nodes in the list to the given list, from the most to the least
+         * recently accessed, until the given list reaches a size limit.
+         *
+         * @param nodes
+         *            The list to add to.
+         * @param limit
+         *            The maximum size of the list to add to.
+         */
+        void collect( List<Node<K, V>> nodes, int limit ) {
+
+            for ( Node<K, V> node = head.next; ( node != head ) && ( nodes.size() < limit ); node = node.next ) {
+
+                nodes.add( node );
+
+            }
+
+        }
+
+        /**
+         * Retrieves the least recently accessed node.
+         *
+         * @return The last node, or <tt>null</tt> if the list is empty.
+         */
+        Node<K, V> last() {
+
+            return head.prev == head ? null : head.prev;
+
+        }
+
+        /**
+         * Retrieves the amount of nodes in the list.
+         *
+         * @return The size of the list.
+         */
+        int size() {
+
+            return size;
+
+        }
 
         /**
-         * A proper node in the linked list. Stores not only a value, but also the nodes
-         * that come before or after itself.
-         * <p>
-         * Unlike the general node, allows <tt>null</tt> values, to allow the use of
-         * dummy nodes.
-         * 
-         * @version 1.0
-         * @author ThiagoTGM
-         * @since 2018-08-09
+         * Retrieves the total weight of the nodes in the list.
+         *
+         * @return The weight of the list.
          */
-        protected class ListNode extends Node {
+        long weight() {
 
-            private ListNode prev;
-            private ListNode next;
+            return weight;
 
-            /**
-             * Constructs a node with no value, and that has no next or previous nodes.
-             */
-            public ListNode() {
+        }
+
+        /**
+         * Changes the weight of a node.
+         *
+         * @param node
+         *            The node. Must be in this list.
+         * @param newWeight
+         *            The new weight of the node.
+         */
+        void reweigh( Node<K, V> node, int newWeight ) {
 
-                this( null, null, null );
+            weight += newWeight - node.weight;
+            node.weight = newWeight;
 
-            }
+        }
+
+    }
+
+    /**
+     * Implementation of an eviction policy. Keeps track of the nodes that are
+     * currently in the cache and chooses which ones to evict.
+     * <p>
+     * Not thread-safe. Must only be used while holding the eviction lock.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-16
+     * @param <K>
+     *            Type of key.
+     * @param <V>
+     *            Type of value.
+     */
+    private static abstract class Eviction<K, V> {
+
+        /**
+         * Starts tracking a node that was just added to the cache.
+         *
+         * @param node
+         *            The node.
+         */
+        abstract void add( Node<K, V> node );
+
+        /**
+         * Records an access to a tracked node.
+         *
+         * @param node
+         *            The node.
+         */
+        abstract void access( Node<K, V> node );
+
+        /**
+         * Stops tracking a node that was removed from the cache. Does nothing if the
+         * node is not being tracked.
+         *
+         * @param node
+         *            The node.
+         */
+        abstract void remove( Node<K, V> node );
+
+        /**
+         * Changes the weight of a tracked node.
+         *
+         * @param node
+         *            The node.
+         * @param weight
+         *            The new weight of the node.
+         */
+        abstract void reweigh( Node<K, V> node, int weight );
+
+        /**
+         * Chooses a node to be evicted, and stops tracking it. Must only be called
+         * if there is at least one node being tracked.
+         *
+         * @return The node to evict.
+         */
+        abstract Node<K, V> evict();
+
+        /**
+         * Retrieves the total weight of the nodes being tracked.
+         *
+         * @return The total weight.
+         */
+        abstract long weight();
+
+        /**
+         * Adds the tracked nodes to the given list, from the one that is the least
+         * likely to be evicted to the one that is the most likely, until the list
+         * reaches a size limit.
+         *
+         * @param nodes
+         *            The list to add to.
+         * @param limit
+         *            The maximum size of the list.
+         */
+        abstract void hottest( List<Node<K, V>> nodes, int limit );
+
+    }
+
+    /**
+     * Least recently used eviction.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-16
+     * @param <K>
+     *            Type of key.
+     * @param <V>
+     *            Type of value.
+     */
+    private static final class LruEviction<K, V> extends Eviction<K, V> {
+
+        private final AccessOrderDeque<K, V> deque = new AccessOrderDeque<>();
+
+        @Override
+        void add( Node<K, V> node ) {
+
+            deque.linkFirst( node );
 
-            /**
-             * Constructs a node that holds the given value, and that inserts itself between
-             * the given two nodes (after construction, the new node will be the node
-             * between the given two nodes.
-             * <p>
-             * Any of the arguments may be <tt>null</tt>.
-             * 
-             * @param value
-             *            The value to be stored.
-             * @param prev
-             *            The previous node.
-             * @param next
-             *            The next node.
-             */
-            public ListNode( V value, ListNode prev, ListNode next ) {
+        }
+
+        @Override
+        void access( Node<K, V> node ) {
 
-                super( value );
+            deque.moveToFront( node );
+
+        }
 
-                place( prev, next );
+        @Override
+        void remove( Node<K, V> node ) {
 
+            if ( node.next != null ) { // Still linked.
+                deque.unlink( node );
             }
 
-            /**
-             * Retrieves the node that comes before this one.
-             * 
-             * @return The node before this in the list.
-             */
-            public ListNode getPrevious() {
+        }
+
+        @Override
+        void reweigh( Node<K, V> node, int weight ) {
+
+            deque.reweigh( node, weight );
+
+        }
+
+        @Override
+        Node<K, V> evict() {
+
+            Node<K, V> victim = deque.last();
+            deque.unlink( victim );
+            return victim;
+
+        }
+
+        @Override
+        long weight() {
+
+            return deque.weight();
+
+        }
+
+        @Override
+        void hottest( List<Node<K, V>> nodes, int limit ) {
+
+            deque.collect( nodes, limit );
+
+        }
+
+    }
+
+    /**
+     * Window TinyLFU eviction. See {@link Policy#W_TINY_LFU}.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-16
+     * @param <K>
+     *            Type of key.
+     * @param <V>
+     *            Type of value.
+     */
+    private static final class WindowTinyLfuEviction<K, V> extends Eviction<K, V> {
+
+        private static final int WINDOW = 1;
+        private static final int PROBATION = 2;
+        private static final int PROTECTED = 3;
+
+        private final AccessOrderDeque<K, V> window;
+        private final AccessOrderDeque<K, V> probation;
+        private final AccessOrderDeque<K, V> protect;
+        private final long maxWindow;
+        private final long maxMain;
+        private final long maxProtected;
+        private final FrequencySketch sketch;
+
+        /**
+         * Instantiates the policy for a cache with the given maximum weight.
+         *
+         * @param maximumWeight
+         *            The maximum weight of the cache.
+         * @param expectedEntries
+         *            The amount of mappings that the cache is expected to hold.
+         */
+        WindowTinyLfuEviction( long maximumWeight, int expectedEntries ) {
+
+            window = new AccessOrderDeque<>();
+            probation = new AccessOrderDeque<>();
+            protect = new AccessOrderDeque<>();
+            maxWindow = Math.max( 1, maximumWeight / 100 );
+            maxMain = maximumWeight - maxWindow;
+            maxProtected = (long) ( maxMain * 0.8 );
+            sketch = new FrequencySketch( expectedEntries );
+
+        }
+
+        @Override
+        void add( Node<K, V> node ) {
+
+            sketch.increment( node.maskedKey );
+            node.queue = WINDOW;
+            window.linkFirst( node );
+
+        }
+
+        @Override
+        void access( Node<K, V> node ) {
+
+            sketch.increment( node.maskedKey );
+            switch ( node.queue ) {
 
-                return prev;
+                case WINDOW:
+                    window.moveToFront( node );
+                    break;
+
+                case PROBATION: // Accessed again, promote.
+                    probation.unlink( node );
+                    node.queue = PROTECTED;
+                    protect.linkFirst( node );
+                    while ( protect.weight() > maxProtected ) { // Demote LRU protected.
+
+                        Node<K, V> demoted = protect.last();
+                        protect.unlink( demoted );
+                        demoted.queue = PROBATION;
+                        probation.linkFirst( demoted );
+
+                    }
+                    break;
+
+                case PROTECTED:
+                    protect.moveToFront( node );
+                    break;
+
+                default:
+                    break;
 
             }
 
-            /**
-             * Retrieves the node that comes after this one.
-             * 
-             * @return The node after this in the list.
-             */
-            public ListNode getNext() {
+        }
 
-                return next;
+        @Override
+        void remove( Node<K, V> node ) {
 
+            if ( node.next == null ) {
+                return; // Not linked.
             }
+            queueOf( node ).unlink( node );
+
+        }
 
-            /**
-             * Removes this node from its position on the list.
-             * <p>
-             * After this call completes, the nodes that were before and after this will
-             * then point to eachother.
-             */
-            public void remove() {
+        @Override
+        void reweigh( Node<K, V> node, int weight ) {
 
-                if ( prev != null ) {
-                    prev.next = next;
+            queueOf( node ).reweigh( node, weight );
+
+        }
+
+        @Override
+        Node<K, V> evict() {
+
+            while ( window.weight() > maxWindow ) { // Move window overflow to main.
+
+                Node<K, V> candidate = window.last();
+                window.unlink( candidate );
+                if ( ( probation.weight() + protect.weight() + candidate.weight ) <= maxMain ) {
+                    candidate.queue = PROBATION; // Main has room.
+                    probation.linkFirst( candidate );
+                    continue;
                 }
-                if ( next != null ) {
-                    next.prev = prev;
+
+                Node<K, V> victim = probation.size() > 0 ? probation.last() : protect.last();
+                if ( ( victim != null )
+                        && ( sketch.frequency( candidate.maskedKey ) > sketch.frequency( victim.maskedKey ) ) ) {
+                    queueOf( victim ).unlink( victim ); // Candidate is admitted.
+                    candidate.queue = PROBATION;
+                    probation.linkFirst( candidate );
+                    return victim;
+                } else {
+                    return candidate; // Candidate is rejected.
                 }
 
-                prev = null;
-                next = null;
+            }
+
+            /* Window is within bounds, evict from the main area */
+            AccessOrderDeque<K, V> queue = probation.size() > 0 ? probation
+                    : protect.size() > 0 ? protect : window;
+            Node<K, V> victim = queue.last();
+            queue.unlink( victim );
+            return victim;
+
+        }
+
+        @Override
+        long weight() {
+
+            return window.weight() + probation.weight() + protect.weight();
+
+        }
+
+        @Override
+        void hottest( List<Node<K, V>> nodes, int limit ) {
+
+            protect.collect( nodes, limit ); // Accessed more than once.
+            probation.collect( nodes, limit );
+            window.collect( nodes, limit );
+
+        }
+
+        /**
+         * Retrieves the list that a node is in.
+         *
+         * @param node
+         *            The node.
+         * @return The list that contains the node.
+         */
+        private AccessOrderDeque<K, V> queueOf( Node<K, V> node ) {
+
+            switch ( node.queue ) {
+
+                case WINDOW:
+                    return window;
+
+                case PROBATION:
+                    return probation;
+
+                default:
+                    return protect;
 
             }
 
-            /**
-             * Places this node between the given nodes.
-             * 
-             * @param prev
-             *            The node that will come before.
-             * @param next
-             *            The node that will come after.
-             */
-            protected void place( ListNode prev, ListNode next ) {
+        }
+
+    }
 
-                if ( prev != null ) {
-                    prev.next = this;
-                }
-                if ( next != null ) {
-                    next.prev = this;
+    /**
+     * Probabilistic multiset that estimates how often each key was accessed, in
+     * a fixed amount of memory. Uses a count-min sketch with 4-bit counters (so
+     * frequencies saturate at 15). The counters of all keys are halved
+     * periodically, so that the estimates reflect recent history.
+     * <p>
+     * Not thread-safe. Must only be used while holding the eviction lock.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-16
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+                0xcbf29ce484222325L };
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int additions;
+
+        /**
+         * Instantiates a sketch for a cache with the given capacity.
+         *
+         * @param capacity
+         *            The capacity of the cache.
+         */
+        FrequencySketch( int capacity ) {
+
+            int size = ceilingPowerOfTwo( Math.min( capacity, 1 << 30 ) );
+            table = new long[size];
+            tableMask = size - 1;
+            sampleSize = ( capacity > ( Integer.MAX_VALUE / 10 ) ) ? Integer.MAX_VALUE : 10 * capacity;
+            additions = 0;
+
+        }
+
+        /**
+         * Calculates the index of the counter of a hash for the given seed.
+         *
+         * @param hash
+         *            The hash of the key.
+         * @param i
+         *            The seed to use (0 to 3).
+         * @return The index of the counter in the table.
+         */
+        private int indexOf( int hash, int i ) {
+
+            long h = ( hash + SEEDS[i] ) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & tableMask;
+
+        }
+
+        /**
+         * Spreads the bits of the hash code of a key.
+         *
+         * @param key
+         *            The key.
+         * @return The spread hash.
+         */
+        private static int spread( Object key ) {
+
+            int x = key.hashCode();
+            x = ( ( x >>> 16 ) ^ x ) * 0x45d9f3b;
+            x = ( ( x >>> 16 ) ^ x ) * 0x45d9f3b;
+            return ( x >>> 16 ) ^ x;
+
+        }
+
+        /**
+         * Estimates how often the given key was accessed.
+         *
+         * @param key
+         *            The key.
+         * @return The estimated frequency, from 0 to 15.
+         */
+        int frequency( Object key ) {
+
+            int hash = spread( key );
+            int start = ( hash & 3 ) << 2; // Which of the 4 counter groups to use.
+            int frequency = Integer.MAX_VALUE;
+            for ( int i = 0; i < 4; i++ ) {
+
+                int index = indexOf( hash, i );
+                int offset = ( start + i ) << 2;
+                int count = (int) ( ( table[index] >>> offset ) & 0xfL );
+                frequency = Math.min( frequency, count );
+
+            }
+            return frequency;
+
+        }
+
+        /**
+         * Records an access to the given key.
+         *
+         * @param key
+         *            The key.
+         */
+        void increment( Object key ) {
+
+            int hash = spread( key );
+            int start = ( hash & 3 ) << 2;
+            boolean added = false;
+            for ( int i = 0; i < 4; i++ ) {
+
+                int index = indexOf( hash, i );
+                int offset = ( start + i ) << 2;
+                long mask = 0xfL << offset;
+                if ( ( table[index] & mask ) != mask ) { // Not saturated.
+                    table[index] += 1L << offset;
+                    added = true;
                 }
 
-                this.prev = prev;
-                this.next = next;
+            }
+
+            if ( added && ( ++additions >= sampleSize ) ) {
+                reset();
+            }
+
+        }
+
+        /**
+         * Halves all the counters.
+         */
+        private void reset() {
+
+            for ( int i = 0; i < table.length; i++ ) {
+
+                table[i] = ( table[i] >>> 1 ) & RESET_MASK;
+
+            }
+            additions /= 2;
+
+        }
+
+    }
+
+    /* Internal structures */
+
+    /**
+     * A cached mapping, that is also a node in one of the lists of the eviction
+     * policy.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-16
+     * @param <K>
+     *            Type of key.
+     * @param <V>
+     *            Type of value.
+     */
+    private static final class Node<K, V> {
+
+        final Object maskedKey;
+        final K key;
+        volatile V value;
+        volatile long writeTime;
+        volatile long accessTime;
+        volatile long refreshTime; // When a refresh was last triggered.
+        /**
+         * Whether the mapping was already removed from the table. Once set, the node
+         * should never be (re)inserted in the LRU list.
+         */
+        volatile boolean retired;
+
+        Node<K, V> prev; // Guarded by evictionLock.
+        Node<K, V> next; // Guarded by evictionLock.
+        int queue; // Guarded by evictionLock. Policy-specific.
+        int weight; // Guarded by evictionLock once the node is published.
+        long evictionStamp; // Set under evictionLock when evicted.
+
+        /**
+         * Instantiates a node.
+         *
+         * @param maskedKey
+         *            The key used in the backing table.
+         * @param key
+         *            The actual key.
+         * @param value
+         *            The initial value.
+         */
+        Node( Object maskedKey, K key, V value ) {
+
+            this.maskedKey = maskedKey;
+            this.key = key;
+            this.value = value;
+            this.retired = false;
+
+        }
+
+    }
+
+    /**
+     * Lossy bounded buffer that records accessed nodes. Any amount of threads may
+     * add to it concurrently, but only one thread (the one holding the eviction
+     * lock) may remove from it at a time.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-16
+     * @param <K>
+     *            Type of key.
+     * @param <V>
+     *            Type of value.
+     */
+    private static final class ReadBuffer<K, V> {
+
+        private final AtomicReferenceArray<Node<K, V>> buffer;
+        private final AtomicLong writeCount;
+        private volatile long readCount;
+
+        /**
+         * Instantiates an empty buffer.
+         */
+        ReadBuffer() {
+
+            buffer = new AtomicReferenceArray<>( BUFFER_SIZE );
+            writeCount = new AtomicLong();
+            readCount = 0;
+
+        }
+
+        /**
+         * Records a node, if there is space.
+         *
+         * @param node
+         *            The node to record.
+         * @return The amount of pending elements in the buffer.
+         */
+        int offer( Node<K, V> node ) {
 
+            long write = writeCount.get();
+            long pending = write - readCount;
+            if ( pending >= BUFFER_SIZE ) {
+                return BUFFER_SIZE; // Full, drop the read.
             }
+            if ( writeCount.compareAndSet( write, write + 1 ) ) {
+                buffer.lazySet( (int) write & ( BUFFER_SIZE - 1 ), node );
+                return (int) pending + 1;
+            } else {
+                return (int) pending; // Lost race with another thread, drop the read.
+            }
+
+        }
 
-            /**
-             * Removes this node from its current position, and places it back in the
-             * position between the given nodes.
-             * 
-             * @param prev
-             *            The node that will come before.
-             * @param next
-             *            The node that will come after.
-             */
-            public void move( ListNode prev, ListNode next ) {
+        /**
+         * Retrieves and removes the oldest recorded node.
+         * <p>
+         * Must only be called while holding the eviction lock.
+         *
+         * @return The node, or <tt>null</tt> if there are no nodes available.
+         */
+        Node<K, V> poll() {
 
-                remove();
-                place( prev, next );
+            long read = readCount;
+            if ( read == writeCount.get() ) {
+                return null; // Empty.
+            }
 
+            int index = (int) read & ( BUFFER_SIZE - 1 );
+            Node<K, V> node = buffer.get( index );
+            if ( node == null ) {
+                return null; // Slot claimed but not written yet.
             }
+            buffer.lazySet( index, null );
+            readCount = read + 1;
+            return node;
 
         }
 
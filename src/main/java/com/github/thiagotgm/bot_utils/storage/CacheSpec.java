@@ -0,0 +1,620 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Specification of how the cache of a tree or map obtained from a
+ * {@link Database} should be configured.
+ * <p>
+ * Each property may be left unspecified, in which case the value configured
+ * for the whole database is used. A spec can also disable caching entirely,
+ * which is useful for structures that are rarely read or that are changed
+ * outside of the program.
+ * <p>
+ * Specs are immutable. The methods that set a property return a new spec,
+ * so they can be chained starting from {@link #DEFAULT}:
+ *
+ * <pre>
+ * CacheSpec.DEFAULT.maximumSize( 50000 ).policy( Cache.Policy.W_TINY_LFU )
+ * </pre>
+ *
+ * A spec can also be {@link #parse(String) parsed} from a String of
+ * comma-separated <tt>property=value</tt> pairs, such as
+ * <tt>maximumSize=50000,policy=W-TinyLFU,expireAfterWrite=10m</tt>, or the
+ * String <tt>{@value #DISABLED_STRING}</tt>. The {@link #toString() String
+ * form} of a spec is always in that format.
+ * <p>
+ * A spec may also enable {@link #writeBehind(long, TimeUnit) write-behind},
+ * which buffers writes to the tree or map instead of writing them to the
+ * database immediately. Unlike the other properties, it does not enable caching
+ * if it was disabled.
+ *
+ * @version 1.1
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public final class CacheSpec {
+
+    /**
+     * Value of a numeric property that is not specified.
+     */
+    public static final long UNSET = -1;
+
+    /**
+     * String form of the spec that disables caching.
+     */
+    public static final String DISABLED_STRING = "disabled";
+
+    private static final String MAXIMUM_SIZE = "maximumSize";
+    private static final String POLICY = "policy";
+    private static final String EXPIRE_AFTER_WRITE = "expireAfterWrite";
+    private static final String EXPIRE_AFTER_ACCESS = "expireAfterAccess";
+    private static final String REFRESH_AFTER_WRITE = "refreshAfterWrite";
+    private static final String WRITE_BEHIND = "writeBehind";
+
+    /**
+     * Spec that does not specify any property, so the database configuration is
+     * used for all of them.
+     */
+    public static final CacheSpec DEFAULT = new CacheSpec( true, UNSET, null, UNSET, UNSET, UNSET, UNSET );
+
+    /**
+     * Spec that disables caching.
+     */
+    public static final CacheSpec DISABLED = new CacheSpec( false, UNSET, null, UNSET, UNSET, UNSET, UNSET );
+
+    private final boolean enabled;
+    private final long maximumSize;
+    private final Cache.Policy policy;
+    private final long expireAfterWrite;
+    private final long expireAfterAccess;
+    private final long refreshAfterWrite;
+    private final long writeBehind;
+
+    /**
+     * Instantiates a spec.
+     *
+     * @param enabled
+     *            Whether caching is enabled.
+     * @param maximumSize
+     *            The maximum amount of cached mappings.
+     * @param policy
+     *            The eviction policy.
+     * @param expireAfterWrite
+     *            The expire after write time, in nanoseconds.
+     * @param expireAfterAccess
+     *            The expire after access time, in nanoseconds.
+     * @param refreshAfterWrite
+     *            The refresh after write time, in nanoseconds.
+     * @param writeBehind
+     *            The write-behind delay, in nanoseconds.
+     */
+    private CacheSpec( boolean enabled, long maximumSize, Cache.Policy policy, long expireAfterWrite,
+            long expireAfterAccess, long refreshAfterWrite, long writeBehind ) {
+
+        this.enabled = enabled;
+        this.maximumSize = maximumSize;
+        this.policy = policy;
+        this.expireAfterWrite = expireAfterWrite;
+        this.expireAfterAccess = expireAfterAccess;
+        this.refreshAfterWrite = refreshAfterWrite;
+        this.writeBehind = writeBehind;
+
+    }
+
+    /**
+     * Checks that the given time is valid, and converts it to nanoseconds.
+     *
+     * @param duration
+     *            The time.
+     * @param unit
+     *            The unit of the time.
+     * @return The time in nanoseconds.
+     * @throws IllegalArgumentException
+     *             if the time is negative.
+     * @throws NullPointerException
+     *             if the unit is <tt>null</tt>.
+     */
+    private static long toNanos( long duration, TimeUnit unit )
+            throws IllegalArgumentException, NullPointerException {
+
+        if ( duration < 0 ) {
+            throw new IllegalArgumentException( "Time cannot be negative." );
+        }
+        return Objects.requireNonNull( unit, "Unit cannot be null." ).toNanos( duration );
+
+    }
+
+    /**
+     * Creates a copy of this spec with caching enabled and the given maximum
+     * amount of cached mappings. The cache will not be part of the memory budget
+     * of the database, if there is one.
+     *
+     * @param maximumSize
+     *            The maximum amount of mappings.
+     * @return The new spec.
+     * @throws IllegalArgumentException
+     *             if the size is not positive.
+     */
+    public CacheSpec maximumSize( long maximumSize ) throws IllegalArgumentException {
+
+        if ( maximumSize <= 0 ) {
+            throw new IllegalArgumentException( "Maximum size must be positive." );
+        }
+        return new CacheSpec( true, maximumSize, policy, expireAfterWrite, expireAfterAccess, refreshAfterWrite,
+                writeBehind );
+
+    }
+
+    /**
+     * Creates a copy of this spec with caching enabled and the given eviction
+     * policy.
+     *
+     * @param policy
+     *            The policy.
+     * @return The new spec.
+     * @throws NullPointerException
+     *             if the policy is <tt>null</tt>.
+     */
+    public CacheSpec policy( Cache.Policy policy ) throws NullPointerException {
+
+        return new CacheSpec( true, maximumSize, Objects.requireNonNull( policy, "Policy cannot be null." ),
+                expireAfterWrite, expireAfterAccess, refreshAfterWrite, writeBehind );
+
+    }
+
+    /**
+     * Creates a copy of this spec with caching enabled and the given expire
+     * after write time.
+     *
+     * @param duration
+     *            How long a mapping stays cached after it was last written. If 0,
+     *            mappings do not expire based on write time.
+     * @param unit
+     *            The unit of the time.
+     * @return The new spec.
+     * @throws IllegalArgumentException
+     *             if the time is negative.
+     * @throws NullPointerException
+     *             if the unit is <tt>null</tt>.
+     */
+    public CacheSpec expireAfterWrite( long duration, TimeUnit unit )
+            throws IllegalArgumentException, NullPointerException {
+
+        return new CacheSpec( true, maximumSize, policy, toNanos( duration, unit ), expireAfterAccess,
+                refreshAfterWrite, writeBehind );
+
+    }
+
+    /**
+     * Creates a copy of this spec with caching enabled and the given expire
+     * after access time.
+     *
+     * @param duration
+     *            How long a mapping stays cached after it was last used. If 0,
+     *            mappings do not expire based on access time.
+     * @param unit
+     *            The unit of the time.
+     * @return The new spec.
+     * @throws IllegalArgumentException
+     *             if the time is negative.
+     * @throws NullPointerException
+     *             if the unit is <tt>null</tt>.
+     */
+    public CacheSpec expireAfterAccess( long duration, TimeUnit unit )
+            throws IllegalArgumentException, NullPointerException {
+
+        return new CacheSpec( true, maximumSize, policy, expireAfterWrite, toNanos( duration, unit ),
+                refreshAfterWrite, writeBehind );
+
+    }
+
+    /**
+     * Creates a copy of this spec with caching enabled and the given refresh
+     * after write time.
+     *
+     * @param duration
+     *            How long after a mapping was last written that using it causes
+     *            it to be reloaded in the background. If 0, mappings are never
+     *            reloaded in the background.
+     * @param unit
+     *            The unit of the time.
+     * @return The new spec.
+     * @throws IllegalArgumentException
+     *             if the time is negative.
+     * @throws NullPointerException
+     *             if the unit is <tt>null</tt>.
+     */
+    public CacheSpec refreshAfterWrite( long duration, TimeUnit unit )
+            throws IllegalArgumentException, NullPointerException {
+
+        return new CacheSpec( true, maximumSize, policy, expireAfterWrite, expireAfterAccess,
+                toNanos( duration, unit ), writeBehind );
+
+    }
+
+    /**
+     * Creates a copy of this spec with the given write-behind delay. Whether
+     * caching is enabled is not changed.
+     * <p>
+     * With write-behind, writes (<tt>put</tt> operations) are not immediately
+     * written to the database. Instead, they are kept in a buffer, where repeated
+     * writes to the same key replace each other, and are written to the database
+     * in batches after at most the given delay (or earlier, if the buffer becomes
+     * full or the program is saved or closed). Reads always see the buffered
+     * values. Any operation other than reading or writing a single key (such as
+     * a removal, or getting the size) writes the buffer to the database first.
+     *
+     * @param duration
+     *            The maximum time that a write waits in the buffer. If 0, writes
+     *            are not buffered.
+     * @param unit
+     *            The unit of the time.
+     * @return The new spec.
+     * @throws IllegalArgumentException
+     *             if the time is negative.
+     * @throws NullPointerException
+     *             if the unit is <tt>null</tt>.
+     * @since 2018-09-17
+     */
+    public CacheSpec writeBehind( long duration, TimeUnit unit )
+            throws IllegalArgumentException, NullPointerException {
+
+        return new CacheSpec( enabled, maximumSize, policy, expireAfterWrite, expireAfterAccess, refreshAfterWrite,
+                toNanos( duration, unit ) );
+
+    }
+
+    /**
+     * Creates a spec where the properties that are not specified in this spec are
+     * taken from the given spec.
+     * <p>
+     * If this spec is disabled, only the write-behind delay may be taken from
+     * the given spec. If the given spec is disabled and this spec does not
+     * specify any property, the given spec is returned.
+     *
+     * @param defaults
+     *            The spec to take unspecified properties from.
+     * @return The combined spec.
+     * @throws NullPointerException
+     *             if the given spec is <tt>null</tt>.
+     */
+    public CacheSpec orElse( CacheSpec defaults ) throws NullPointerException {
+
+        Objects.requireNonNull( defaults, "Defaults cannot be null." );
+        if ( this.equals( DEFAULT ) ) {
+            return defaults;
+        }
+        long writeBehind = this.writeBehind != UNSET ? this.writeBehind : defaults.writeBehind;
+        if ( !enabled ) {
+            return writeBehind == this.writeBehind ? this
+                    : new CacheSpec( false, UNSET, null, UNSET, UNSET, UNSET, writeBehind );
+        }
+        return new CacheSpec( true, maximumSize != UNSET ? maximumSize : defaults.maximumSize,
+                policy != null ? policy : defaults.policy,
+                expireAfterWrite != UNSET ? expireAfterWrite : defaults.expireAfterWrite,
+                expireAfterAccess != UNSET ? expireAfterAccess : defaults.expireAfterAccess,
+                refreshAfterWrite != UNSET ? refreshAfterWrite : defaults.refreshAfterWrite, writeBehind );
+
+    }
+
+    /**
+     * Determines whether caching is enabled.
+     *
+     * @return <tt>true</tt> if caching is enabled, <tt>false</tt> if it is
+     *         disabled.
+     */
+    public boolean isEnabled() {
+
+        return enabled;
+
+    }
+
+    /**
+     * Retrieves the maximum amount of cached mappings.
+     *
+     * @return The maximum size, or {@value #UNSET} if not specified.
+     */
+    public long getMaximumSize() {
+
+        return maximumSize;
+
+    }
+
+    /**
+     * Retrieves the eviction policy.
+     *
+     * @return The policy, or <tt>null</tt> if not specified.
+     */
+    public Cache.Policy getPolicy() {
+
+        return policy;
+
+    }
+
+    /**
+     * Retrieves the expire after write time.
+     *
+     * @param unit
+     *            The unit to get the time in.
+     * @return The time, or {@value #UNSET} if not specified.
+     */
+    public long getExpireAfterWrite( TimeUnit unit ) {
+
+        return expireAfterWrite == UNSET ? UNSET : unit.convert( expireAfterWrite, TimeUnit.NANOSECONDS );
+
+    }
+
+    /**
+     * Retrieves the expire after access time.
+     *
+     * @param unit
+     *            The unit to get the time in.
+     * @return The time, or {@value #UNSET} if not specified.
+     */
+    public long getExpireAfterAccess( TimeUnit unit ) {
+
+        return expireAfterAccess == UNSET ? UNSET : unit.convert( expireAfterAccess, TimeUnit.NANOSECONDS );
+
+    }
+
+    /**
+     * Retrieves the refresh after write time.
+     *
+     * @param unit
+     *            The unit to get the time in.
+     * @return The time, or {@value #UNSET} if not specified.
+     */
+    public long getRefreshAfterWrite( TimeUnit unit ) {
+
+        return refreshAfterWrite == UNSET ? UNSET : unit.convert( refreshAfterWrite, TimeUnit.NANOSECONDS );
+
+    }
+
+    /**
+     * Retrieves the write-behind delay.
+     *
+     * @param unit
+     *            The unit to get the time in.
+     * @return The delay, or {@value #UNSET} if not specified.
+     * @since 2018-09-17
+     */
+    public long getWriteBehind( TimeUnit unit ) {
+
+        return writeBehind == UNSET ? UNSET : unit.convert( writeBehind, TimeUnit.NANOSECONDS );
+
+    }
+
+    /**
+     * Parses a time with an optional unit suffix (<tt>d</tt>, <tt>h</tt>,
+     * <tt>m</tt>, <tt>s</tt>, <tt>ms</tt>). Times without a suffix are in
+     * seconds.
+     *
+     * @param time
+     *            The time.
+     * @return The time in nanoseconds.
+     * @throws IllegalArgumentException
+     *             if the time is not valid.
+     */
+    private static long parseTime( String time ) throws IllegalArgumentException {
+
+        TimeUnit unit = TimeUnit.SECONDS;
+        String number = time;
+        if ( time.endsWith( "ms" ) ) {
+            unit = TimeUnit.MILLISECONDS;
+            number = time.substring( 0, time.length() - 2 );
+        } else if ( time.endsWith( "d" ) ) {
+            unit = TimeUnit.DAYS;
+            number = time.substring( 0, time.length() - 1 );
+        } else if ( time.endsWith( "h" ) ) {
+            unit = TimeUnit.HOURS;
+            number = time.substring( 0, time.length() - 1 );
+        } else if ( time.endsWith( "m" ) ) {
+            unit = TimeUnit.MINUTES;
+            number = time.substring( 0, time.length() - 1 );
+        } else if ( time.endsWith( "s" ) ) {
+            number = time.substring( 0, time.length() - 1 );
+        }
+        try {
+            return toNanos( Long.parseLong( number.trim() ), unit );
+        } catch ( NumberFormatException e ) {
+            throw new IllegalArgumentException( "Invalid time: " + time, e );
+        }
+
+    }
+
+    /**
+     * Formats a time in the largest unit that represents it exactly.
+     *
+     * @param nanos
+     *            The time, in nanoseconds.
+     * @return The formatted time.
+     */
+    private static String formatTime( long nanos ) {
+
+        if ( nanos == 0 ) {
+            return "0";
+        }
+        if ( nanos % TimeUnit.DAYS.toNanos( 1 ) == 0 ) {
+            return TimeUnit.NANOSECONDS.toDays( nanos ) + "d";
+        }
+        if ( nanos % TimeUnit.HOURS.toNanos( 1 ) == 0 ) {
+            return TimeUnit.NANOSECONDS.toHours( nanos ) + "h";
+        }
+        if ( nanos % TimeUnit.MINUTES.toNanos( 1 ) == 0 ) {
+            return TimeUnit.NANOSECONDS.toMinutes( nanos ) + "m";
+        }
+        if ( nanos % TimeUnit.SECONDS.toNanos( 1 ) == 0 ) {
+            return TimeUnit.NANOSECONDS.toSeconds( nanos ) + "s";
+        }
+        return TimeUnit.NANOSECONDS.toMillis( nanos ) + "ms";
+
+    }
+
+    /**
+     * Parses a spec from its String form.
+     * <p>
+     * The String should be a list of comma-separated <tt>property=value</tt>
+     * pairs, where the properties are <tt>maximumSize</tt>, <tt>policy</tt>,
+     * <tt>expireAfterWrite</tt>, <tt>expireAfterAccess</tt>,
+     * <tt>refreshAfterWrite</tt>, and <tt>writeBehind</tt>. Times may have a unit
+     * suffix (<tt>d</tt>, <tt>h</tt>, <tt>m</tt>, <tt>s</tt>, or <tt>ms</tt>), and
+     * are in seconds if they do not. Properties that are not present are left
+     * unspecified, so an empty String gives {@link #DEFAULT}.
+     * <p>
+     * To disable caching, the first element of the list should be
+     * <tt>{@value #DISABLED_STRING}</tt>, and only <tt>writeBehind</tt> may
+     * follow it.
+     *
+     * @param spec
+     *            The String form of the spec.
+     * @return The parsed spec.
+     * @throws IllegalArgumentException
+     *             if the String is not a valid spec.
+     * @throws NullPointerException
+     *             if the String is <tt>null</tt>.
+     */
+    public static CacheSpec parse( String spec ) throws IllegalArgumentException, NullPointerException {
+
+        String trimmed = Objects.requireNonNull( spec, "Spec cannot be null." ).trim();
+        CacheSpec result = DEFAULT;
+        if ( trimmed.isEmpty() ) {
+            return result;
+        }
+        String[] pairs = trimmed.split( "," );
+        for ( int i = 0; i < pairs.length; i++ ) {
+
+            String pair = pairs[i];
+            if ( ( i == 0 ) && pair.trim().equalsIgnoreCase( DISABLED_STRING ) ) {
+                result = DISABLED;
+                continue;
+            }
+            int separator = pair.indexOf( '=' );
+            if ( separator < 0 ) {
+                throw new IllegalArgumentException( "Expected property=value, found: " + pair );
+            }
+            String property = pair.substring( 0, separator ).trim();
+            String value = pair.substring( separator + 1 ).trim();
+            if ( !result.enabled && !property.equals( WRITE_BEHIND ) ) {
+                throw new IllegalArgumentException( "Only writeBehind can be used with " + DISABLED_STRING );
+            }
+            switch ( property ) {
+
+                case MAXIMUM_SIZE:
+                    try {
+                        result = result.maximumSize( Long.parseLong( value ) );
+                    } catch ( NumberFormatException e ) {
+                        throw new IllegalArgumentException( "Invalid maximum size: " + value, e );
+                    }
+                    break;
+
+                case POLICY:
+                    result = result.policy( Cache.Policy.parse( value ) );
+                    break;
+
+                case EXPIRE_AFTER_WRITE:
+                    result = result.expireAfterWrite( parseTime( value ), TimeUnit.NANOSECONDS );
+                    break;
+
+                case EXPIRE_AFTER_ACCESS:
+                    result = result.expireAfterAccess( parseTime( value ), TimeUnit.NANOSECONDS );
+                    break;
+
+                case REFRESH_AFTER_WRITE:
+                    result = result.refreshAfterWrite( parseTime( value ), TimeUnit.NANOSECONDS );
+                    break;
+
+                case WRITE_BEHIND:
+                    result = result.writeBehind( parseTime( value ), TimeUnit.NANOSECONDS );
+                    break;
+
+                default:
+                    throw new IllegalArgumentException( "Unknown property: " + property );
+
+            }
+
+        }
+        return result;
+
+    }
+
+    @Override
+    public boolean equals( Object obj ) {
+
+        if ( this == obj ) {
+            return true;
+        }
+        if ( !( obj instanceof CacheSpec ) ) {
+            return false;
+        }
+        CacheSpec spec = (CacheSpec) obj;
+        return ( enabled == spec.enabled ) && ( maximumSize == spec.maximumSize ) && ( policy == spec.policy )
+                && ( expireAfterWrite == spec.expireAfterWrite ) && ( expireAfterAccess == spec.expireAfterAccess )
+                && ( refreshAfterWrite == spec.refreshAfterWrite ) && ( writeBehind == spec.writeBehind );
+
+    }
+
+    @Override
+    public int hashCode() {
+
+        return Objects.hash( enabled, maximumSize, policy, expireAfterWrite, expireAfterAccess,
+                refreshAfterWrite, writeBehind );
+
+    }
+
+    /**
+     * Retrieves the String form of this spec, that can be {@link #parse(String)
+     * parsed} back into an equal spec.
+     *
+     * @return The String form.
+     */
+    @Override
+    public String toString() {
+
+        List<String> properties = new ArrayList<>();
+        if ( !enabled ) {
+            properties.add( DISABLED_STRING );
+        }
+        if ( maximumSize != UNSET ) {
+            properties.add( MAXIMUM_SIZE + "=" + maximumSize );
+        }
+        if ( policy != null ) {
+            properties.add( POLICY + "=" + policy );
+        }
+        if ( expireAfterWrite != UNSET ) {
+            properties.add( EXPIRE_AFTER_WRITE + "=" + formatTime( expireAfterWrite ) );
+        }
+        if ( expireAfterAccess != UNSET ) {
+            properties.add( EXPIRE_AFTER_ACCESS + "=" + formatTime( expireAfterAccess ) );
+        }
+        if ( refreshAfterWrite != UNSET ) {
+            properties.add( REFRESH_AFTER_WRITE + "=" + formatTime( refreshAfterWrite ) );
+        }
+        if ( writeBehind != UNSET ) {
+            properties.add( WRITE_BEHIND + "=" + formatTime( writeBehind ) );
+        }
+        return String.join( ",", properties );
+
+    }
+
+}
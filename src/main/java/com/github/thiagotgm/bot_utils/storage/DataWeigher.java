@@ -0,0 +1,196 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.Map;
+
+/**
+ * Weigher that estimates the memory retained by a cached mapping, in bytes,
+ * based on the size of the {@link Data} that the key and the value are
+ * translated to.
+ * <p>
+ * The estimate assumes a 64-bit JVM with compressed references, and that the
+ * cached objects take roughly the same memory as their Data representation. It
+ * is only meant to make caches with values of very different sizes comparable,
+ * not to be exact.
+ * <p>
+ * If the key or value cannot be translated, it is assumed to take
+ * {@value #DEFAULT_WEIGHT} bytes.
+ * <p>
+ * The same estimates are used as the key and value sizes of
+ * {@link OperationTracer traced} operations.
+ *
+ * @version 1.1
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ * @param <K>
+ *            The type of keys.
+ * @param <V>
+ *            The type of values.
+ */
+public class DataWeigher<K, V> implements Cache.Weigher<K, V>, OperationTracer.Sizer {
+
+	/**
+	 * Estimated weight of an object that could not be translated.
+	 */
+	public static final int DEFAULT_WEIGHT = 64;
+
+	/**
+	 * Estimated overhead of each cache mapping (the entry in the hash table and
+	 * the eviction policy node).
+	 */
+	private static final int ENTRY_OVERHEAD = 96;
+	private static final int DATA_OVERHEAD = 56; // Header and fields of a Data instance.
+	private static final int STRING_OVERHEAD = 40; // String header, fields, and array header.
+	private static final int LIST_OVERHEAD = 40; // List header, fields, and array header.
+	private static final int LIST_ELEMENT = 4; // Reference in the array.
+	private static final int MAP_OVERHEAD = 64; // Map header, fields, and table header.
+	private static final int MAP_ELEMENT = 40; // Hash table entry and table slot.
+
+	private final Translator<K> keyTranslator;
+	private final Translator<V> valueTranslator;
+
+	/**
+	 * Instantiates a weigher that uses the given translators.
+	 *
+	 * @param keyTranslator The translator for keys.
+	 * @param valueTranslator The translator for values.
+	 * @throws NullPointerException if either argument is <tt>null</tt>.
+	 */
+	public DataWeigher( Translator<K> keyTranslator, Translator<V> valueTranslator )
+			throws NullPointerException {
+
+		if ( ( keyTranslator == null ) || ( valueTranslator == null ) ) {
+			throw new NullPointerException( "Translators cannot be null." );
+		}
+
+		this.keyTranslator = keyTranslator;
+		this.valueTranslator = valueTranslator;
+
+	}
+
+	/**
+	 * Estimates the memory retained by the given String, in bytes.
+	 *
+	 * @param string The string.
+	 * @return The estimated size.
+	 */
+	public static long estimateSize( String string ) {
+
+		return STRING_OVERHEAD + 2L * string.length();
+
+	}
+
+	/**
+	 * Estimates the memory retained by the given Data, in bytes.
+	 *
+	 * @param data The data.
+	 * @return The estimated size.
+	 */
+	public static long estimateSize( Data data ) {
+
+		long size = DATA_OVERHEAD;
+		switch ( data.getType() ) {
+
+			case STRING:
+				size += estimateSize( data.getString() );
+				break;
+
+			case NUMBER:
+				size += estimateSize( data.getNumber() );
+				break;
+
+			case LIST:
+				size += LIST_OVERHEAD;
+				for ( Data element : data.getList() ) {
+
+					size += LIST_ELEMENT + estimateSize( element );
+
+				}
+				break;
+
+			case MAP:
+				size += MAP_OVERHEAD;
+				for ( Map.Entry<String, Data> entry : data.getMap().entrySet() ) {
+
+					size += MAP_ELEMENT + estimateSize( entry.getKey() ) + estimateSize( entry.getValue() );
+
+				}
+				break;
+
+			default: // Boolean and null have no extra content.
+				break;
+
+		}
+		return size;
+
+	}
+
+	/**
+	 * Estimates the memory retained by an object, in bytes.
+	 *
+	 * @param obj The object.
+	 * @param translator The translator for the object.
+	 * @param <T> The type of the object.
+	 * @return The estimated size.
+	 */
+	private static <T> long estimateSize( T obj, Translator<T> translator ) {
+
+		try {
+			return estimateSize( translator.toData( obj ) );
+		} catch ( TranslationException | NullPointerException e ) {
+			return DEFAULT_WEIGHT; // Cannot translate.
+		}
+
+	}
+
+	@Override
+	public int weigh( K key, V value ) {
+
+		long size = ENTRY_OVERHEAD + estimateSize( key, keyTranslator ) + estimateSize( value, valueTranslator );
+		return (int) Math.min( size, Integer.MAX_VALUE );
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws ClassCastException if the key is not of the type of the keys.
+	 */
+	@Override
+	@SuppressWarnings( "unchecked" )
+	public long keySize( Object key ) throws ClassCastException {
+
+		return estimateSize( (K) key, keyTranslator );
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws ClassCastException if the value is not of the type of the values.
+	 */
+	@Override
+	@SuppressWarnings( "unchecked" )
+	public long valueSize( Object value ) throws ClassCastException {
+
+		return estimateSize( (V) value, valueTranslator );
+
+	}
+
+}
@@ -21,12 +21,14 @@ import java.io.Closeable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import com.github.thiagotgm.bot_utils.storage.translate.StringTranslator;
 import com.github.thiagotgm.bot_utils.utils.graph.Graph;
 import com.github.thiagotgm.bot_utils.utils.graph.Graphs;
+import com.github.thiagotgm.bot_utils.utils.graph.HashTree;
 import com.github.thiagotgm.bot_utils.utils.graph.Tree;
 
 /**
@@ -95,16 +97,50 @@ import com.github.thiagotgm.bot_utils.utils.graph.Tree;
  * and {@link Collections#synchronizedMap(Map)}. However, the database itself
  * <b>is</b> thread safe, so loading/closing, retrieving data maps or trees, etc
  * may be done without the need for external synchronization.
+ * <p>
+ * Trees and maps obtained from a database may cache their data. How each one
+ * is cached can be {@link #getDataTree(String, Translator, Translator, CacheSpec)
+ * configured} individually, so that the caches can be sized to the data that is
+ * actually used.
+ * <p>
+ * Trees and maps obtained from a database are also {@link BulkTree bulk trees}
+ * and {@link BulkMap bulk maps}, so the values of several paths or keys can be
+ * retrieved at once (with the ones that are not cached retrieved from the
+ * backend in a single call, if the backend supports it).
+ * <p>
+ * They are also {@link AsyncTree asynchronous trees} and {@link AsyncMap
+ * asynchronous maps}. Values that are cached are returned in an already
+ * completed future, while the others are retrieved without blocking the
+ * calling thread (using the asynchronous API of the backend, if it has one).
+ * Note that the thread-safety restrictions above still apply when calling the
+ * asynchronous methods.
  * 
- * @version 1.0
+ * @version 1.4
  * @author ThiagoTGM
  * @since 2018-07-16
  */
 public interface Database extends Closeable {
 
+    /**
+     * Prefix of the names of the settings that configure the cache of a specific
+     * tree or map. The full name of the setting is the prefix followed by the
+     * name of the tree or map, and the value is the String form of a
+     * {@link CacheSpec}.
+     */
+    String CACHE_SPEC_SETTING_PREFIX = "Cache spec: ";
+
+    /**
+     * Amount of mappings written at once when {@link #copyData(Database) copying}
+     * the data of another database.
+     */
+    int COPY_BATCH_SIZE = 1000;
+
     /**
      * Obtains a data tree backed by this database that maps object paths to
      * objects.
+     * <p>
+     * Same as {@link #getDataTree(String, Translator, Translator, CacheSpec)}
+     * with the {@link CacheSpec#DEFAULT default spec}.
      * 
      * @param treeName
      *            The name of the tree.
@@ -129,11 +165,60 @@ public interface Database extends Closeable {
      * @throws DatabaseException
      *             if an error occurred while obtaining the tree.
      */
-    <K, V> Tree<K, V> getDataTree( String treeName, Translator<K> keyTranslator, Translator<V> valueTranslator )
+    default <K, V> Tree<K, V> getDataTree( String treeName, Translator<K> keyTranslator,
+            Translator<V> valueTranslator )
+            throws NullPointerException, IllegalStateException, IllegalArgumentException, DatabaseException {
+
+        return getDataTree( treeName, keyTranslator, valueTranslator, CacheSpec.DEFAULT );
+
+    }
+
+    /**
+     * Obtains a data tree backed by this database that maps object paths to
+     * objects, where the cache of the tree is configured by the given spec.
+     * <p>
+     * The spec is only used if the tree does not exist yet. If there is a
+     * setting named {@value #CACHE_SPEC_SETTING_PREFIX} followed by the name of
+     * the tree, the properties specified in that setting take precedence over
+     * the given spec. Properties that neither specify are taken from the
+     * configuration of the database.
+     * 
+     * @param treeName
+     *            The name of the tree.
+     * @param keyTranslator
+     *            The translator to use to convert keys into strings.
+     * @param valueTranslator
+     *            The translator to use to convert values into strings.
+     * @param cacheSpec
+     *            The configuration of the cache of the tree.
+     * @param <K>
+     *            The type of the keys that define connections on the tree.
+     * @param <V>
+     *            The type of the values stored in the tree.
+     * @return The tree.
+     * @throws NullPointerException
+     *             if the tree name, either of the translators, or the spec is
+     *             null.
+     * @throws IllegalStateException
+     *             if the database hasn't been successfully loaded yet or was
+     *             already closed.
+     * @throws IllegalArgumentException
+     *             if a map with the given name already exists, or if a tree with
+     *             the given name already exists and it uses incompatible translator
+     *             types.
+     * @throws DatabaseException
+     *             if an error occurred while obtaining the tree.
+     * @since 2018-09-17
+     */
+    <K, V> Tree<K, V> getDataTree( String treeName, Translator<K> keyTranslator, Translator<V> valueTranslator,
+            CacheSpec cacheSpec )
             throws NullPointerException, IllegalStateException, IllegalArgumentException, DatabaseException;
 
     /**
      * Obtains a data map backed by this database that maps objects to objects.
+     * <p>
+     * Same as {@link #getDataMap(String, Translator, Translator, CacheSpec)}
+     * with the {@link CacheSpec#DEFAULT default spec}.
      * 
      * @param mapName
      *            The name of the map.
@@ -158,7 +243,52 @@ public interface Database extends Closeable {
      * @throws DatabaseException
      *             if an error occurred while obtaining the map.
      */
-    <K, V> Map<K, V> getDataMap( String mapName, Translator<K> keyTranslator, Translator<V> valueTranslator )
+    default <K, V> Map<K, V> getDataMap( String mapName, Translator<K> keyTranslator,
+            Translator<V> valueTranslator )
+            throws NullPointerException, IllegalStateException, IllegalArgumentException, DatabaseException {
+
+        return getDataMap( mapName, keyTranslator, valueTranslator, CacheSpec.DEFAULT );
+
+    }
+
+    /**
+     * Obtains a data map backed by this database that maps objects to objects,
+     * where the cache of the map is configured by the given spec.
+     * <p>
+     * The spec is only used if the map does not exist yet. If there is a setting
+     * named {@value #CACHE_SPEC_SETTING_PREFIX} followed by the name of the map,
+     * the properties specified in that setting take precedence over the given
+     * spec. Properties that neither specify are taken from the configuration of
+     * the database.
+     * 
+     * @param mapName
+     *            The name of the map.
+     * @param keyTranslator
+     *            The translator to use to convert keys into strings.
+     * @param valueTranslator
+     *            The translator to use to convert values into strings.
+     * @param cacheSpec
+     *            The configuration of the cache of the map.
+     * @param <K>
+     *            The type of the keys that define connections on the map.
+     * @param <V>
+     *            The type of the values stored in the map.
+     * @return The map.
+     * @throws NullPointerException
+     *             If the map name, either of the translators, or the spec is null.
+     * @throws IllegalStateException
+     *             if the database hasn't been successfully loaded yet or was
+     *             already closed.
+     * @throws IllegalArgumentException
+     *             if a tree with the given name already exists, or if a map with
+     *             the given name already exists and it uses incompatible translator
+     *             types.
+     * @throws DatabaseException
+     *             if an error occurred while obtaining the map.
+     * @since 2018-09-17
+     */
+    <K, V> Map<K, V> getDataMap( String mapName, Translator<K> keyTranslator, Translator<V> valueTranslator,
+            CacheSpec cacheSpec )
             throws NullPointerException, IllegalStateException, IllegalArgumentException, DatabaseException;
 
     /**
@@ -422,6 +552,10 @@ public interface Database extends Closeable {
      * Any data currently in the backing storage of this Database that matches data
      * in the given database (same tree name with same path, or same map name with
      * same key), that data is overwritten with the data in the given database.
+     * <p>
+     * By default, the data is written in batches of {@value #COPY_BATCH_SIZE}
+     * mappings using {@link Graph#putAll(Graph)} and {@link Map#putAll(Map)}, so
+     * that backends that support bulk writes need fewer requests.
      * 
      * @param db
      *            The database to load into this one.
@@ -457,13 +591,19 @@ public interface Database extends Closeable {
                     @SuppressWarnings( "unchecked" )
                     Tree<Object, Object> newTree = (Tree<Object, Object>) getDataTree( tree.getName(),
                             tree.getKeyTranslator(), tree.getValueTranslator() );
+                    Tree<Object, Object> batch = new HashTree<>();
                     for ( Graph.Entry<?, ?> mapping : tree.getTree().entrySet() ) {
 
                         @SuppressWarnings( "unchecked" )
                         List<Object> path = (List<Object>) mapping.getPath();
-                        newTree.put( path, mapping.getValue() );
+                        batch.put( path, mapping.getValue() );
+                        if ( batch.size() >= COPY_BATCH_SIZE ) { // Write batch.
+                            newTree.putAll( batch );
+                            batch.clear();
+                        }
 
                     }
+                    newTree.putAll( batch );
 
                 }
 
@@ -481,11 +621,17 @@ public interface Database extends Closeable {
                     @SuppressWarnings( "unchecked" )
                     Map<Object, Object> newMap = (Map<Object, Object>) getDataMap( map.getName(),
                             map.getKeyTranslator(), map.getValueTranslator() );
+                    Map<Object, Object> batch = new LinkedHashMap<>();
                     for ( Map.Entry<?, ?> mapping : map.getMap().entrySet() ) {
 
-                        newMap.put( mapping.getKey(), mapping.getValue() );
+                        batch.put( mapping.getKey(), mapping.getValue() );
+                        if ( batch.size() >= COPY_BATCH_SIZE ) { // Write batch.
+                            newMap.putAll( batch );
+                            batch.clear();
+                        }
 
                     }
+                    newMap.putAll( batch );
 
                 }
             } catch ( RuntimeException e ) {
@@ -0,0 +1,299 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.beans.ConstructorProperties;
+import java.util.List;
+
+/**
+ * Management interface of a database, which exposes the state of the caches of
+ * its trees and maps.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ * @see com.github.thiagotgm.bot_utils.utils.Management
+ */
+public interface DatabaseMXBean {
+
+    /**
+     * Retrieves the name of the database, as used in its
+     * {@link DatabaseMetrics metrics}.
+     *
+     * @return The name of the database.
+     */
+    String getName();
+
+    /**
+     * Determines whether the database was closed.
+     *
+     * @return <tt>true</tt> if the database is closed.
+     */
+    boolean isClosed();
+
+    /**
+     * Retrieves the state of the cache of each tree and map obtained from the
+     * database.
+     *
+     * @return The state of the caches.
+     */
+    List<CacheInfo> getCaches();
+
+    /**
+     * Retrieves the memory budget shared by the caches of the database.
+     *
+     * @return The budget, in bytes, or 0 if the caches are bounded by amount of
+     *         entries.
+     */
+    long getCacheBudget();
+
+    /**
+     * Retrieves the (estimated) memory currently used by the caches that share
+     * the memory budget.
+     *
+     * @return The used memory, in bytes, or 0 if there is no budget.
+     */
+    long getCacheBudgetUsed();
+
+    /**
+     * Retrieves the capacity of the off-heap cache tier of the database.
+     *
+     * @return The capacity, in bytes, or 0 if there is no off-heap tier.
+     */
+    long getOffHeapCapacity();
+
+    /**
+     * Retrieves the amount of mappings currently stored in the off-heap cache
+     * tier of the database.
+     *
+     * @return The amount of mappings.
+     */
+    int getOffHeapSize();
+
+    /**
+     * Discards all the mappings cached by the trees and maps of the database
+     * (including the off-heap tier), so that they are fetched from the backend
+     * again. Buffered writes are not affected.
+     *
+     * @throws IllegalStateException
+     *             if the database is not loaded yet or already closed.
+     */
+    void flushCaches() throws IllegalStateException;
+
+    /**
+     * Writes the writes currently buffered by the trees and maps of the database
+     * to the backend.
+     *
+     * @throws IllegalStateException
+     *             if the database is not loaded yet or already closed.
+     */
+    void flushWriteBehind() throws IllegalStateException;
+
+    /**
+     * State of the cache of a tree or map.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    class CacheInfo {
+
+        private final String name;
+        private final boolean tree;
+        private final boolean enabled;
+        private final String policy;
+        private final int size;
+        private final long weightedSize;
+        private final long maximumWeight;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long pendingWrites;
+
+        /**
+         * Instantiates the state of a cache.
+         *
+         * @param name
+         *            The name of the tree or map.
+         * @param tree
+         *            Whether it is a tree (or a map).
+         * @param enabled
+         *            Whether the cache is enabled.
+         * @param policy
+         *            The eviction policy of the cache.
+         * @param size
+         *            The amount of mappings in the cache.
+         * @param weightedSize
+         *            The total weight of the mappings in the cache.
+         * @param maximumWeight
+         *            The maximum total weight of the cache.
+         * @param hits
+         *            The amount of cache hits.
+         * @param misses
+         *            The amount of cache misses.
+         * @param evictions
+         *            The amount of evictions.
+         * @param pendingWrites
+         *            The amount of buffered writes.
+         */
+        @ConstructorProperties( { "name", "tree", "enabled", "policy", "size", "weightedSize", "maximumWeight",
+                "hits", "misses", "evictions", "pendingWrites" } )
+        public CacheInfo( String name, boolean tree, boolean enabled, String policy, int size, long weightedSize,
+                long maximumWeight, long hits, long misses, long evictions, long pendingWrites ) {
+
+            this.name = name;
+            this.tree = tree;
+            this.enabled = enabled;
+            this.policy = policy;
+            this.size = size;
+            this.weightedSize = weightedSize;
+            this.maximumWeight = maximumWeight;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.pendingWrites = pendingWrites;
+
+        }
+
+        /**
+         * Retrieves the name of the tree or map.
+         *
+         * @return The name.
+         */
+        public String getName() {
+
+            return name;
+
+        }
+
+        /**
+         * Determines whether the cache belongs to a tree or a map.
+         *
+         * @return <tt>true</tt> if it belongs to a tree, <tt>false</tt> if it
+         *         belongs to a map.
+         */
+        public boolean isTree() {
+
+            return tree;
+
+        }
+
+        /**
+         * Determines whether the cache is enabled.
+         *
+         * @return <tt>true</tt> if the cache is enabled.
+         */
+        public boolean isEnabled() {
+
+            return enabled;
+
+        }
+
+        /**
+         * Retrieves the eviction policy of the cache.
+         *
+         * @return The name of the policy.
+         */
+        public String getPolicy() {
+
+            return policy;
+
+        }
+
+        /**
+         * Retrieves the amount of mappings in the cache.
+         *
+         * @return The amount of mappings.
+         */
+        public int getSize() {
+
+            return size;
+
+        }
+
+        /**
+         * Retrieves the total weight of the mappings in the cache. If the cache is
+         * bounded by amount of entries, it is the amount of mappings.
+         *
+         * @return The total weight.
+         */
+        public long getWeightedSize() {
+
+            return weightedSize;
+
+        }
+
+        /**
+         * Retrieves the maximum total weight of the cache. If the cache shares the
+         * memory budget of the database, it is the budget.
+         *
+         * @return The maximum weight.
+         */
+        public long getMaximumWeight() {
+
+            return maximumWeight;
+
+        }
+
+        /**
+         * Retrieves the amount of cache hits since the program started.
+         *
+         * @return The amount of hits.
+         */
+        public long getHits() {
+
+            return hits;
+
+        }
+
+        /**
+         * Retrieves the amount of cache misses since the program started.
+         *
+         * @return The amount of misses.
+         */
+        public long getMisses() {
+
+            return misses;
+
+        }
+
+        /**
+         * Retrieves the amount of evictions since the program started.
+         *
+         * @return The amount of evictions.
+         */
+        public long getEvictions() {
+
+            return evictions;
+
+        }
+
+        /**
+         * Retrieves the amount of writes currently buffered by write-behind.
+         *
+         * @return The amount of buffered writes.
+         */
+        public long getPendingWrites() {
+
+            return pendingWrites;
+
+        }
+
+    }
+
+}
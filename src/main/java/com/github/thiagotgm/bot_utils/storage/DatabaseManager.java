@@ -17,28 +17,57 @@
 
 package com.github.thiagotgm.bot_utils.storage;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Supplier;
 
+import javax.management.ObjectName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.thiagotgm.bot_utils.ExitManager;
 import com.github.thiagotgm.bot_utils.Settings;
 import com.github.thiagotgm.bot_utils.storage.Database.DatabaseException;
 import com.github.thiagotgm.bot_utils.storage.Database.Parameter;
+import com.github.thiagotgm.bot_utils.storage.impl.AbstractDatabase;
 import com.github.thiagotgm.bot_utils.storage.impl.DynamoDBDatabase;
 import com.github.thiagotgm.bot_utils.storage.impl.XMLDatabase;
+import com.github.thiagotgm.bot_utils.utils.Management;
 import com.github.thiagotgm.bot_utils.utils.Utils;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
 
 /**
  * Class that manages the bot's database system.
  * <p>
  * The database must be initialized using {@link #startup()} when the bot is
  * initialized, and must be terminated using {@link #shutdown()} before ending
- * the program.
+ * the program. {@link ExitManager#exit()} calls it after running the exit
+ * listeners, but programs that end in any other way must call it themselves:
+ * trees and maps may {@link AbstractDatabase#WRITE_BEHIND_DELAY buffer writes}
+ * that are only guaranteed to be written when the database is closed.
+ * <p>
+ * If {@link AbstractDatabase#WARM_START_KEYS enabled}, the keys that are the
+ * most valuable to keep cached are recorded to a file when the database shuts
+ * down, and are prefetched in the background the next time it starts up.
+ * <p>
+ * The manager and the {@link DatabaseStats database stats} are exposed through
+ * {@link DatabaseManagerMXBean management} {@link DatabaseStatsMXBean interfaces},
+ * and while the database is running, its {@link AbstractDatabase#getMXBean()
+ * management interface} (if any) is also registered.
  * 
- * @version 1.0
+ * @version 1.3
  * @author ThiagoTGM
  * @since 2018-08-08
  */
@@ -48,6 +77,10 @@ public class DatabaseManager {
 	
 	private static final String DB_TYPE_SETTING = "Database Service";
 	private static final String DB_ARGS_SETTING = "Database Args";
+	private static final String WARM_START_FILE_SETTING = "Warm-start file";
+	
+	private static final Gson GSON = new Gson();
+	private static final Type HOT_KEYS_TYPE = new TypeToken<Map<String,List<String>>>() {}.getType();
 	
 	/**
 	 * Types of databases supported by the manager.
@@ -120,9 +153,18 @@ public class DatabaseManager {
 	}
 	
 	private static Database db = null;
+	private static volatile DatabaseType dbType = null;
+	private static ObjectName dbBeanName = null;
 	private static DatabaseType dbChangeType = null;
 	private static List<String> dbChangeArgs = null;
 	
+	static {
+		
+		Management.register( "DatabaseManager", null, new ManagementBean() );
+		Management.register( "DatabaseStats", null, new DatabaseStats.ManagementBean() );
+		
+	}
+	
 	/**
 	 * Requests a change to the database service. The request does not take effect
 	 * immediately, instead it is applied when the program is about to exit (so
@@ -223,8 +265,64 @@ public class DatabaseManager {
 		
 	}
 	
+	/**
+	 * Obtains the path of the file that stores the keys to prefetch on startup.
+	 * 
+	 * @return The path of the file.
+	 */
+	private static Path getWarmStartFile() {
+		
+		return Paths.get( Settings.getStringSetting( WARM_START_FILE_SETTING ) );
+		
+	}
+	
+	/**
+	 * Records the keys that the database should prefetch when it next starts.
+	 * Errors are logged and ignored.
+	 * 
+	 * @param database The database to record the keys of.
+	 */
+	private static void saveHotKeys( AbstractDatabase database ) {
+		
+		Path file = getWarmStartFile();
+		LOG.debug( "Recording hot keys to {}.", file );
+		try ( Writer out = Files.newBufferedWriter( file, StandardCharsets.UTF_8 ) ) {
+			GSON.toJson( database.getHotKeys( AbstractDatabase.WARM_START_KEYS ), HOT_KEYS_TYPE, out );
+		} catch ( IOException | RuntimeException e ) {
+			LOG.warn( "Could not record hot keys.", e );
+		}
+		
+	}
+	
+	/**
+	 * Starts prefetching the keys recorded when the database last shut down, if
+	 * any. Errors are logged and ignored.
+	 * 
+	 * @param database The database to prefetch into.
+	 */
+	private static void loadHotKeys( AbstractDatabase database ) {
+		
+		Path file = getWarmStartFile();
+		if ( !Files.exists( file ) ) {
+			return; // Nothing recorded.
+		}
+		LOG.debug( "Loading hot keys from {}.", file );
+		try ( Reader in = Files.newBufferedReader( file, StandardCharsets.UTF_8 ) ) {
+			Map<String,List<String>> hotKeys = GSON.fromJson( in, HOT_KEYS_TYPE );
+			if ( hotKeys != null ) {
+				database.warmUp( hotKeys, AbstractDatabase.WARM_START_BUDGET );
+			}
+		} catch ( IOException | JsonParseException e ) {
+			LOG.warn( "Could not load hot keys.", e );
+		}
+		
+	}
+	
 	/**
 	 * Starts up and loads the database.
+	 * <p>
+	 * If keys were recorded when the database last shut down, they start being
+	 * prefetched in the background (this method does not wait for them).
 	 * 
 	 * @return <tt>true</tt> if the database was loaded successfully.
 	 *         <tt>false</tt> if there was an issue that prevented it from
@@ -249,6 +347,14 @@ public class DatabaseManager {
 		
 		if ( result ) {
 			LOG.info( "Database started." );
+			dbType = type;
+			if ( db instanceof AbstractDatabase ) {
+				DatabaseMXBean bean = ( (AbstractDatabase) db ).getMXBean();
+				dbBeanName = Management.register( "Database", bean.getName(), bean );
+			}
+			if ( ( db instanceof AbstractDatabase ) && ( AbstractDatabase.WARM_START_KEYS > 0 ) ) {
+				loadHotKeys( (AbstractDatabase) db );
+			}
 		} else {
 			LOG.error( "Could not start database." );
 		}
@@ -276,6 +382,9 @@ public class DatabaseManager {
 	 * stored persistently.
 	 * <p>
 	 * If a database change was requested, it will be performed before the database closes.
+	 * <p>
+	 * If enabled, the keys to prefetch on the next startup are recorded before the database
+	 * closes.
 	 * 
 	 * @throws IllegalStateException if the database is not currently running.
 	 */
@@ -309,12 +418,60 @@ public class DatabaseManager {
 			
 		}
 		
+		if ( ( db instanceof AbstractDatabase ) && ( AbstractDatabase.WARM_START_KEYS > 0 ) ) {
+			saveHotKeys( (AbstractDatabase) db );
+		}
+		
 		LOG.info( "Terminating database." );
 		
+		Management.unregister( dbBeanName );
+		dbBeanName = null;
+		dbType = null;
 		db.close();
 		
 		LOG.info( "Database terminated." );
 		
 	}
 
+	/**
+	 * Implementation of the management interface of the manager.
+	 * 
+	 * @version 1.0
+	 * @author ThiagoTGM
+	 * @since 2018-09-17
+	 */
+	private static class ManagementBean implements DatabaseManagerMXBean {
+		
+		@Override
+		public boolean isRunning() {
+			
+			return dbType != null;
+			
+		}
+		
+		@Override
+		public String getDatabaseType() {
+			
+			DatabaseType type = dbType;
+			return type == null ? null : type.toString();
+			
+		}
+		
+		@Override
+		public String getPendingChangeType() {
+			
+			DatabaseType type = getDatabaseChangeRequestType();
+			return type == null ? null : type.toString();
+			
+		}
+		
+		@Override
+		public boolean cancelDatabaseChange() {
+			
+			return DatabaseManager.cancelDatabaseChange();
+			
+		}
+		
+	}
+
 }
@@ -0,0 +1,66 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+/**
+ * Management interface of the {@link DatabaseManager}.
+ * <p>
+ * The load arguments of the databases are not exposed, since they may include
+ * credentials.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ * @see com.github.thiagotgm.bot_utils.utils.Management
+ */
+public interface DatabaseManagerMXBean {
+
+	/**
+	 * Determines whether the database is currently running.
+	 *
+	 * @return <tt>true</tt> if the database is running.
+	 */
+	boolean isRunning();
+
+	/**
+	 * Retrieves the type of the database currently running.
+	 *
+	 * @return The name of the database type, or <tt>null</tt> if the database
+	 *         is not running.
+	 */
+	String getDatabaseType();
+
+	/**
+	 * Retrieves the type of database that is going to be migrated to when the
+	 * program exits.
+	 *
+	 * @return The name of the database type, or <tt>null</tt> if there is no
+	 *         change request currently.
+	 * @see DatabaseManager#getDatabaseChangeRequestType()
+	 */
+	String getPendingChangeType();
+
+	/**
+	 * Cancels the current database change request, if any.
+	 *
+	 * @return Whether a database change was pending and was cancelled.
+	 * @see DatabaseManager#cancelDatabaseChange()
+	 */
+	boolean cancelDatabaseChange();
+
+}
@@ -0,0 +1,498 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a single tree or map of a database, kept in a registry keyed by
+ * the name of the database and the name of the tree or map.
+ * <p>
+ * Latencies are recorded in nanoseconds into {@link LatencyHistogram
+ * histograms}, so that tail latencies (and not only averages) can be observed.
+ * Recording never blocks: all counters are {@link LongAdder adders}.
+ * <p>
+ * Note: A "successful" database fetch is when a value mapped to the desired key
+ * is found, while a "failed" fetch is when a value is not found (but the fetch
+ * was still executed successfully).
+ * <p>
+ * Metrics are kept for as long as the program runs, so that reopening a
+ * database continues the metrics of its trees and maps.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class DatabaseMetrics {
+
+    private static final ConcurrentMap<List<String>, DatabaseMetrics> REGISTRY = new ConcurrentHashMap<>();
+
+    /**
+     * Operations on a tree or map whose latency is recorded.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    public enum Operation {
+
+        /**
+         * Retrieving the value of a key or path (or several of them at once).
+         */
+        GET,
+
+        /**
+         * Storing the value of a key or path.
+         */
+        PUT,
+
+        /**
+         * Removing the value of a key or path.
+         */
+        REMOVE,
+
+        /**
+         * Obtaining the next element from an iterator over a view of the tree or
+         * map.
+         */
+        ITERATE
+
+    }
+
+    private final String database;
+    private final String structure;
+    private final Map<Operation, LatencyHistogram> operations;
+    private final LatencyHistogram backendCalls;
+    private final LatencyHistogram fetchSuccesses;
+    private final LatencyHistogram fetchFailures;
+    private final LongAdder cacheHits;
+    private final LongAdder cacheMisses;
+    private final LongAdder negativeCacheHits;
+    private final LongAdder offHeapHits;
+    private final LongAdder evictions;
+    private final LongAdder writeBehindBuffered;
+    private final LongAdder writeBehindCoalesced;
+    private final LongAdder writeBehindWrites;
+    private final LongAdder writeBehindFailures;
+    private final LatencyHistogram writeBehindFlushes;
+
+    /**
+     * Instantiates empty metrics.
+     *
+     * @param database
+     *            The name of the database.
+     * @param structure
+     *            The name of the tree or map.
+     */
+    private DatabaseMetrics( String database, String structure ) {
+
+        this.database = database;
+        this.structure = structure;
+        this.operations = new EnumMap<>( Operation.class );
+        for ( Operation operation : Operation.values() ) {
+
+            operations.put( operation, new LatencyHistogram() );
+
+        }
+        this.backendCalls = new LatencyHistogram();
+        this.fetchSuccesses = new LatencyHistogram();
+        this.fetchFailures = new LatencyHistogram();
+        this.cacheHits = new LongAdder();
+        this.cacheMisses = new LongAdder();
+        this.negativeCacheHits = new LongAdder();
+        this.offHeapHits = new LongAdder();
+        this.evictions = new LongAdder();
+        this.writeBehindBuffered = new LongAdder();
+        this.writeBehindCoalesced = new LongAdder();
+        this.writeBehindWrites = new LongAdder();
+        this.writeBehindFailures = new LongAdder();
+        this.writeBehindFlushes = new LatencyHistogram();
+
+    }
+
+    /**
+     * Retrieves the metrics of a tree or map, creating them if they do not exist
+     * yet.
+     *
+     * @param database
+     *            The name of the database.
+     * @param structure
+     *            The name of the tree or map.
+     * @return The metrics.
+     * @throws NullPointerException
+     *             if either argument is <tt>null</tt>.
+     */
+    public static DatabaseMetrics get( String database, String structure ) throws NullPointerException {
+
+        if ( ( database == null ) || ( structure == null ) ) {
+            throw new NullPointerException( "Arguments cannot be null." );
+        }
+        return REGISTRY.computeIfAbsent( Arrays.asList( database, structure ),
+                k -> new DatabaseMetrics( database, structure ) );
+
+    }
+
+    /**
+     * Retrieves the metrics of all the trees and maps that have any.
+     *
+     * @return The metrics. The returned list is not affected by metrics created
+     *         later.
+     */
+    public static List<DatabaseMetrics> getAll() {
+
+        return Collections.unmodifiableList( new ArrayList<>( REGISTRY.values() ) );
+
+    }
+
+    /**
+     * Retrieves the name of the database that the tree or map belongs to.
+     *
+     * @return The name of the database.
+     */
+    public String getDatabase() {
+
+        return database;
+
+    }
+
+    /**
+     * Retrieves the name of the tree or map.
+     *
+     * @return The name of the tree or map.
+     */
+    public String getStructure() {
+
+        return structure;
+
+    }
+
+    /* Recording */
+
+    /**
+     * Records an operation on the tree or map.
+     *
+     * @param operation
+     *            The operation.
+     * @param nanos
+     *            How long it took, in nanoseconds.
+     */
+    public void recordOperation( Operation operation, long nanos ) {
+
+        operations.get( operation ).record( nanos );
+
+    }
+
+    /**
+     * Records a call made to the backend of the database. The call is also
+     * counted in the {@link OperationTracer traces} open in the current thread.
+     *
+     * @param nanos
+     *            How long it took, in nanoseconds.
+     */
+    public void recordBackendCall( long nanos ) {
+
+        backendCalls.record( nanos );
+        OperationTracer.backendCall();
+
+    }
+
+    /**
+     * Records a key fetched from the backend of the database. The backend call
+     * itself should be {@link #recordBackendCall(long) recorded} separately, as
+     * one call may fetch several keys.
+     *
+     * @param nanos
+     *            How long it took until the key was fetched, in nanoseconds.
+     * @param success
+     *            Whether a value was found.
+     */
+    public void recordFetch( long nanos, boolean success ) {
+
+        ( success ? fetchSuccesses : fetchFailures ).record( nanos );
+
+    }
+
+    /**
+     * Records a hit to the cache.
+     */
+    public void addCacheHit() {
+
+        cacheHits.increment();
+
+    }
+
+    /**
+     * Records a miss to the cache.
+     */
+    public void addCacheMiss() {
+
+        cacheMisses.increment();
+
+    }
+
+    /**
+     * Records a hit to the cache on a key that is known to not exist in the
+     * database.
+     */
+    public void addNegativeCacheHit() {
+
+        negativeCacheHits.increment();
+
+    }
+
+    /**
+     * Records a miss to the cache that was found in the off-heap tier.
+     */
+    public void addOffHeapHit() {
+
+        offHeapHits.increment();
+
+    }
+
+    /**
+     * Records a mapping evicted from the cache.
+     */
+    public void addEviction() {
+
+        evictions.increment();
+
+    }
+
+    /**
+     * Records a change in the amount of writes held in the write-behind buffer.
+     *
+     * @param delta
+     *            The change in the amount of buffered writes.
+     */
+    public void addWriteBehindBuffered( long delta ) {
+
+        writeBehindBuffered.add( delta );
+
+    }
+
+    /**
+     * Records a buffered write that replaced an earlier buffered write to the same
+     * key.
+     */
+    public void addWriteBehindCoalesced() {
+
+        writeBehindCoalesced.increment();
+
+    }
+
+    /**
+     * Records a successful flush of the write-behind buffer. The backend call
+     * itself should be {@link #recordBackendCall(long) recorded} separately.
+     *
+     * @param nanos
+     *            How long the flush took, in nanoseconds.
+     * @param writes
+     *            How many writes were flushed.
+     */
+    public void recordWriteBehindFlush( long nanos, int writes ) {
+
+        writeBehindFlushes.record( nanos );
+        writeBehindWrites.add( writes );
+
+    }
+
+    /**
+     * Records a failed flush of the write-behind buffer.
+     */
+    public void addWriteBehindFailure() {
+
+        writeBehindFailures.increment();
+
+    }
+
+    /* Reading */
+
+    /**
+     * Retrieves the latencies of an operation on the tree or map.
+     *
+     * @param operation
+     *            The operation.
+     * @return The latencies.
+     */
+    public LatencyHistogram getLatency( Operation operation ) {
+
+        return operations.get( operation );
+
+    }
+
+    /**
+     * Retrieves the latencies of the calls made to the backend of the database.
+     *
+     * @return The latencies.
+     */
+    public LatencyHistogram getBackendCalls() {
+
+        return backendCalls;
+
+    }
+
+    /**
+     * Retrieves the latencies of the successful fetches from the backend.
+     *
+     * @return The latencies.
+     */
+    public LatencyHistogram getFetchSuccesses() {
+
+        return fetchSuccesses;
+
+    }
+
+    /**
+     * Retrieves the latencies of the failed fetches from the backend.
+     *
+     * @return The latencies.
+     */
+    public LatencyHistogram getFetchFailures() {
+
+        return fetchFailures;
+
+    }
+
+    /**
+     * Retrieves the amount of cache hits.
+     *
+     * @return The amount of cache hits.
+     */
+    public long getCacheHits() {
+
+        return cacheHits.sum();
+
+    }
+
+    /**
+     * Retrieves the amount of cache misses.
+     *
+     * @return The amount of cache misses.
+     */
+    public long getCacheMisses() {
+
+        return cacheMisses.sum();
+
+    }
+
+    /**
+     * Retrieves the amount of cache hits on keys known to not exist.
+     *
+     * @return The amount of negative cache hits.
+     */
+    public long getNegativeCacheHits() {
+
+        return negativeCacheHits.sum();
+
+    }
+
+    /**
+     * Retrieves the amount of cache misses that were found in the off-heap tier.
+     *
+     * @return The amount of off-heap hits.
+     */
+    public long getOffHeapHits() {
+
+        return offHeapHits.sum();
+
+    }
+
+    /**
+     * Retrieves the amount of mappings evicted from the cache.
+     *
+     * @return The amount of evictions.
+     */
+    public long getEvictions() {
+
+        return evictions.sum();
+
+    }
+
+    /**
+     * Retrieves the amount of writes currently held in the write-behind buffer.
+     *
+     * @return The amount of buffered writes.
+     */
+    public long getWriteBehindBufferSize() {
+
+        return writeBehindBuffered.sum();
+
+    }
+
+    /**
+     * Retrieves the amount of buffered writes that replaced an earlier buffered
+     * write to the same key.
+     *
+     * @return The amount of coalesced writes.
+     */
+    public long getWriteBehindCoalesced() {
+
+        return writeBehindCoalesced.sum();
+
+    }
+
+    /**
+     * Retrieves the amount of buffered writes that were flushed to the database.
+     *
+     * @return The amount of flushed writes.
+     */
+    public long getWriteBehindWrites() {
+
+        return writeBehindWrites.sum();
+
+    }
+
+    /**
+     * Retrieves the amount of flushes of the write-behind buffer that failed.
+     *
+     * @return The amount of failed flushes.
+     */
+    public long getWriteBehindFailures() {
+
+        return writeBehindFailures.sum();
+
+    }
+
+    /**
+     * Retrieves the latencies of the successful flushes of the write-behind
+     * buffer.
+     *
+     * @return The latencies.
+     */
+    public LatencyHistogram getWriteBehindFlushes() {
+
+        return writeBehindFlushes;
+
+    }
+
+    @Override
+    public String toString() {
+
+        return database + "/" + structure;
+
+    }
+
+}
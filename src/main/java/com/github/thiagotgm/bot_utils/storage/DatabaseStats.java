@@ -17,7 +17,9 @@
 
 package com.github.thiagotgm.bot_utils.storage;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 /**
  * Stores stats related to dabase accessing.
@@ -28,83 +30,121 @@ import java.util.concurrent.atomic.AtomicLong;
  * <p>
  * Does not count operations other than a "get" (so operations like containsKey
  * would not be counted).
+ * <p>
+ * The stats are totals over the {@link DatabaseMetrics metrics} of all trees and
+ * maps, which are recorded separately (and with latency histograms, rather than
+ * only averages). Those should be preferred when more detail is needed.
+ * <p>
+ * The stats are also exposed through a {@link DatabaseStatsMXBean management
+ * interface}, registered by the {@link DatabaseManager}.
  * 
- * @version 1.0
+ * @version 2.1
  * @author ThiagoTGM
  * @since 2018-08-09
  */
 public class DatabaseStats {
 	
-	private static final AtomicLong cacheHits = new AtomicLong();
-	private static final AtomicLong cacheMisses = new AtomicLong();
-	private static final AtomicLong dbFetchSuccessTimeTotal = new AtomicLong();
-	private static final AtomicLong dbFetchSuccesses = new AtomicLong();
-	private static final AtomicLong dbFetchFailTimeTotal = new AtomicLong();
-	private static final AtomicLong dbFetchFailures = new AtomicLong();
+	/**
+	 * Sums a metric over all trees and maps.
+	 * 
+	 * @param metric The metric to sum.
+	 * @return The total.
+	 */
+	private static long sum( ToLongFunction<DatabaseMetrics> metric ) {
+		
+		long total = 0;
+		for ( DatabaseMetrics metrics : DatabaseMetrics.getAll() ) {
+			
+			total += metric.applyAsLong( metrics );
+			
+		}
+		return total;
+		
+	}
 	
 	/**
-	 * Records a hit to a database cache.
+	 * Calculates the average of a latency over all trees and maps.
+	 * 
+	 * @param latency The latency to average.
+	 * @return The average, in milliseconds, or -1 if nothing was recorded.
 	 */
-	public static void addCacheHit() {
+	private static long average( Function<DatabaseMetrics,LatencyHistogram> latency ) {
 		
-		cacheHits.incrementAndGet();
+		long count = sum( m -> latency.apply( m ).getCount() );
+		if ( count == 0 ) {
+			return -1;
+		}
+		return TimeUnit.NANOSECONDS.toMillis( sum( m -> latency.apply( m ).getSum() ) / count );
 		
 	}
 	
 	/**
-	 * Records a miss to a database cache.
+	 * Retrieves the amount of cache hits so far.
+	 * 
+	 * @return The amount of cache hits since the program started.
 	 */
-	public static void addCacheMiss() {
+	public static long getCacheHits() {
 		
-		cacheMisses.incrementAndGet();
+		return sum( DatabaseMetrics::getCacheHits );
 		
 	}
 	
 	/**
-	 * Records a successful fetch to the database.
+	 * Retrieves the amount of cache misses so far.
 	 * 
-	 * @param time The time elapsed to perform the fetch operation,
-	 *             in milliseconds.
+	 * @return The amount of cache misses since the program started.
 	 */
-	public static synchronized void addDbFetchSuccess( long time ) {
+	public static long getCacheMisses() {
 		
-		dbFetchSuccessTimeTotal.addAndGet( time );
-		dbFetchSuccesses.incrementAndGet();
+		return sum( DatabaseMetrics::getCacheMisses );
 		
 	}
 	
 	/**
-	 * Records a failed fetch to the database.
+	 * Retrieves the amount of cache hits on keys known to not exist in the
+	 * database so far. These are not included in the {@link #getCacheHits() cache
+	 * hits}.
 	 * 
-	 * @param time The time elapsed to perform the fetch operation,
-	 *             in milliseconds.
+	 * @return The amount of negative cache hits since the program started.
 	 */
-	public static synchronized void addDbFetchFailure( long time ) {
+	public static long getNegativeCacheHits() {
 		
-		dbFetchFailTimeTotal.addAndGet( time );
-		dbFetchFailures.incrementAndGet();
+		return sum( DatabaseMetrics::getNegativeCacheHits );
 		
 	}
 	
 	/**
-	 * Retrieves the amount of cache hits so far.
+	 * Retrieves the amount of values found in the off-heap tier of a cache so far.
+	 * These are not included in the {@link #getCacheHits() cache hits}, but are
+	 * also not database fetches.
 	 * 
-	 * @return The amount of cache hits since the program started.
+	 * @return The amount of off-heap hits since the program started.
 	 */
-	public static long getCacheHits() {
+	public static long getOffHeapHits() {
 		
-		return cacheHits.get();
+		return sum( DatabaseMetrics::getOffHeapHits );
 		
 	}
 	
 	/**
-	 * Retrieves the amount of cache misses so far.
+	 * Retrieves the amount of mappings evicted from caches so far.
 	 * 
-	 * @return The amount of cache misses since the program started.
+	 * @return The amount of evictions since the program started.
 	 */
-	public static long getCacheMisses() {
+	public static long getEvictions() {
+		
+		return sum( DatabaseMetrics::getEvictions );
+		
+	}
+	
+	/**
+	 * Retrieves the amount of calls made to database backends so far.
+	 * 
+	 * @return The amount of backend calls since the program started.
+	 */
+	public static long getBackendCalls() {
 		
-		return cacheMisses.get();
+		return sum( m -> m.getBackendCalls().getCount() );
 		
 	}
 	
@@ -114,13 +154,9 @@ public class DatabaseStats {
 	 * @return The average time of a successful database fetch, in milliseconds,
 	 *         or -1 if there have not been any successful fetches yet.
 	 */
-	public static synchronized long getAverageFetchSuccessTime() {
+	public static long getAverageFetchSuccessTime() {
 		
-		if ( dbFetchSuccesses.get() > 0 ) { // At least one success.
-			return dbFetchSuccessTimeTotal.get() / dbFetchSuccesses.get();
-		} else {
-			return -1;
-		}
+		return average( DatabaseMetrics::getFetchSuccesses );
 		
 	}
 	
@@ -130,12 +166,213 @@ public class DatabaseStats {
 	 * @return The average time of a failed database fetch, in milliseconds,
 	 *         or -1 if there have not been any failed fetches yet.
 	 */
-	public static synchronized long getAverageFetchFailTime() {
+	public static long getAverageFetchFailTime() {
 		
-		if ( dbFetchFailures.get() > 0 ) { // At least one failure.
-			return dbFetchFailTimeTotal.get() / dbFetchFailures.get();
-		} else {
-			return -1;
+		return average( DatabaseMetrics::getFetchFailures );
+		
+	}
+	
+	/**
+	 * Retrieves the amount of writes currently waiting in write-behind buffers
+	 * to be written to the database.
+	 * 
+	 * @return The amount of buffered writes.
+	 */
+	public static long getWriteBehindBufferSize() {
+		
+		return sum( DatabaseMetrics::getWriteBehindBufferSize );
+		
+	}
+	
+	/**
+	 * Retrieves the amount of writes that replaced a buffered write to the same
+	 * key, and so did not need a separate database write, so far.
+	 * 
+	 * @return The amount of coalesced writes since the program started.
+	 */
+	public static long getWriteBehindCoalesced() {
+		
+		return sum( DatabaseMetrics::getWriteBehindCoalesced );
+		
+	}
+	
+	/**
+	 * Retrieves the amount of successful write-behind buffer flushes so far.
+	 * 
+	 * @return The amount of flushes since the program started.
+	 */
+	public static long getWriteBehindFlushes() {
+		
+		return sum( m -> m.getWriteBehindFlushes().getCount() );
+		
+	}
+	
+	/**
+	 * Retrieves the amount of buffered writes that were written to the database
+	 * so far.
+	 * 
+	 * @return The amount of flushed writes since the program started.
+	 */
+	public static long getWriteBehindWrites() {
+		
+		return sum( DatabaseMetrics::getWriteBehindWrites );
+		
+	}
+	
+	/**
+	 * Retrieves the amount of write-behind buffer flushes that failed so far.
+	 * 
+	 * @return The amount of failed flushes since the program started.
+	 */
+	public static long getWriteBehindFailures() {
+		
+		return sum( DatabaseMetrics::getWriteBehindFailures );
+		
+	}
+	
+	/**
+	 * Retrieves the average time of a successful write-behind buffer flush so far.
+	 * 
+	 * @return The average flush time, in milliseconds, or -1 if there have not
+	 *         been any flushes yet.
+	 */
+	public static long getAverageWriteBehindFlushTime() {
+		
+		return average( DatabaseMetrics::getWriteBehindFlushes );
+		
+	}
+	
+	/**
+	 * Retrieves the longest time of a successful write-behind buffer flush so far.
+	 * 
+	 * @return The maximum flush time, in milliseconds, or 0 if there have not been
+	 *         any flushes yet.
+	 */
+	public static long getMaxWriteBehindFlushTime() {
+		
+		long max = 0;
+		for ( DatabaseMetrics metrics : DatabaseMetrics.getAll() ) {
+			
+			max = Math.max( max, metrics.getWriteBehindFlushes().getMax() );
+			
+		}
+		return TimeUnit.NANOSECONDS.toMillis( max );
+		
+	}
+
+	/**
+	 * Implementation of the management interface, which delegates to the static
+	 * getters.
+	 * 
+	 * @version 1.0
+	 * @author ThiagoTGM
+	 * @since 2018-09-17
+	 */
+	static class ManagementBean implements DatabaseStatsMXBean {
+		
+		@Override
+		public long getCacheHits() {
+			
+			return DatabaseStats.getCacheHits();
+			
+		}
+		
+		@Override
+		public long getCacheMisses() {
+			
+			return DatabaseStats.getCacheMisses();
+			
+		}
+		
+		@Override
+		public long getNegativeCacheHits() {
+			
+			return DatabaseStats.getNegativeCacheHits();
+			
+		}
+		
+		@Override
+		public long getOffHeapHits() {
+			
+			return DatabaseStats.getOffHeapHits();
+			
+		}
+		
+		@Override
+		public long getEvictions() {
+			
+			return DatabaseStats.getEvictions();
+			
+		}
+		
+		@Override
+		public long getBackendCalls() {
+			
+			return DatabaseStats.getBackendCalls();
+			
+		}
+		
+		@Override
+		public long getAverageFetchSuccessTime() {
+			
+			return DatabaseStats.getAverageFetchSuccessTime();
+			
+		}
+		
+		@Override
+		public long getAverageFetchFailTime() {
+			
+			return DatabaseStats.getAverageFetchFailTime();
+			
+		}
+		
+		@Override
+		public long getWriteBehindBufferSize() {
+			
+			return DatabaseStats.getWriteBehindBufferSize();
+			
+		}
+		
+		@Override
+		public long getWriteBehindCoalesced() {
+			
+			return DatabaseStats.getWriteBehindCoalesced();
+			
+		}
+		
+		@Override
+		public long getWriteBehindFlushes() {
+			
+			return DatabaseStats.getWriteBehindFlushes();
+			
+		}
+		
+		@Override
+		public long getWriteBehindWrites() {
+			
+			return DatabaseStats.getWriteBehindWrites();
+			
+		}
+		
+		@Override
+		public long getWriteBehindFailures() {
+			
+			return DatabaseStats.getWriteBehindFailures();
+			
+		}
+		
+		@Override
+		public long getAverageWriteBehindFlushTime() {
+			
+			return DatabaseStats.getAverageWriteBehindFlushTime();
+			
+		}
+		
+		@Override
+		public long getMaxWriteBehindFlushTime() {
+			
+			return DatabaseStats.getMaxWriteBehindFlushTime();
+			
 		}
 		
 	}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+/**
+ * Management interface of the {@link DatabaseStats}. Each attribute is the
+ * value of the corresponding getter of that class.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ * @see com.github.thiagotgm.bot_utils.utils.Management
+ */
+public interface DatabaseStatsMXBean {
+
+	/**
+	 * @return The amount of cache hits.
+	 * @see DatabaseStats#getCacheHits()
+	 */
+	long getCacheHits();
+
+	/**
+	 * @return The amount of cache misses.
+	 * @see DatabaseStats#getCacheMisses()
+	 */
+	long getCacheMisses();
+
+	/**
+	 * @return The amount of negative cache hits.
+	 * @see DatabaseStats#getNegativeCacheHits()
+	 */
+	long getNegativeCacheHits();
+
+	/**
+	 * @return The amount of off-heap tier hits.
+	 * @see DatabaseStats#getOffHeapHits()
+	 */
+	long getOffHeapHits();
+
+	/**
+	 * @return The amount of evictions.
+	 * @see DatabaseStats#getEvictions()
+	 */
+	long getEvictions();
+
+	/**
+	 * @return The amount of backend calls.
+	 * @see DatabaseStats#getBackendCalls()
+	 */
+	long getBackendCalls();
+
+	/**
+	 * @return The average successful fetch time, in milliseconds.
+	 * @see DatabaseStats#getAverageFetchSuccessTime()
+	 */
+	long getAverageFetchSuccessTime();
+
+	/**
+	 * @return The average failed fetch time, in milliseconds.
+	 * @see DatabaseStats#getAverageFetchFailTime()
+	 */
+	long getAverageFetchFailTime();
+
+	/**
+	 * @return The amount of buffered writes.
+	 * @see DatabaseStats#getWriteBehindBufferSize()
+	 */
+	long getWriteBehindBufferSize();
+
+	/**
+	 * @return The amount of coalesced writes.
+	 * @see DatabaseStats#getWriteBehindCoalesced()
+	 */
+	long getWriteBehindCoalesced();
+
+	/**
+	 * @return The amount of write-behind flushes.
+	 * @see DatabaseStats#getWriteBehindFlushes()
+	 */
+	long getWriteBehindFlushes();
+
+	/**
+	 * @return The amount of flushed writes.
+	 * @see DatabaseStats#getWriteBehindWrites()
+	 */
+	long getWriteBehindWrites();
+
+	/**
+	 * @return The amount of failed flushes.
+	 * @see DatabaseStats#getWriteBehindFailures()
+	 */
+	long getWriteBehindFailures();
+
+	/**
+	 * @return The average flush time, in milliseconds.
+	 * @see DatabaseStats#getAverageWriteBehindFlushTime()
+	 */
+	long getAverageWriteBehindFlushTime();
+
+	/**
+	 * @return The maximum flush time, in milliseconds.
+	 * @see DatabaseStats#getMaxWriteBehindFlushTime()
+	 */
+	long getMaxWriteBehindFlushTime();
+
+}
@@ -0,0 +1,268 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies, in nanoseconds, from which percentiles can be
+ * obtained.
+ * <p>
+ * Values are counted in log-linear buckets: each power of two is split into
+ * {@value #SUB_BUCKETS} buckets of equal width, so a percentile is reported with
+ * a relative error of at most 1/{@value #SUB_BUCKETS} (always rounded up, but
+ * never above the maximum recorded value). Values from {@value #MAX_TRACKED} ns
+ * up (around 18 minutes) all fall in the last bucket, but are still counted in
+ * the {@link #getSum() sum} and {@link #getMax() maximum}.
+ * <p>
+ * <b>This class is <i>thread-safe</i>.</b> Each bucket is a {@link LongAdder},
+ * so threads recording at the same time do not contend with each other. Reads
+ * are not atomic with respect to concurrent recording, so they may not include
+ * values recorded while they run.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    /**
+     * Amount of buckets that each power of two is split into.
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Smallest value, in nanoseconds, that is not tracked precisely.
+     */
+    public static final long MAX_TRACKED = 1L << 40;
+    private static final int BUCKET_COUNT = index( MAX_TRACKED - 1 ) + 1;
+
+    private final LongAdder[] buckets;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    /**
+     * Instantiates an empty histogram.
+     */
+    public LatencyHistogram() {
+
+        this.buckets = new LongAdder[BUCKET_COUNT];
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+
+            buckets[i] = new LongAdder();
+
+        }
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator( Math::max, 0 );
+
+    }
+
+    /**
+     * Determines the bucket that a value is counted in.
+     *
+     * @param value
+     *            The value. Must not be negative.
+     * @return The index of the bucket.
+     */
+    private static int index( long value ) {
+
+        if ( value < SUB_BUCKETS ) {
+            return (int) value; // Exact.
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int shift = exponent - SUB_BUCKET_BITS;
+        int sub = (int) ( value >>> shift ) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+
+    }
+
+    /**
+     * Determines the largest value that is counted in a bucket.
+     *
+     * @param index
+     *            The index of the bucket.
+     * @return The largest value in the bucket.
+     */
+    private static long upperBound( int index ) {
+
+        if ( index < SUB_BUCKETS ) {
+            return index; // Exact.
+        }
+        int shift = ( index - SUB_BUCKETS ) / SUB_BUCKETS;
+        int sub = ( index - SUB_BUCKETS ) % SUB_BUCKETS;
+        return ( ( (long) ( SUB_BUCKETS + sub + 1 ) ) << shift ) - 1;
+
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param nanos
+     *            The value, in nanoseconds. Negative values are recorded as 0.
+     */
+    public void record( long nanos ) {
+
+        long value = Math.max( 0, nanos );
+        buckets[index( Math.min( value, MAX_TRACKED - 1 ) )].increment();
+        sum.add( value );
+        max.accumulate( value );
+
+    }
+
+    /**
+     * Retrieves the amount of values recorded.
+     *
+     * @return The amount of values.
+     */
+    public long getCount() {
+
+        long count = 0;
+        for ( LongAdder bucket : buckets ) {
+
+            count += bucket.sum();
+
+        }
+        return count;
+
+    }
+
+    /**
+     * Retrieves the sum of the values recorded.
+     *
+     * @return The sum, in nanoseconds.
+     */
+    public long getSum() {
+
+        return sum.sum();
+
+    }
+
+    /**
+     * Retrieves the largest value recorded.
+     *
+     * @return The maximum, in nanoseconds, or 0 if no values were recorded.
+     */
+    public long getMax() {
+
+        return max.get();
+
+    }
+
+    /**
+     * Retrieves the mean of the values recorded.
+     *
+     * @return The mean, in nanoseconds, or 0 if no values were recorded.
+     */
+    public double getMean() {
+
+        long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+
+    }
+
+    /**
+     * Retrieves the value below which the given percentage of the recorded values
+     * are (rounded up to the bucket boundary).
+     *
+     * @param percentile
+     *            The percentile, between 0 and 100 (for example, 99.9 for the
+     *            p999).
+     * @return The value at the percentile, in nanoseconds, or 0 if no values were
+     *         recorded.
+     * @throws IllegalArgumentException
+     *             if the percentile is not between 0 and 100.
+     */
+    public long getPercentile( double percentile ) throws IllegalArgumentException {
+
+        if ( !( percentile >= 0 ) || ( percentile > 100 ) ) {
+            throw new IllegalArgumentException( "Percentile must be between 0 and 100." );
+        }
+
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) { // Take a snapshot.
+
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+
+        }
+        if ( total == 0 ) {
+            return 0;
+        }
+
+        long rank = Math.max( 1, (long) Math.ceil( total * percentile / 100 ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+
+            seen += counts[i];
+            if ( seen >= rank ) {
+                return Math.min( upperBound( i ), getMax() );
+            }
+
+        }
+        return getMax(); // Should not happen.
+
+    }
+
+    /**
+     * Retrieves the value below which the given percentage of the recorded values
+     * are, in the given unit.
+     *
+     * @param percentile
+     *            The percentile, between 0 and 100.
+     * @param unit
+     *            The unit to get the value in.
+     * @return The value at the percentile.
+     * @throws IllegalArgumentException
+     *             if the percentile is not between 0 and 100.
+     * @see #getPercentile(double)
+     */
+    public long getPercentile( double percentile, TimeUnit unit ) throws IllegalArgumentException {
+
+        return unit.convert( getPercentile( percentile ), TimeUnit.NANOSECONDS );
+
+    }
+
+    /**
+     * Discards all recorded values.
+     * <p>
+     * Values recorded while this is running may or may not be discarded.
+     */
+    public void reset() {
+
+        for ( LongAdder bucket : buckets ) {
+
+            bucket.reset();
+
+        }
+        sum.reset();
+        max.reset();
+
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format( "count=%d, p50=%dns, p99=%dns, p999=%dns, max=%dns", getCount(),
+                getPercentile( 50 ), getPercentile( 99 ), getPercentile( 99.9 ), getMax() );
+
+    }
+
+}
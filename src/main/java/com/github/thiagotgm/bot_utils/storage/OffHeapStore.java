@@ -0,0 +1,367 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Store that keeps byte arrays outside of the Java heap, in direct buffers, to
+ * be used as a larger (but slower) tier beneath a {@link Cache}. Since the
+ * stored bytes are not Java objects, the garbage collector does not need to
+ * scan them, no matter how many are stored.
+ * <p>
+ * The capacity is split into {@value #SEGMENT_COUNT} segments, which are
+ * allocated as they are first needed. Values are appended to the current
+ * segment, and when it is full, the oldest segment is emptied and reused. As
+ * such, the eviction order is FIFO by segment: whenever the store is full, the
+ * values that were stored the longest ago are discarded (including the space
+ * used by values that were already removed or replaced).
+ * <p>
+ * Only the stored bytes are kept off the heap. The index from keys to the
+ * location of their values is a regular map, so keys should be small.
+ * <p>
+ * <b>This class is <i>thread-safe</i>.</b> All operations are guarded by a
+ * single lock, which is expected to be acceptable since the store is only used
+ * on misses of the cache above it.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class OffHeapStore {
+
+    /**
+     * Amount of segments that the capacity is split into.
+     */
+    public static final int SEGMENT_COUNT = 16;
+    /**
+     * Size of the header that precedes each value in a segment (the length of the
+     * value).
+     */
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+    private final ReentrantLock lock;
+    private final Map<Object, Long> index; // Guarded by lock.
+    private final ByteBuffer[] segments; // Guarded by lock.
+    private final List<List<Object>> segmentKeys; // Guarded by lock.
+    private final int segmentSize;
+    private int current; // Guarded by lock.
+    private int position; // Guarded by lock.
+
+    /**
+     * Instantiates a store with the given capacity.
+     *
+     * @param capacity
+     *            The maximum amount of memory to use, in bytes.
+     * @throws IllegalArgumentException
+     *             if the capacity is too small to have at least one byte per
+     *             segment.
+     */
+    public OffHeapStore( long capacity ) throws IllegalArgumentException {
+
+        if ( capacity < SEGMENT_COUNT * ( HEADER_SIZE + 1L ) ) {
+            throw new IllegalArgumentException( "Capacity is too small." );
+        }
+
+        this.lock = new ReentrantLock();
+        this.index = new HashMap<>();
+        this.segments = new ByteBuffer[SEGMENT_COUNT];
+        this.segmentKeys = new ArrayList<>( SEGMENT_COUNT );
+        for ( int i = 0; i < SEGMENT_COUNT; i++ ) {
+
+            segmentKeys.add( new ArrayList<>() );
+
+        }
+        this.segmentSize = (int) Math.min( capacity / SEGMENT_COUNT, Integer.MAX_VALUE );
+        this.current = 0;
+        this.position = 0;
+
+    }
+
+    /**
+     * Encodes the location of a value.
+     *
+     * @param segment
+     *            The segment that the value is in.
+     * @param offset
+     *            The offset of the value in the segment.
+     * @return The encoded location.
+     */
+    private static long location( int segment, int offset ) {
+
+        return ( (long) segment << 32 ) | offset;
+
+    }
+
+    /**
+     * Obtains the segment of an encoded location.
+     *
+     * @param location
+     *            The location.
+     * @return The segment.
+     */
+    private static int segment( long location ) {
+
+        return (int) ( location >>> 32 );
+
+    }
+
+    /**
+     * Obtains the offset of an encoded location.
+     *
+     * @param location
+     *            The location.
+     * @return The offset in the segment.
+     */
+    private static int offset( long location ) {
+
+        return (int) location;
+
+    }
+
+    /**
+     * Reads the value at the given location.
+     * <p>
+     * Must be called while holding the lock.
+     *
+     * @param location
+     *            The location of the value.
+     * @return The value.
+     */
+    private byte[] read( long location ) {
+
+        ByteBuffer segment = segments[segment( location )];
+        int offset = offset( location );
+        byte[] value = new byte[segment.getInt( offset )];
+        ByteBuffer view = segment.duplicate();
+        view.position( offset + HEADER_SIZE );
+        view.get( value );
+        return value;
+
+    }
+
+    /**
+     * Moves on to the next segment, discarding the values that it currently
+     * holds.
+     * <p>
+     * Must be called while holding the lock.
+     */
+    private void nextSegment() {
+
+        current = ( current + 1 ) % SEGMENT_COUNT;
+        position = 0;
+        List<Object> keys = segmentKeys.get( current );
+        for ( Object key : keys ) {
+            // Only discard keys whose latest value is in this segment.
+            Long location = index.get( key );
+            if ( ( location != null ) && ( segment( location ) == current ) ) {
+                index.remove( key );
+            }
+
+        }
+        keys.clear();
+
+    }
+
+    /**
+     * Stores a value, replacing the value currently stored for the same key (if
+     * any). If the store is full, the oldest values are discarded to make room.
+     *
+     * @param key
+     *            The key to store the value under.
+     * @param value
+     *            The value to store.
+     * @return <tt>true</tt> if the value was stored. <tt>false</tt> if it is
+     *         larger than a segment, and so cannot be stored (the previous value,
+     *         if any, is still removed).
+     * @throws NullPointerException
+     *             if the value is <tt>null</tt>.
+     */
+    public boolean put( Object key, byte[] value ) throws NullPointerException {
+
+        int size = HEADER_SIZE + value.length;
+        lock.lock();
+        try {
+            index.remove( key );
+            if ( size > segmentSize ) {
+                return false; // Too large.
+            }
+            if ( position + size > segmentSize ) { // Current segment is full.
+                nextSegment();
+            }
+            if ( segments[current] == null ) { // First use of the segment.
+                segments[current] = ByteBuffer.allocateDirect( segmentSize );
+            }
+
+            ByteBuffer segment = segments[current];
+            segment.putInt( position, value.length );
+            ByteBuffer view = segment.duplicate();
+            view.position( position + HEADER_SIZE );
+            view.put( value );
+
+            index.put( key, location( current, position ) );
+            segmentKeys.get( current ).add( key );
+            position += size;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Retrieves the value stored for a key.
+     *
+     * @param key
+     *            The key.
+     * @return A copy of the stored value, or <tt>null</tt> if there is none.
+     */
+    public byte[] get( Object key ) {
+
+        lock.lock();
+        try {
+            Long location = index.get( key );
+            return location == null ? null : read( location );
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Removes the value stored for a key.
+     *
+     * @param key
+     *            The key.
+     * @return The value that was stored, or <tt>null</tt> if there was none.
+     */
+    public byte[] remove( Object key ) {
+
+        lock.lock();
+        try {
+            Long location = index.remove( key );
+            return location == null ? null : read( location );
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Removes all the values whose keys match the given filter.
+     *
+     * @param filter
+     *            The filter.
+     */
+    public void removeKeysIf( Predicate<Object> filter ) {
+
+        lock.lock();
+        try {
+            index.keySet().removeIf( filter );
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Removes all the values that, together with their keys, match the given
+     * filter.
+     * <p>
+     * Requires reading every stored value, so it should be avoided on large
+     * stores.
+     *
+     * @param filter
+     *            The filter.
+     */
+    public void removeIf( BiPredicate<Object, byte[]> filter ) {
+
+        lock.lock();
+        try {
+            Iterator<Map.Entry<Object, Long>> iter = index.entrySet().iterator();
+            while ( iter.hasNext() ) {
+
+                Map.Entry<Object, Long> entry = iter.next();
+                if ( filter.test( entry.getKey(), read( entry.getValue() ) ) ) {
+                    iter.remove();
+                }
+
+            }
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Removes all stored values. The memory already allocated is kept, to be
+     * reused.
+     */
+    public void clear() {
+
+        lock.lock();
+        try {
+            index.clear();
+            for ( List<Object> keys : segmentKeys ) {
+
+                keys.clear();
+
+            }
+            position = 0;
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Retrieves the amount of values currently stored.
+     *
+     * @return The amount of values.
+     */
+    public int size() {
+
+        lock.lock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Retrieves the maximum amount of memory that the store uses.
+     *
+     * @return The capacity, in bytes.
+     */
+    public long capacity() {
+
+        return (long) segmentSize * SEGMENT_COUNT;
+
+    }
+
+}
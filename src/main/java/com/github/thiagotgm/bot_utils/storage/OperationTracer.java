@@ -0,0 +1,830 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.thiagotgm.bot_utils.Settings;
+
+/**
+ * Traces individual storage operations (database operations, translations, and
+ * loading/saving files), and reports the ones that take longer than the
+ * threshold for that operation.
+ * <p>
+ * An operation is traced by {@link #start(String, String, String) starting} a
+ * {@link Trace} before it and {@link Trace#close() closing} it after it
+ * (normally with a try-with-resources statement). When a slow operation is
+ * found, it is logged, passed to the registered {@link #addListener(Consumer)
+ * listeners}, and kept in a history of the most recent slow operations (the
+ * size of the history is given by the settings).
+ * <p>
+ * Traces started while another trace is open in the same thread are nested in
+ * it: they inherit its database and structure if they don't specify their own,
+ * and the backend calls made while the nested trace is open also count for the
+ * enclosing one. Backend calls are counted automatically when they are
+ * {@link DatabaseMetrics#recordBackendCall(long) recorded in the metrics}.
+ * <p>
+ * The sizes of the key and value of an operation are only estimated if the
+ * operation turns out to be slow, so that tracing fast operations stays cheap.
+ * <p>
+ * The operations traced by the library are <tt>get</tt>, <tt>getAll</tt>,
+ * <tt>put</tt>, <tt>putAll</tt>, <tt>remove</tt>, <tt>containsKey</tt>,
+ * <tt>containsValue</tt> and <tt>size</tt> on the trees and maps of an
+ * {@link com.github.thiagotgm.bot_utils.storage.impl.AbstractDatabase
+ * AbstractDatabase}, <tt>encode</tt> and <tt>decode</tt> on a
+ * {@link Translator}, and <tt>load</tt> and <tt>save</tt> of the files of an
+ * {@link com.github.thiagotgm.bot_utils.storage.impl.XMLDatabase XMLDatabase}.
+ * <p>
+ * The default threshold is given by the settings, and can be overridden for
+ * each operation. A threshold of 0 disables tracing (of that operation, or of
+ * all operations without an override).
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class OperationTracer {
+
+    private static final Logger LOG = LoggerFactory.getLogger( OperationTracer.class );
+
+    /**
+     * Setting that specifies the default threshold, in milliseconds.
+     */
+    public static final String THRESHOLD_SETTING = "Slow operation threshold";
+    /**
+     * Setting that specifies how many slow operations are kept in the history.
+     */
+    public static final String HISTORY_SETTING = "Slow operation history";
+
+    private static final ConcurrentMap<String, Long> THRESHOLDS = new ConcurrentHashMap<>();
+    private static final List<Consumer<SlowOperation>> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+    private static final SlowOperation[] HISTORY = new SlowOperation[Math.max( 1,
+            Settings.getIntSetting( HISTORY_SETTING ) )];
+    private static int historyNext = 0;
+    private static int historySize = 0;
+
+    private static volatile long defaultThreshold = TimeUnit.MILLISECONDS
+            .toNanos( Math.max( 0, Settings.getLongSetting( THRESHOLD_SETTING ) ) );
+    private static volatile boolean enabled = defaultThreshold > 0;
+
+    /**
+     * Trace that does nothing, used when tracing is disabled.
+     */
+    private static final Trace DISABLED = new Trace();
+
+    /**
+     * Should not be instantiated.
+     */
+    private OperationTracer() {}
+
+    /**
+     * Estimates the sizes of the keys and values of traced operations.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    public interface Sizer {
+
+        /**
+         * Estimates the size of a key.
+         *
+         * @param key
+         *            The key.
+         * @return The estimated size, in bytes.
+         */
+        long keySize( Object key );
+
+        /**
+         * Estimates the size of a value.
+         *
+         * @param value
+         *            The value.
+         * @return The estimated size, in bytes.
+         */
+        long valueSize( Object value );
+
+    }
+
+    /* Configuration */
+
+    /**
+     * Retrieves the threshold of an operation.
+     *
+     * @param operation
+     *            The name of the operation.
+     * @param unit
+     *            The unit to get the threshold in.
+     * @return The threshold. 0 if tracing of the operation is disabled.
+     */
+    public static long getThreshold( String operation, TimeUnit unit ) {
+
+        Long threshold = THRESHOLDS.get( operation );
+        return unit.convert( threshold == null ? defaultThreshold : threshold, TimeUnit.NANOSECONDS );
+
+    }
+
+    /**
+     * Sets the threshold of an operation, overriding the default.
+     *
+     * @param operation
+     *            The name of the operation.
+     * @param threshold
+     *            The threshold. If 0, tracing of the operation is disabled. If
+     *            negative, the override is removed (so the default is used).
+     * @param unit
+     *            The unit of the threshold.
+     * @throws NullPointerException
+     *             if the operation or the unit is <tt>null</tt>.
+     */
+    public static synchronized void setThreshold( String operation, long threshold, TimeUnit unit )
+            throws NullPointerException {
+
+        if ( threshold < 0 ) {
+            THRESHOLDS.remove( operation );
+        } else {
+            THRESHOLDS.put( operation, unit.toNanos( threshold ) );
+        }
+        updateEnabled();
+
+    }
+
+    /**
+     * Sets the default threshold, used by operations that have no override.
+     *
+     * @param threshold
+     *            The threshold. If 0 (or negative), tracing is disabled for all
+     *            operations that have no override.
+     * @param unit
+     *            The unit of the threshold.
+     */
+    public static synchronized void setDefaultThreshold( long threshold, TimeUnit unit ) {
+
+        defaultThreshold = unit.toNanos( Math.max( 0, threshold ) );
+        updateEnabled();
+
+    }
+
+    /**
+     * Updates whether any operation is traced.
+     */
+    private static void updateEnabled() {
+
+        boolean any = defaultThreshold > 0;
+        for ( long threshold : THRESHOLDS.values() ) {
+
+            any |= threshold > 0;
+
+        }
+        enabled = any;
+
+    }
+
+    /**
+     * Registers a listener to be called with each slow operation found. The
+     * listener is called in the thread that executed the operation.
+     *
+     * @param listener
+     *            The listener.
+     * @throws NullPointerException
+     *             if the listener is <tt>null</tt>.
+     */
+    public static void addListener( Consumer<SlowOperation> listener ) throws NullPointerException {
+
+        if ( listener == null ) {
+            throw new NullPointerException( "Listener cannot be null." );
+        }
+        LISTENERS.add( listener );
+
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener
+     *            The listener.
+     */
+    public static void removeListener( Consumer<SlowOperation> listener ) {
+
+        LISTENERS.remove( listener );
+
+    }
+
+    /* History */
+
+    /**
+     * Retrieves the most recent slow operations.
+     *
+     * @return The slow operations, from oldest to newest.
+     */
+    public static synchronized List<SlowOperation> getRecent() {
+
+        List<SlowOperation> recent = new ArrayList<>( historySize );
+        for ( int i = historySize; i > 0; i-- ) {
+
+            recent.add( HISTORY[( historyNext - i + HISTORY.length ) % HISTORY.length] );
+
+        }
+        return recent;
+
+    }
+
+    /**
+     * Discards the history of slow operations.
+     */
+    public static synchronized void clearRecent() {
+
+        for ( int i = 0; i < HISTORY.length; i++ ) {
+
+            HISTORY[i] = null;
+
+        }
+        historyNext = 0;
+        historySize = 0;
+
+    }
+
+    /**
+     * Reports a slow operation.
+     *
+     * @param operation
+     *            The operation.
+     */
+    private static void report( SlowOperation operation ) {
+
+        LOG.warn( "Slow operation: {}", operation );
+        synchronized ( OperationTracer.class ) {
+            HISTORY[historyNext] = operation;
+            historyNext = ( historyNext + 1 ) % HISTORY.length;
+            historySize = Math.min( historySize + 1, HISTORY.length );
+        }
+        for ( Consumer<SlowOperation> listener : LISTENERS ) {
+
+            try {
+                listener.accept( operation );
+            } catch ( RuntimeException e ) {
+                LOG.error( "Slow operation listener failed.", e );
+            }
+
+        }
+
+    }
+
+    /* Tracing */
+
+    /**
+     * Starts tracing an operation in the current thread, on the same database
+     * and structure as the enclosing trace (if any).
+     *
+     * @param operation
+     *            The name of the operation.
+     * @return The trace. It must be closed once the operation is finished.
+     */
+    public static Trace start( String operation ) {
+
+        return start( operation, null, null, null );
+
+    }
+
+    /**
+     * Starts tracing an operation in the current thread.
+     *
+     * @param operation
+     *            The name of the operation.
+     * @param database
+     *            The name of the database, or <tt>null</tt> to use the one of the
+     *            enclosing trace (if any).
+     * @param structure
+     *            The name of the tree, map, or file being operated on, or
+     *            <tt>null</tt> to use the one of the enclosing trace (if any).
+     * @return The trace. It must be closed once the operation is finished.
+     */
+    public static Trace start( String operation, String database, String structure ) {
+
+        return start( operation, database, structure, null );
+
+    }
+
+    /**
+     * Starts tracing an operation on a tree or map in the current thread.
+     *
+     * @param operation
+     *            The name of the operation.
+     * @param metrics
+     *            The metrics of the tree or map, which identify it.
+     * @param sizer
+     *            The sizer to estimate the size of the key and value with, or
+     *            <tt>null</tt> if they are given directly.
+     * @return The trace. It must be closed once the operation is finished.
+     */
+    public static Trace start( String operation, DatabaseMetrics metrics, Sizer sizer ) {
+
+        return start( operation, metrics.getDatabase(), metrics.getStructure(), sizer );
+
+    }
+
+    /**
+     * Starts tracing an operation in the current thread.
+     *
+     * @param operation
+     *            The name of the operation.
+     * @param database
+     *            The name of the database, or <tt>null</tt> to use the one of the
+     *            enclosing trace.
+     * @param structure
+     *            The name of the structure, or <tt>null</tt> to use the one of the
+     *            enclosing trace.
+     * @param sizer
+     *            The sizer, or <tt>null</tt>.
+     * @return The trace.
+     */
+    private static Trace start( String operation, String database, String structure, Sizer sizer ) {
+
+        if ( !enabled ) {
+            return DISABLED;
+        }
+        Trace parent = CURRENT.get();
+        if ( parent != null ) {
+            database = database == null ? parent.database : database;
+            structure = structure == null ? parent.structure : structure;
+        }
+        Trace trace = new Trace( operation, database, structure, sizer, parent );
+        CURRENT.set( trace );
+        return trace;
+
+    }
+
+    /**
+     * Records that a call to a database backend was made, counting it in the
+     * traces currently open in this thread.
+     */
+    public static void backendCall() {
+
+        if ( !enabled ) {
+            return;
+        }
+        for ( Trace trace = CURRENT.get(); trace != null; trace = trace.parent ) {
+
+            trace.backendCalls++;
+
+        }
+
+    }
+
+    /**
+     * Trace of a single operation.
+     * <p>
+     * Traces are not thread-safe, and must be closed in the same thread that they
+     * were started in, in the reverse order that they were started.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    public static class Trace implements AutoCloseable {
+
+        private final String operation;
+        private final String database;
+        private final String structure;
+        private final Sizer sizer;
+        private final Trace parent;
+        private final long start;
+        private int backendCalls;
+        private Object key;
+        private Object value;
+        private boolean hasKey;
+        private boolean hasValue;
+        private long keySize;
+        private long valueSize;
+        private int items;
+        private String detail;
+
+        /**
+         * Instantiates a disabled trace.
+         */
+        private Trace() {
+
+            this( null, null, null, null, null );
+
+        }
+
+        /**
+         * Instantiates a trace that starts now.
+         *
+         * @param operation
+         *            The name of the operation.
+         * @param database
+         *            The name of the database.
+         * @param structure
+         *            The name of the structure.
+         * @param sizer
+         *            The sizer for the key and value.
+         * @param parent
+         *            The enclosing trace.
+         */
+        private Trace( String operation, String database, String structure, Sizer sizer, Trace parent ) {
+
+            this.operation = operation;
+            this.database = database;
+            this.structure = structure;
+            this.sizer = sizer;
+            this.parent = parent;
+            this.start = operation == null ? 0 : System.nanoTime();
+            this.keySize = -1;
+            this.valueSize = -1;
+            this.items = -1;
+
+        }
+
+        /**
+         * Sets the key that the operation is on. Its size is estimated by the
+         * sizer of the trace, if the operation is slow.
+         *
+         * @param key
+         *            The key.
+         * @return This trace.
+         */
+        public Trace key( Object key ) {
+
+            if ( this != DISABLED ) {
+                this.key = key;
+                this.hasKey = true;
+            }
+            return this;
+
+        }
+
+        /**
+         * Sets the value used or produced by the operation. Its size is estimated
+         * by the sizer of the trace, if the operation is slow.
+         *
+         * @param value
+         *            The value.
+         * @param <T>
+         *            The type of the value.
+         * @return The given value.
+         */
+        public <T> T value( T value ) {
+
+            if ( this != DISABLED ) {
+                this.value = value;
+                this.hasValue = true;
+            }
+            return value;
+
+        }
+
+        /**
+         * Sets the size of the key that the operation is on.
+         *
+         * @param size
+         *            The size, in bytes.
+         * @return This trace.
+         */
+        public Trace keySize( long size ) {
+
+            if ( this != DISABLED ) {
+                this.keySize = size;
+            }
+            return this;
+
+        }
+
+        /**
+         * Sets the size of the value used or produced by the operation.
+         *
+         * @param size
+         *            The size, in bytes.
+         * @return This trace.
+         */
+        public Trace valueSize( long size ) {
+
+            if ( this != DISABLED ) {
+                this.valueSize = size;
+            }
+            return this;
+
+        }
+
+        /**
+         * Sets the amount of items (such as keys) that the operation is on, for
+         * bulk operations.
+         *
+         * @param items
+         *            The amount of items.
+         * @return This trace.
+         */
+        public Trace items( int items ) {
+
+            if ( this != DISABLED ) {
+                this.items = items;
+            }
+            return this;
+
+        }
+
+        /**
+         * Sets extra information about the operation (such as the translator
+         * used).
+         *
+         * @param detail
+         *            The information.
+         * @return This trace.
+         */
+        public Trace detail( String detail ) {
+
+            if ( this != DISABLED ) {
+                this.detail = detail;
+            }
+            return this;
+
+        }
+
+        /**
+         * Finishes the trace, reporting the operation if it was slow.
+         */
+        @Override
+        public void close() {
+
+            if ( this == DISABLED ) {
+                return;
+            }
+            long duration = System.nanoTime() - start;
+            if ( CURRENT.get() == this ) {
+                if ( parent == null ) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set( parent );
+                }
+            }
+
+            Long override = THRESHOLDS.get( operation );
+            long threshold = override == null ? defaultThreshold : override;
+            if ( ( threshold <= 0 ) || ( duration < threshold ) ) {
+                return; // Not slow.
+            }
+            if ( sizer != null ) { // Only estimate sizes now.
+                try {
+                    if ( hasKey && ( keySize < 0 ) ) {
+                        keySize = sizer.keySize( key );
+                    }
+                    if ( hasValue && ( valueSize < 0 ) && ( value != null ) ) {
+                        valueSize = sizer.valueSize( value );
+                    }
+                } catch ( RuntimeException e ) {
+                    LOG.debug( "Could not estimate sizes of slow operation.", e );
+                }
+            }
+            report( new SlowOperation( System.currentTimeMillis(), operation, database, structure, detail,
+                    duration, keySize, valueSize, items, backendCalls, Thread.currentThread().getName() ) );
+
+        }
+
+    }
+
+    /**
+     * Information about an operation that took longer than its threshold.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    public static class SlowOperation {
+
+        private final long time;
+        private final String operation;
+        private final String database;
+        private final String structure;
+        private final String detail;
+        private final long duration;
+        private final long keySize;
+        private final long valueSize;
+        private final int items;
+        private final int backendCalls;
+        private final String thread;
+
+        /**
+         * Instantiates the information of a slow operation.
+         *
+         * @param time
+         *            When the operation finished, in milliseconds since the epoch.
+         * @param operation
+         *            The name of the operation.
+         * @param database
+         *            The name of the database, or <tt>null</tt>.
+         * @param structure
+         *            The name of the structure, or <tt>null</tt>.
+         * @param detail
+         *            Extra information, or <tt>null</tt>.
+         * @param duration
+         *            How long the operation took, in nanoseconds.
+         * @param keySize
+         *            The estimated size of the key, or -1 if unknown.
+         * @param valueSize
+         *            The estimated size of the value, or -1 if unknown.
+         * @param items
+         *            The amount of items, or -1 if not a bulk operation.
+         * @param backendCalls
+         *            The amount of backend calls made.
+         * @param thread
+         *            The name of the thread that executed the operation.
+         */
+        public SlowOperation( long time, String operation, String database, String structure, String detail,
+                long duration, long keySize, long valueSize, int items, int backendCalls, String thread ) {
+
+            this.time = time;
+            this.operation = operation;
+            this.database = database;
+            this.structure = structure;
+            this.detail = detail;
+            this.duration = duration;
+            this.keySize = keySize;
+            this.valueSize = valueSize;
+            this.items = items;
+            this.backendCalls = backendCalls;
+            this.thread = thread;
+
+        }
+
+        /**
+         * Retrieves when the operation finished.
+         *
+         * @return The time, in milliseconds since the epoch.
+         */
+        public long getTime() {
+
+            return time;
+
+        }
+
+        /**
+         * Retrieves the name of the operation.
+         *
+         * @return The operation.
+         */
+        public String getOperation() {
+
+            return operation;
+
+        }
+
+        /**
+         * Retrieves the name of the database the operation was on.
+         *
+         * @return The database, or <tt>null</tt> if unknown.
+         */
+        public String getDatabase() {
+
+            return database;
+
+        }
+
+        /**
+         * Retrieves the name of the tree, map, or file the operation was on.
+         *
+         * @return The structure, or <tt>null</tt> if unknown.
+         */
+        public String getStructure() {
+
+            return structure;
+
+        }
+
+        /**
+         * Retrieves extra information about the operation, such as the translator
+         * used.
+         *
+         * @return The information, or <tt>null</tt> if there is none.
+         */
+        public String getDetail() {
+
+            return detail;
+
+        }
+
+        /**
+         * Retrieves how long the operation took.
+         *
+         * @param unit
+         *            The unit to get the duration in.
+         * @return The duration.
+         */
+        public long getDuration( TimeUnit unit ) {
+
+            return unit.convert( duration, TimeUnit.NANOSECONDS );
+
+        }
+
+        /**
+         * Retrieves the estimated size of the key of the operation.
+         *
+         * @return The size, in bytes, or -1 if unknown.
+         */
+        public long getKeySize() {
+
+            return keySize;
+
+        }
+
+        /**
+         * Retrieves the estimated size of the value of the operation.
+         *
+         * @return The size, in bytes, or -1 if unknown.
+         */
+        public long getValueSize() {
+
+            return valueSize;
+
+        }
+
+        /**
+         * Retrieves the amount of items a bulk operation was on.
+         *
+         * @return The amount of items, or -1 if not a bulk operation.
+         */
+        public int getItems() {
+
+            return items;
+
+        }
+
+        /**
+         * Retrieves the amount of calls to a database backend made during the
+         * operation.
+         *
+         * @return The amount of backend calls.
+         */
+        public int getBackendCalls() {
+
+            return backendCalls;
+
+        }
+
+        /**
+         * Retrieves the name of the thread that executed the operation.
+         *
+         * @return The thread name.
+         */
+        public String getThread() {
+
+            return thread;
+
+        }
+
+        @Override
+        public String toString() {
+
+            StringBuilder builder = new StringBuilder( "operation=" ).append( operation );
+            if ( database != null ) {
+                builder.append( " database=" ).append( database );
+            }
+            if ( structure != null ) {
+                builder.append( " structure=" ).append( structure );
+            }
+            if ( detail != null ) {
+                builder.append( " detail=" ).append( detail );
+            }
+            builder.append( " duration=" ).append( TimeUnit.NANOSECONDS.toMicros( duration ) / 1000.0 )
+                    .append( "ms" );
+            if ( keySize >= 0 ) {
+                builder.append( " keySize=" ).append( keySize );
+            }
+            if ( valueSize >= 0 ) {
+                builder.append( " valueSize=" ).append( valueSize );
+            }
+            if ( items >= 0 ) {
+                builder.append( " items=" ).append( items );
+            }
+            return builder.append( " backendCalls=" ).append( backendCalls ).append( " thread=" ).append( thread )
+                    .toString();
+
+        }
+
+    }
+
+}
@@ -27,7 +27,7 @@ import com.google.gson.GsonBuilder;
  * Whether <tt>null</tt> instances can be encoded and decoded is up to the
  * implementation.
  * 
- * @version 2.0
+ * @version 2.2
  * @author ThiagoTGM
  * @since 2018-07-16
  * @param <T> The type of object to be translated.
@@ -81,8 +81,9 @@ public interface Translator<T> {
 	 * Converts the given object into a String format.
 	 * <p>
 	 * By default, this just encodes the return of {@link #toData(Object) toData(T)}
-	 * into a JSON format. If this is overriden, {@link #decode(String)} must be
-	 * overriden as well.
+	 * into a JSON format, {@link OperationTracer tracing} how long it takes and
+	 * recording it in the {@link TranslatorMetrics metrics} of the class. If
+	 * this is overriden, {@link #decode(String)} must be overriden as well.
 	 * 
 	 * @param obj The object to be encoded.
 	 * @return The String encoding of the object.
@@ -93,7 +94,15 @@ public interface Translator<T> {
 	 */
 	default String encode( T obj ) throws TranslationException, NullPointerException {
 		
-		return GSON.toJson( toData( obj ) );
+		long start = System.nanoTime();
+		try ( OperationTracer.Trace trace = OperationTracer.start( "encode" )
+				.detail( getClass().getName() ) ) {
+			String encoded = GSON.toJson( toData( obj ) );
+			trace.valueSize( DataWeigher.estimateSize( encoded ) );
+			return encoded;
+		} finally {
+			TranslatorMetrics.get( getClass() ).recordEncode( System.nanoTime() - start );
+		}
 		
 	}
 	
@@ -130,6 +139,9 @@ public interface Translator<T> {
 	
 	/**
 	 * Restores an object from a String created using {@link #encode(Object)}.
+	 * <p>
+	 * By default, the decoding is {@link OperationTracer traced} and recorded in
+	 * the {@link TranslatorMetrics metrics} of the class.
 	 * 
 	 * @param str The string to be decoded.
 	 * @return The translated object.
@@ -142,7 +154,13 @@ public interface Translator<T> {
 			throw new NullPointerException( "String cannot be null." );
 		}
 		
-		return fromData( GSON.fromJson( str, Data.class ) );
+		long start = System.nanoTime();
+		try ( OperationTracer.Trace trace = OperationTracer.start( "decode" )
+				.detail( getClass().getName() ).valueSize( DataWeigher.estimateSize( str ) ) ) {
+			return fromData( GSON.fromJson( str, Data.class ) );
+		} finally {
+			TranslatorMetrics.get( getClass() ).recordDecode( System.nanoTime() - start );
+		}
 		
 	}
 
@@ -0,0 +1,187 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Metrics of the {@link Translator translators} of a single class, kept in a
+ * registry keyed by the name of the class.
+ * <p>
+ * The default implementations of {@link Translator#encode(Object)} and
+ * {@link Translator#decode(String)} record how long each call takes (whether
+ * it succeeds or not), in nanoseconds, into {@link LatencyHistogram
+ * histograms}. Recording never blocks.
+ * <p>
+ * Metrics are kept for as long as the program runs.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class TranslatorMetrics {
+
+    private static final ConcurrentMap<String, TranslatorMetrics> REGISTRY = new ConcurrentHashMap<>();
+    /**
+     * Metrics of each translator class, so that recording does not need to look
+     * up the registry.
+     */
+    private static final ClassValue<TranslatorMetrics> BY_CLASS = new ClassValue<TranslatorMetrics>() {
+
+        @Override
+        protected TranslatorMetrics computeValue( Class<?> type ) {
+
+            return TranslatorMetrics.get( type.getName() );
+
+        }
+
+    };
+
+    private final String translator;
+    private final LatencyHistogram encodes;
+    private final LatencyHistogram decodes;
+
+    /**
+     * Instantiates empty metrics.
+     *
+     * @param translator
+     *            The name of the translator class.
+     */
+    private TranslatorMetrics( String translator ) {
+
+        this.translator = translator;
+        this.encodes = new LatencyHistogram();
+        this.decodes = new LatencyHistogram();
+
+    }
+
+    /**
+     * Retrieves the metrics of a translator class, creating them if they do not
+     * exist yet.
+     *
+     * @param translator
+     *            The name of the translator class.
+     * @return The metrics.
+     * @throws NullPointerException
+     *             if the argument is <tt>null</tt>.
+     */
+    public static TranslatorMetrics get( String translator ) throws NullPointerException {
+
+        if ( translator == null ) {
+            throw new NullPointerException( "Translator name cannot be null." );
+        }
+        return REGISTRY.computeIfAbsent( translator, TranslatorMetrics::new );
+
+    }
+
+    /**
+     * Retrieves the metrics of a translator class, creating them if they do not
+     * exist yet.
+     *
+     * @param type
+     *            The translator class.
+     * @return The metrics.
+     * @throws NullPointerException
+     *             if the argument is <tt>null</tt>.
+     */
+    public static TranslatorMetrics get( Class<?> type ) throws NullPointerException {
+
+        return BY_CLASS.get( type );
+
+    }
+
+    /**
+     * Retrieves the metrics of all the translator classes that have any.
+     *
+     * @return The metrics. The returned list is not affected by metrics created
+     *         later.
+     */
+    public static List<TranslatorMetrics> getAll() {
+
+        return Collections.unmodifiableList( new ArrayList<>( REGISTRY.values() ) );
+
+    }
+
+    /**
+     * Retrieves the name of the translator class.
+     *
+     * @return The name of the class.
+     */
+    public String getTranslator() {
+
+        return translator;
+
+    }
+
+    /* Recording */
+
+    /**
+     * Records a call to {@link Translator#encode(Object) encode}.
+     *
+     * @param nanos
+     *            How long it took, in nanoseconds.
+     */
+    public void recordEncode( long nanos ) {
+
+        encodes.record( nanos );
+
+    }
+
+    /**
+     * Records a call to {@link Translator#decode(String) decode}.
+     *
+     * @param nanos
+     *            How long it took, in nanoseconds.
+     */
+    public void recordDecode( long nanos ) {
+
+        decodes.record( nanos );
+
+    }
+
+    /* Reading */
+
+    /**
+     * Retrieves the latencies of the calls to {@link Translator#encode(Object)
+     * encode}.
+     *
+     * @return The latencies.
+     */
+    public LatencyHistogram getEncodes() {
+
+        return encodes;
+
+    }
+
+    /**
+     * Retrieves the latencies of the calls to {@link Translator#decode(String)
+     * decode}.
+     *
+     * @return The latencies.
+     */
+    public LatencyHistogram getDecodes() {
+
+        return decodes;
+
+    }
+
+}
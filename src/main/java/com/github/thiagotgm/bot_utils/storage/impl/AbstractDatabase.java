@@ -17,23 +17,64 @@
 
 package com.github.thiagotgm.bot_utils.storage.impl;
 
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.thiagotgm.bot_utils.SaveManager;
 import com.github.thiagotgm.bot_utils.Settings;
+import com.github.thiagotgm.bot_utils.storage.AsyncMap;
+import com.github.thiagotgm.bot_utils.storage.AsyncTree;
+import com.github.thiagotgm.bot_utils.storage.BulkMap;
+import com.github.thiagotgm.bot_utils.storage.BulkTree;
 import com.github.thiagotgm.bot_utils.storage.Cache;
+import com.github.thiagotgm.bot_utils.storage.CacheSpec;
+import com.github.thiagotgm.bot_utils.storage.DataWeigher;
 import com.github.thiagotgm.bot_utils.storage.Database;
-import com.github.thiagotgm.bot_utils.storage.DatabaseStats;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMXBean;
+import com.github.thiagotgm.bot_utils.storage.DatabaseManager;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMetrics;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMetrics.Operation;
+import com.github.thiagotgm.bot_utils.storage.OffHeapStore;
+import com.github.thiagotgm.bot_utils.storage.OperationTracer;
+import com.github.thiagotgm.bot_utils.storage.OperationTracer.Trace;
+import com.github.thiagotgm.bot_utils.storage.TranslationException;
 import com.github.thiagotgm.bot_utils.storage.Translator;
+import com.github.thiagotgm.bot_utils.storage.translate.ListTranslator;
+import com.github.thiagotgm.bot_utils.utils.AsyncTools;
 import com.github.thiagotgm.bot_utils.utils.graph.Graph;
+import com.github.thiagotgm.bot_utils.utils.graph.Graphs;
 import com.github.thiagotgm.bot_utils.utils.graph.Tree;
 
 /**
@@ -58,20 +99,43 @@ import com.github.thiagotgm.bot_utils.utils.graph.Tree;
  * is started). No other operations are buffered, although subclasses are free
  * to use their own internal caches for other operations.<br>
  * OBS: Using operations in the Set views of wrapped maps and trees that change
- * the associated map/tree will immediately invalidate the entire cache for that
- * map/tree.
+ * the associated map/tree will invalidate the cached mappings that they affect
+ * (or the entire cache for that map/tree, in the case of <tt>clear()</tt>).
+ * <p>
+ * The eviction policy of the caches is given by the
+ * {@link #CACHE_POLICY_SETTING policy setting}, and can be chosen for each
+ * database with a setting named {@value #CACHE_POLICY_SETTING_PREFIX} followed
+ * by the {@link #getMetricsName() name of the database}.
+ * <p>
+ * If {@link #WRITE_BEHIND_DELAY write-behind} is enabled (by the settings or
+ * by the {@link CacheSpec} of a tree or map), writes are buffered and written to
+ * the database in batches by a background thread, so the backing trees and maps
+ * of subclasses that use it must support being written to from another thread.
+ * Subclasses must call {@link #flushWriteBehind()} when closing, before setting
+ * {@link #closed} to <tt>true</tt>.
+ * <p>
+ * The wrappers also record the latencies of their operations, their cache
+ * statistics, and the calls they make to the backing trees and maps in the
+ * {@link DatabaseMetrics metrics} of each tree and map, under the
+ * {@link #getMetricsName() name of the database}, and
+ * {@link OperationTracer trace} their operations to find slow ones.
+ * <p>
+ * The state of the caches can be monitored (and the caches flushed) through the
+ * {@link #getMXBean() management interface} of the database.
  * <p>
  * The wrappers used for trees and maps are not thread-safe, and as a result
  * trees and maps obtained from the methods implemented here are not thread-safe
  * even if the underlying implementation of the database is.
  * 
- * @version 1.0
+ * @version 1.7
  * @author ThiagoTGM
  * @since 2018-07-26
  * @see Cache
  */
 public abstract class AbstractDatabase implements Database {
 
+    private static final Logger LOG = LoggerFactory.getLogger( AbstractDatabase.class );
+
     /**
      * Name of the setting that determines the size of the used caches.
      */
@@ -80,6 +144,311 @@ public abstract class AbstractDatabase implements Database {
      * Size of the caches, based on the {@link #CACHE_SETTING size setting}.
      */
     public static final int CACHE_SIZE = Settings.getIntSetting( CACHE_SETTING );
+    /**
+     * Name of the setting that determines the eviction policy of the used caches.
+     * The value should be the name of one of the {@link Cache.Policy policies}.
+     */
+    public static final String CACHE_POLICY_SETTING = "Cache policy";
+    /**
+     * Eviction policy of the caches, based on the {@link #CACHE_POLICY_SETTING
+     * policy setting}. If the setting does not specify a valid policy, uses
+     * {@link Cache.Policy#LRU LRU}.
+     */
+    public static final Cache.Policy CACHE_POLICY = parsePolicy( Settings.getStringSetting( CACHE_POLICY_SETTING ),
+            Cache.Policy.LRU );
+    /**
+     * Prefix of the names of the settings that determine the eviction policy of
+     * the caches of a specific database. The full name of the setting is the
+     * prefix followed by the {@link #getMetricsName() name of the database} (for
+     * example, <tt>Cache policy: DynamoDBDatabase</tt>), and the value is the
+     * name of one of the {@link Cache.Policy policies}. Databases without such a
+     * setting use the {@link #CACHE_POLICY policy setting}.
+     */
+    public static final String CACHE_POLICY_SETTING_PREFIX = CACHE_POLICY_SETTING + ": ";
+    /**
+     * Name of the setting that determines the maximum amount of keys that are
+     * remembered as not existing in the database, for each cache.
+     */
+    public static final String NEGATIVE_CACHE_SETTING = "Negative cache size";
+    /**
+     * Maximum amount of keys remembered as absent by each cache, based on the
+     * {@link #NEGATIVE_CACHE_SETTING size setting}. If 0 or less, absent keys are
+     * not remembered.
+     */
+    public static final int NEGATIVE_CACHE_SIZE = Settings.getIntSetting( NEGATIVE_CACHE_SETTING );
+    /**
+     * Name of the setting that determines for how long a key is remembered as not
+     * existing in the database, in seconds.
+     */
+    public static final String NEGATIVE_CACHE_TTL_SETTING = "Negative cache duration";
+    /**
+     * For how long a key is remembered as absent, in nanoseconds, based on the
+     * {@link #NEGATIVE_CACHE_TTL_SETTING duration setting}. If 0 or less, absent
+     * keys are not remembered.
+     */
+    public static final long NEGATIVE_CACHE_TTL = TimeUnit.SECONDS
+            .toNanos( Settings.getLongSetting( NEGATIVE_CACHE_TTL_SETTING ) );
+    /**
+     * Name of the setting that determines how long, in seconds, a cached value
+     * stays valid after it was loaded or written. 0 means that values do not
+     * expire based on write time.
+     */
+    public static final String CACHE_EXPIRE_AFTER_WRITE_SETTING = "Cache expire after write";
+    /**
+     * Time, in seconds, that a cached value stays valid after it was loaded or
+     * written, based on the {@link #CACHE_EXPIRE_AFTER_WRITE_SETTING setting}.
+     * If 0, values do not expire based on write time.
+     */
+    public static final long CACHE_EXPIRE_AFTER_WRITE = Math.max( 0,
+            Settings.getLongSetting( CACHE_EXPIRE_AFTER_WRITE_SETTING ) );
+    /**
+     * Name of the setting that determines how long, in seconds, a cached value
+     * stays valid after it was last used. 0 means that values do not expire based
+     * on access time.
+     */
+    public static final String CACHE_EXPIRE_AFTER_ACCESS_SETTING = "Cache expire after access";
+    /**
+     * Time, in seconds, that a cached value stays valid after it was last used,
+     * based on the {@link #CACHE_EXPIRE_AFTER_ACCESS_SETTING setting}. If 0,
+     * values do not expire based on access time.
+     */
+    public static final long CACHE_EXPIRE_AFTER_ACCESS = Math.max( 0,
+            Settings.getLongSetting( CACHE_EXPIRE_AFTER_ACCESS_SETTING ) );
+    /**
+     * Name of the setting that determines how long, in seconds, after a cached
+     * value was loaded or written that using it causes it to be reloaded in the
+     * background. 0 means that values are never reloaded in the background.
+     * <p>
+     * Should be lower than the {@link #CACHE_EXPIRE_AFTER_WRITE_SETTING expire
+     * after write time}, so that frequently used values get reloaded before they
+     * expire.
+     */
+    public static final String CACHE_REFRESH_SETTING = "Cache refresh after write";
+    /**
+     * Time, in seconds, after a cached value was loaded or written that using it
+     * causes it to be reloaded in the background, based on the
+     * {@link #CACHE_REFRESH_SETTING setting}. If 0, values are never reloaded in
+     * the background.
+     */
+    public static final long CACHE_REFRESH = Math.max( 0, Settings.getLongSetting( CACHE_REFRESH_SETTING ) );
+    /**
+     * Name of the setting that determines the maximum amount of memory, in
+     * megabytes, that the caches of each database may use in total. 0 means that
+     * the caches are bounded by the amount of entries ({@link #CACHE_SETTING})
+     * instead.
+     */
+    public static final String CACHE_BUDGET_SETTING = "Cache memory budget";
+    /**
+     * Maximum amount of memory, in bytes, that the caches of each database may use
+     * in total, based on the {@link #CACHE_BUDGET_SETTING budget setting}. If 0,
+     * the caches are bounded by the {@link #CACHE_SIZE amount of entries}
+     * instead.
+     * <p>
+     * The memory used by each mapping is {@link DataWeigher estimated} from the
+     * size of its Data representation. The budget is shared among all the trees
+     * and maps of the database, where each one may use more than an equal share
+     * while the others do not need it.
+     */
+    public static final long CACHE_BUDGET = Math.max( 0, Settings.getLongSetting( CACHE_BUDGET_SETTING ) ) << 20;
+    /**
+     * Name of the setting that determines the amount of memory, in megabytes,
+     * outside of the Java heap that each database may use as a second cache tier.
+     * 0 means that there is no second tier.
+     */
+    public static final String OFF_HEAP_CACHE_SETTING = "Off-heap cache size";
+    /**
+     * Amount of memory, in bytes, outside of the Java heap that each database may
+     * use as a second cache tier, based on the {@link #OFF_HEAP_CACHE_SETTING
+     * size setting}. If 0, there is no second tier.
+     * <p>
+     * Mappings evicted from the caches of the trees and maps of the database are
+     * encoded by their value translator and moved to an {@link OffHeapStore}
+     * shared by the database, and are moved back to the cache when they are used
+     * again. Caches that expire mappings do not use the second tier, since it
+     * does not keep track of when values were written or used.
+     */
+    public static final long OFF_HEAP_CACHE_SIZE = Math.max( 0,
+            Settings.getLongSetting( OFF_HEAP_CACHE_SETTING ) ) << 20;
+    /**
+     * Name of the setting that determines the maximum time, in milliseconds, that
+     * a write to a tree or map may be buffered before being written to the
+     * database. 0 means that writes are not buffered.
+     */
+    public static final String WRITE_BEHIND_DELAY_SETTING = "Write-behind delay";
+    /**
+     * Maximum time, in milliseconds, that a write may be buffered before being
+     * written to the database, based on the {@link #WRITE_BEHIND_DELAY_SETTING
+     * delay setting}. If 0, writes are written immediately, unless the
+     * {@link CacheSpec} of a tree or map specifies otherwise.
+     * <p>
+     * Buffered writes to the same key are coalesced, so that only the last one is
+     * written. Buffers are also written when they become full, when the program
+     * is {@link SaveManager#save() saved}, and when the database is closed.
+     * <p>
+     * Nothing closes the database automatically: only
+     * {@link com.github.thiagotgm.bot_utils.ExitManager#exit()} does, by calling
+     * {@link DatabaseManager#shutdown()} after its exit listeners. A program
+     * that ends in any other way must call {@link DatabaseManager#shutdown()}
+     * (or {@link #close() close} the database) first, or the writes buffered
+     * since the last save are lost.
+     */
+    public static final long WRITE_BEHIND_DELAY = Math.max( 0,
+            Settings.getLongSetting( WRITE_BEHIND_DELAY_SETTING ) );
+    /**
+     * Name of the setting that determines the maximum amount of writes that the
+     * write-behind buffer of a tree or map may hold.
+     */
+    public static final String WRITE_BEHIND_BUFFER_SETTING = "Write-behind buffer size";
+    /**
+     * Maximum amount of writes held by the write-behind buffer of each tree or
+     * map, based on the {@link #WRITE_BEHIND_BUFFER_SETTING size setting}. When
+     * a buffer reaches it, it is written to the database immediately.
+     */
+    public static final int WRITE_BEHIND_BUFFER_SIZE = Math.max( 1,
+            Settings.getIntSetting( WRITE_BEHIND_BUFFER_SETTING ) );
+    /**
+     * Name of the setting that determines the maximum amount of keys that are
+     * recorded for each tree and map when the database shuts down, to be
+     * prefetched the next time it starts. 0 means that keys are not recorded.
+     */
+    public static final String WARM_START_KEYS_SETTING = "Warm-start keys";
+    /**
+     * Maximum amount of keys recorded for each tree and map when the database
+     * shuts down, based on the {@link #WARM_START_KEYS_SETTING setting}. If 0,
+     * caches are not warmed up on startup.
+     *
+     * @see #getHotKeys(int)
+     */
+    public static final int WARM_START_KEYS = Math.max( 0, Settings.getIntSetting( WARM_START_KEYS_SETTING ) );
+    /**
+     * Name of the setting that determines the maximum total amount of keys that
+     * are prefetched when the database starts.
+     */
+    public static final String WARM_START_BUDGET_SETTING = "Warm-start budget";
+    /**
+     * Maximum total amount of keys prefetched when the database starts, based on
+     * the {@link #WARM_START_BUDGET_SETTING setting}.
+     *
+     * @see #warmUp(Map, int)
+     */
+    public static final int WARM_START_BUDGET = Math.max( 0, Settings.getIntSetting( WARM_START_BUDGET_SETTING ) );
+    /**
+     * Amount of keys prefetched by each background task when warming up a cache
+     * (with a single bulk fetch).
+     */
+    private static final int WARM_START_BATCH_SIZE = 100;
+    /**
+     * Cache configuration used for the properties that are not specified by the
+     * spec of a tree or map, based on the cache settings. Does not specify a
+     * maximum size, so that caches without one are bounded by the
+     * {@link #CACHE_BUDGET memory budget} if there is one, or by the
+     * {@link #CACHE_SIZE size setting} otherwise. The policy is replaced by the
+     * {@link #getCachePolicy() policy of each database}.
+     */
+    private static final CacheSpec DEFAULT_CACHE_SPEC = CacheSpec.DEFAULT.policy( CACHE_POLICY )
+            .expireAfterWrite( CACHE_EXPIRE_AFTER_WRITE, TimeUnit.SECONDS )
+            .expireAfterAccess( CACHE_EXPIRE_AFTER_ACCESS, TimeUnit.SECONDS )
+            .refreshAfterWrite( CACHE_REFRESH, TimeUnit.SECONDS )
+            .writeBehind( WRITE_BEHIND_DELAY, TimeUnit.MILLISECONDS );
+
+    /**
+     * Parses a cache policy setting.
+     *
+     * @param setting
+     *            The value of the setting.
+     * @param fallback
+     *            The policy to use if the setting is not a valid policy.
+     * @return The policy specified by the setting, or the fallback if the setting
+     *         is not a valid policy.
+     */
+    private static Cache.Policy parsePolicy( String setting, Cache.Policy fallback ) {
+
+        try {
+            return Cache.Policy.parse( setting );
+        } catch ( IllegalArgumentException | NullPointerException e ) {
+            LOG.warn( "Invalid cache policy \"{}\". Using {}.", setting, fallback );
+            return fallback;
+        }
+
+    }
+
+    /**
+     * Determines whether a cache with the given configuration is bounded by the
+     * memory budget of the database.
+     *
+     * @param spec
+     *            The configuration of the cache.
+     * @return <tt>true</tt> if the cache is part of the budget, <tt>false</tt>
+     *         otherwise.
+     */
+    private boolean isBudgeted( CacheSpec spec ) {
+
+        return ( cacheBudget != null ) && spec.isEnabled() && ( spec.getMaximumSize() == CacheSpec.UNSET );
+
+    }
+
+    /**
+     * Determines whether a cache with the given configuration uses the off-heap
+     * tier of the database.
+     *
+     * @param spec
+     *            The configuration of the cache.
+     * @return <tt>true</tt> if the cache uses the off-heap tier, <tt>false</tt>
+     *         otherwise.
+     */
+    private boolean usesOffHeap( CacheSpec spec ) {
+
+        return ( offHeapStore != null ) && spec.isEnabled()
+                && ( spec.getExpireAfterWrite( TimeUnit.NANOSECONDS ) <= 0 )
+                && ( spec.getExpireAfterAccess( TimeUnit.NANOSECONDS ) <= 0 );
+
+    }
+
+    /**
+     * Determines the cache configuration of a tree or map.
+     * <p>
+     * The properties specified by the {@link Database#CACHE_SPEC_SETTING_PREFIX
+     * setting} of the tree or map take precedence over the given spec, and the
+     * properties that neither specify are taken from the cache settings (with
+     * the {@link #getCachePolicy() policy of this database}).
+     *
+     * @param dataName
+     *            The name of the tree or map.
+     * @param cacheSpec
+     *            The spec given when obtaining the tree or map.
+     * @return The cache configuration.
+     */
+    private CacheSpec resolveCacheSpec( String dataName, CacheSpec cacheSpec ) {
+
+        String setting = CACHE_SPEC_SETTING_PREFIX + dataName;
+        if ( Settings.hasSetting( setting ) ) {
+            String value = Settings.getStringSetting( setting );
+            try {
+                cacheSpec = CacheSpec.parse( value ).orElse( cacheSpec );
+            } catch ( IllegalArgumentException e ) {
+                LOG.warn( "Invalid cache spec \"{}\" for \"{}\". Ignoring setting.", value, dataName, e );
+            }
+        }
+        return cacheSpec.orElse( DEFAULT_CACHE_SPEC.policy( getCachePolicy() ) );
+
+    }
+
+    /**
+     * Retrieves the eviction policy used by the caches of this database that do
+     * not specify one. It is given by the setting named
+     * {@value #CACHE_POLICY_SETTING_PREFIX} followed by the
+     * {@link #getMetricsName() name of the database}, if there is one, and by the
+     * {@link #CACHE_POLICY policy setting} otherwise.
+     *
+     * @return The policy.
+     */
+    protected Cache.Policy getCachePolicy() {
+
+        String setting = CACHE_POLICY_SETTING_PREFIX + getMetricsName();
+        return Settings.hasSetting( setting ) ? parsePolicy( Settings.getStringSetting( setting ), CACHE_POLICY )
+                : CACHE_POLICY;
+
+    }
 
     /**
      * Trees currently managed by the database.
@@ -90,6 +459,32 @@ public abstract class AbstractDatabase implements Database {
      */
     private final Map<String, MapEntry<?, ?>> maps;
 
+    /**
+     * Memory budget shared by the caches of this database, or <tt>null</tt> if
+     * the caches are bounded by amount of entries.
+     */
+    private final Cache.Budget cacheBudget;
+    /**
+     * Second cache tier shared by the caches of this database, or <tt>null</tt>
+     * if there is none.
+     */
+    private final OffHeapStore offHeapStore;
+
+    /**
+     * Write-behind buffers of the trees and maps of this database.
+     */
+    private final List<WriteBuffer<?, ?>> writeBuffers;
+    /**
+     * Flushes the write-behind buffers when the program is saved. Only registered
+     * once the first buffer is created.
+     */
+    private final SaveManager.Saveable writeBehindSaver;
+    /**
+     * Keys to prefetch for trees and maps that were not obtained yet, as encoded
+     * by their key translators.
+     */
+    private final Map<String, List<String>> warmKeys;
+
     /**
      * Whether the database is currently loaded.
      */
@@ -104,14 +499,52 @@ public abstract class AbstractDatabase implements Database {
      */
     public AbstractDatabase() {
 
+        this( OFF_HEAP_CACHE_SIZE );
+
+    }
+
+    /**
+     * Initializes the database with an off-heap cache tier of the given size,
+     * instead of the one given by the {@link #OFF_HEAP_CACHE_SETTING settings}.
+     *
+     * @param offHeapCacheSize
+     *            The size of the off-heap tier, in bytes. If 0, there is no
+     *            off-heap tier.
+     */
+    protected AbstractDatabase( long offHeapCacheSize ) {
+
         trees = new HashMap<>();
         maps = new HashMap<>();
+        cacheBudget = CACHE_BUDGET > 0 ? new Cache.Budget( CACHE_BUDGET ) : null;
+        offHeapStore = offHeapCacheSize > 0 ? new OffHeapStore( offHeapCacheSize ) : null;
+        writeBuffers = new CopyOnWriteArrayList<>();
+        warmKeys = new HashMap<>();
+        writeBehindSaver = () -> {
+
+            if ( !closed ) {
+                flushWriteBehind();
+            }
+
+        };
 
         loaded = false;
         closed = false;
 
     }
 
+    /**
+     * Retrieves the name that identifies this database in the
+     * {@link DatabaseMetrics metrics registry}. By default, it is the simple name
+     * of the class of the database.
+     *
+     * @return The name of the database.
+     */
+    protected String getMetricsName() {
+
+        return getClass().getSimpleName();
+
+    }
+
     /**
      * Checks that the database is already loaded and not closed yet, throwing an
      * exception otherwise.
@@ -119,7 +552,7 @@ public abstract class AbstractDatabase implements Database {
      * @throws IllegalStateException
      *             if the database is not loaded yet or already closed.
      */
-    private void checkState() throws IllegalStateException {
+    protected void checkState() throws IllegalStateException {
 
         if ( !loaded ) {
             throw new IllegalStateException( "Database not loaded yet." );
@@ -131,6 +564,76 @@ public abstract class AbstractDatabase implements Database {
 
     }
 
+    /**
+     * Writes all the writes currently buffered by the trees and maps of this
+     * database to the database. Errors are logged, and the writes that failed
+     * stay buffered.
+     * <p>
+     * Subclasses must call this when closing the database, before setting
+     * {@link #closed} to <tt>true</tt>. It is also called automatically when the
+     * program is {@link SaveManager#save() saved} (but not when it ends, unless
+     * the database is {@link DatabaseManager#shutdown() shut down}).
+     */
+    protected void flushWriteBehind() {
+
+        for ( WriteBuffer<?, ?> buffer : writeBuffers ) {
+
+            try {
+                buffer.flush();
+            } catch ( RuntimeException e ) {
+                LOG.error( "Failed to write buffered writes to the database.", e );
+            }
+
+        }
+
+    }
+
+    /**
+     * Creates a write-behind buffer, if write-behind is enabled by the given spec.
+     *
+     * @param writer
+     *            The function that writes a batch of writes to the database.
+     * @param spec
+     *            The configuration of the tree or map.
+     * @param metrics
+     *            The metrics of the tree or map.
+     * @param <K>
+     *            The type of keys.
+     * @param <V>
+     *            The type of values.
+     * @return The buffer, or <tt>null</tt> if write-behind is disabled.
+     */
+    private <K, V> WriteBuffer<K, V> newWriteBuffer( Consumer<Map<K, V>> writer, CacheSpec spec,
+            DatabaseMetrics metrics ) {
+
+        long delay = spec.getWriteBehind( TimeUnit.MILLISECONDS );
+        if ( delay <= 0 ) {
+            return null; // Disabled.
+        }
+
+        WriteBuffer<K, V> buffer = new WriteBuffer<>( writer, delay, metrics );
+        if ( writeBuffers.isEmpty() ) {
+            SaveManager.registerListener( writeBehindSaver );
+        }
+        writeBuffers.add( buffer );
+        return buffer;
+
+    }
+
+    /**
+     * Writes the writes buffered by the given buffer to the database.
+     *
+     * @param writes
+     *            The buffer. May be <tt>null</tt>, in which case nothing happens.
+     */
+    private static void flush( WriteBuffer<?, ?> writes ) {
+
+        if ( writes != null ) {
+            writes.flush();
+        }
+
+    }
+
     /**
      * Creates a new data tree backed by the storage system.
      * <p>
@@ -155,12 +658,13 @@ public abstract class AbstractDatabase implements Database {
 
     @Override
     public synchronized <K, V> Tree<K, V> getDataTree( String treeName, Translator<K> keyTranslator,
-            Translator<V> valueTranslator )
+            Translator<V> valueTranslator, CacheSpec cacheSpec )
             throws NullPointerException, IllegalStateException, IllegalArgumentException, DatabaseException {
 
         checkState();
 
-        if ( ( treeName == null ) || ( keyTranslator == null ) || ( valueTranslator == null ) ) {
+        if ( ( treeName == null ) || ( keyTranslator == null ) || ( valueTranslator == null )
+                || ( cacheSpec == null ) ) {
             throw new NullPointerException( "Arguments cannot be null." );
         }
 
@@ -172,8 +676,15 @@ public abstract class AbstractDatabase implements Database {
             }
 
             // Create and record new tree, within a wrapper.
-            tree = new DatabaseTree<>( newTree( treeName, keyTranslator, valueTranslator ) );
-            trees.put( treeName, new TreeEntryImpl<>( treeName, tree, keyTranslator, valueTranslator ) );
+            DatabaseTree<K, V> wrapper = new DatabaseTree<>( newTree( treeName, keyTranslator, valueTranslator ),
+                    new DataWeigher<>( new ListTranslator<>( keyTranslator ), valueTranslator ), valueTranslator,
+                    resolveCacheSpec( treeName, cacheSpec ), DatabaseMetrics.get( getMetricsName(), treeName ) );
+            trees.put( treeName, new TreeEntryImpl<>( treeName, wrapper, keyTranslator, valueTranslator ) );
+            List<String> warm = warmKeys.remove( treeName );
+            if ( warm != null ) { // Keys to prefetch.
+                prefetch( treeName, warm, new ListTranslator<>( keyTranslator ), wrapper.cache );
+            }
+            tree = wrapper;
         } else { // Found entry.
             if ( keyTranslator.getClass() != entry.getKeyTranslator().getClass() ) {
                 throw new IllegalArgumentException(
@@ -218,12 +729,13 @@ public abstract class AbstractDatabase implements Database {
 
     @Override
     public synchronized <K, V> Map<K, V> getDataMap( String mapName, Translator<K> keyTranslator,
-            Translator<V> valueTranslator )
+            Translator<V> valueTranslator, CacheSpec cacheSpec )
             throws NullPointerException, IllegalStateException, IllegalArgumentException, DatabaseException {
 
         checkState();
 
-        if ( ( mapName == null ) || ( keyTranslator == null ) || ( valueTranslator == null ) ) {
+        if ( ( mapName == null ) || ( keyTranslator == null ) || ( valueTranslator == null )
+                || ( cacheSpec == null ) ) {
             throw new NullPointerException( "Arguments cannot be null." );
         }
 
@@ -235,8 +747,15 @@ public abstract class AbstractDatabase implements Database {
             }
 
             // Create and record new map, within a wrapper.
-            map = new DatabaseMap<>( newMap( mapName, keyTranslator, valueTranslator ) );
-            maps.put( mapName, new MapEntryImpl<>( mapName, map, keyTranslator, valueTranslator ) );
+            DatabaseMap<K, V> wrapper = new DatabaseMap<>( newMap( mapName, keyTranslator, valueTranslator ),
+                    new DataWeigher<>( keyTranslator, valueTranslator ), valueTranslator,
+                    resolveCacheSpec( mapName, cacheSpec ), DatabaseMetrics.get( getMetricsName(), mapName ) );
+            maps.put( mapName, new MapEntryImpl<>( mapName, wrapper, keyTranslator, valueTranslator ) );
+            List<String> warm = warmKeys.remove( mapName );
+            if ( warm != null ) { // Keys to prefetch.
+                prefetch( mapName, warm, keyTranslator, wrapper.cache );
+            }
+            map = wrapper;
         } else { // Found entry.
             if ( keyTranslator.getClass() != entry.getKeyTranslator().getClass() ) {
                 throw new IllegalArgumentException(
@@ -284,229 +803,1649 @@ public abstract class AbstractDatabase implements Database {
 
     }
 
-    /* Entry implementations */
+    /* Cache warm-up */
 
+    private static final ThreadGroup WARM_UP_THREADS = new ThreadGroup( "Database Cache Warm-Up" );
     /**
-     * Implementation of a database entry.
-     * 
-     * @since 2018-07-26
-     * @param <K>
-     *            The type of key used by the storage.
-     * @param <V>
-     *            The type of value used by the storage.
-     * @param <T>
-     *            The type of the storage unit.
+     * Executor that prefetches keys to warm up caches.
      */
-    protected abstract class DatabaseEntryImpl<K, V, T> implements DatabaseEntry<K, V, T> {
+    private static final ExecutorService WARMER = AsyncTools.createFixedThreadPool( WARM_UP_THREADS,
+            ( t, e ) -> {
 
-        private final String name;
-        private final T storage;
-        private final Translator<K> keyTranslator;
-        private final Translator<V> valueTranslator;
+                LOG.error( "Uncaught exception thrown while warming up cache.", e );
 
-        /**
-         * Initializes a database entry for the given storage unit, under the given
-         * name, with the given translators.
-         * 
-         * @param name
-         *            The name that the storage unit is registered under.
-         * @param storage
-         *            The storage unit.
-         * @param keyTranslator
-         *            The translator for keys.
-         * @param valueTranslator
-         *            The translator for values.
-         * @throws NullPointerException
-         *             If any of the arguments is <tt>null</tt>.
-         */
-        public DatabaseEntryImpl( String name, T storage, Translator<K> keyTranslator, Translator<V> valueTranslator )
-                throws NullPointerException {
+            } );
 
-            if ( ( name == null ) || ( storage == null ) || ( keyTranslator == null ) || ( valueTranslator == null ) ) {
-                throw new NullPointerException( "Arguments can't be null." );
-            }
+    /**
+     * Encodes the given keys.
+     *
+     * @param keys
+     *            The keys.
+     * @param translator
+     *            The translator to use.
+     * @return The encoded keys. Keys that could not be encoded are skipped.
+     */
+    private static List<String> encodeKeys( List<?> keys, Translator<?> translator ) {
 
-            this.name = name;
-            this.storage = storage;
-            this.keyTranslator = keyTranslator;
-            this.valueTranslator = valueTranslator;
+        List<String> encoded = new ArrayList<>( keys.size() );
+        for ( Object key : keys ) {
+
+            try {
+                String str = translator.encodeObj( key );
+                if ( str != null ) {
+                    encoded.add( str );
+                }
+            } catch ( TranslationException | NullPointerException e ) {
+                LOG.debug( "Could not encode key {}.", key, e );
+            }
 
         }
+        return encoded;
 
-        @Override
-        public String getName() {
+    }
 
-            return name;
+    /**
+     * Retrieves the keys that are currently the most valuable to keep cached in
+     * each tree and map of this database (as determined by the eviction policy of
+     * their caches), so that they can be {@link #warmUp(Map, int) prefetched} the
+     * next time the database is started.
+     * <p>
+     * The keys are encoded by the key translator of the tree or map (for trees,
+     * each path is encoded as a list).
+     *
+     * @param limit
+     *            The maximum amount of keys to get for each tree or map.
+     * @return The names of the trees and maps, mapped to their most valuable
+     *         keys, from most to least valuable. Trees and maps with no cached keys
+     *         are omitted.
+     * @throws IllegalStateException
+     *             if the database is not loaded yet or already closed.
+     * @throws IllegalArgumentException
+     *             if the limit is negative.
+     * @since 2018-09-17
+     */
+    public synchronized Map<String, List<String>> getHotKeys( int limit )
+            throws IllegalStateException, IllegalArgumentException {
 
-        }
+        checkState();
 
-        @Override
-        public T getStorage() {
+        Map<String, List<String>> hotKeys = new HashMap<>();
+        for ( TreeEntry<?, ?> entry : trees.values() ) {
 
-            return storage;
+            List<String> keys = encodeKeys( ( (DatabaseTree<?, ?>) entry.getTree() ).cache.hottest( limit ),
+                    new ListTranslator<>( entry.getKeyTranslator() ) );
+            if ( !keys.isEmpty() ) {
+                hotKeys.put( entry.getName(), keys );
+            }
 
         }
+        for ( MapEntry<?, ?> entry : maps.values() ) {
 
-        @Override
-        public Translator<K> getKeyTranslator() {
-
-            return keyTranslator;
+            List<String> keys = encodeKeys( ( (DatabaseMap<?, ?>) entry.getMap() ).cache.hottest( limit ),
+                    entry.getKeyTranslator() );
+            if ( !keys.isEmpty() ) {
+                hotKeys.put( entry.getName(), keys );
+            }
 
         }
+        return hotKeys;
 
-        @Override
-        public Translator<V> getValueTranslator() {
+    }
 
-            return valueTranslator;
+    /**
+     * Prefetches the given keys into the caches of the trees and maps of this
+     * database, in the background. The keys of a tree or map that was not
+     * obtained yet are prefetched once it is first obtained (since its
+     * translators are needed).
+     * <p>
+     * Keys are fetched in parallel batches, and fetching stops if the database
+     * is closed. Keys that cannot be decoded or fetched are skipped.
+     *
+     * @param hotKeys
+     *            The keys to prefetch, in the format given by
+     *            {@link #getHotKeys(int)}.
+     * @param budget
+     *            The maximum total amount of keys to prefetch. The keys of each
+     *            tree or map are taken in order until the budget runs out.
+     * @throws IllegalStateException
+     *             if the database is not loaded yet or already closed.
+     * @throws NullPointerException
+     *             if the given map is <tt>null</tt>.
+     * @since 2018-09-17
+     */
+    public synchronized void warmUp( Map<String, List<String>> hotKeys, int budget )
+            throws IllegalStateException, NullPointerException {
+
+        checkState();
+
+        for ( Map.Entry<String, List<String>> entry : hotKeys.entrySet() ) {
+
+            if ( budget <= 0 ) {
+                break; // Used up.
+            }
+            List<String> keys = entry.getValue();
+            if ( keys.size() > budget ) {
+                keys = keys.subList( 0, budget );
+            }
+            budget -= keys.size();
+
+            String name = entry.getKey();
+            TreeEntry<?, ?> tree = trees.get( name );
+            MapEntry<?, ?> map = maps.get( name );
+            if ( tree != null ) {
+                prefetch( name, keys, new ListTranslator<>( tree.getKeyTranslator() ),
+                        ( (DatabaseTree<?, ?>) tree.getTree() ).cache );
+            } else if ( map != null ) {
+                prefetch( name, keys, map.getKeyTranslator(), ( (DatabaseMap<?, ?>) map.getMap() ).cache );
+            } else { // Wait until it is obtained.
+                warmKeys.put( name, new ArrayList<>( keys ) );
+            }
 
         }
 
     }
 
     /**
-     * Implementation of a database tree entry.
-     * 
-     * @since 2018-07-26
-     * @param <K>
-     *            The type of key used by the tree.
-     * @param <V>
-     *            The type of value used by the tree.
+     * Prefetches the given keys into a cache, in the background, in batches of
+     * {@value #WARM_START_BATCH_SIZE} keys that are each fetched with a single
+     * bulk fetch.
+     *
+     * @param dataName
+     *            The name of the tree or map that the cache belongs to.
+     * @param encoded
+     *            The keys to prefetch, encoded.
+     * @param keyTranslator
+     *            The translator to decode the keys with.
+     * @param cache
+     *            The cache to prefetch into.
      */
-    protected class TreeEntryImpl<K, V> extends DatabaseEntryImpl<K, V, Tree<K, V>> implements TreeEntry<K, V> {
+    private void prefetch( String dataName, List<String> encoded, Translator<?> keyTranslator,
+            DatabaseCache<?, ?> cache ) {
 
-        /**
-         * Initializes a tree entry for the given storage tree, under the given name,
-         * with the given translators.
-         * 
-         * @param name
-         *            The name that the storage tree is registered under.
-         * @param tree
-         *            The storage tree.
-         * @param keyTranslator
-         *            The translator for keys.
+        if ( !cache.enabled ) {
+            return; // Nothing would be kept.
+        }
+
+        List<Object> keys = new ArrayList<>( encoded.size() );
+        for ( String key : encoded ) {
+
+            try {
+                keys.add( keyTranslator.decode( key ) );
+            } catch ( TranslationException | NullPointerException e ) {
+                LOG.debug( "Could not decode key {} of \"{}\".", key, dataName, e );
+            }
+
+        }
+        LOG.info( "Prefetching {} keys of \"{}\".", keys.size(), dataName );
+
+        for ( int i = 0; i < keys.size(); i += WARM_START_BATCH_SIZE ) {
+
+            List<Object> batch = keys.subList( i, Math.min( i + WARM_START_BATCH_SIZE, keys.size() ) );
+            try {
+                WARMER.execute( () -> {
+
+                    if ( closed ) {
+                        return; // Stop using the database.
+                    }
+                    try {
+                        cache.fetchAll( batch );
+                    } catch ( RuntimeException e ) {
+                        LOG.debug( "Could not prefetch keys of \"{}\".", dataName, e );
+                    }
+
+                } );
+            } catch ( RejectedExecutionException e ) {
+                LOG.warn( "Could not prefetch keys of \"{}\".", dataName, e );
+                return;
+            }
+
+        }
+
+    }
+
+    /* Management */
+
+    /**
+     * Obtains the management interface of this database, which exposes the fill
+     * level and statistics of the caches of its trees and maps, and can flush
+     * them. The {@link DatabaseManager} registers it while the database is in use.
+     *
+     * @return The management interface.
+     * @since 2018-09-17
+     */
+    public DatabaseMXBean getMXBean() {
+
+        return new ManagementBean();
+
+    }
+
+    /**
+     * Implementation of the management interface of the database.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    private class ManagementBean implements DatabaseMXBean {
+
+        /**
+         * Obtains the state of a cache.
+         *
+         * @param name
+         *            The name of the tree or map.
+         * @param tree
+         *            Whether it is a tree.
+         * @param cache
+         *            The cache.
+         * @return The state of the cache.
+         */
+        private CacheInfo getInfo( String name, boolean tree, DatabaseCache<?, ?> cache ) {
+
+            DatabaseMetrics metrics = cache.metrics;
+            return new CacheInfo( name, tree, cache.enabled, cache.policy().toString(), cache.size(),
+                    cache.weightedSize(), cache.maximumWeight(), metrics.getCacheHits(), metrics.getCacheMisses(),
+                    metrics.getEvictions(), metrics.getWriteBehindBufferSize() );
+
+        }
+
+        @Override
+        public String getName() {
+
+            return getMetricsName();
+
+        }
+
+        @Override
+        public boolean isClosed() {
+
+            return closed;
+
+        }
+
+        @Override
+        public List<CacheInfo> getCaches() {
+
+            List<CacheInfo> caches = new ArrayList<>();
+            synchronized ( AbstractDatabase.this ) {
+                for ( TreeEntry<?, ?> entry : trees.values() ) {
+
+                    caches.add( getInfo( entry.getName(), true, ( (DatabaseTree<?, ?>) entry.getTree() ).cache ) );
+
+                }
+                for ( MapEntry<?, ?> entry : maps.values() ) {
+
+                    caches.add( getInfo( entry.getName(), false, ( (DatabaseMap<?, ?>) entry.getMap() ).cache ) );
+
+                }
+            }
+            return caches;
+
+        }
+
+        @Override
+        public long getCacheBudget() {
+
+            return cacheBudget == null ? 0 : cacheBudget.maximumWeight();
+
+        }
+
+        @Override
+        public long getCacheBudgetUsed() {
+
+            return cacheBudget == null ? 0 : cacheBudget.weightedSize();
+
+        }
+
+        @Override
+        public long getOffHeapCapacity() {
+
+            return offHeapStore == null ? 0 : offHeapStore.capacity();
+
+        }
+
+        @Override
+        public int getOffHeapSize() {
+
+            return offHeapStore == null ? 0 : offHeapStore.size();
+
+        }
+
+        @Override
+        public void flushCaches() throws IllegalStateException {
+
+            synchronized ( AbstractDatabase.this ) {
+                checkState();
+                LOG.info( "Flushing caches (requested through management interface)." );
+                for ( TreeEntry<?, ?> entry : trees.values() ) {
+
+                    ( (DatabaseTree<?, ?>) entry.getTree() ).cache.clear();
+
+                }
+                for ( MapEntry<?, ?> entry : maps.values() ) {
+
+                    ( (DatabaseMap<?, ?>) entry.getMap() ).cache.clear();
+
+                }
+            }
+
+        }
+
+        @Override
+        public void flushWriteBehind() throws IllegalStateException {
+
+            checkState();
+            LOG.info( "Flushing write-behind buffers (requested through management interface)." );
+            AbstractDatabase.this.flushWriteBehind();
+
+        }
+
+    }
+
+    /* Entry implementations */
+
+    /**
+     * Implementation of a database entry.
+     * 
+     * @since 2018-07-26
+     * @param <K>
+     *            The type of key used by the storage.
+     * @param <V>
+     *            The type of value used by the storage.
+     * @param <T>
+     *            The type of the storage unit.
+     */
+    protected abstract class DatabaseEntryImpl<K, V, T> implements DatabaseEntry<K, V, T> {
+
+        private final String name;
+        private final T storage;
+        private final Translator<K> keyTranslator;
+        private final Translator<V> valueTranslator;
+
+        /**
+         * Initializes a database entry for the given storage unit, under the given
+         * name, with the given translators.
+         * 
+         * @param name
+         *            The name that the storage unit is registered under.
+         * @param storage
+         *            The storage unit.
+         * @param keyTranslator
+         *            The translator for keys.
          * @param valueTranslator
          *            The translator for values.
          * @throws NullPointerException
          *             If any of the arguments is <tt>null</tt>.
          */
-        public TreeEntryImpl( String name, Tree<K, V> tree, Translator<K> keyTranslator, Translator<V> valueTranslator )
-                throws NullPointerException {
+        public DatabaseEntryImpl( String name, T storage, Translator<K> keyTranslator, Translator<V> valueTranslator )
+                throws NullPointerException {
+
+            if ( ( name == null ) || ( storage == null ) || ( keyTranslator == null ) || ( valueTranslator == null ) ) {
+                throw new NullPointerException( "Arguments can't be null." );
+            }
+
+            this.name = name;
+            this.storage = storage;
+            this.keyTranslator = keyTranslator;
+            this.valueTranslator = valueTranslator;
+
+        }
+
+        @Override
+        public String getName() {
+
+            return name;
+
+        }
+
+        @Override
+        public T getStorage() {
+
+            return storage;
+
+        }
+
+        @Override
+        public Translator<K> getKeyTranslator() {
+
+            return keyTranslator;
+
+        }
+
+        @Override
+        public Translator<V> getValueTranslator() {
+
+            return valueTranslator;
+
+        }
+
+    }
+
+    /**
+     * Implementation of a database tree entry.
+     * 
+     * @since 2018-07-26
+     * @param <K>
+     *            The type of key used by the tree.
+     * @param <V>
+     *            The type of value used by the tree.
+     */
+    protected class TreeEntryImpl<K, V> extends DatabaseEntryImpl<K, V, Tree<K, V>> implements TreeEntry<K, V> {
+
+        /**
+         * Initializes a tree entry for the given storage tree, under the given name,
+         * with the given translators.
+         * 
+         * @param name
+         *            The name that the storage tree is registered under.
+         * @param tree
+         *            The storage tree.
+         * @param keyTranslator
+         *            The translator for keys.
+         * @param valueTranslator
+         *            The translator for values.
+         * @throws NullPointerException
+         *             If any of the arguments is <tt>null</tt>.
+         */
+        public TreeEntryImpl( String name, Tree<K, V> tree, Translator<K> keyTranslator, Translator<V> valueTranslator )
+                throws NullPointerException {
+
+            super( name, tree, keyTranslator, valueTranslator );
+
+        }
+
+    }
+
+    /**
+     * Implementation of a database map entry.
+     * 
+     * @since 2018-07-26
+     * @param <K>
+     *            The type of key used by the map.
+     * @param <V>
+     *            The type of value used by the map.
+     */
+    protected class MapEntryImpl<K, V> extends DatabaseEntryImpl<K, V, Map<K, V>> implements MapEntry<K, V> {
+
+        /**
+         * Initializes a map entry for the given storage map, under the given name, with
+         * the given translators.
+         * 
+         * @param name
+         *            The name that the storage unit is registered under.
+         * @param map
+         *            The storage map.
+         * @param keyTranslator
+         *            The translator for keys.
+         * @param valueTranslator
+         *            The translator for values.
+         * @throws NullPointerException
+         *             If any of the arguments is <tt>null</tt>.
+         */
+        public MapEntryImpl( String name, Map<K, V> map, Translator<K> keyTranslator, Translator<V> valueTranslator )
+                throws NullPointerException {
+
+            super( name, map, keyTranslator, valueTranslator );
+
+        }
+
+    }
+
+    /* Special cache that keeps track of stats */
+
+    /**
+     * Object used to represent a <tt>null</tt> key in the table of in-flight
+     * loads.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    private static final ThreadGroup REFRESH_THREADS = new ThreadGroup( "Database Cache Refresher" );
+    /**
+     * Executor that reloads cached values that are due for a refresh.
+     */
+    private static final ExecutorService REFRESHER = AsyncTools.createFixedThreadPool( REFRESH_THREADS,
+            ( t, e ) -> {
+
+                LOG.error( "Uncaught exception thrown while refreshing cached value.", e );
+
+            } );
+
+    private static final ThreadGroup ASYNC_THREADS = new ThreadGroup( "Database Async Operation" );
+    /**
+     * Executor that performs the asynchronous operations of trees and maps whose
+     * backing tree or map cannot perform them asynchronously.
+     */
+    private static final ExecutorService ASYNC_EXECUTOR = AsyncTools.createFixedThreadPool( ASYNC_THREADS,
+            ( t, e ) -> {
+
+                LOG.error( "Uncaught exception thrown by asynchronous database operation.", e );
+
+            } );
+
+    /**
+     * Performs an operation asynchronously. If the asynchronous version of the
+     * operation is supported, it is used. Else, the synchronous version is run in
+     * the {@link #ASYNC_EXECUTOR asynchronous executor} (or in the calling thread,
+     * if the executor is unavailable).
+     *
+     * @param supported
+     *            Whether the asynchronous version is supported.
+     * @param asyncOperation
+     *            Starts the asynchronous version of the operation.
+     * @param operation
+     *            Runs the synchronous version of the operation.
+     * @param <T>
+     *            The type of result of the operation.
+     * @return The future result of the operation. If the operation could not be
+     *         started, it is completed exceptionally.
+     */
+    private static <T> CompletableFuture<T> async( boolean supported, Supplier<CompletableFuture<T>> asyncOperation,
+            Supplier<T> operation ) {
+
+        if ( !supported ) {
+            try {
+                return CompletableFuture.supplyAsync( operation, ASYNC_EXECUTOR );
+            } catch ( RejectedExecutionException e ) {
+                return CompletableFuture.supplyAsync( operation, Runnable::run ); // Executor unavailable.
+            }
+        }
+        try {
+            return asyncOperation.get();
+        } catch ( RuntimeException e ) { // Could not start.
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally( e );
+            return failed;
+        }
+
+    }
+
+    /**
+     * Starts an asynchronous write after flushing the given write buffer, so that
+     * the buffered writes are not overtaken by it, without blocking the calling
+     * thread. If there are buffered writes, they are flushed in the
+     * {@link #ASYNC_EXECUTOR asynchronous executor} (or in the calling thread, if
+     * the executor is unavailable), and the write is started once the flush
+     * finishes. Else, the write is started immediately.
+     *
+     * @param writes
+     *            The buffer. May be <tt>null</tt>, in which case the write is
+     *            started immediately.
+     * @param write
+     *            Starts the write.
+     * @param <T>
+     *            The type of result of the write.
+     * @return The future result of the write. If the flush fails, it is completed
+     *         exceptionally (and the write is not made).
+     */
+    private static <T> CompletableFuture<T> afterFlush( WriteBuffer<?, ?> writes,
+            Supplier<CompletableFuture<T>> write ) {
+
+        if ( ( writes == null ) || writes.isEmpty() ) {
+            return write.get(); // Nothing to flush.
+        }
+        CompletableFuture<Void> flushed;
+        try {
+            flushed = CompletableFuture.runAsync( writes::flush, ASYNC_EXECUTOR );
+        } catch ( RejectedExecutionException e ) { // Executor unavailable.
+            flushed = CompletableFuture.runAsync( writes::flush, Runnable::run );
+        }
+        return flushed.thenCompose( v -> write.get() );
+
+    }
+
+    /**
+     * Cache configured by a {@link CacheSpec}, where the properties not specified
+     * use the {@link AbstractDatabase#CACHE_SIZE set size} (or the
+     * {@link AbstractDatabase#CACHE_BUDGET memory budget} of the database),
+     * {@link AbstractDatabase#getCachePolicy() policy}, and expiration times, and
+     * provides a {@link #fetch(Object)} method that automatically fetches a value
+     * from the database if it is not cached (and caches it), and keeps statistics
+     * about the performance of fetch calls in the {@link DatabaseMetrics metrics}
+     * of its tree or map.
+     * <p>
+     * Fetches do not hold any lock while the database is being queried.
+     * Concurrent fetches for the same key that miss the cache are coalesced into
+     * a single load: the first thread queries the database, and the others wait
+     * for its result. Any change to a key (through {@link #update(Object, Object)},
+     * {@link #remove(Object)}, or {@link #clear()}) discards the loads that are in
+     * progress for that key, so that a value read before the change is never
+     * cached after it. For that to work, the database should be changed
+     * <i>before</i> the cache is updated.
+     * <p>
+     * Keys that a fetch found to not exist in the database are also remembered
+     * (in a separate cache with the {@link AbstractDatabase#NEGATIVE_CACHE_SIZE
+     * set size}) for a {@link AbstractDatabase#NEGATIVE_CACHE_TTL limited time},
+     * so that repeated fetches of a missing key do not query the database every
+     * time. Such a key is forgotten as soon as it is
+     * {@link #update(Object, Object) updated}, {@link #remove(Object) removed},
+     * or the cache is {@link #clear() cleared}.
+     * <p>
+     * If a {@link AbstractDatabase#CACHE_REFRESH refresh time} is set, mappings
+     * that are read when due for a refresh are reloaded in the background (as a
+     * load that fetches of the same key may share), while readers keep receiving
+     * the currently cached value.
+     * <p>
+     * Several keys can be {@link #fetchAll(Collection) fetched at once}, in which
+     * case all the keys that are not cached are loaded with a single call to the
+     * bulk fetcher (if there is one).
+     * <p>
+     * Fetches can also be made {@link #fetchAsync(Object, Function, Function)
+     * asynchronously}, in which case a key that is cached is returned in an
+     * already completed future, and the others are loaded (and cached) once the
+     * database responds, without blocking the calling thread. Asynchronous and
+     * synchronous fetches of the same key are coalesced as well.
+     * <p>
+     * If caching is disabled by the spec, nothing is ever cached, but concurrent
+     * fetches of the same key are still coalesced.
+     * <p>
+     * If the database has an {@link AbstractDatabase#OFF_HEAP_CACHE_SIZE off-heap
+     * tier}, evicted mappings are encoded and moved to it, and a fetch that
+     * misses the cache looks for the key in the off-heap tier (moving it back into
+     * the cache if found) before querying the database. Any change to a key also
+     * removes it from the off-heap tier.
+     * <p>
+     * Since evicted mappings are only moved to the off-heap tier after they left
+     * the cache, each key is tagged with a <i>generation</i> (shared with the
+     * other keys in the same stripe) that every change to the key increments. An
+     * evicted mapping is only moved if the generation of its key is still the one
+     * it had when it was evicted, so a change that happens in the meantime is
+     * never overwritten by the older value.
+     * <p>
+     * This extension of the cache class is also thread-safe.
+     * 
+     * @version 1.10
+     * @author ThiagoTGM
+     * @since 2018-09-14
+     * @param <K>
+     *            Type of keys in the cache.
+     * @param <V>
+     *            Type of values stored in the cache.
+     */
+    private class DatabaseCache<K, V> extends Cache<K, V> {
+
+        private static final int GENERATION_STRIPES = 64; // Must be a power of 2.
+
+        private final Function<Object, V> fetcher;
+        private final Predicate<Object> existenceCheck;
+        private final Function<Collection<Object>, Map<?, V>> bulkFetcher;
+        private final boolean enabled;
+        private final ConcurrentHashMap<Object, CompletableFuture<V>> loads;
+        private final Cache<Object, Boolean> absent;
+        private final Translator<V> valueTranslator;
+        private final OffHeapStore tier;
+        private final AtomicLong[] generations; // Also lock moves to the tier.
+        private final DatabaseMetrics metrics;
+
+        /**
+         * Instantiates a cache.
+         *
+         * @param fetcher
+         *            The function to use for searching the database for a key that is
+         *            not cached.
+         * @param existenceCheck
+         *            The predicate to use to determine if a key has a mapping in the
+         *            database (only used if the <tt>fetcher</tt> returns
+         *            <tt>null</tt>).
+         * @param bulkFetcher
+         *            The function to use for searching the database for several
+         *            keys at once. It must return a mapping for each given key that
+         *            exists in the database (including keys mapped to
+         *            <tt>null</tt>). If <tt>null</tt>, the keys are searched one at
+         *            a time, using the fetcher and existence check.
+         * @param weigher
+         *            The weigher to use if the cache is part of the memory budget of
+         *            the database.
+         * @param valueTranslator
+         *            The translator to use to encode values for the off-heap tier.
+         * @param spec
+         *            The configuration of the cache, with all properties except the
+         *            maximum size specified.
+         * @param metrics
+         *            The metrics to record statistics in.
+         */
+        public DatabaseCache( Function<Object, V> fetcher, Predicate<Object> existenceCheck,
+                Function<Collection<Object>, Map<?, V>> bulkFetcher, Cache.Weigher<? super K, ? super V> weigher,
+                Translator<V> valueTranslator, CacheSpec spec, DatabaseMetrics metrics ) {
+
+            super( !spec.isEnabled() ? 1
+                    : spec.getMaximumSize() != CacheSpec.UNSET ? spec.getMaximumSize()
+                            : cacheBudget != null ? cacheBudget.maximumWeight() : CACHE_SIZE,
+                    isBudgeted( spec ) ? weigher : null, isBudgeted( spec ) ? cacheBudget : null,
+                    spec.isEnabled() ? spec.getPolicy() : Cache.Policy.LRU,
+                    Math.max( 0, spec.getExpireAfterWrite( TimeUnit.NANOSECONDS ) ),
+                    Math.max( 0, spec.getExpireAfterAccess( TimeUnit.NANOSECONDS ) ),
+                    Math.max( 0, spec.getRefreshAfterWrite( TimeUnit.NANOSECONDS ) ), TimeUnit.NANOSECONDS );
+
+            this.fetcher = fetcher;
+            this.existenceCheck = existenceCheck;
+            this.bulkFetcher = ( bulkFetcher != null ) ? bulkFetcher : keys -> {
+
+                Map<Object, V> found = new HashMap<>();
+                for ( Object key : keys ) {
+
+                    V value = fetcher.apply( key );
+                    if ( ( value != null ) || existenceCheck.test( key ) ) {
+                        found.put( key, value );
+                    }
+
+                }
+                return found;
+
+            };
+            this.enabled = spec.isEnabled();
+            this.loads = new ConcurrentHashMap<>();
+            this.absent = ( enabled && ( NEGATIVE_CACHE_SIZE > 0 ) && ( NEGATIVE_CACHE_TTL > 0 ) )
+                    ? new Cache<>( NEGATIVE_CACHE_SIZE, Cache.Policy.LRU, NEGATIVE_CACHE_TTL, 0, 0,
+                            TimeUnit.NANOSECONDS )
+                    : null;
+            this.valueTranslator = valueTranslator;
+            this.tier = usesOffHeap( spec ) ? offHeapStore : null;
+            this.generations = new AtomicLong[ tier != null ? GENERATION_STRIPES : 0 ];
+            for ( int i = 0; i < generations.length; i++ ) {
+
+                generations[i] = new AtomicLong();
+
+            }
+            this.metrics = metrics;
+
+        }
+
+        /**
+         * Obtains the key used for the given key in the off-heap tier, which is
+         * shared with the other caches of the database.
+         *
+         * @param key
+         *            The key.
+         * @return The key in the off-heap tier.
+         */
+        private TierKey tierKey( Object key ) {
+
+            return new TierKey( this, key );
+
+        }
+
+        /**
+         * Decodes a value stored in the off-heap tier.
+         *
+         * @param bytes
+         *            The encoded value.
+         * @return The value.
+         * @throws TranslationException
+         *             if the value could not be decoded.
+         */
+        private V decode( byte[] bytes ) throws TranslationException {
+
+            return valueTranslator.decode( new String( bytes, StandardCharsets.UTF_8 ) );
+
+        }
+
+        /**
+         * Obtains the generation of the given key. Must only be called if there is
+         * an off-heap tier.
+         *
+         * @param key
+         *            The key.
+         * @return The generation of the stripe the key belongs to.
+         */
+        private AtomicLong generation( Object key ) {
+
+            int hash = Objects.hashCode( key );
+            return generations[( hash ^ ( hash >>> 16 ) ) & ( GENERATION_STRIPES - 1 )];
+
+        }
+
+        /**
+         * Removes the given key from the off-heap tier, if there is one, and makes
+         * sure that mappings of the key evicted before this call are not moved to
+         * it afterwards.
+         *
+         * @param key
+         *            The key.
+         */
+        private void invalidateTier( Object key ) {
+
+            if ( tier == null ) {
+                return;
+            }
+            AtomicLong generation = generation( key );
+            synchronized ( generation ) {
+                generation.incrementAndGet();
+                tier.remove( tierKey( key ) );
+            }
+
+        }
+
+        /**
+         * Makes sure that no mapping evicted before this call is moved to the
+         * off-heap tier afterwards. Must only be called if there is an off-heap
+         * tier.
+         */
+        private void invalidateTier() {
+
+            for ( AtomicLong generation : generations ) {
+
+                synchronized ( generation ) {
+                    generation.incrementAndGet();
+                }
+
+            }
+
+        }
+
+        @Override
+        protected long evictionStamp( K key ) {
+
+            return ( tier != null ) ? generation( key ).get() : 0;
+
+        }
+
+        /**
+         * Records the eviction, and moves the evicted mapping to the off-heap tier,
+         * if there is one and the key was not changed since it was evicted. Mappings
+         * whose value cannot be encoded are just discarded.
+         */
+        @Override
+        protected void onEviction( K key, V value, long stamp ) {
+
+            metrics.addEviction();
+            if ( tier == null ) {
+                return;
+            }
+            byte[] encoded;
+            try {
+                encoded = valueTranslator.encode( value ).getBytes( StandardCharsets.UTF_8 );
+            } catch ( TranslationException | NullPointerException e ) {
+                encoded = null; // Just discard it.
+            }
+            AtomicLong generation = generation( key );
+            synchronized ( generation ) {
+                if ( encoded == null ) {
+                    tier.remove( tierKey( key ) );
+                } else if ( generation.get() == stamp ) { // Not changed since evicted.
+                    tier.put( tierKey( key ), encoded );
+                }
+            }
+
+        }
+
+        /**
+         * Determines whether the given key is currently known to not exist in the
+         * database.
+         *
+         * @param key
+         *            The key to check for.
+         * @return <tt>true</tt> if the key was recently found to not exist in the
+         *         database (and was not changed since). <tt>false</tt> otherwise.
+         */
+        public boolean isAbsent( Object key ) {
+
+            return ( absent != null ) && absent.containsKey( key );
+
+        }
+
+        /**
+         * Fetches a value. If the given key is present on this cache, returns the value
+         * associated with it. Else, uses the fetcher to fetch the value from the
+         * database, and caches the mapping. If the fetcher returns <tt>null</tt>, uses
+         * the existence check to determine whether the key has no mapping in the
+         * database or if the value is actually <tt>null</tt>.
+         * <p>
+         * If another thread is already fetching the same key from the database, waits
+         * for that fetch to finish and returns its result instead of querying the
+         * database again.
+         *
+         * @param key
+         *            The key to search for.
+         * @return The value associated with the given key, or <tt>null</tt> if there is
+         *         no such value. Note that a return of <tt>null</tt> does not
+         *         necessarily mean there is no mapping for the key, it may just be
+         *         mapped to the value <tt>null</tt>.
+         */
+        public V fetch( Object key ) {
+
+            V value = get( key ); // Look in cache.
+            if ( value != null ) { // Found in cache.
+                metrics.addCacheHit();
+                return value;
+            }
+            if ( isAbsent( key ) ) { // Known to not exist.
+                metrics.addNegativeCacheHit();
+                return null;
+            }
+
+            Object loadKey = ( key == null ) ? NULL_KEY : key;
+            CompletableFuture<V> load = new CompletableFuture<>();
+            CompletableFuture<V> inFlight = loads.putIfAbsent( loadKey, load );
+            if ( inFlight != null ) { // Another thread is already loading the key.
+                try {
+                    return inFlight.join();
+                } catch ( CompletionException e ) { // Load failed. Fail the same way.
+                    if ( e.getCause() instanceof RuntimeException ) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    if ( e.getCause() instanceof Error ) {
+                        throw (Error) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+
+            return load( key, loadKey, load, false );
+
+        }
+
+        /**
+         * Fetches a value without blocking. Same as {@link #fetch(Object)}, but the
+         * database is searched with the given asynchronous functions, and the
+         * returned future completes once the search finishes. If the key is cached
+         * (or known to not exist), the returned future is already completed.
+         * <p>
+         * If another fetch is already loading the same key, the returned future
+         * completes with the result of that fetch.
+         *
+         * @param key
+         *            The key to search for.
+         * @param asyncFetcher
+         *            Searches the database for a key.
+         * @param asyncExistenceCheck
+         *            Determines whether a key exists in the database (used if the
+         *            fetcher finds <tt>null</tt>).
+         * @return The future value associated with the given key, or <tt>null</tt>
+         *         if there is no such value. If the search fails, it is completed
+         *         exceptionally.
+         */
+        public CompletableFuture<V> fetchAsync( Object key, Function<Object, CompletableFuture<V>> asyncFetcher,
+                Function<Object, CompletableFuture<Boolean>> asyncExistenceCheck ) {
+
+            V value = get( key ); // Look in cache.
+            if ( value != null ) { // Found in cache.
+                metrics.addCacheHit();
+                return CompletableFuture.completedFuture( value );
+            }
+            if ( isAbsent( key ) ) { // Known to not exist.
+                metrics.addNegativeCacheHit();
+                return CompletableFuture.completedFuture( null );
+            }
+
+            Object loadKey = ( key == null ) ? NULL_KEY : key;
+            CompletableFuture<V> load = new CompletableFuture<>();
+            CompletableFuture<V> inFlight = loads.putIfAbsent( loadKey, load );
+            if ( inFlight != null ) { // Another fetch is already loading the key.
+                return inFlight.thenApply( Function.identity() );
+            }
+            if ( promote( key, loadKey, load ) ) { // Found in off-heap tier.
+                return load.thenApply( Function.identity() );
+            }
+
+            long start = System.nanoTime();
+            try {
+                asyncFetcher.apply( key ).thenCompose( found -> ( ( found != null )
+                        ? CompletableFuture.completedFuture( true ) : asyncExistenceCheck.apply( key ) )
+                        .thenAccept( exists -> {
+
+                            long elapsed = System.nanoTime() - start;
+                            metrics.recordBackendCall( elapsed );
+                            complete( key, loadKey, load, found, exists, elapsed, false );
+
+                        } ) ).whenComplete( ( result, e ) -> {
+
+                            if ( e != null ) { // Load failed.
+                                loads.remove( loadKey, load );
+                                load.completeExceptionally( ( ( e instanceof CompletionException )
+                                        && ( e.getCause() != null ) ) ? e.getCause() : e );
+                            }
+
+                        } );
+            } catch ( RuntimeException | Error e ) { // Could not start the search.
+                loads.remove( loadKey, load );
+                load.completeExceptionally( e );
+            }
+            return load.thenApply( Function.identity() ); // Callers can't complete the load.
+
+        }
+
+        /**
+         * Fetches the values of several keys. Keys that are present on this cache are
+         * served from it, and all the others are searched in the database with a
+         * single call to the bulk fetcher, then cached as in {@link #fetch(Object)}.
+         * <p>
+         * Keys that another thread is already fetching from the database are also
+         * included in the bulk call, rather than waiting for the other fetch, but the
+         * values found for them are not cached (the other fetch caches them).
+         *
+         * @param keys
+         *            The keys to search for.
+         * @return The mappings found for the given keys. Keys that have no mapping
+         *         in the database are not included.
+         */
+        public Map<Object, V> fetchAll( Collection<?> keys ) {
+
+            Map<Object, V> found = new HashMap<>();
+            Set<Object> seen = new HashSet<>();
+            List<Object> missing = new ArrayList<>();
+            Map<Object, CompletableFuture<V>> owned = new HashMap<>(); // Loads made by this call.
+            try {
+                for ( Object key : keys ) {
+
+                    if ( !seen.add( key ) ) {
+                        continue; // Repeated key.
+                    }
+                    V value = get( key ); // Look in cache.
+                    if ( value != null ) { // Found in cache.
+                        metrics.addCacheHit();
+                        found.put( key, value );
+                        continue;
+                    }
+                    if ( isAbsent( key ) ) { // Known to not exist.
+                        metrics.addNegativeCacheHit();
+                        continue;
+                    }
+
+                    Object loadKey = ( key == null ) ? NULL_KEY : key;
+                    CompletableFuture<V> load = new CompletableFuture<>();
+                    if ( loads.putIfAbsent( loadKey, load ) == null ) { // Not being loaded yet.
+                        owned.put( key, load );
+                        if ( promote( key, loadKey, load ) ) { // Found in off-heap tier.
+                            owned.remove( key );
+                            found.put( key, load.join() );
+                            continue;
+                        }
+                    }
+                    missing.add( key );
+
+                }
+                if ( missing.isEmpty() ) {
+                    return found; // All cached.
+                }
+
+                long start = System.nanoTime();
+                Map<?, V> loaded = bulkFetcher.apply( missing ); // Request fetch.
+                long elapsed = System.nanoTime() - start;
+                metrics.recordBackendCall( elapsed );
+
+                for ( Object key : missing ) {
+
+                    boolean exists = loaded.containsKey( key );
+                    V value = loaded.get( key );
+                    if ( exists ) {
+                        found.put( key, value );
+                    }
+                    CompletableFuture<V> load = owned.remove( key );
+                    if ( load != null ) {
+                        complete( key, ( key == null ) ? NULL_KEY : key, load, value, exists, elapsed, false );
+                    }
+
+                }
+                return found;
+            } catch ( RuntimeException | Error e ) {
+                for ( Map.Entry<Object, CompletableFuture<V>> load : owned.entrySet() ) {
+
+                    Object key = load.getKey();
+                    loads.remove( ( key == null ) ? NULL_KEY : key, load.getValue() );
+                    load.getValue().completeExceptionally( e );
+
+                }
+                throw e;
+            }
+
+        }
+
+        /**
+         * Moves the mapping of the given key from the off-heap tier back into the
+         * cache, if there is one, and completes the given load with it.
+         *
+         * @param key
+         *            The key to load.
+         * @param loadKey
+         *            The key used for the load in the table of in-flight loads.
+         * @param load
+         *            The load, already registered in the table of in-flight loads.
+         * @return <tt>true</tt> if the key was found in the off-heap tier (and the
+         *         load was completed). <tt>false</tt> otherwise.
+         */
+        private boolean promote( Object key, Object loadKey, CompletableFuture<V> load ) {
+
+            byte[] demoted = ( tier != null ) ? tier.remove( tierKey( key ) ) : null;
+            if ( demoted == null ) {
+                return false; // Not in off-heap tier.
+            }
+            try {
+                V value = decode( demoted );
+                metrics.addOffHeapHit();
+                @SuppressWarnings( "unchecked" ) // Was cached before, so proper type.
+                K theKey = (K) key;
+                super.put( theKey, value ); // Move back into the cache.
+                if ( !loads.remove( loadKey, load ) ) { // Key changed during the load.
+                    super.remove( key );
+                }
+                load.complete( value );
+                return true;
+            } catch ( TranslationException e ) {
+                LOG.warn( "Could not decode value from the off-heap cache tier.", e );
+                return false;
+            }
+
+        }
+
+        /**
+         * Loads the value of a key from the database and caches the result, then
+         * completes the given load with it.
+         *
+         * @param key
+         *            The key to load.
+         * @param loadKey
+         *            The key used for the load in the table of in-flight loads.
+         * @param load
+         *            The load, already registered in the table of in-flight loads.
+         * @param refresh
+         *            If <tt>true</tt>, the mapping is only updated if it is still
+         *            cached, rather than added.
+         * @return The loaded value.
+         * @throws RuntimeException
+         *             if an error occurred while loading.
+         */
+        private V load( Object key, Object loadKey, CompletableFuture<V> load, boolean refresh )
+                throws RuntimeException {
+
+            try {
+                if ( !refresh && promote( key, loadKey, load ) ) {
+                    return load.join(); // Found in off-heap tier.
+                }
+
+                long start = System.nanoTime();
+                V value = fetcher.apply( key ); // Request fetch.
+                boolean exists = ( value != null ) || existenceCheck.test( key );
+                long elapsed = System.nanoTime() - start;
+                metrics.recordBackendCall( elapsed );
+
+                complete( key, loadKey, load, value, exists, elapsed, refresh );
+                return value;
+            } catch ( RuntimeException | Error e ) {
+                loads.remove( loadKey, load );
+                load.completeExceptionally( e );
+                throw e;
+            }
+
+        }
+
+        /**
+         * Caches the result of searching the database for a key, then completes the
+         * given load with it.
+         *
+         * @param key
+         *            The key that was loaded.
+         * @param loadKey
+         *            The key used for the load in the table of in-flight loads.
+         * @param load
+         *            The load, registered in the table of in-flight loads.
+         * @param value
+         *            The value found.
+         * @param exists
+         *            Whether the key exists in the database.
+         * @param elapsed
+         *            How long the database took to respond, in nanoseconds.
+         * @param refresh
+         *            If <tt>true</tt>, the mapping is only updated if it is still
+         *            cached, rather than added.
+         */
+        private void complete( Object key, Object loadKey, CompletableFuture<V> load, V value, boolean exists,
+                long elapsed, boolean refresh ) {
+
+            if ( exists ) { // Fetch success.
+                metrics.recordFetch( elapsed, true );
+                @SuppressWarnings( "unchecked" ) // If it exists, assume proper type.
+                K theKey = (K) key;
+                if ( refresh ) {
+                    super.update( theKey, value ); // Update cached value.
+                } else {
+                    metrics.addCacheMiss(); // Value exists, just wasn't in cache.
+                    if ( enabled ) {
+                        super.put( theKey, value ); // Cache found value.
+                    }
+                }
+                if ( !loads.remove( loadKey, load ) ) { // Key changed during the load.
+                    super.remove( key ); // Value may be stale.
+                }
+            } else { // Fetch fail.
+                metrics.recordFetch( elapsed, false );
+                super.remove( key ); // In case it was deleted elsewhere.
+                if ( absent != null ) { // Remember that key does not exist.
+                    absent.put( key, true );
+                }
+                if ( !loads.remove( loadKey, load ) && ( absent != null ) ) {
+                    absent.remove( key ); // Key changed during the load.
+                }
+            }
+            load.complete( value );
+
+        }
+
+        /**
+         * Reloads the value of the given key in the background, unless it is already
+         * being loaded.
+         */
+        @Override
+        protected void refresh( K key ) {
+
+            Object loadKey = ( key == null ) ? NULL_KEY : key;
+            CompletableFuture<V> load = new CompletableFuture<>();
+            if ( loads.putIfAbsent( loadKey, load ) != null ) {
+                return; // Already being loaded.
+            }
+
+            Runnable reload = () -> {
+
+                if ( closed ) { // Don't use the database after it is closed.
+                    loads.remove( loadKey, load );
+                    load.completeExceptionally(
+                            new IllegalStateException( "The backing database is already closed." ) );
+                    return;
+                }
+                try {
+                    load( key, loadKey, load, true );
+                } catch ( RuntimeException e ) {
+                    LOG.warn( "Failed to refresh cached value.", e );
+                }
+
+            };
+            try {
+                REFRESHER.execute( reload );
+            } catch ( RejectedExecutionException e ) {
+                reload.run(); // Executor unavailable. Reload in this thread.
+            }
+
+        }
+
+        /**
+         * Discards the load in progress for the given key, if any. Threads already
+         * waiting on it still receive its result, but the result will not be cached.
+         *
+         * @param key
+         *            The key.
+         */
+        private void discardLoad( Object key ) {
 
-            super( name, tree, keyTranslator, valueTranslator );
+            loads.remove( ( key == null ) ? NULL_KEY : key );
+            if ( absent != null ) {
+                absent.remove( key );
+            }
+            invalidateTier( key );
+
+        }
+
+        /**
+         * Also removes the key from the off-heap tier again after updating the
+         * cache, in case the old value was evicted in the meantime.
+         */
+        @Override
+        public V update( K key, V value ) {
+
+            discardLoad( key );
+            V old = super.update( key, value );
+            invalidateTier( key );
+            return old;
+
+        }
+
+        /**
+         * Also removes the key from the off-heap tier again after updating the
+         * cache, in case the old value was evicted in the meantime.
+         */
+        @Override
+        public V remove( Object key ) {
+
+            discardLoad( key );
+            V old = super.remove( key );
+            invalidateTier( key );
+            return old;
+
+        }
+
+        /**
+         * Also removes the keys from the off-heap tier again after updating the
+         * cache, in case old values were evicted in the meantime.
+         */
+        @Override
+        public void invalidateAll( Collection<?> keys ) {
+
+            for ( Object key : keys ) {
+
+                discardLoad( key );
+
+            }
+            super.invalidateAll( keys );
+            for ( Object key : keys ) {
+
+                invalidateTier( key );
+
+            }
+
+        }
+
+        /**
+         * Also discards all loads in progress, since the keys they are for may be
+         * affected but their values are not known yet.
+         * <p>
+         * The off-heap tier is filtered both before the cache, so that it does not
+         * refill the cache, and after it, to remove mappings that were evicted in
+         * the meantime. Mappings that were evicted but not moved to the tier yet
+         * are discarded.
+         */
+        @Override
+        public void removeIf( BiPredicate<? super K, ? super V> filter ) {
+
+            loads.clear();
+            BiPredicate<Object, byte[]> tierFilter = ( k, bytes ) -> {
+
+                if ( !( k instanceof TierKey ) || ( ( (TierKey) k ).owner != this ) ) {
+                    return false; // Belongs to another cache.
+                }
+                @SuppressWarnings( "unchecked" )
+                K key = (K) ( (TierKey) k ).key;
+                try {
+                    return filter.test( key, decode( bytes ) );
+                } catch ( TranslationException e ) {
+                    return true; // Unusable anyway.
+                }
+
+            };
+            if ( tier != null ) {
+                tier.removeIf( tierFilter );
+            }
+            super.removeIf( filter );
+            if ( tier != null ) {
+                invalidateTier();
+                tier.removeIf( tierFilter );
+            }
+
+        }
+
+        /**
+         * Like {@link #removeIf(BiPredicate)}, clears the off-heap tier both before
+         * and after the cache.
+         */
+        @Override
+        public void clear() {
+
+            loads.clear();
+            if ( absent != null ) {
+                absent.clear();
+            }
+            Predicate<Object> tierFilter = k -> ( k instanceof TierKey ) && ( ( (TierKey) k ).owner == this );
+            if ( tier != null ) {
+                tier.removeKeysIf( tierFilter );
+            }
+            super.clear();
+            if ( tier != null ) {
+                invalidateTier();
+                tier.removeKeysIf( tierFilter );
+            }
 
         }
 
     }
 
     /**
-     * Implementation of a database map entry.
-     * 
-     * @since 2018-07-26
+     * Key of a mapping in the off-heap cache tier, which identifies both the
+     * cache that the mapping belongs to and its key in that cache.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    private static class TierKey {
+
+        private final Object owner;
+        private final Object key;
+
+        /**
+         * Instantiates a key.
+         *
+         * @param owner
+         *            The cache that the mapping belongs to.
+         * @param key
+         *            The key of the mapping in the cache.
+         */
+        public TierKey( Object owner, Object key ) {
+
+            this.owner = owner;
+            this.key = key;
+
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+
+            if ( !( obj instanceof TierKey ) ) {
+                return false;
+            }
+            TierKey other = (TierKey) obj;
+            return ( owner == other.owner ) && Objects.equals( key, other.key );
+
+        }
+
+        @Override
+        public int hashCode() {
+
+            return System.identityHashCode( owner ) * 31 + Objects.hashCode( key );
+
+        }
+
+    }
+
+    /* Write-behind buffering */
+
+    private static final ThreadGroup FLUSH_THREADS = new ThreadGroup( "Database Write-Behind Flusher" );
+    /**
+     * Executor that periodically writes buffered writes to the database.
+     */
+    private static final ScheduledExecutorService FLUSHER = AsyncTools.createScheduledThreadPool( 1,
+            FLUSH_THREADS, ( t, e ) -> {
+
+                LOG.error( "Uncaught exception thrown while flushing buffered writes.", e );
+
+            } );
+
+    /**
+     * A write waiting in a write-behind buffer.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
      * @param <K>
-     *            The type of key used by the map.
+     *            The type of the key.
      * @param <V>
-     *            The type of value used by the map.
+     *            The type of the value.
      */
-    protected class MapEntryImpl<K, V> extends DatabaseEntryImpl<K, V, Map<K, V>> implements MapEntry<K, V> {
+    private static class BufferedWrite<K, V> {
+
+        private final K key;
+        private final V value;
 
         /**
-         * Initializes a map entry for the given storage map, under the given name, with
-         * the given translators.
-         * 
-         * @param name
-         *            The name that the storage unit is registered under.
-         * @param map
-         *            The storage map.
-         * @param keyTranslator
-         *            The translator for keys.
-         * @param valueTranslator
-         *            The translator for values.
-         * @throws NullPointerException
-         *             If any of the arguments is <tt>null</tt>.
+         * Instantiates a write.
+         *
+         * @param key
+         *            The key being written.
+         * @param value
+         *            The value being written.
          */
-        public MapEntryImpl( String name, Map<K, V> map, Translator<K> keyTranslator, Translator<V> valueTranslator )
-                throws NullPointerException {
+        public BufferedWrite( K key, V value ) {
 
-            super( name, map, keyTranslator, valueTranslator );
+            this.key = key;
+            this.value = value;
 
         }
 
     }
 
-    /* Special cache that keeps track of stats */
-
     /**
-     * Cache that uses the {@link AbstractDatabase#CACHE_SIZE set size}, and
-     * provides a {@link #fetch(Object,Function,Predicate)} method that
-     * automatically fetches a value from the database if it is not cached (and
-     * caches it), and keeps statistics about the performance of fetch calls through
-     * {@link DatabaseStats}.
+     * Buffer that holds writes to a tree or map, and writes them to the database in
+     * batches.
      * <p>
-     * This extension of the cache class is also thread-safe.
-     * 
-     * @version 1.0
+     * A write to a key that already has a buffered write replaces it, so that only
+     * the latest value is written. The buffer is flushed by a background thread
+     * at a fixed delay, and also synchronously when it reaches
+     * {@link AbstractDatabase#WRITE_BEHIND_BUFFER_SIZE its maximum size} or
+     * {@link #flush()} is called. If writing a batch fails, the writes stay in the
+     * buffer to be retried by the next flush.
+     * <p>
+     * Statistics about buffered writes and flushes are kept in the
+     * {@link DatabaseMetrics metrics} of the tree or map.
+     * <p>
+     * This buffer is thread-safe, and flushes never overlap.
+     *
+     * @version 1.2
      * @author ThiagoTGM
-     * @since 2018-09-14
+     * @since 2018-09-17
      * @param <K>
-     *            Type of keys in the cache.
+     *            The type of keys.
      * @param <V>
-     *            Type of values stored in the cache.
+     *            The type of values.
      */
-    private class DatabaseCache<K, V> extends Cache<K, V> {
+    private class WriteBuffer<K, V> {
+
+        private final ConcurrentHashMap<Object, BufferedWrite<K, V>> pending;
+        private final Consumer<Map<K, V>> writer;
+        private final ReentrantLock flushLock;
+        private final ScheduledFuture<?> task;
+        private final DatabaseMetrics metrics;
 
         /**
-         * Instantiates a cache.
+         * Instantiates a buffer and schedules its periodic flush.
+         *
+         * @param writer
+         *            The function that writes a batch of writes to the database.
+         * @param delay
+         *            The delay between flushes, in milliseconds.
+         * @param metrics
+         *            The metrics to record statistics in.
          */
-        public DatabaseCache() {
+        public WriteBuffer( Consumer<Map<K, V>> writer, long delay, DatabaseMetrics metrics ) {
 
-            super( CACHE_SIZE );
+            this.pending = new ConcurrentHashMap<>();
+            this.writer = writer;
+            this.flushLock = new ReentrantLock();
+            this.metrics = metrics;
+            this.task = FLUSHER.scheduleWithFixedDelay( this::scheduledFlush, delay, delay,
+                    TimeUnit.MILLISECONDS );
 
         }
 
         /**
-         * Fetches a value. If the given key is present on this cache, returns the value
-         * associated with it. Else, calls the given Function to fetch the value from
-         * the database, and caches the mapping. If the Function returns <tt>null</tt>,
-         * uses the given Predicate to determine whether the key has no mapping in the
-         * database or if the value is actually <tt>null</tt>.
+         * Retrieves the buffered write to the given key.
          *
          * @param key
-         *            The key to search for.
-         * @param fetcher
-         *            The function to use for searching the database for the key if it
-         *            is not cached.
-         * @param existenceCheck
-         *            The predicate to use to determine if the key has a mapping in the
-         *            database (only used if the <tt>fetcher</tt> returns
-         *            <tt>null</tt>).
-         * @return The value associated with the given key, or <tt>null</tt> if there is
-         *         no such value. Note that a return of <tt>null</tt> does not
-         *         necessarily mean there is no mapping for the key, it may just be
-         *         mapped to the value <tt>null</tt>.
+         *            The key.
+         * @return The buffered write, or <tt>null</tt> if there is none.
          */
-        public synchronized V fetch( Object key, Function<Object, V> fetcher, Predicate<Object> existenceCheck ) {
+        public BufferedWrite<K, V> get( Object key ) {
 
-            V value = get( key ); // Look in cache.
+            return pending.get( ( key == null ) ? NULL_KEY : key );
+
+        }
+
+        /**
+         * Determines whether there are no buffered writes.
+         *
+         * @return <tt>true</tt> if there are no buffered writes.
+         */
+        public boolean isEmpty() {
+
+            return pending.isEmpty();
+
+        }
+
+        /**
+         * Buffers a write, replacing the buffered write to the same key, if any. If
+         * the buffer becomes full, flushes it.
+         *
+         * @param key
+         *            The key to write.
+         * @param value
+         *            The value to write.
+         */
+        public void put( K key, V value ) {
+
+            BufferedWrite<K, V> replaced = pending.put( ( key == null ) ? NULL_KEY : key,
+                    new BufferedWrite<>( key, value ) );
+            if ( replaced == null ) {
+                metrics.addWriteBehindBuffered( 1 );
+            } else {
+                metrics.addWriteBehindCoalesced();
+            }
+            if ( pending.size() >= WRITE_BEHIND_BUFFER_SIZE ) {
+                flush(); // Full.
+            }
+
+        }
+
+        /**
+         * Writes all currently buffered writes to the database. Writes that are
+         * buffered while the flush is in progress are left for the next flush.
+         *
+         * @throws RuntimeException
+         *             if an error occurred while writing. The writes stay buffered.
+         */
+        public void flush() throws RuntimeException {
+
+            flushLock.lock();
+            try {
+                if ( pending.isEmpty() ) {
+                    return; // Nothing to do.
+                }
+                List<BufferedWrite<K, V>> writes = new ArrayList<>( pending.values() );
+                Map<K, V> batch = new LinkedHashMap<>();
+                for ( BufferedWrite<K, V> write : writes ) {
+
+                    batch.put( write.key, write.value );
+
+                }
 
-            if ( value == null ) { // Not in cache.
-                long start = System.currentTimeMillis();
-                value = fetcher.apply( key ); // Request fetch.
-                long elapsed = System.currentTimeMillis() - start;
-
-                if ( ( value == null ) && !existenceCheck.test( key ) ) { // Fetch fail.
-                    DatabaseStats.addDbFetchFailure( elapsed );
-                } else { // Fetch success.
-                    DatabaseStats.addDbFetchSuccess( elapsed );
-                    DatabaseStats.addCacheMiss(); // Value exists, just wasn't in cache.
-                    @SuppressWarnings( "unchecked" ) // If it exists, assume proper type.
-                    K theKey = (K) key;
-                    put( theKey, value ); // Cache found value.
+                long start = System.nanoTime();
+                try {
+                    writer.accept( batch );
+                } catch ( RuntimeException | Error e ) {
+                    metrics.addWriteBehindFailure();
+                    throw e;
                 }
-            } else { // Found in cache.
-                DatabaseStats.addCacheHit();
+                long elapsed = System.nanoTime() - start;
+                metrics.recordBackendCall( elapsed );
+                metrics.recordWriteBehindFlush( elapsed, batch.size() );
+
+                int removed = 0;
+                for ( BufferedWrite<K, V> write : writes ) {
+                    // Only remove if not replaced by a newer write during the flush.
+                    if ( pending.remove( ( write.key == null ) ? NULL_KEY : write.key, write ) ) {
+                        removed++;
+                    }
+
+                }
+                metrics.addWriteBehindBuffered( -removed );
+            } finally {
+                flushLock.unlock();
             }
 
-            return value;
+        }
+
+        /**
+         * Flushes the buffer on schedule. If the database was closed, stops the
+         * periodic flush instead.
+         */
+        private void scheduledFlush() {
+
+            if ( closed ) {
+                task.cancel( false );
+                writeBuffers.remove( this );
+                if ( writeBuffers.isEmpty() ) {
+                    SaveManager.unregisterListener( writeBehindSaver );
+                }
+                return;
+            }
+            try {
+                flush();
+            } catch ( RuntimeException e ) {
+                LOG.error( "Failed to write buffered writes to the database.", e );
+            }
 
         }
 
@@ -519,11 +2458,15 @@ public abstract class AbstractDatabase implements Database {
      * <p>
      * When a call is made to the iterator, it checks if the database is already
      * closed. If it is, the call fails with a {@link IllegalStateException}. Else,
-     * the call is passed through to the backing iterator.
+     * the call is passed through to the backing iterator. The time taken by each
+     * call to {@link #next()} is recorded in the metrics of the tree or map.
+     * <p>
+     * Removing an element through the iterator only invalidates the cached
+     * mappings that correspond to it.
      * <p>
      * This wrapper is <b>not</b> thread-safe.
      * 
-     * @version 1.0
+     * @version 1.2
      * @author ThiagoTGM
      * @since 2018-07-27
      * @param <E>
@@ -532,20 +2475,21 @@ public abstract class AbstractDatabase implements Database {
     private class DatabaseIterator<E> implements Iterator<E> {
 
         private final Iterator<E> backing;
-        private final Cache<?, ?> cache;
+        private final DatabaseCollection<E> collection;
+        private E last;
 
         /**
          * Instantiates an iterator backed by the given database iterator.
          * 
          * @param backing
          *            The iterator that backs this.
-         * @param cache
-         *            The cache being used by the data.
+         * @param collection
+         *            The collection being iterated over.
          */
-        public DatabaseIterator( Iterator<E> backing, Cache<?, ?> cache ) {
+        public DatabaseIterator( Iterator<E> backing, DatabaseCollection<E> collection ) {
 
             this.backing = backing;
-            this.cache = cache;
+            this.collection = collection;
 
         }
 
@@ -556,52 +2500,135 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return backing.hasNext();
+            return backing.hasNext();
+
+        }
+
+        @Override
+        public E next() {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            last = backing.next();
+            collection.cache.metrics.recordOperation( Operation.ITERATE, System.nanoTime() - start );
+            return last;
+
+        }
+
+        @Override
+        public void remove() {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            backing.remove();
+            collection.invalidate( last ); // Invalidate removed element.
+
+        }
+
+        @Override
+        public boolean equals( Object o ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            return backing.equals( o );
+
+        }
+
+        @Override
+        public int hashCode() {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            return backing.hashCode();
+
+        }
+
+    }
+
+    /**
+     * Spliterator that iterates over data in the database.
+     * <p>
+     * Like a {@link DatabaseIterator}, it checks if the database is already closed
+     * before passing each call through to the backing spliterator, and records the
+     * time taken to obtain each element. Splits of the backing spliterator are
+     * wrapped in the same way, so a backend that can split its data (for example,
+     * into segments of a table) can be traversed by a parallel stream.
+     * 
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     * @param <E>
+     *            The type of object that the spliterator retrieves.
+     */
+    private class DatabaseSpliterator<E> implements Spliterator<E> {
+
+        private final Spliterator<E> backing;
+        private final DatabaseCollection<E> collection;
+
+        /**
+         * Instantiates a spliterator backed by the given database spliterator.
+         * 
+         * @param backing
+         *            The spliterator that backs this.
+         * @param collection
+         *            The collection being iterated over.
+         */
+        public DatabaseSpliterator( Spliterator<E> backing, DatabaseCollection<E> collection ) {
+
+            this.backing = backing;
+            this.collection = collection;
 
         }
 
         @Override
-        public E next() {
+        public boolean tryAdvance( Consumer<? super E> action ) {
 
             if ( closed ) {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return backing.next();
+            long start = System.nanoTime();
+            return backing.tryAdvance( element -> {
+
+                collection.cache.metrics.recordOperation( Operation.ITERATE, System.nanoTime() - start );
+                action.accept( element );
+
+            } );
 
         }
 
         @Override
-        public void remove() {
+        public Spliterator<E> trySplit() {
 
             if ( closed ) {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            backing.remove();
-            cache.clear(); // Invalidate cache.
+            Spliterator<E> split = backing.trySplit();
+            return split == null ? null : new DatabaseSpliterator<>( split, collection );
 
         }
 
         @Override
-        public boolean equals( Object o ) {
-
-            if ( closed ) {
-                throw new IllegalStateException( "The backing database is already closed." );
-            }
+        public long estimateSize() {
 
-            return backing.equals( o );
+            return backing.estimateSize();
 
         }
 
         @Override
-        public int hashCode() {
-
-            if ( closed ) {
-                throw new IllegalStateException( "The backing database is already closed." );
-            }
+        public int characteristics() {
 
-            return backing.hashCode();
+            return backing.characteristics();
 
         }
 
@@ -614,9 +2641,22 @@ public abstract class AbstractDatabase implements Database {
      * closed. If it is, the call fails with a {@link IllegalStateException}. Else,
      * the call is passed through to the backing collection.
      * <p>
+     * When elements are removed, only the cached mappings that correspond to them
+     * are invalidated. If the elements identify the keys of the mappings (such as
+     * in a key or entry set), the keys are invalidated directly. Otherwise (such as
+     * in a value collection), the cached mappings that match the removed elements
+     * are searched for. Only {@link #clear()} invalidates the whole cache.
+     * <p>
+     * If the data uses a write-behind buffer, it is flushed before any call is
+     * passed through, so that the collection reflects all the writes made so far.
+     * <p>
+     * The {@link #spliterator() spliterator} (and so the streams) of the collection
+     * use the spliterator of the backing collection, so that they can take
+     * advantage of a backend that splits its data for parallel traversal.
+     * <p>
      * This wrapper is <b>not</b> thread-safe.
      * 
-     * @version 1.0
+     * @version 1.3
      * @author ThiagoTGM
      * @since 2018-07-27
      * @param <E>
@@ -625,7 +2665,10 @@ public abstract class AbstractDatabase implements Database {
     private class DatabaseCollection<E> implements Collection<E> {
 
         private final Collection<E> backing;
-        private final Cache<?, ?> cache;
+        private final DatabaseCache<?, ?> cache;
+        private final WriteBuffer<?, ?> writes;
+        private final Function<Object, Object> keyOf;
+        private final BiFunction<Object, Object, Object> elementOf;
 
         /**
          * Instantiates a collection backed by the given database collection.
@@ -634,11 +2677,42 @@ public abstract class AbstractDatabase implements Database {
          *            The collection that backs this.
          * @param cache
          *            The cache being used by the data.
+         * @param writes
+         *            The write-behind buffer being used by the data, or <tt>null</tt>
+         *            if none.
+         * @param keyOf
+         *            The function that obtains the cache key that an element
+         *            corresponds to, or <tt>null</tt> if the elements do not identify
+         *            a key.
+         * @param elementOf
+         *            The function that obtains the element that corresponds to a
+         *            cached mapping, given its key and value.
          */
-        public DatabaseCollection( Collection<E> backing, Cache<?, ?> cache ) {
+        public DatabaseCollection( Collection<E> backing, DatabaseCache<?, ?> cache, WriteBuffer<?, ?> writes,
+                Function<Object, Object> keyOf, BiFunction<Object, Object, Object> elementOf ) {
 
             this.backing = backing;
             this.cache = cache;
+            this.writes = writes;
+            this.keyOf = keyOf;
+            this.elementOf = elementOf;
+
+        }
+
+        /**
+         * Invalidates the cached mappings that correspond to an element that was
+         * removed.
+         *
+         * @param element
+         *            The removed element.
+         */
+        public void invalidate( Object element ) {
+
+            if ( keyOf != null ) {
+                cache.remove( keyOf.apply( element ) );
+            } else {
+                cache.removeIf( ( k, v ) -> Objects.equals( elementOf.apply( k, v ), element ) );
+            }
 
         }
 
@@ -649,6 +2723,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.size();
 
         }
@@ -660,6 +2736,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.isEmpty();
 
         }
@@ -671,6 +2749,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.contains( o );
 
         }
@@ -682,7 +2762,22 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return new DatabaseIterator<>( backing.iterator(), cache );
+            flush( writes );
+
+            return new DatabaseIterator<>( backing.iterator(), this );
+
+        }
+
+        @Override
+        public Spliterator<E> spliterator() {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            flush( writes );
+
+            return new DatabaseSpliterator<>( backing.spliterator(), this );
 
         }
 
@@ -693,6 +2788,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.toArray();
 
         }
@@ -704,6 +2801,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.toArray( a );
 
         }
@@ -715,6 +2814,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.add( e );
 
         }
@@ -726,8 +2827,13 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            cache.clear(); // Invalidate cache.
-            return backing.remove( o );
+            flush( writes );
+
+            try {
+                return backing.remove( o );
+            } finally {
+                invalidate( o );
+            }
 
         }
 
@@ -738,6 +2844,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.containsAll( c );
 
         }
@@ -749,6 +2857,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.addAll( c );
 
         }
@@ -760,8 +2870,23 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            cache.clear(); // Invalidate cache.
-            return backing.removeAll( c );
+            flush( writes );
+
+            try {
+                return backing.removeAll( c );
+            } finally { // Invalidate all removed elements at once.
+                if ( keyOf != null ) {
+                    List<Object> keys = new ArrayList<>( c.size() );
+                    for ( Object element : c ) {
+
+                        keys.add( keyOf.apply( element ) );
+
+                    }
+                    cache.invalidateAll( keys );
+                } else {
+                    cache.removeIf( ( k, v ) -> c.contains( elementOf.apply( k, v ) ) );
+                }
+            }
 
         }
 
@@ -772,8 +2897,13 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            cache.clear(); // Invalidate cache.
-            return backing.retainAll( c );
+            flush( writes );
+
+            try {
+                return backing.retainAll( c );
+            } finally { // Invalidate all cached mappings that were not retained.
+                cache.removeIf( ( k, v ) -> !c.contains( elementOf.apply( k, v ) ) );
+            }
 
         }
 
@@ -784,8 +2914,13 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            cache.clear(); // Invalidate cache.
-            backing.clear();
+            flush( writes );
+
+            try {
+                backing.clear();
+            } finally {
+                cache.clear(); // Invalidate cache.
+            }
 
         }
 
@@ -796,6 +2931,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.equals( o );
 
         }
@@ -807,6 +2944,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.hashCode();
 
         }
@@ -818,6 +2957,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.toString();
 
         }
@@ -848,10 +2989,92 @@ public abstract class AbstractDatabase implements Database {
          *            The set that backs this.
          * @param cache
          *            The cache being used by the data.
+         * @param writes
+         *            The write-behind buffer being used by the data, or <tt>null</tt>
+         *            if none.
+         * @param keyOf
+         *            The function that obtains the cache key that an element
+         *            corresponds to, or <tt>null</tt> if the elements do not identify
+         *            a key.
+         * @param elementOf
+         *            The function that obtains the element that corresponds to a
+         *            cached mapping, given its key and value.
+         */
+        public DatabaseSet( Set<E> backing, DatabaseCache<?, ?> cache, WriteBuffer<?, ?> writes,
+                Function<Object, Object> keyOf, BiFunction<Object, Object, Object> elementOf ) {
+
+            super( backing, cache, writes, keyOf, elementOf );
+
+        }
+
+    }
+
+    /**
+     * Read-only tree entry that represents a cached mapping, used to check whether
+     * the mapping is in a collection of entries of a tree.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    private static class CachedTreeEntry implements Graph.Entry<Object, Object> {
+
+        private final List<Object> path;
+        private final Object value;
+
+        /**
+         * Instantiates an entry.
+         *
+         * @param path
+         *            The path of the mapping.
+         * @param value
+         *            The value of the mapping.
          */
-        public DatabaseSet( Set<E> backing, Cache<?, ?> cache ) {
+        @SuppressWarnings( "unchecked" )
+        public CachedTreeEntry( List<?> path, Object value ) {
+
+            this.path = Collections.unmodifiableList( (List<Object>) path );
+            this.value = value;
+
+        }
+
+        @Override
+        public List<Object> getPath() {
+
+            return path;
+
+        }
+
+        @Override
+        public Object getValue() {
+
+            return value;
+
+        }
+
+        @Override
+        public Object setValue( Object value ) throws UnsupportedOperationException {
+
+            throw new UnsupportedOperationException( "Cached entries are read-only." );
+
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+
+            if ( !( obj instanceof Graph.Entry ) ) {
+                return false; // Not an Entry instance.
+            }
+
+            Graph.Entry<?, ?> entry = (Graph.Entry<?, ?>) obj;
+            return Objects.equals( path, entry.getPath() ) && Objects.equals( value, entry.getValue() );
+
+        }
 
-            super( backing, cache );
+        @Override
+        public int hashCode() {
+
+            return Objects.hashCode( path ) ^ Objects.hashCode( value );
 
         }
 
@@ -862,6 +3085,53 @@ public abstract class AbstractDatabase implements Database {
      * checking if the database is open and caching data.
      */
 
+    /**
+     * Obtains the function that a cache should use to search the given tree for
+     * several paths at once.
+     *
+     * @param tree
+     *            The tree.
+     * @param <V>
+     *            The type of values stored in the tree.
+     * @return The function, or <tt>null</tt> if the tree cannot search several
+     *         paths at once.
+     */
+    private static <V> Function<Collection<Object>, Map<?, V>> bulkFetcher( Tree<?, V> tree ) {
+
+        if ( !( tree instanceof BulkTree ) ) {
+            return null;
+        }
+        @SuppressWarnings( "unchecked" ) // Paths are only used for lookup.
+        BulkTree<Object, V> bulk = (BulkTree<Object, V>) tree;
+        @SuppressWarnings( "unchecked" )
+        Function<Collection<Object>, Map<?, V>> fetcher = paths -> bulk
+                .getPaths( (Collection<List<Object>>) (Collection<?>) paths );
+        return fetcher;
+
+    }
+
+    /**
+     * Obtains the function that a cache should use to search the given map for
+     * several keys at once.
+     *
+     * @param map
+     *            The map.
+     * @param <V>
+     *            The type of values stored in the map.
+     * @return The function, or <tt>null</tt> if the map cannot search several keys
+     *         at once.
+     */
+    private static <V> Function<Collection<Object>, Map<?, V>> bulkFetcher( Map<?, V> map ) {
+
+        if ( !( map instanceof BulkMap ) ) {
+            return null;
+        }
+        @SuppressWarnings( "unchecked" ) // Keys are only used for lookup.
+        BulkMap<Object, V> bulk = (BulkMap<Object, V>) map;
+        return bulk::getAll;
+
+    }
+
     /**
      * Tree that represents data in the database.
      * <p>
@@ -869,9 +3139,47 @@ public abstract class AbstractDatabase implements Database {
      * If it is, the call fails with a {@link IllegalStateException}. Else, the call
      * is passed through to the backing tree.
      * <p>
+     * Values of several paths can be {@link #getPaths(Collection) retrieved at
+     * once}. If the backing tree is also a {@link BulkTree}, the paths that are not
+     * cached are retrieved from it with a single call, and
+     * {@link #getSubtree(List) subtree} operations are passed through to it.
+     * Removing a subtree only invalidates the cached paths in that subtree.
+     * <p>
+     * If write-behind is enabled, {@link #put(List, Object)} and
+     * {@link #putAll(Graph)} only buffer the writes (while {@link #get(List)},
+     * {@link #getPaths(Collection)} and {@link #containsPath(List)} see the
+     * buffered values),
+     * and any other call flushes the buffer before being passed through. The
+     * previous value returned by {@link #put(List, Object)} is then only taken
+     * from the buffer or the cache, without reading the database, so it is
+     * <tt>null</tt> if the path is not buffered or cached. Callers that need the
+     * actual previous value should {@link #get(List) get} it first, and callers
+     * that do not need it should use {@link #set(List, Object)}.
+     * <p>
+     * {@link #set(List, Object)} and {@link #delete(List)} never read the
+     * previous value: they are passed through to the corresponding operations of
+     * the backing tree if it is a {@link BulkTree} (and to <tt>put</tt> and
+     * <tt>remove</tt> otherwise), or, with write-behind, the write is just
+     * buffered.
+     * <p>
+     * The basic operations can also be performed {@link AsyncTree
+     * asynchronously}. Cached paths are returned immediately, and the others are
+     * retrieved with the asynchronous operations of the backing tree (if it is an
+     * {@link AsyncTree}, else in a shared executor). Asynchronous writes are not
+     * buffered. If there are buffered writes, they are first flushed in a shared
+     * executor, so that the calling thread is never blocked by the flush. They
+     * are recorded in the metrics once they finish but not traced.
+     * <p>
+     * {@link #putIfAbsent(List, Object)}, {@link #replace(List, Object, Object)}
+     * and {@link #remove(List, Object)} are passed through to the backing tree
+     * without checking the cache first (since other processes may have changed
+     * the value), so they are as atomic as those of the backing tree. The cache
+     * is then updated to the resulting value, or invalidated if the operation
+     * failed.
+     * <p>
      * This wrapper is <b>not</b> thread-safe.
      * 
-     * @version 1.0
+     * @version 1.10
      * @author ThiagoTGM
      * @since 2018-07-27
      * @param <K>
@@ -879,21 +3187,43 @@ public abstract class AbstractDatabase implements Database {
      * @param <V>
      *            The type of values stored in the tree.
      */
-    private class DatabaseTree<K, V> implements Tree<K, V> {
+    private class DatabaseTree<K, V> implements BulkTree<K, V>, AsyncTree<K, V> {
 
         private final Tree<K, V> backing;
         private final DatabaseCache<List<? extends K>, V> cache;
+        private final WriteBuffer<List<K>, V> writes;
+        private final DatabaseMetrics metrics;
+        private final DataWeigher<List<K>, V> weigher;
 
         /**
          * Instantiates a tree backed by the given database tree.
          * 
          * @param backing
          *            The tree that backs this.
+         * @param weigher
+         *            The weigher to use for cached mappings (and traced
+         *            operations).
+         * @param valueTranslator
+         *            The translator for values.
+         * @param cacheSpec
+         *            The configuration of the cache.
+         * @param metrics
+         *            The metrics of the tree.
          */
-        public DatabaseTree( Tree<K, V> backing ) {
+        public DatabaseTree( Tree<K, V> backing, DataWeigher<List<K>, V> weigher, Translator<V> valueTranslator,
+                CacheSpec cacheSpec, DatabaseMetrics metrics ) {
 
             this.backing = backing;
-            this.cache = new DatabaseCache<>();
+            this.metrics = metrics;
+            this.weigher = weigher;
+            @SuppressWarnings( "unchecked" ) // Paths are only read by the weigher.
+            Cache.Weigher<List<? extends K>, V> pathWeigher =
+                    (Cache.Weigher<List<? extends K>, V>) (Cache.Weigher<?, V>) weigher;
+            this.cache = new DatabaseCache<>( p -> backing.get( (List<?>) p ),
+                    p -> backing.containsPath( (List<?>) p ), bulkFetcher( backing ), pathWeigher, valueTranslator,
+                    cacheSpec, metrics );
+            this.writes = newWriteBuffer( batch -> backing.putAll( Graphs.mappedTree( batch ) ), cacheSpec,
+                    metrics );
 
         }
 
@@ -904,7 +3234,12 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return cache.containsKey( path ) || backing.containsPath( path );
+            try ( Trace trace = OperationTracer.start( "containsKey", metrics, weigher ).key( path ) ) {
+                if ( ( writes != null ) && ( writes.get( path ) != null ) ) {
+                    return true; // Write is buffered.
+                }
+                return cache.containsKey( path ) || ( !cache.isAbsent( path ) && backing.containsPath( path ) );
+            }
 
         }
 
@@ -915,72 +3250,358 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return cache.containsValue( value ) || backing.containsValue( value );
+            try ( Trace trace = OperationTracer.start( "containsValue", metrics, weigher ) ) {
+                flush( writes );
+
+                if ( cache.containsValue( trace.value( value ) ) ) {
+                    return true;
+                }
+                long start = System.nanoTime();
+                boolean found = backing.containsValue( value );
+                metrics.recordBackendCall( System.nanoTime() - start );
+                return found;
+            }
+
+        }
+
+        @Override
+        public V get( List<?> path ) throws IllegalArgumentException {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            try ( Trace trace = OperationTracer.start( "get", metrics, weigher ).key( path ) ) {
+                if ( writes != null ) {
+                    BufferedWrite<List<K>, V> write = writes.get( path );
+                    if ( write != null ) {
+                        return trace.value( write.value ); // Not written yet.
+                    }
+                }
+                return trace.value( cache.fetch( path ) );
+            } finally {
+                metrics.recordOperation( Operation.GET, System.nanoTime() - start );
+            }
+
+        }
+
+        @Override
+        public Map<List<K>, V> getPaths( Collection<? extends List<K>> paths ) throws IllegalArgumentException {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            Map<List<K>, V> found = new HashMap<>();
+            List<List<K>> unbuffered = new ArrayList<>( paths.size() );
+            for ( List<K> path : paths ) {
+
+                BufferedWrite<List<K>, V> write = ( writes != null ) ? writes.get( path ) : null;
+                if ( write != null ) {
+                    found.put( path, write.value ); // Not written yet.
+                } else {
+                    unbuffered.add( path );
+                }
+
+            }
+            try ( Trace trace = OperationTracer.start( "getAll", metrics, null ).items( paths.size() ) ) {
+                for ( Map.Entry<Object, V> entry : cache.fetchAll( unbuffered ).entrySet() ) {
+
+                    @SuppressWarnings( "unchecked" ) // One of the given paths.
+                    List<K> path = (List<K>) entry.getKey();
+                    found.put( path, entry.getValue() );
+
+                }
+            } finally {
+                metrics.recordOperation( Operation.GET, System.nanoTime() - start );
+            }
+            return found;
+
+        }
+
+        @Override
+        public List<V> getAll( List<?> path ) throws IllegalArgumentException {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            flush( writes );
+
+            return backing.getAll( path );
+
+        }
+
+        @Override
+        public Map<List<K>, V> getSubtree( List<?> prefix ) throws NullPointerException {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            try ( Trace trace = OperationTracer.start( "getSubtree", metrics, weigher ).key( prefix ) ) {
+                flush( writes );
+
+                long start = System.nanoTime();
+                Map<List<K>, V> found = ( backing instanceof BulkTree )
+                        ? ( (BulkTree<K, V>) backing ).getSubtree( prefix )
+                        : BulkTree.super.getSubtree( prefix );
+                metrics.recordBackendCall( System.nanoTime() - start );
+                trace.items( found.size() );
+                return found;
+            }
+
+        }
+
+        @Override
+        public boolean removeSubtree( List<?> prefix ) throws NullPointerException, UnsupportedOperationException {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            try ( Trace trace = OperationTracer.start( "removeSubtree", metrics, weigher ).key( prefix ) ) {
+                flush( writes );
+
+                long start = System.nanoTime();
+                try {
+                    return ( backing instanceof BulkTree ) ? ( (BulkTree<K, V>) backing ).removeSubtree( prefix )
+                            : BulkTree.super.removeSubtree( prefix );
+                } finally {
+                    metrics.recordBackendCall( System.nanoTime() - start );
+                    cache.removeIf( ( p, v ) -> p.size() >= prefix.size()
+                            && p.subList( 0, prefix.size() ).equals( prefix ) );
+                }
+            }
+
+        }
+
+        @Override
+        public V put( List<K> path, V value )
+                throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            try ( Trace trace = OperationTracer.start( "put", metrics, weigher ).key( path ) ) {
+                trace.value( value );
+                if ( writes != null ) { // Buffer the write.
+                    BufferedWrite<List<K>, V> write = writes.get( path );
+                    V previous = ( write != null ) ? write.value : cache.get( path ); // No read.
+                    writes.put( new ArrayList<>( path ), value );
+                    cache.update( path, value );
+                    metrics.recordOperation( Operation.PUT, System.nanoTime() - start );
+                    return previous;
+                }
+
+                V previous = backing.put( path, value );
+                metrics.recordBackendCall( System.nanoTime() - start );
+                cache.update( path, value ); // Updates previously cached value, if any.
+                metrics.recordOperation( Operation.PUT, System.nanoTime() - start );
+                return previous;
+            }
+
+        }
+
+        @Override
+        public V putIfAbsent( List<K> path, V value )
+                throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            flush( writes );
+
+            V previous = backing.putIfAbsent( path, value );
+            cache.update( path, ( previous == null ) ? value : previous ); // Value that won.
+            return previous;
+
+        }
+
+        @Override
+        public V remove( List<?> path ) throws UnsupportedOperationException, IllegalArgumentException {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            try ( Trace trace = OperationTracer.start( "remove", metrics, weigher ).key( path ) ) {
+                flush( writes );
+
+                long call = System.nanoTime();
+                try {
+                    return trace.value( backing.remove( path ) );
+                } finally {
+                    long end = System.nanoTime();
+                    cache.remove( path ); // Remove previously cached value, if any.
+                    metrics.recordBackendCall( end - call );
+                    metrics.recordOperation( Operation.REMOVE, end - start );
+                }
+            }
+
+        }
+
+        @Override
+        public void set( List<K> path, V value )
+                throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            try ( Trace trace = OperationTracer.start( "put", metrics, weigher ).key( path ) ) {
+                trace.value( value );
+                if ( writes != null ) { // Buffer the write.
+                    writes.put( new ArrayList<>( path ), value );
+                } else {
+                    if ( backing instanceof BulkTree ) {
+                        ( (BulkTree<K, V>) backing ).set( path, value );
+                    } else {
+                        backing.put( path, value );
+                    }
+                    metrics.recordBackendCall( System.nanoTime() - start );
+                }
+                cache.update( path, value ); // Updates previously cached value, if any.
+                metrics.recordOperation( Operation.PUT, System.nanoTime() - start );
+            }
 
         }
 
         @Override
-        public V get( List<?> path ) throws IllegalArgumentException {
+        public void delete( List<?> path ) throws UnsupportedOperationException, IllegalArgumentException {
 
             if ( closed ) {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return cache.fetch( path, p -> backing.get( p ), p -> backing.containsPath( p ) );
+            long start = System.nanoTime();
+            try ( Trace trace = OperationTracer.start( "remove", metrics, weigher ).key( path ) ) {
+                flush( writes );
+
+                long call = System.nanoTime();
+                try {
+                    if ( backing instanceof BulkTree ) {
+                        ( (BulkTree<K, V>) backing ).delete( path );
+                    } else {
+                        backing.remove( path );
+                    }
+                } finally {
+                    long end = System.nanoTime();
+                    cache.remove( path ); // Remove previously cached value, if any.
+                    metrics.recordBackendCall( end - call );
+                    metrics.recordOperation( Operation.REMOVE, end - start );
+                }
+            }
 
         }
 
         @Override
-        public List<V> getAll( List<?> path ) throws IllegalArgumentException {
+        public CompletableFuture<V> getAsync( List<?> path ) {
 
             if ( closed ) {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return backing.getAll( path );
+            long start = System.nanoTime();
+            if ( writes != null ) {
+                BufferedWrite<List<K>, V> write = writes.get( path );
+                if ( write != null ) { // Not written yet.
+                    metrics.recordOperation( Operation.GET, System.nanoTime() - start );
+                    return CompletableFuture.completedFuture( write.value );
+                }
+            }
+            return cache.fetchAsync( path, p -> getBackingAsync( (List<?>) p ), p -> async(
+                    backing instanceof AsyncTree, () -> ( (AsyncTree<K, V>) backing ).containsPathAsync( (List<?>) p ),
+                    () -> backing.containsPath( (List<?>) p ) ) ).whenComplete( ( value, e ) -> {
+
+                        metrics.recordOperation( Operation.GET, System.nanoTime() - start );
+
+                    } );
+
+        }
+
+        /**
+         * Retrieves the value of a path from the backing tree without blocking.
+         *
+         * @param path
+         *            The path to retrieve.
+         * @return The future value.
+         */
+        private CompletableFuture<V> getBackingAsync( List<?> path ) {
+
+            return async( backing instanceof AsyncTree, () -> ( (AsyncTree<K, V>) backing ).getAsync( path ),
+                    () -> backing.get( path ) );
 
         }
 
         @Override
-        public V put( List<K> path, V value )
-                throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+        public CompletableFuture<Boolean> containsPathAsync( List<?> path ) {
 
             if ( closed ) {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            cache.update( path, value ); // Updates previously cached value, if any.
-
-            return backing.put( path, value );
+            if ( ( ( writes != null ) && ( writes.get( path ) != null ) ) || cache.containsKey( path ) ) {
+                return CompletableFuture.completedFuture( true ); // Buffered or cached.
+            }
+            if ( cache.isAbsent( path ) ) {
+                return CompletableFuture.completedFuture( false ); // Known to not exist.
+            }
+            return async( backing instanceof AsyncTree, () -> ( (AsyncTree<K, V>) backing ).containsPathAsync( path ),
+                    () -> backing.containsPath( path ) );
 
         }
 
         @Override
-        public V putIfAbsent( List<K> path, V value )
-                throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+        public CompletableFuture<V> putAsync( List<K> path, V value ) {
 
             if ( closed ) {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            V previous = backing.putIfAbsent( path, value );
-            if ( previous == null ) {
-                cache.update( path, value );
-            }
-            return previous;
+            List<K> key = new ArrayList<>( path );
+            long start = System.nanoTime();
+            return afterFlush( writes, () -> async( backing instanceof AsyncTree,
+                    () -> ( (AsyncTree<K, V>) backing ).putAsync( key, value ),
+                    () -> backing.put( key, value ) ) ).whenComplete( ( previous, e ) -> {
+
+                        long elapsed = System.nanoTime() - start;
+                        metrics.recordBackendCall( elapsed );
+                        if ( e == null ) {
+                            cache.update( key, value ); // Updates previously cached value, if any.
+                        }
+                        metrics.recordOperation( Operation.PUT, elapsed );
+
+                    } );
 
         }
 
         @Override
-        public V remove( List<?> path ) throws UnsupportedOperationException, IllegalArgumentException {
+        public CompletableFuture<V> removeAsync( List<?> path ) {
 
             if ( closed ) {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            cache.remove( path ); // Remove previously cached value, if any.
+            List<?> key = new ArrayList<>( path );
+            long start = System.nanoTime();
+            return afterFlush( writes, () -> async( backing instanceof AsyncTree,
+                    () -> ( (AsyncTree<K, V>) backing ).removeAsync( key ),
+                    () -> backing.remove( key ) ) ).whenComplete( ( previous, e ) -> {
 
-            return backing.remove( path );
+                        long elapsed = System.nanoTime() - start;
+                        cache.remove( key ); // Remove previously cached value, if any.
+                        metrics.recordBackendCall( elapsed );
+                        metrics.recordOperation( Operation.REMOVE, elapsed );
+
+                    } );
 
         }
 
@@ -991,7 +3612,9 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return new DatabaseSet<>( backing.pathSet(), cache );
+            flush( writes );
+
+            return new DatabaseSet<>( backing.pathSet(), cache, writes, p -> p, ( p, v ) -> p );
 
         }
 
@@ -1002,7 +3625,9 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return new DatabaseCollection<>( backing.values(), cache );
+            flush( writes );
+
+            return new DatabaseCollection<>( backing.values(), cache, writes, null, ( k, v ) -> v );
 
         }
 
@@ -1013,7 +3638,11 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return new DatabaseSet<>( backing.entrySet(), cache );
+            flush( writes );
+
+            return new DatabaseSet<>( backing.entrySet(), cache, writes,
+                    e -> ( e instanceof Graph.Entry ) ? ( (Graph.Entry<?, ?>) e ).getPath() : e,
+                    ( p, v ) -> new CachedTreeEntry( (List<?>) p, v ) );
 
         }
 
@@ -1024,7 +3653,14 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return backing.size();
+            try ( Trace trace = OperationTracer.start( "size", metrics, null ) ) {
+                flush( writes );
+
+                long start = System.nanoTime();
+                int size = backing.size();
+                metrics.recordBackendCall( System.nanoTime() - start );
+                return size;
+            }
 
         }
 
@@ -1035,6 +3671,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return cache.isEmpty() && backing.isEmpty(); // Use cache as a possible shortcut.
 
         }
@@ -1046,8 +3684,13 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            cache.clear();
-            backing.clear();
+            flush( writes );
+
+            try {
+                backing.clear();
+            } finally {
+                cache.clear();
+            }
 
         }
 
@@ -1059,12 +3702,26 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            for ( Graph.Entry<? extends K, ? extends V> entry : g.entrySet() ) {
-                // Update each entry in the cache.
-                cache.update( entry.getPath(), entry.getValue() );
+            try ( Trace trace = OperationTracer.start( "putAll", metrics, null ).items( g.size() ) ) {
+                if ( writes != null ) { // Buffer the writes.
+                    for ( Graph.Entry<? extends K, ? extends V> entry : g.entrySet() ) {
+
+                        writes.put( new ArrayList<>( entry.getPath() ), entry.getValue() );
+                        cache.update( entry.getPath(), entry.getValue() );
+
+                    }
+                    return;
+                }
+
+                long start = System.nanoTime();
+                backing.putAll( g );
+                metrics.recordBackendCall( System.nanoTime() - start );
+                for ( Graph.Entry<? extends K, ? extends V> entry : g.entrySet() ) {
+                    // Update each entry in the cache.
+                    cache.update( entry.getPath(), entry.getValue() );
 
+                }
             }
-            backing.putAll( g );
 
         }
 
@@ -1076,14 +3733,16 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            if ( cache.containsKey( path ) ) { // Mapping is cached.
-                if ( Objects.equals( cache.get( path ), oldValue ) ) {
-                    cache.update( path, newValue ); // Value matched.
-                } else {
-                    return false; // Value did not match. Abort.
-                }
+            flush( writes );
+
+            // Not checked against the cache, which may be out of date if other processes write too.
+            if ( backing.replace( path, oldValue, newValue ) ) {
+                cache.update( path, newValue ); // Value matched.
+                return true;
+            } else {
+                cache.remove( path ); // Cached value (if any) is out of date.
+                return false;
             }
-            return backing.replace( path, oldValue, newValue );
 
         }
 
@@ -1095,8 +3754,11 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
+            V previous = backing.replace( path, value );
             cache.update( path, value ); // Update cached value, if any.
-            return backing.replace( path, value );
+            return previous;
 
         }
 
@@ -1108,14 +3770,14 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            if ( cache.containsKey( path ) ) { // Mapping is cached.
-                if ( Objects.equals( cache.get( path ), value ) ) {
-                    cache.remove( path ); // Value matched.
-                } else {
-                    return false; // Value did not match. Abort.
-                }
+            flush( writes );
+
+            // Not checked against the cache, which may be out of date if other processes write too.
+            try {
+                return backing.remove( path, value ); // Delegate to database.
+            } finally {
+                cache.remove( path ); // Removed, or cached value (if any) is out of date.
             }
-            return backing.remove( path, value ); // Delegate to database.
 
         }
 
@@ -1126,6 +3788,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.equals( obj );
 
         }
@@ -1137,6 +3801,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.hashCode();
 
         }
@@ -1148,6 +3814,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.toString();
 
         }
@@ -1161,9 +3829,47 @@ public abstract class AbstractDatabase implements Database {
      * If it is, the call fails with a {@link IllegalStateException}. Else, the call
      * is passed through to the backing map.
      * <p>
+     * Values of several keys can be {@link #getAll(Collection) retrieved at once}.
+     * If the backing map is also a {@link BulkMap}, the keys that are not cached
+     * are retrieved from it with a single call.
+     * <p>
+     * If write-behind is enabled, {@link #put(Object, Object)} and
+     * {@link #putAll(Map)} only buffer the writes (while {@link #get(Object)},
+     * {@link #getAll(Collection)} and {@link #containsKey(Object)} see the
+     * buffered values), and any other call
+     * flushes the buffer before being passed through. The previous value returned
+     * by {@link #put(Object, Object)} is then only taken from the buffer or the
+     * cache, without reading the database, so it is <tt>null</tt> if the key is
+     * not buffered or cached. Callers that need the actual previous value should
+     * {@link #get(Object) get} it first, and callers that do not need it should
+     * use {@link #set(Object, Object)}.
+     * <p>
+     * {@link #set(Object, Object)} and {@link #delete(Object)} never read the
+     * previous value: they are passed through to the corresponding operations of
+     * the backing map if it is a {@link BulkMap} (and to <tt>put</tt> and
+     * <tt>remove</tt> otherwise), or, with write-behind, the write is just
+     * buffered.
+     * <p>
+     * The basic operations can also be performed {@link AsyncMap
+     * asynchronously}. Cached keys are returned immediately, and the others are
+     * retrieved with the asynchronous operations of the backing map (if it is an
+     * {@link AsyncMap}, else in a shared executor). Asynchronous writes are not
+     * buffered. If there are buffered writes, they are first flushed in a shared
+     * executor, so that the calling thread is never blocked by the flush. They
+     * are recorded in the metrics once they finish but not traced.
+     * <p>
+     * The atomic operations ({@link #compute(Object, BiFunction) compute},
+     * {@link #merge(Object, Object, BiFunction) merge},
+     * {@link #putIfAbsent(Object, Object) putIfAbsent},
+     * {@link #replace(Object, Object, Object) replace}, etc) are passed through to
+     * the backing map without checking the cache first (since other processes
+     * may have changed the value), so they are as atomic as those of the backing
+     * map. The cache is then updated to the resulting value, or invalidated if
+     * the operation failed.
+     * <p>
      * This wrapper is <b>not</b> thread-safe.
      * 
-     * @version 1.0
+     * @version 1.8
      * @author ThiagoTGM
      * @since 2018-07-27
      * @param <K>
@@ -1171,21 +3877,38 @@ public abstract class AbstractDatabase implements Database {
      * @param <V>
      *            The type of values stored in the map.
      */
-    private class DatabaseMap<K, V> implements Map<K, V> {
+    private class DatabaseMap<K, V> implements BulkMap<K, V>, AsyncMap<K, V> {
 
         private final Map<K, V> backing;
         private final DatabaseCache<K, V> cache;
+        private final WriteBuffer<K, V> writes;
+        private final DatabaseMetrics metrics;
+        private final DataWeigher<K, V> weigher;
 
         /**
          * Instantiates a map backed by the given database map.
          * 
          * @param backing
          *            The map that backs this.
+         * @param weigher
+         *            The weigher to use for cached mappings (and traced
+         *            operations).
+         * @param valueTranslator
+         *            The translator for values.
+         * @param cacheSpec
+         *            The configuration of the cache.
+         * @param metrics
+         *            The metrics of the map.
          */
-        public DatabaseMap( Map<K, V> backing ) {
+        public DatabaseMap( Map<K, V> backing, DataWeigher<K, V> weigher, Translator<V> valueTranslator,
+                CacheSpec cacheSpec, DatabaseMetrics metrics ) {
 
             this.backing = backing;
-            this.cache = new DatabaseCache<>();
+            this.metrics = metrics;
+            this.weigher = weigher;
+            this.cache = new DatabaseCache<>( k -> backing.get( k ), k -> backing.containsKey( k ),
+                    bulkFetcher( backing ), weigher, valueTranslator, cacheSpec, metrics );
+            this.writes = newWriteBuffer( batch -> backing.putAll( batch ), cacheSpec, metrics );
 
         }
 
@@ -1196,7 +3919,14 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return backing.size();
+            try ( Trace trace = OperationTracer.start( "size", metrics, null ) ) {
+                flush( writes );
+
+                long start = System.nanoTime();
+                int size = backing.size();
+                metrics.recordBackendCall( System.nanoTime() - start );
+                return size;
+            }
 
         }
 
@@ -1207,6 +3937,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return cache.isEmpty() && backing.isEmpty(); // Use cache as a possible shortcut.
 
         }
@@ -1218,7 +3950,12 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return backing.containsKey( key );
+            try ( Trace trace = OperationTracer.start( "containsKey", metrics, weigher ).key( key ) ) {
+                if ( ( writes != null ) && ( writes.get( key ) != null ) ) {
+                    return true; // Write is buffered.
+                }
+                return cache.containsKey( key ) || ( !cache.isAbsent( key ) && backing.containsKey( key ) );
+            }
 
         }
 
@@ -1229,7 +3966,14 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return backing.containsValue( value );
+            try ( Trace trace = OperationTracer.start( "containsValue", metrics, weigher ) ) {
+                flush( writes );
+
+                long start = System.nanoTime();
+                boolean found = backing.containsValue( trace.value( value ) );
+                metrics.recordBackendCall( System.nanoTime() - start );
+                return found;
+            }
 
         }
 
@@ -1240,7 +3984,53 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return cache.fetch( key, k -> backing.get( k ), k -> backing.containsKey( k ) );
+            long start = System.nanoTime();
+            try ( Trace trace = OperationTracer.start( "get", metrics, weigher ).key( key ) ) {
+                if ( writes != null ) {
+                    BufferedWrite<K, V> write = writes.get( key );
+                    if ( write != null ) {
+                        return trace.value( write.value ); // Not written yet.
+                    }
+                }
+                return trace.value( cache.fetch( key ) );
+            } finally {
+                metrics.recordOperation( Operation.GET, System.nanoTime() - start );
+            }
+
+        }
+
+        @Override
+        public Map<K, V> getAll( Collection<? extends K> keys ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            Map<K, V> found = new HashMap<>();
+            List<K> unbuffered = new ArrayList<>( keys.size() );
+            for ( K key : keys ) {
+
+                BufferedWrite<K, V> write = ( writes != null ) ? writes.get( key ) : null;
+                if ( write != null ) {
+                    found.put( key, write.value ); // Not written yet.
+                } else {
+                    unbuffered.add( key );
+                }
+
+            }
+            try ( Trace trace = OperationTracer.start( "getAll", metrics, null ).items( keys.size() ) ) {
+                for ( Map.Entry<Object, V> entry : cache.fetchAll( unbuffered ).entrySet() ) {
+
+                    @SuppressWarnings( "unchecked" ) // One of the given keys.
+                    K key = (K) entry.getKey();
+                    found.put( key, entry.getValue() );
+
+                }
+            } finally {
+                metrics.recordOperation( Operation.GET, System.nanoTime() - start );
+            }
+            return found;
 
         }
 
@@ -1251,9 +4041,24 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            cache.update( key, value ); // Update previously cached value, if any.
+            long start = System.nanoTime();
+            try ( Trace trace = OperationTracer.start( "put", metrics, weigher ).key( key ) ) {
+                trace.value( value );
+                if ( writes != null ) { // Buffer the write.
+                    BufferedWrite<K, V> write = writes.get( key );
+                    V previous = ( write != null ) ? write.value : cache.get( key ); // No read.
+                    writes.put( key, value );
+                    cache.update( key, value );
+                    metrics.recordOperation( Operation.PUT, System.nanoTime() - start );
+                    return previous;
+                }
 
-            return backing.put( key, value );
+                V previous = backing.put( key, value );
+                metrics.recordBackendCall( System.nanoTime() - start );
+                cache.update( key, value ); // Update previously cached value, if any.
+                metrics.recordOperation( Operation.PUT, System.nanoTime() - start );
+                return previous;
+            }
 
         }
 
@@ -1264,9 +4069,175 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            cache.remove( key ); // Remove previously cached value, if any.
+            long start = System.nanoTime();
+            try ( Trace trace = OperationTracer.start( "remove", metrics, weigher ).key( key ) ) {
+                flush( writes );
+
+                long call = System.nanoTime();
+                try {
+                    return trace.value( backing.remove( key ) );
+                } finally {
+                    long end = System.nanoTime();
+                    cache.remove( key ); // Remove previously cached value, if any.
+                    metrics.recordBackendCall( end - call );
+                    metrics.recordOperation( Operation.REMOVE, end - start );
+                }
+            }
+
+        }
+
+        @Override
+        public void set( K key, V value ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            try ( Trace trace = OperationTracer.start( "put", metrics, weigher ).key( key ) ) {
+                trace.value( value );
+                if ( writes != null ) { // Buffer the write.
+                    writes.put( key, value );
+                } else {
+                    if ( backing instanceof BulkMap ) {
+                        ( (BulkMap<K, V>) backing ).set( key, value );
+                    } else {
+                        backing.put( key, value );
+                    }
+                    metrics.recordBackendCall( System.nanoTime() - start );
+                }
+                cache.update( key, value ); // Update previously cached value, if any.
+                metrics.recordOperation( Operation.PUT, System.nanoTime() - start );
+            }
+
+        }
+
+        @Override
+        public void delete( Object key ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            try ( Trace trace = OperationTracer.start( "remove", metrics, weigher ).key( key ) ) {
+                flush( writes );
+
+                long call = System.nanoTime();
+                try {
+                    if ( backing instanceof BulkMap ) {
+                        ( (BulkMap<K, V>) backing ).delete( key );
+                    } else {
+                        backing.remove( key );
+                    }
+                } finally {
+                    long end = System.nanoTime();
+                    cache.remove( key ); // Remove previously cached value, if any.
+                    metrics.recordBackendCall( end - call );
+                    metrics.recordOperation( Operation.REMOVE, end - start );
+                }
+            }
+
+        }
+
+        @Override
+        public CompletableFuture<V> getAsync( Object key ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            if ( writes != null ) {
+                BufferedWrite<K, V> write = writes.get( key );
+                if ( write != null ) { // Not written yet.
+                    metrics.recordOperation( Operation.GET, System.nanoTime() - start );
+                    return CompletableFuture.completedFuture( write.value );
+                }
+            }
+            return cache.fetchAsync( key, this::getBackingAsync, k -> async( backing instanceof AsyncMap,
+                    () -> ( (AsyncMap<K, V>) backing ).containsKeyAsync( k ),
+                    () -> backing.containsKey( k ) ) ).whenComplete( ( value, e ) -> {
+
+                        metrics.recordOperation( Operation.GET, System.nanoTime() - start );
+
+                    } );
+
+        }
+
+        /**
+         * Retrieves the value of a key from the backing map without blocking.
+         *
+         * @param key
+         *            The key to retrieve.
+         * @return The future value.
+         */
+        private CompletableFuture<V> getBackingAsync( Object key ) {
+
+            return async( backing instanceof AsyncMap, () -> ( (AsyncMap<K, V>) backing ).getAsync( key ),
+                    () -> backing.get( key ) );
+
+        }
+
+        @Override
+        public CompletableFuture<Boolean> containsKeyAsync( Object key ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            if ( ( ( writes != null ) && ( writes.get( key ) != null ) ) || cache.containsKey( key ) ) {
+                return CompletableFuture.completedFuture( true ); // Buffered or cached.
+            }
+            if ( cache.isAbsent( key ) ) {
+                return CompletableFuture.completedFuture( false ); // Known to not exist.
+            }
+            return async( backing instanceof AsyncMap, () -> ( (AsyncMap<K, V>) backing ).containsKeyAsync( key ),
+                    () -> backing.containsKey( key ) );
+
+        }
+
+        @Override
+        public CompletableFuture<V> putAsync( K key, V value ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            return afterFlush( writes, () -> async( backing instanceof AsyncMap,
+                    () -> ( (AsyncMap<K, V>) backing ).putAsync( key, value ),
+                    () -> backing.put( key, value ) ) ).whenComplete( ( previous, e ) -> {
+
+                        long elapsed = System.nanoTime() - start;
+                        metrics.recordBackendCall( elapsed );
+                        if ( e == null ) {
+                            cache.update( key, value ); // Updates previously cached value, if any.
+                        }
+                        metrics.recordOperation( Operation.PUT, elapsed );
+
+                    } );
+
+        }
+
+        @Override
+        public CompletableFuture<V> removeAsync( Object key ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            long start = System.nanoTime();
+            return afterFlush( writes, () -> async( backing instanceof AsyncMap,
+                    () -> ( (AsyncMap<K, V>) backing ).removeAsync( key ),
+                    () -> backing.remove( key ) ) ).whenComplete( ( previous, e ) -> {
+
+                        long elapsed = System.nanoTime() - start;
+                        cache.remove( key ); // Remove previously cached value, if any.
+                        metrics.recordBackendCall( elapsed );
+                        metrics.recordOperation( Operation.REMOVE, elapsed );
 
-            return backing.remove( key );
+                    } );
 
         }
 
@@ -1277,12 +4248,55 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            for ( Map.Entry<? extends K, ? extends V> entry : m.entrySet() ) {
-                // Update each entry in the cache.
-                cache.update( entry.getKey(), entry.getValue() );
+            try ( Trace trace = OperationTracer.start( "putAll", metrics, null ).items( m.size() ) ) {
+                if ( writes != null ) { // Buffer the writes.
+                    for ( Map.Entry<? extends K, ? extends V> entry : m.entrySet() ) {
+
+                        writes.put( entry.getKey(), entry.getValue() );
+                        cache.update( entry.getKey(), entry.getValue() );
+
+                    }
+                    return;
+                }
+
+                long start = System.nanoTime();
+                backing.putAll( m );
+                metrics.recordBackendCall( System.nanoTime() - start );
+                for ( Map.Entry<? extends K, ? extends V> entry : m.entrySet() ) {
+                    // Update each entry in the cache.
+                    cache.update( entry.getKey(), entry.getValue() );
+
+                }
+            }
+
+        }
+
+        @Override
+        public void removeAll( Collection<?> keys ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            try ( Trace trace = OperationTracer.start( "removeAll", metrics, null ).items( keys.size() ) ) {
+                flush( writes );
+
+                long start = System.nanoTime();
+                try {
+                    if ( backing instanceof BulkMap ) { // Remove all at once.
+                        ( (BulkMap<K, V>) backing ).removeAll( keys );
+                    } else {
+                        for ( Object key : keys ) {
+
+                            backing.remove( key );
 
+                        }
+                    }
+                } finally {
+                    metrics.recordBackendCall( System.nanoTime() - start );
+                    cache.invalidateAll( keys ); // Remove previously cached values, if any.
+                }
             }
-            backing.putAll( m );
 
         }
 
@@ -1293,8 +4307,13 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            cache.clear();
-            backing.clear();
+            flush( writes );
+
+            try {
+                backing.clear();
+            } finally {
+                cache.clear();
+            }
 
         }
 
@@ -1305,7 +4324,9 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return new DatabaseSet<>( backing.keySet(), cache );
+            flush( writes );
+
+            return new DatabaseSet<>( backing.keySet(), cache, writes, k -> k, ( k, v ) -> k );
 
         }
 
@@ -1316,7 +4337,9 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return new DatabaseCollection<>( backing.values(), cache );
+            flush( writes );
+
+            return new DatabaseCollection<>( backing.values(), cache, writes, null, ( k, v ) -> v );
 
         }
 
@@ -1327,7 +4350,91 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            return new DatabaseSet<>( backing.entrySet(), cache );
+            flush( writes );
+
+            return new DatabaseSet<>( backing.entrySet(), cache, writes,
+                    e -> ( e instanceof Map.Entry ) ? ( (Map.Entry<?, ?>) e ).getKey() : e,
+                    ( k, v ) -> new AbstractMap.SimpleImmutableEntry<>( k, v ) );
+
+        }
+
+        /**
+         * Performs an atomic operation on the backing map, then updates the cached
+         * value of the given key to the resulting value (or removes it if there is
+         * no resulting value). If the operation fails, the cached value is removed,
+         * since it may be out of date.
+         *
+         * @param key
+         *            The key that the operation is performed on.
+         * @param op
+         *            The operation. Returns the value that the key is mapped to
+         *            after the operation, or <tt>null</tt> if it is not mapped.
+         * @return The result of the operation.
+         */
+        private V atomic( K key, Supplier<V> op ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            flush( writes );
+
+            V value;
+            try {
+                value = op.get();
+            } catch ( RuntimeException e ) {
+                cache.remove( key ); // Cached value (if any) may be out of date.
+                throw e;
+            }
+            if ( value != null ) {
+                cache.update( key, value ); // Updates previously cached value, if any.
+            } else {
+                cache.remove( key );
+            }
+            return value;
+
+        }
+
+        @Override
+        public V compute( K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction ) {
+
+            return atomic( key, () -> backing.compute( key, remappingFunction ) );
+
+        }
+
+        @Override
+        public V computeIfAbsent( K key, Function<? super K, ? extends V> mappingFunction ) {
+
+            return atomic( key, () -> backing.computeIfAbsent( key, mappingFunction ) );
+
+        }
+
+        @Override
+        public V computeIfPresent( K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction ) {
+
+            return atomic( key, () -> backing.computeIfPresent( key, remappingFunction ) );
+
+        }
+
+        @Override
+        public V merge( K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction ) {
+
+            return atomic( key, () -> backing.merge( key, value, remappingFunction ) );
+
+        }
+
+        @Override
+        public V putIfAbsent( K key, V value ) {
+
+            if ( closed ) {
+                throw new IllegalStateException( "The backing database is already closed." );
+            }
+
+            flush( writes );
+
+            V previous = backing.putIfAbsent( key, value );
+            cache.update( key, ( previous == null ) ? value : previous ); // Value that won.
+            return previous;
 
         }
 
@@ -1339,14 +4446,16 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            if ( cache.containsKey( key ) ) { // Mapping is cached.
-                if ( Objects.equals( cache.get( key ), oldValue ) ) {
-                    cache.update( key, newValue ); // Value matched.
-                } else {
-                    return false; // Value did not match. Abort.
-                }
+            flush( writes );
+
+            // Not checked against the cache, which may be out of date if other processes write too.
+            if ( backing.replace( key, oldValue, newValue ) ) {
+                cache.update( key, newValue ); // Value matched.
+                return true;
+            } else {
+                cache.remove( key ); // Cached value (if any) is out of date.
+                return false;
             }
-            return backing.replace( key, oldValue, newValue );
 
         }
 
@@ -1358,8 +4467,11 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
+            V previous = backing.replace( key, value );
             cache.update( key, value ); // Update cached value, if any.
-            return backing.replace( key, value );
+            return previous;
 
         }
 
@@ -1371,14 +4483,14 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
-            if ( cache.containsKey( key ) ) { // Mapping is cached.
-                if ( Objects.equals( cache.get( key ), value ) ) {
-                    cache.remove( key ); // Value matched.
-                } else {
-                    return false; // Value did not match. Abort.
-                }
+            flush( writes );
+
+            // Not checked against the cache, which may be out of date if other processes write too.
+            try {
+                return backing.remove( key, value ); // Delegate to database.
+            } finally {
+                cache.remove( key ); // Removed, or cached value (if any) is out of date.
             }
-            return backing.remove( key, value ); // Delegate to database.
 
         }
 
@@ -1389,6 +4501,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.equals( o );
 
         }
@@ -1400,6 +4514,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.hashCode();
 
         }
@@ -1411,6 +4527,8 @@ public abstract class AbstractDatabase implements Database {
                 throw new IllegalStateException( "The backing database is already closed." );
             }
 
+            flush( writes );
+
             return backing.toString();
 
         }
@@ -0,0 +1,373 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket that limits the rate at which capacity units (for example, the
+ * read or write capacity of a DynamoDB table) are used, making requests wait
+ * instead of exceeding the capacity.
+ * <p>
+ * Requests take an estimate of the units they will use before being made, and
+ * report the units actually {@link #consumed(double, double, int) consumed}
+ * afterwards, so the estimate is corrected. The bucket may go into debt when a
+ * request uses more than was available, in which case later requests wait
+ * until the debt is paid. The average units used per item is learned from the
+ * reported consumption and used for later estimates.
+ * <p>
+ * The rate is adjusted with additive increase/multiplicative decrease: each
+ * time a request is {@link #throttled(double) throttled} the rate is halved
+ * (down to {@value #MIN_RATE_FRACTION} of the capacity), and it then recovers
+ * by {@value #INCREASE_FRACTION} of the capacity per second, up to the
+ * capacity.
+ * <p>
+ * {@link Priority#INTERACTIVE Interactive} requests are served first:
+ * {@link Priority#BACKGROUND background} requests wait while an interactive
+ * request is waiting, and only proceed while at least a second's worth of units
+ * is available.
+ * <p>
+ * Requests that cannot block (such as asynchronous requests) may
+ * {@link #tryAcquire(double, Priority) try} to take the units instead, and
+ * retry after the returned delay if they are not available yet. Such requests
+ * do not count as waiting for the purpose of priorities.
+ * <p>
+ * <b>This class is <i>thread-safe</i>.</b>
+ *
+ * @version 1.1
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class CapacityLimiter {
+
+    /**
+     * Maximum amount of units that may accumulate while unused, in seconds of
+     * the current rate.
+     */
+    public static final double BURST_SECONDS = 5;
+    /**
+     * Fraction of the capacity that the rate is never reduced below.
+     */
+    public static final double MIN_RATE_FRACTION = 0.05;
+    /**
+     * Fraction of the capacity that the rate increases by per second without
+     * throttling.
+     */
+    public static final double INCREASE_FRACTION = 0.1;
+    /**
+     * Weight of each new observation in the average units used per item.
+     */
+    private static final double COST_WEIGHT = 0.2;
+    /**
+     * Maximum time that a background request waits for interactive requests
+     * before checking again, in nanoseconds.
+     */
+    private static final long PRIORITY_WAIT = TimeUnit.MILLISECONDS.toNanos( 10 );
+
+    /**
+     * Priorities of the requests.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-17
+     */
+    public enum Priority {
+
+        /**
+         * Requests that a user is waiting on, such as reading or writing a
+         * single value.
+         */
+        INTERACTIVE,
+
+        /**
+         * Requests that may be delayed, such as scans, bulk writes and
+         * migrations.
+         */
+        BACKGROUND
+
+    }
+
+    private final ReentrantLock lock;
+    private final Condition available;
+
+    private final double capacity;
+    private double rate;
+    private double tokens;
+    private double unitCost;
+    private long lastRefill;
+    private int interactiveWaiting;
+    private long throttles;
+
+    /**
+     * Instantiates a limiter for the given capacity. The bucket starts full.
+     *
+     * @param capacity
+     *            The capacity, in units per second.
+     * @throws IllegalArgumentException
+     *             if the capacity is not positive.
+     */
+    public CapacityLimiter( double capacity ) throws IllegalArgumentException {
+
+        if ( !( capacity > 0 ) ) {
+            throw new IllegalArgumentException( "Capacity must be positive." );
+        }
+
+        this.lock = new ReentrantLock();
+        this.available = lock.newCondition();
+        this.capacity = capacity;
+        this.rate = capacity;
+        this.tokens = capacity * BURST_SECONDS;
+        this.unitCost = 1;
+        this.lastRefill = System.nanoTime();
+
+    }
+
+    /**
+     * Adds the units accumulated since the last refill, and increases the rate
+     * if it was reduced. Must be called while holding the lock.
+     */
+    private void refill() {
+
+        long now = System.nanoTime();
+        double elapsed = ( now - lastRefill ) / 1e9;
+        lastRefill = now;
+        tokens = Math.min( tokens + elapsed * rate, rate * BURST_SECONDS );
+        rate = Math.min( capacity, rate + elapsed * capacity * INCREASE_FRACTION );
+
+    }
+
+    /**
+     * Determines how long a request must wait before it may be made. Must be
+     * called while holding the lock.
+     *
+     * @param interactive
+     *            Whether the request is {@link Priority#INTERACTIVE interactive}.
+     * @return 0 if the request may be made now. Else, the time to wait before
+     *         checking again, in nanoseconds.
+     */
+    private long waitTime( boolean interactive ) {
+
+        refill();
+        double needed = ( interactive ? 0 : rate ) - tokens; // Background keeps a reserve.
+        if ( needed < 0 && ( interactive || interactiveWaiting == 0 ) ) {
+            return 0; // Can proceed.
+        }
+        return needed < 0 ? PRIORITY_WAIT : Math.max( 1, (long) Math.ceil( needed / rate * 1e9 ) );
+
+    }
+
+    /**
+     * Estimates the units that a request for the given amount of items will use,
+     * based on the units used by previous requests.
+     *
+     * @param items
+     *            The amount of items.
+     * @return The estimated units.
+     */
+    public double estimate( int items ) {
+
+        lock.lock();
+        try {
+            return items * unitCost;
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Waits until a request that is estimated to use the given units may be
+     * made, then takes the units from the bucket.
+     *
+     * @param units
+     *            The estimated units.
+     * @param priority
+     *            The priority of the request.
+     * @throws InterruptedException
+     *             if interrupted while waiting.
+     */
+    public void acquire( double units, Priority priority ) throws InterruptedException {
+
+        boolean interactive = priority == Priority.INTERACTIVE;
+        lock.lockInterruptibly();
+        try {
+            if ( interactive ) {
+                interactiveWaiting++;
+            }
+            try {
+                long wait;
+                while ( ( wait = waitTime( interactive ) ) > 0 ) {
+
+                    available.awaitNanos( wait );
+
+                }
+                tokens -= units;
+            } finally {
+                if ( interactive && --interactiveWaiting == 0 ) {
+                    available.signalAll(); // Let background requests check again.
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Takes the units for a request that is estimated to use the given units from
+     * the bucket, if the request may be made now. Never waits.
+     *
+     * @param units
+     *            The estimated units.
+     * @param priority
+     *            The priority of the request.
+     * @return 0 if the units were taken. Else, how long to wait before trying
+     *         again, in nanoseconds.
+     */
+    public long tryAcquire( double units, Priority priority ) {
+
+        lock.lock();
+        try {
+            long wait = waitTime( priority == Priority.INTERACTIVE );
+            if ( wait == 0 ) {
+                tokens -= units;
+            }
+            return wait;
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Reports the units actually used by a request that was successful,
+     * correcting the estimate taken from the bucket.
+     *
+     * @param estimated
+     *            The units that were estimated for the request.
+     * @param actual
+     *            The units that the request used, or {@link Double#NaN} if
+     *            unknown (in which case the estimate is kept).
+     * @param items
+     *            The amount of items that the request read or wrote, used to
+     *            learn the units used per item. If 0, only the bucket is
+     *            corrected.
+     */
+    public void consumed( double estimated, double actual, int items ) {
+
+        if ( Double.isNaN( actual ) ) {
+            return; // Nothing to correct.
+        }
+        lock.lock();
+        try {
+            tokens -= actual - estimated;
+            if ( items > 0 ) {
+                unitCost += COST_WEIGHT * ( actual / items - unitCost );
+            }
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Reports that a request was throttled (and so did not use its units).
+     * Halves the rate and empties the bucket.
+     *
+     * @param estimated
+     *            The units that were estimated for the request.
+     */
+    public void throttled( double estimated ) {
+
+        lock.lock();
+        try {
+            refill();
+            throttles++;
+            rate = Math.max( capacity * MIN_RATE_FRACTION, rate / 2 );
+            tokens = Math.min( tokens + estimated, 0 );
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Retrieves the capacity that this limiter was created for.
+     *
+     * @return The capacity, in units per second.
+     */
+    public double getCapacity() {
+
+        return capacity;
+
+    }
+
+    /**
+     * Retrieves the current rate, which is below the capacity while recovering
+     * from throttling.
+     *
+     * @return The rate, in units per second.
+     */
+    public double getRate() {
+
+        lock.lock();
+        try {
+            refill();
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Retrieves the units currently available in the bucket.
+     *
+     * @return The available units. Negative if in debt.
+     */
+    public double getAvailable() {
+
+        lock.lock();
+        try {
+            refill();
+            return tokens;
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+    /**
+     * Retrieves how many times requests were throttled.
+     *
+     * @return The amount of throttled requests.
+     */
+    public long getThrottles() {
+
+        lock.lock();
+        try {
+            return throttles;
+        } finally {
+            lock.unlock();
+        }
+
+    }
+
+}
@@ -17,35 +17,87 @@
 
 package com.github.thiagotgm.bot_utils.storage.impl;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.regions.Regions;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClientBuilder;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.document.BatchGetItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.BatchWriteItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.DeleteItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.GetItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.ItemCollection;
 import com.amazonaws.services.dynamodbv2.document.ItemUtils;
-import com.amazonaws.services.dynamodbv2.document.ScanOutcome;
+import com.amazonaws.services.dynamodbv2.document.Page;
+import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
+import com.amazonaws.services.dynamodbv2.document.UpdateItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.spec.BatchGetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.BatchWriteItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
@@ -53,16 +105,37 @@ import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 import com.amazonaws.services.dynamodbv2.model.ResourceInUseException;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
 import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.github.thiagotgm.bot_utils.Settings;
+import com.github.thiagotgm.bot_utils.storage.AsyncMap;
+import com.github.thiagotgm.bot_utils.storage.BulkTree;
 import com.github.thiagotgm.bot_utils.storage.Data;
 import com.github.thiagotgm.bot_utils.storage.TranslationException;
 import com.github.thiagotgm.bot_utils.storage.Translator;
+import com.github.thiagotgm.bot_utils.storage.impl.CapacityLimiter.Priority;
+import com.github.thiagotgm.bot_utils.storage.translate.ListTranslator;
+import com.github.thiagotgm.bot_utils.utils.AsyncTools;
 import com.github.thiagotgm.bot_utils.utils.Utils;
+import com.github.thiagotgm.bot_utils.utils.graph.Tree;
+import com.google.common.collect.BiMap;
+import com.google.common.collect.ImmutableBiMap;
 
 /**
  * Database that uses a DynamoDB backend, either locally or using the
@@ -73,8 +146,71 @@ import com.github.thiagotgm.bot_utils.utils.Utils;
  * write capacity units that the created table is set to are {@value #DEFAULT_READ_UNITS}
  * and {@value #DEFAULT_WRITE_UNITS}, respectively. They may be changed later using the
  * console for the backed DynamoDB database (the AWS console, for example).
+ * <p>
+ * Bulk writes ({@link Map#putAll(Map) putAll} and
+ * {@link com.github.thiagotgm.bot_utils.storage.BulkMap#removeAll(Collection)
+ * removeAll} on a map, or <tt>removeAll</tt> on its key set) are made with
+ * BatchWriteItem requests, of which up to the amount given by the
+ * {@value #WRITE_CONCURRENCY_SETTING} setting may run at the same time.
+ * <p>
+ * How the size of a map (or tree) is determined depends on the
+ * {@link #SIZE_MODE size mode}. By default, the items are counted with a scan of
+ * the table. With the {@link SizeMode#COUNTER COUNTER} mode, the amount of items
+ * in each table is instead kept in a counter in the {@value #COUNTS_TABLE} table,
+ * so that obtaining the size does not require scanning the whole table.
+ * <p>
+ * Iterating over a map (or tree), or counting its items with a scan, uses a
+ * parallel scan of the table divided into {@value #SCAN_SEGMENTS_SETTING}
+ * segments, which are scanned by a pool of up to {@value #SCAN_WORKERS_SETTING}
+ * threads. The spliterators of the key set, entry set and value collection of a
+ * map split along those segments, so a parallel stream reads each segment in its
+ * own thread. Streams that are not fully consumed should be closed (for
+ * example, with a try-with-resources statement), so that the scan stops right
+ * away instead of once the stream is garbage-collected.
+ * <p>
+ * Clearing a map (or tree) deletes its items with a scan and BatchWriteItem
+ * requests, while the table stays available. For very large tables, the
+ * {@value #RECREATE_ON_CLEAR_SETTING} setting makes it delete and recreate the
+ * table instead, which is faster but makes the table unavailable until it is
+ * created again, and resets its read and write capacity to the defaults.
+ * <p>
+ * Trees are stored, by default, with the whole path as the key of each item
+ * (the {@link TreeLayout#FLAT flat layout}). With the
+ * {@link TreeLayout#PARTITIONED partitioned layout}, selected by the
+ * {@value #TREE_LAYOUT_SETTING} setting (or when
+ * {@link #DynamoDBDatabase(SizeMode, TreeLayout) instantiating} the database),
+ * the first element of the path is
+ * used as the partition key and the rest as the sort key, so that all the
+ * values under a path can be retrieved or deleted with a single Query.
+ * <p>
+ * Requests to each table are limited to its provisioned read and write
+ * capacity by a {@link CapacityLimiter}, so bursts of requests wait instead of
+ * being throttled. Reads of single values are served before scans and bulk
+ * writes. Throttled requests are retried by the database (rather than by the
+ * client) after reducing the rate of the table, and fail with a
+ * {@link DatabaseException} if still throttled after {@value #THROTTLE_RETRIES}
+ * retries. The limiting can be disabled with the
+ * {@value #RATE_LIMITING_SETTING} setting.
+ * <p>
+ * The maps (and trees) are also {@link AsyncMap asynchronous maps}. Their
+ * asynchronous operations are made with the asynchronous client of the SDK, so
+ * the caller is not blocked while waiting for DynamoDB. They go through the same
+ * limiters, but wait for capacity (or for a retry after being throttled)
+ * without blocking a thread (the capacity of each table is retrieved when its
+ * map is created, and item counters are also updated asynchronously). Note that
+ * the asynchronous client still runs each request in a thread of its own
+ * (bounded) pool.
+ * <p>
+ * Every write gives the item a new {@value #VERSION_ATTRIBUTE version}, so that
+ * the atomic operations of the maps ({@link Map#compute(Object, BiFunction) compute},
+ * {@link Map#merge(Object, Object, BiFunction) merge},
+ * {@link Map#putIfAbsent(Object, Object) putIfAbsent},
+ * {@link Map#replace(Object, Object, Object) replace}, etc) remain atomic when
+ * several processes write to the same table. They read the item, then write it
+ * with a conditional write that fails if the version changed in the meantime,
+ * in which case they are retried up to {@value #CONFLICT_RETRIES} times.
  * 
- * @version 1.0
+ * @version 1.11
  * @author ThiagoTGM
  * @since 2018-08-28
  */
@@ -110,6 +246,13 @@ public class DynamoDBDatabase extends TableDatabase {
 	 * Attribute that stores the value of a database entry.
 	 */
 	protected static final String VALUE_ATTRIBUTE = "value";
+	/**
+	 * Attribute that stores the version of a database entry. It is a random number
+	 * that is replaced on every write, so it only identifies whether the entry
+	 * changed, not how many times (which also means that deleting and re-creating
+	 * an entry is still detected as a change).
+	 */
+	protected static final String VERSION_ATTRIBUTE = "version";
 	/**
 	 * Attribute that is (expected to be) not present in a database
 	 * item. Used in projection expressions in get or scan operations
@@ -134,14 +277,375 @@ public class DynamoDBDatabase extends TableDatabase {
 	private static final ProvisionedThroughput DEFAULT_THROUGHPUT =
 			new ProvisionedThroughput( DEFAULT_READ_UNITS, DEFAULT_WRITE_UNITS );
 	
+	/**
+	 * Maximum amount of keys that can be retrieved by a single BatchGetItem request.
+	 */
+	protected static final int BATCH_GET_LIMIT = 100;
+	/**
+	 * Maximum amount of items that can be written by a single BatchWriteItem request.
+	 */
+	protected static final int BATCH_WRITE_LIMIT = 25;
+	/**
+	 * Initial time to wait before retrying a throttled request, or the keys or items
+	 * that a BatchGetItem or BatchWriteItem request left unprocessed, in
+	 * milliseconds. Doubles on each consecutive retry.
+	 */
+	private static final long RETRY_BACKOFF = 50;
+	/**
+	 * Maximum time to wait before retrying a throttled request, or the keys or items
+	 * that a BatchGetItem or BatchWriteItem request left unprocessed, in
+	 * milliseconds.
+	 */
+	private static final long RETRY_MAX_BACKOFF = 1000;
+	/**
+	 * Maximum amount of times that a throttled request is retried before failing.
+	 */
+	private static final int THROTTLE_RETRIES = 10;
+	/**
+	 * Maximum amount of times that an atomic operation is retried after the item
+	 * was changed concurrently, before failing. Retries wait a random time of up
+	 * to {@value #RETRY_BACKOFF}ms (doubling on each consecutive retry, up to
+	 * {@value #RETRY_MAX_BACKOFF}ms), so that competing writers do not keep
+	 * colliding.
+	 */
+	private static final int CONFLICT_RETRIES = 10;
+	/**
+	 * Retry policy of the client. Same as the default policy for DynamoDB, except
+	 * that throttled requests are not retried by the client, since they are
+	 * retried by the database after reporting the throttling to the
+	 * {@link CapacityLimiter limiter} of the table.
+	 */
+	private static final RetryPolicy RETRY_POLICY = new RetryPolicy(
+			( request, exception, retries ) -> !( exception instanceof ProvisionedThroughputExceededException )
+					&& PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry( request, exception, retries ),
+			PredefinedRetryPolicies.DYNAMODB_DEFAULT_BACKOFF_STRATEGY,
+			PredefinedRetryPolicies.DYNAMODB_DEFAULT_MAX_ERROR_RETRY, true );
+	
+	/**
+	 * Name of the setting that determines whether requests are limited to the
+	 * provisioned capacity of their tables.
+	 */
+	public static final String RATE_LIMITING_SETTING = "DynamoDB rate limiting";
+	
+	private static final ThreadGroup ASYNC_RETRY_THREADS = new ThreadGroup( "DynamoDB Async Retriers" );
+	/**
+	 * Executor that delays asynchronous requests that must wait for capacity, or
+	 * that must be retried after being throttled.
+	 */
+	private static final ScheduledExecutorService ASYNC_RETRIER = AsyncTools.createScheduledThreadPool( 1,
+			ASYNC_RETRY_THREADS, ( t, e ) -> {
+				
+				LOG.error( "Uncaught exception thrown while retrying request.", e );
+				
+			} );
+	
+	/**
+	 * Capacity limiters of the tables used so far, by table name.
+	 */
+	private final Map<String,TableCapacity> capacities = new ConcurrentHashMap<>();
+	
+	/**
+	 * Name of the setting that determines the maximum amount of BatchWriteItem
+	 * requests that may be running at the same time for each database.
+	 */
+	public static final String WRITE_CONCURRENCY_SETTING = "DynamoDB write concurrency";
+	
+	private static final ThreadGroup BATCH_WRITE_THREADS = new ThreadGroup( "DynamoDB Batch Writers" );
+	/**
+	 * Executor that runs BatchWriteItem requests.
+	 */
+	private static final ExecutorService BATCH_WRITER = AsyncTools.createFixedThreadPool(
+			Math.max( 1, Settings.getIntSetting( WRITE_CONCURRENCY_SETTING ) ), BATCH_WRITE_THREADS,
+			( t, e ) -> {
+				
+				LOG.error( "Uncaught exception thrown while writing batch.", e );
+				
+			} );
+	
+	/**
+	 * Limits the BatchWriteItem requests running at the same time.
+	 */
+	private final Semaphore batchWrites = new Semaphore(
+			Math.max( 1, Settings.getIntSetting( WRITE_CONCURRENCY_SETTING ) ) );
+	
+	/**
+	 * Name of the setting that determines into how many segments a scan of a table
+	 * is divided.
+	 */
+	public static final String SCAN_SEGMENTS_SETTING = "DynamoDB scan segments";
+	/**
+	 * Name of the setting that determines the maximum amount of segments being
+	 * scanned at the same time, over all the scans.
+	 */
+	public static final String SCAN_WORKERS_SETTING = "DynamoDB scan workers";
+	/**
+	 * Amount of segments that a scan of a table is divided into.
+	 */
+	protected static final int SCAN_SEGMENTS = Math.max( 1, Settings.getIntSetting( SCAN_SEGMENTS_SETTING ) );
+	/**
+	 * Maximum amount of items, for each scan, that may be read from the table but
+	 * not consumed yet.
+	 */
+	private static final int SCAN_BUFFER_SIZE = 1000;
+	/**
+	 * Time that the scan of a segment waits for the consumer to take an item when
+	 * the buffer is full before the scan is considered abandoned, in milliseconds.
+	 */
+	private static final long SCAN_ABANDON_TIMEOUT = 60000;
+	/**
+	 * Interval at which a scan checks whether it was stopped while waiting for
+	 * the buffer (or, for the consumer, for an item), in milliseconds.
+	 */
+	private static final long SCAN_POLL_INTERVAL = 100;
+	/**
+	 * Marker placed in the buffer of a scan when the scan of a segment ends.
+	 */
+	private static final Item END_OF_SEGMENT = new Item();
+	
+	private static final ThreadGroup SCAN_THREADS = new ThreadGroup( "DynamoDB Scanners" );
+	/**
+	 * Executor that scans the segments of parallel scans.
+	 */
+	private static final ExecutorService SCANNER = AsyncTools.createFixedThreadPool(
+			Math.max( 1, Settings.getIntSetting( SCAN_WORKERS_SETTING ) ), SCAN_THREADS,
+			( t, e ) -> {
+				
+				LOG.error( "Uncaught exception thrown while scanning segment.", e );
+				
+			} );
+	
+	/**
+	 * Name of the setting that determines whether clearing a map (or tree) deletes
+	 * and recreates its table, instead of deleting its items.
+	 */
+	public static final String RECREATE_ON_CLEAR_SETTING = "DynamoDB recreate on clear";
+	/**
+	 * Amount of keys found by the scan that are deleted at a time when clearing a
+	 * table.
+	 */
+	private static final int CLEAR_CHUNK_SIZE = 1000;
+	
+	/**
+	 * Ways to determine the amount of items in a table (the size of a map or
+	 * tree).
+	 * 
+	 * @version 1.0
+	 * @author ThiagoTGM
+	 * @since 2018-09-17
+	 */
+	public enum SizeMode {
+		
+		/**
+		 * Counts the items with a scan of the whole table. Always exact, but takes
+		 * time and read capacity proportional to the size of the table.
+		 */
+		SCAN,
+		
+		/**
+		 * Keeps the amount of items of each table in a counter, stored in the
+		 * {@value DynamoDBDatabase#COUNTS_TABLE} table, which is updated after each
+		 * write that adds or removes items. Retrieving the size only reads the
+		 * counter.
+		 * <p>
+		 * The counter of a table is initialized with a scan the first time that the
+		 * size of the table is requested in this mode. Until then, writes do not
+		 * update the counter. The counter is created before the scan and the
+		 * scanned amount is added to it, so writes made during the scan are kept.
+		 * Since the counter is not updated in the same request
+		 * as the write itself, it may drift if the table is changed by other means
+		 * (including by other processes that do not count items), if a counter
+		 * update fails, or if the same key is written concurrently. In that case it
+		 * can be fixed with {@link DynamoDBDatabase#recount()}. After a bulk write
+		 * fails (which may have written only some of its items), the counter is
+		 * deleted, and so is initialized again by the next size request.
+		 * <p>
+		 * Every write that adds or removes items also writes to the counter, so the
+		 * {@value DynamoDBDatabase#COUNTS_TABLE} table (which is created with
+		 * {@value DynamoDBDatabase#DEFAULT_WRITE_UNITS} write unit) needs enough
+		 * write capacity for the writes of all the counted tables.
+		 */
+		COUNTER,
+		
+		/**
+		 * Uses the item count that DynamoDB reports for the table. Retrieving the
+		 * size is constant-time and uses no read capacity, but the count is only
+		 * updated by DynamoDB about every six hours.
+		 */
+		APPROXIMATE
+		
+	}
+	
+	/**
+	 * Name of the setting that determines the {@link SizeMode size mode}.
+	 */
+	public static final String SIZE_MODE_SETTING = "DynamoDB size mode";
+	/**
+	 * How the size of maps and trees is determined by default, based on the
+	 * {@link #SIZE_MODE_SETTING size mode setting}. If the setting does not
+	 * specify a valid mode, uses {@link SizeMode#SCAN SCAN}.
+	 */
+	public static final SizeMode SIZE_MODE = parseSetting( SIZE_MODE_SETTING, SizeMode.class, SizeMode.SCAN );
+	/**
+	 * Name of the table that stores the item counters used by the
+	 * {@link SizeMode#COUNTER COUNTER} size mode. Each counter is stored under the
+	 * name of the table it counts.
+	 */
+	public static final String COUNTS_TABLE = "BotUtils.ItemCounts";
+	/**
+	 * Attribute that stores the value of an item counter.
+	 */
+	private static final String COUNT_ATTRIBUTE = "count";
+	
+	/**
+	 * How the size of the maps and trees of this database is determined.
+	 */
+	private final SizeMode sizeMode;
+	/**
+	 * The layout used by the trees of this database.
+	 */
+	private final TreeLayout treeLayout;
+	/**
+	 * Table that stores the item counters, or <tt>null</tt> if not retrieved yet.
+	 */
+	private Table counts;
+	/**
+	 * The maps created so far.
+	 */
+	private final List<TableMap<?,?>> tableMaps = new ArrayList<>();
+	
+	/**
+	 * Layouts that trees can be stored in.
+	 * 
+	 * @version 1.0
+	 * @author ThiagoTGM
+	 * @since 2018-09-17
+	 */
+	public enum TreeLayout {
+		
+		/**
+		 * Each path is stored in an item whose (hash) key is the encoding of the
+		 * whole path, like in the tables used by maps. Finding a subtree requires
+		 * scanning the whole table.
+		 */
+		FLAT,
+		
+		/**
+		 * The first element of each path (usually a guild or user ID) is the
+		 * partition (hash) key of its item, and the remaining elements are encoded
+		 * into the sort (range) key. The sort key of a path is a prefix of the sort
+		 * keys of all the paths that start with it, so retrieving or removing a
+		 * subtree only requires a single Query.
+		 * <p>
+		 * Trees in this layout do not support a value at the root (empty path), and
+		 * their tables cannot be used in the flat layout (and vice versa).
+		 */
+		PARTITIONED
+		
+	}
+	
+	/**
+	 * Name of the setting that determines the {@link TreeLayout layout} of the
+	 * tables that back trees.
+	 */
+	public static final String TREE_LAYOUT_SETTING = "DynamoDB tree layout";
+	/**
+	 * The layout used by trees, based on the {@link #TREE_LAYOUT_SETTING tree
+	 * layout setting}. If the setting does not specify a valid layout, uses
+	 * {@link TreeLayout#FLAT FLAT}.
+	 */
+	public static final TreeLayout TREE_LAYOUT = parseSetting( TREE_LAYOUT_SETTING, TreeLayout.class,
+			TreeLayout.FLAT );
+	/**
+	 * Attribute that stores the encoded path after the first element (sort key),
+	 * in tables that use the {@link TreeLayout#PARTITIONED partitioned layout}.
+	 */
+	protected static final String SORT_ATTRIBUTE = "subpath";
+	
+	private static final List<KeySchemaElement> PARTITIONED_KEY_SCHEMA = Collections.unmodifiableList(
+			Arrays.asList( new KeySchemaElement( KEY_ATTRIBUTE, KeyType.HASH ),
+					new KeySchemaElement( SORT_ATTRIBUTE, KeyType.RANGE ) ) );
+	private static final List<AttributeDefinition> PARTITIONED_ATTRIBUTE_DEFINITIONS = Collections.unmodifiableList(
+			Arrays.asList( new AttributeDefinition( KEY_ATTRIBUTE, ScalarAttributeType.S ),
+					new AttributeDefinition( SORT_ATTRIBUTE, ScalarAttributeType.S ) ) );
+	/**
+	 * Characters that are encoded in the elements of a path in the partitioned
+	 * layout, so that the separator only appears between elements.
+	 */
+	private static final BiMap<Character,String> PATH_SPECIAL_CHARACTERS =
+			ImmutableBiMap.of( Utils.SEPARATOR, Utils.SEPARATOR_MARKER );
+	
+	/**
+	 * Parses a setting whose value is a constant of an enum.
+	 * 
+	 * @param setting The name of the setting.
+	 * @param type The enum type.
+	 * @param fallback The value to use if the setting is not a valid constant.
+	 * @param <E> The enum type.
+	 * @return The constant specified by the setting, or the fallback if the
+	 *         setting is not a valid constant.
+	 */
+	private static <E extends Enum<E>> E parseSetting( String setting, Class<E> type, E fallback ) {
+		
+		String value = Settings.getStringSetting( setting );
+		try {
+			return Enum.valueOf( type, value.trim().toUpperCase() );
+		} catch ( IllegalArgumentException | NullPointerException e ) {
+			LOG.warn( "Invalid value \"{}\" for setting \"{}\". Using {}.", value, setting, fallback );
+			return fallback;
+		}
+		
+	}
+	
 	/**
 	 * Client used to interact with the DynamoDB service.
 	 */
 	protected AmazonDynamoDB client;
+	/**
+	 * Client used for asynchronous requests to the DynamoDB service.
+	 */
+	protected AmazonDynamoDBAsync asyncClient;
 	/**
 	 * The DynamoDB instance in use.
 	 */
 	protected DynamoDB dynamoDB;
+	
+	/**
+	 * Instantiates a database that uses the {@link #SIZE_MODE size mode} given by
+	 * the settings.
+	 */
+	public DynamoDBDatabase() {
+		
+		this( SIZE_MODE );
+		
+	}
+	
+	/**
+	 * Instantiates a database that uses the given size mode, instead of the one
+	 * given by the settings.
+	 * 
+	 * @param sizeMode How the size of the maps and trees is determined.
+	 * @throws NullPointerException if the size mode is <tt>null</tt>.
+	 */
+	public DynamoDBDatabase( SizeMode sizeMode ) throws NullPointerException {
+		
+		this( sizeMode, TREE_LAYOUT );
+		
+	}
+	
+	/**
+	 * Instantiates a database that uses the given size mode and tree layout,
+	 * instead of the ones given by the settings.
+	 * 
+	 * @param sizeMode How the size of the maps and trees is determined.
+	 * @param treeLayout How the tables that back trees are laid out.
+	 * @throws NullPointerException if either argument is <tt>null</tt>.
+	 */
+	public DynamoDBDatabase( SizeMode sizeMode, TreeLayout treeLayout ) throws NullPointerException {
+		
+		this.sizeMode = Objects.requireNonNull( sizeMode );
+		this.treeLayout = Objects.requireNonNull( treeLayout );
+		
+	}
 
 	@Override
 	public List<Parameter> getLoadParams() {
@@ -171,18 +675,14 @@ public class DynamoDBDatabase extends TableDatabase {
 			throw new IllegalArgumentException( "Incorrect amount of arguments provided." );
 		}
 		
-		AmazonDynamoDBClientBuilder builder = AmazonDynamoDBClientBuilder.standard();
 		if ( args.get( 0 ).equals( "no" ) ) { // Use web service.
 			LOG.info( "Starting DynamoDB AWS service, region {}.", args.get( 3 ) );
-			AWSCredentials credentials = new BasicAWSCredentials( args.get( 1 ), args.get( 2 ) );
-			builder.withRegion( Regions.valueOf( args.get( 3 ) ) )
-			       .withCredentials( new AWSStaticCredentialsProvider( credentials ) );
 		} else { // Use local database.
 			LOG.info( "Starting DynamoDB local.", args.get( 3 ) );
-			builder.withEndpointConfiguration( new AwsClientBuilder.EndpointConfiguration(
-					"http://localhost:" + args.get( 1 ), "local" ) );
 		}
-		client = builder.build();
+		ClientConfiguration config = new ClientConfiguration().withRetryPolicy( RETRY_POLICY );
+		client = configure( AmazonDynamoDBClientBuilder.standard(), args ).withClientConfiguration( config )
+		                                                                  .build();
 		
 		try {
 			LOG.info( "Checking connection to database." );
@@ -193,6 +693,8 @@ public class DynamoDBDatabase extends TableDatabase {
 		}
 		
 		dynamoDB = new DynamoDB( client );
+		asyncClient = configure( AmazonDynamoDBAsyncClientBuilder.standard(), args )
+				.withClientConfiguration( config ).build();
 		
 		loaded = true;
 		return true;
@@ -206,15 +708,84 @@ public class DynamoDBDatabase extends TableDatabase {
 			throw new IllegalStateException( "Database not loaded yet." );
 		}
 
+		flushWriteBehind(); // Write buffered writes.
 		closed = true;
 		
 		LOG.info( "Closing DynamoDB." );
 
 		dynamoDB.shutdown();
 		client.shutdown();
+		asyncClient.shutdown();
 
 	}
 	
+	/**
+	 * Configures a client builder to connect to the database given by the load
+	 * arguments.
+	 * 
+	 * @param builder The builder.
+	 * @param args The arguments given to {@link #load(List)}.
+	 * @param <B> The type of builder.
+	 * @return The builder.
+	 */
+	private static <B extends AwsClientBuilder<B,?>> B configure( B builder, List<String> args ) {
+		
+		if ( args.get( 0 ).equals( "no" ) ) { // Use web service.
+			AWSCredentials credentials = new BasicAWSCredentials( args.get( 1 ), args.get( 2 ) );
+			return builder.withRegion( Regions.valueOf( args.get( 3 ) ) )
+			              .withCredentials( new AWSStaticCredentialsProvider( credentials ) );
+		} else { // Use local database.
+			return builder.withEndpointConfiguration( new AwsClientBuilder.EndpointConfiguration(
+					"http://localhost:" + args.get( 1 ), "local" ) );
+		}
+		
+	}
+	
+	/**
+	 * Retrieves the table that stores the item counters, creating it if necessary.
+	 * 
+	 * @return The table.
+	 */
+	private synchronized Table getCountsTable() {
+		
+		if ( counts == null ) {
+			counts = getTable( COUNTS_TABLE );
+		}
+		return counts;
+		
+	}
+	
+	/**
+	 * Recounts the items in the tables of all the maps and trees obtained from this
+	 * database so far, with a scan of each table, and corrects their
+	 * {@link SizeMode#COUNTER counters} by the difference.
+	 * <p>
+	 * Writes made during the scan keep updating the counters, but items that are
+	 * added or removed right as the scan passes them may be counted twice (or not
+	 * at all), so the result is only exact if the maps and trees are not being
+	 * modified.
+	 * <p>
+	 * Has no effect if the {@link SizeMode size mode} of this database is not
+	 * {@link SizeMode#COUNTER COUNTER}.
+	 * 
+	 * @throws IllegalStateException if the database is not loaded yet or already
+	 *                               closed.
+	 */
+	public synchronized void recount() throws IllegalStateException {
+		
+		checkState();
+		
+		if ( sizeMode != SizeMode.COUNTER ) {
+			return;
+		}
+		for ( TableMap<?,?> map : tableMaps ) {
+			
+			map.initCount( true );
+			
+		}
+		
+	}
+	
 	/**
 	 * Retrieves a table with the given name, creating it if necessary.
 	 * 
@@ -223,16 +794,37 @@ public class DynamoDBDatabase extends TableDatabase {
 	 */
 	protected Table getTable( String tableName ) {
 		
+		return getTable( tableName, KEY_SCHEMA, ATTRIBUTE_DEFINITIONS );
+		
+	}
+	
+	/**
+	 * Retrieves a table with the given name and key schema, creating it if
+	 * necessary.
+	 * 
+	 * @param tableName The name of the table.
+	 * @param keySchema The key schema of the table.
+	 * @param attributeDefinitions The definitions of the key attributes.
+	 * @return The table.
+	 * @throws DatabaseException if the table already exists with a different key
+	 *                           schema.
+	 */
+	protected Table getTable( String tableName, List<KeySchemaElement> keySchema,
+			List<AttributeDefinition> attributeDefinitions ) throws DatabaseException {
+		
 		Table table;
 		try {
 			LOG.trace( "Attempting to create table of name '{}'.", tableName );
-			table = dynamoDB.createTable( tableName, KEY_SCHEMA, ATTRIBUTE_DEFINITIONS,
+			table = dynamoDB.createTable( tableName, keySchema, attributeDefinitions,
 					DEFAULT_THROUGHPUT );
 			table.waitForActive(); // Wait until table is active.
 			LOG.info( "Created table of name '{}'.", tableName );
 		} catch ( ResourceInUseException e ) {
 			LOG.trace( "Table already exists. Retrieving table of name '{}'.", tableName );
 			table = dynamoDB.getTable( tableName );
+			if ( !new HashSet<>( keySchema ).equals( new HashSet<>( table.describe().getKeySchema() ) ) ) {
+				throw new DatabaseException( "Table '" + tableName + "' exists with a different key schema." );
+			}
 			LOG.info( "Retrieved table of name '{}'.", tableName );
 		} catch ( InterruptedException e ) {
 			throw new DatabaseException( "Interrupted while creating table.", e );
@@ -240,406 +832,2575 @@ public class DynamoDBDatabase extends TableDatabase {
 		return table;
 		
 	}
-
-	@Override
-	protected <K,V> Map<K,V> newMap( String dataName, Translator<K> keyTranslator,
-			Translator<V> valueTranslator ) throws DatabaseException {
-
-		LOG.debug( "Retrieving table of name '{}'.", dataName );
+	
+	/**
+	 * Retrieves the read or write capacity limiter of a table, creating it with
+	 * the provisioned capacity of the table if necessary.
+	 * 
+	 * @param tableName The name of the table.
+	 * @param write If <tt>true</tt>, retrieves the write limiter. Otherwise, the
+	 *              read limiter.
+	 * @return The limiter, or <tt>null</tt> if requests to the table are not
+	 *         limited (because the {@value #RATE_LIMITING_SETTING} setting is
+	 *         disabled, the table has no provisioned capacity, or it could not
+	 *         be determined).
+	 */
+	private CapacityLimiter getLimiter( String tableName, boolean write ) {
 		
-		return new TableMap<>( getTable( dataName ), keyTranslator, valueTranslator );
+		TableCapacity capacity = capacities.computeIfAbsent( tableName, name -> {
+			
+			if ( !Settings.getBooleanSetting( RATE_LIMITING_SETTING ) ) {
+				return new TableCapacity( null, null );
+			}
+			try {
+				ProvisionedThroughputDescription throughput = dynamoDB.getTable( name ).describe()
+						.getProvisionedThroughput();
+				LOG.debug( "Limiting table '{}' to {} read and {} write units.", name,
+						throughput.getReadCapacityUnits(), throughput.getWriteCapacityUnits() );
+				return new TableCapacity( throughput.getReadCapacityUnits(), throughput.getWriteCapacityUnits() );
+			} catch ( AmazonClientException e ) {
+				LOG.warn( "Failed to retrieve capacity of table '" + name + "'.", e );
+				return null; // Try again on the next request.
+			}
+			
+		} );
+		return capacity == null ? null : write ? capacity.writes : capacity.reads;
 		
 	}
 	
 	/**
-	 * Map that is backed by a DynamoDB table.
+	 * Retrieves the read or write capacity limiter of a table, only if the
+	 * capacity of the table was already {@link #getLimiter(String, boolean)
+	 * retrieved}. Unlike {@link #getLimiter(String, boolean)}, never makes a
+	 * request.
 	 * 
-	 * @version 1.0
-	 * @author ThiagoTGM
-	 * @since 2018-08-29
-	 * @param <K> The type of the keys in the map.
-	 * @param <V> The type of the values in the map.
+	 * @param tableName The name of the table.
+	 * @param write If <tt>true</tt>, retrieves the write limiter. Otherwise, the
+	 *              read limiter.
+	 * @return The limiter, or <tt>null</tt> if requests to the table are not
+	 *         limited or its capacity was not retrieved yet.
 	 */
-	private class TableMap<K,V> extends AbstractTableMap<K,V> {
+	private CapacityLimiter knownLimiter( String tableName, boolean write ) {
 		
-		private Table table;
-		private final Translator<K> keyTranslator;
-		private final Translator<V> valueTranslator;
+		TableCapacity capacity = capacities.get( tableName );
+		return capacity == null ? null : write ? capacity.writes : capacity.reads;
 		
-		/**
-		 * Initializes a map backed by the given table that uses the
-		 * given translators.
-		 * 
-		 * @param backing The table that should back this map.
-		 * @param keyTranslator The translator to be used for keys.
-		 * @param valueTranslator The translator to be used for values.
-		 */
-		public TableMap( Table backing, Translator<K> keyTranslator,
-				Translator<V> valueTranslator ) {
-			
-			this.table = backing;
-			this.keyTranslator = keyTranslator;
-			this.valueTranslator = valueTranslator;
-			
-		}
-
-		@Override
-		public int size() {
+	}
+	
+	/**
+	 * Makes a request to a table, first waiting until the read or write
+	 * {@link CapacityLimiter limiter} of the table allows it. If the request is
+	 * throttled, the throttling is reported to the limiter and the request is
+	 * retried after an exponential backoff, up to {@value #THROTTLE_RETRIES}
+	 * times. The capacity consumed by a successful request is reported to the
+	 * limiter.
+	 * 
+	 * @param tableName The name of the table.
+	 * @param write Whether the request writes to the table.
+	 * @param priority The priority of the request.
+	 * @param items The amount of items that the request reads or writes, or 0 if
+	 *              unknown.
+	 * @param request Makes the request.
+	 * @param consumed Obtains the units consumed by the request from its result,
+	 *                 or {@link Double#NaN} if not available.
+	 * @param <R> The type of result of the request.
+	 * @return The result of the request.
+	 * @throws AmazonClientException if the request failed (including if it was
+	 *                               still throttled after all retries).
+	 * @throws DatabaseException if interrupted while waiting.
+	 */
+	private <R> R request( String tableName, boolean write, Priority priority, int items,
+			Supplier<R> request, ToDoubleFunction<R> consumed ) throws AmazonClientException, DatabaseException {
+		
+		CapacityLimiter limiter = getLimiter( tableName, write );
+		long backoff = RETRY_BACKOFF;
+		try {
+			for ( int retries = 0; true; retries++ ) {
+				
+				double estimate = 0;
+				if ( limiter != null ) {
+					estimate = limiter.estimate( Math.max( items, 1 ) );
+					limiter.acquire( estimate, priority );
+				}
+				try {
+					R result = request.get();
+					if ( limiter != null ) {
+						limiter.consumed( estimate, consumed.applyAsDouble( result ), items );
+					}
+					return result;
+				} catch ( ProvisionedThroughputExceededException e ) {
+					if ( limiter != null ) {
+						limiter.throttled( estimate );
+					}
+					if ( retries == THROTTLE_RETRIES ) {
+						throw e; // Give up.
+					}
+				}
+				LOG.debug( "Request to table '{}' was throttled. Retrying in {} ms.", tableName, backoff );
+				Thread.sleep( backoff );
+				backoff = Math.min( backoff * 2, RETRY_MAX_BACKOFF );
+				
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseException( "Interrupted while waiting for capacity.", e );
+		}
+		
+	}
+	
+	/**
+	 * Makes an asynchronous request to a table, as an {@link Priority#INTERACTIVE
+	 * interactive} request for a single item. Same as
+	 * {@link #request(String, boolean, Priority, int, Supplier, ToDoubleFunction) request},
+	 * except that it never blocks: if the limiter of the table does not allow the
+	 * request yet, or the request is throttled, it is made again later by the
+	 * {@link #ASYNC_RETRIER retrier}.
+	 * <p>
+	 * The capacity of the table is not retrieved by this method (as that would
+	 * block), so it should have been retrieved beforehand (as the maps do when
+	 * created). Otherwise, the request is not limited.
+	 * 
+	 * @param tableName The name of the table.
+	 * @param write Whether the request writes to the table.
+	 * @param request The request. Should ask for the {@link ReturnConsumedCapacity#TOTAL
+	 *                total} consumed capacity.
+	 * @param call Sends the request with the {@link #asyncClient asynchronous client},
+	 *             using the given handler.
+	 * @param consumed Obtains the capacity consumed by the request from its result.
+	 * @param <Q> The type of request.
+	 * @param <R> The type of result of the request.
+	 * @return The future result of the request. Completes exceptionally with an
+	 *         {@link AmazonClientException} if the request failed (including if
+	 *         it was still throttled after all retries).
+	 */
+	private <Q extends AmazonWebServiceRequest,R> CompletableFuture<R> requestAsync( String tableName,
+			boolean write, Q request, BiConsumer<Q,AsyncHandler<Q,R>> call, Function<R,ConsumedCapacity> consumed ) {
+		
+		CompletableFuture<R> future = new CompletableFuture<>();
+		attemptAsync( knownLimiter( tableName, write ), tableName, request, call, consumed, future, 0,
+				RETRY_BACKOFF );
+		return future;
+		
+	}
+	
+	/**
+	 * Makes an attempt of an asynchronous request.
+	 * 
+	 * @param limiter The limiter for the request, or <tt>null</tt> if not limited.
+	 * @param tableName The name of the table.
+	 * @param request The request.
+	 * @param call Sends the request.
+	 * @param consumed Obtains the capacity consumed by the request from its result.
+	 * @param future The future to complete with the result.
+	 * @param retries How many times the request was already throttled.
+	 * @param backoff The time to wait before retrying if throttled, in milliseconds.
+	 * @param <Q> The type of request.
+	 * @param <R> The type of result of the request.
+	 * @see #requestAsync(String, boolean, AmazonWebServiceRequest, BiConsumer, Function)
+	 */
+	private <Q extends AmazonWebServiceRequest,R> void attemptAsync( CapacityLimiter limiter, String tableName,
+			Q request, BiConsumer<Q,AsyncHandler<Q,R>> call, Function<R,ConsumedCapacity> consumed,
+			CompletableFuture<R> future, int retries, long backoff ) {
+		
+		if ( closed ) { // Don't use the database after it is closed.
+			future.completeExceptionally( new IllegalStateException( "The database is already closed." ) );
+			return;
+		}
+		
+		double estimate = 0;
+		if ( limiter != null ) {
+			estimate = limiter.estimate( 1 );
+			long wait = limiter.tryAcquire( estimate, Priority.INTERACTIVE );
+			if ( wait > 0 ) { // Not allowed yet. Try again later.
+				retryAsync( () -> attemptAsync( limiter, tableName, request, call, consumed, future, retries,
+						backoff ), wait, TimeUnit.NANOSECONDS, future );
+				return;
+			}
+		}
+		
+		double estimated = estimate;
+		try {
+			call.accept( request, new AsyncHandler<Q,R>() {
+
+				@Override
+				public void onError( Exception exception ) {
+
+					if ( !( exception instanceof ProvisionedThroughputExceededException ) ) {
+						future.completeExceptionally( exception );
+						return;
+					}
+					if ( limiter != null ) {
+						limiter.throttled( estimated );
+					}
+					if ( retries == THROTTLE_RETRIES ) {
+						future.completeExceptionally( exception ); // Give up.
+						return;
+					}
+					LOG.debug( "Request to table '{}' was throttled. Retrying in {} ms.", tableName, backoff );
+					retryAsync( () -> attemptAsync( limiter, tableName, request, call, consumed, future,
+							retries + 1, Math.min( backoff * 2, RETRY_MAX_BACKOFF ) ), backoff,
+							TimeUnit.MILLISECONDS, future );
+					
+				}
+
+				@Override
+				public void onSuccess( Q request, R result ) {
+
+					if ( limiter != null ) {
+						limiter.consumed( estimated, units( consumed.apply( result ) ), 1 );
+					}
+					future.complete( result );
+					
+				}
+				
+			} );
+		} catch ( RuntimeException e ) { // Could not send the request.
+			future.completeExceptionally( e );
+		}
+		
+	}
+	
+	/**
+	 * Schedules an attempt of an asynchronous request in the
+	 * {@link #ASYNC_RETRIER retrier}.
+	 * 
+	 * @param attempt The attempt.
+	 * @param delay The time to wait before the attempt.
+	 * @param unit The unit of the delay.
+	 * @param future The future of the request, which fails if the attempt could
+	 *               not be scheduled.
+	 */
+	private static void retryAsync( Runnable attempt, long delay, TimeUnit unit, CompletableFuture<?> future ) {
+		
+		try {
+			ASYNC_RETRIER.schedule( attempt, delay, unit );
+		} catch ( RejectedExecutionException e ) {
+			future.completeExceptionally( new DatabaseException( "Could not schedule request.", e ) );
+		}
+		
+	}
+	
+	/**
+	 * Iterates over the items found by a scan or query, making the request for
+	 * each page of results through {@link #request(String, boolean, Priority, int, Supplier, ToDoubleFunction)
+	 * request}, so the pages are read at the rate allowed by the read limiter of
+	 * the table and retried if throttled.
+	 * 
+	 * @param tableName The name of the table.
+	 * @param priority The priority of the requests.
+	 * @param items The items found by the scan or query. The request must have
+	 *              been made with {@link ReturnConsumedCapacity#TOTAL}.
+	 * @param consumed Obtains the capacity consumed by a page from its low-level
+	 *                 result.
+	 * @param <R> The type of low-level result of the scan or query.
+	 * @return The iterator over the items.
+	 */
+	private <R> Iterator<Item> pages( String tableName, Priority priority, ItemCollection<R> items,
+			Function<R,ConsumedCapacity> consumed ) {
+		
+		Iterator<Page<Item,R>> pages = items.pages().iterator();
+		return new Iterator<Item>() {
+			
+			private Iterator<Item> page = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+
+				while ( !page.hasNext() ) {
+					
+					if ( !pages.hasNext() ) {
+						return false; // No more pages.
+					}
+					page = request( tableName, false, priority, 0, pages::next,
+							p -> units( consumed.apply( p.getLowLevelResult() ) ) ).iterator();
+					
+				}
+				return true;
+				
+			}
+
+			@Override
+			public Item next() throws NoSuchElementException {
+
+				if ( !hasNext() ) {
+					throw new NoSuchElementException( "No more items." );
+				}
+				return page.next();
+				
+			}
+			
+		};
+		
+	}
+	
+	/**
+	 * Retrieves the capacity units consumed by a request.
+	 * 
+	 * @param consumed The consumed capacity returned by the request.
+	 * @return The consumed units, or {@link Double#NaN} if not available.
+	 */
+	private static double units( ConsumedCapacity consumed ) {
+		
+		return ( consumed == null || consumed.getCapacityUnits() == null ) ? Double.NaN
+				: consumed.getCapacityUnits();
+		
+	}
+	
+	/**
+	 * Retrieves the capacity units consumed by a batch request.
+	 * 
+	 * @param consumed The consumed capacity returned by the request, for each
+	 *                 table.
+	 * @return The total consumed units, or {@link Double#NaN} if not available.
+	 */
+	private static double units( List<ConsumedCapacity> consumed ) {
+		
+		if ( consumed == null || consumed.isEmpty() ) {
+			return Double.NaN;
+		}
+		double total = 0;
+		for ( ConsumedCapacity table : consumed ) {
+			
+			double units = units( table );
+			if ( Double.isNaN( units ) ) {
+				return Double.NaN;
+			}
+			total += units;
+			
+		}
+		return total;
+		
+	}
+	
+	/**
+	 * Generates a new {@value #VERSION_ATTRIBUTE version} for an item that is
+	 * being written.
+	 * 
+	 * @return The version.
+	 */
+	private static long newVersion() {
+		
+		return ThreadLocalRandom.current().nextLong();
+		
+	}
+	
+	/**
+	 * Reads a single item from a table with a GetItem request, as an
+	 * {@link Priority#INTERACTIVE interactive} request.
+	 * 
+	 * @param table The table.
+	 * @param getSpec The request.
+	 * @return The item, or <tt>null</tt> if there is no such item.
+	 * @throws AmazonClientException if the request failed.
+	 * @throws DatabaseException if interrupted while waiting for capacity.
+	 * @see #request(String, boolean, Priority, int, Supplier, ToDoubleFunction)
+	 */
+	private Item readItem( Table table, GetItemSpec getSpec ) throws AmazonClientException, DatabaseException {
+		
+		getSpec.withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL );
+		GetItemOutcome outcome = request( table.getTableName(), false, Priority.INTERACTIVE, 1,
+				() -> table.getItemOutcome( getSpec ),
+				o -> units( o.getGetItemResult().getConsumedCapacity() ) );
+		return outcome.getItem();
+		
+	}
+	
+	/**
+	 * Writes a single item to a table with an UpdateItem request, as an
+	 * {@link Priority#INTERACTIVE interactive} request.
+	 * 
+	 * @param table The table.
+	 * @param updateSpec The request.
+	 * @return The outcome of the request.
+	 * @throws AmazonClientException if the request failed.
+	 * @throws DatabaseException if interrupted while waiting for capacity.
+	 * @see #request(String, boolean, Priority, int, Supplier, ToDoubleFunction)
+	 */
+	private UpdateItemOutcome updateItem( Table table, UpdateItemSpec updateSpec )
+			throws AmazonClientException, DatabaseException {
+		
+		updateSpec.withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL );
+		return request( table.getTableName(), true, Priority.INTERACTIVE, 1,
+				() -> table.updateItem( updateSpec ),
+				o -> units( o.getUpdateItemResult().getConsumedCapacity() ) );
+		
+	}
+	
+	/**
+	 * Deletes a single item from a table with a DeleteItem request, as an
+	 * {@link Priority#INTERACTIVE interactive} request.
+	 * 
+	 * @param table The table.
+	 * @param deleteSpec The request.
+	 * @return The outcome of the request.
+	 * @throws AmazonClientException if the request failed.
+	 * @throws DatabaseException if interrupted while waiting for capacity.
+	 * @see #request(String, boolean, Priority, int, Supplier, ToDoubleFunction)
+	 */
+	private DeleteItemOutcome deleteItem( Table table, DeleteItemSpec deleteSpec )
+			throws AmazonClientException, DatabaseException {
+		
+		deleteSpec.withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL );
+		return request( table.getTableName(), true, Priority.INTERACTIVE, 1,
+				() -> table.deleteItem( deleteSpec ),
+				o -> units( o.getDeleteItemResult().getConsumedCapacity() ) );
+		
+	}
+	
+	/**
+	 * Runs a BatchWriteItem request, retrying the items that it leaves unprocessed
+	 * (for example, due to exceeding the provisioned throughput) after an
+	 * exponential backoff, up to {@value #THROTTLE_RETRIES} times. Unprocessed
+	 * items are reported to the write {@link CapacityLimiter limiter} of the table
+	 * as throttling.
+	 * 
+	 * @param tableName The name of the table.
+	 * @param request The items to write.
+	 * @param items The amount of items to write.
+	 * @throws DatabaseException if an error occurred while writing the items, or
+	 *                           some of them were still unprocessed after all the
+	 *                           retries.
+	 */
+	private void batchWrite( String tableName, TableWriteItems request, int items ) throws DatabaseException {
+		
+		BatchWriteItemSpec spec = new BatchWriteItemSpec().withTableWriteItems( request );
+		try {
+			long backoff = RETRY_BACKOFF;
+			for ( int retries = 0; true; retries++ ) {
+				
+				BatchWriteItemSpec current = spec.withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL );
+				BatchWriteItemOutcome outcome = request( tableName, true, Priority.BACKGROUND, items,
+						() -> dynamoDB.batchWriteItem( current ),
+						o -> units( o.getBatchWriteItemResult().getConsumedCapacity() ) );
+				
+				Map<String,List<WriteRequest>> unprocessed = outcome.getUnprocessedItems();
+				if ( unprocessed == null || unprocessed.isEmpty() ) {
+					break; // All done.
+				}
+				CapacityLimiter limiter = getLimiter( tableName, true );
+				if ( limiter != null ) {
+					limiter.throttled( 0 );
+				}
+				items = 0;
+				for ( List<WriteRequest> requests : unprocessed.values() ) {
+					
+					items += requests.size();
+					
+				}
+				if ( retries == THROTTLE_RETRIES ) { // Give up.
+					throw new DatabaseException( items + " items were still unprocessed after "
+							+ THROTTLE_RETRIES + " retries." );
+				}
+				LOG.trace( "Retrying {} unprocessed items in {} ms.", items, backoff );
+				Thread.sleep( backoff );
+				backoff = Math.min( backoff * 2, RETRY_MAX_BACKOFF );
+				spec = new BatchWriteItemSpec().withUnprocessedItems( unprocessed );
+				
+			}
+		} catch ( AmazonClientException e ) {
+			throw new DatabaseException( "Failed to write items.", e );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseException( "Interrupted while writing items.", e );
+		}
+		
+	}
+	
+	/**
+	 * Puts the given items into and deletes the given keys from a table, using
+	 * BatchWriteItem requests of up to {@value #BATCH_WRITE_LIMIT} items each.
+	 * <p>
+	 * The requests are run concurrently (up to the amount allowed by the
+	 * {@value #WRITE_CONCURRENCY_SETTING} setting), and this method waits until
+	 * all of them finish. If a request fails, the other requests are still
+	 * made, so some of the items may have been written.
+	 * <p>
+	 * No key may be present more than once (whether as an item to put or as a key
+	 * to delete).
+	 * 
+	 * @param tableName The name of the table.
+	 * @param puts The items to put.
+	 * @param deletes The primary keys of the items to delete.
+	 * @throws DatabaseException if an error occurred while writing the items.
+	 */
+	protected void batchWrite( String tableName, List<Item> puts, List<PrimaryKey> deletes )
+			throws DatabaseException {
+		
+		int total = puts.size() + deletes.size();
+		List<Future<?>> requests = new ArrayList<>( ( total + BATCH_WRITE_LIMIT - 1 ) / BATCH_WRITE_LIMIT );
+		try {
+			for ( int i = 0; i < total; i += BATCH_WRITE_LIMIT ) {
+				
+				TableWriteItems request = new TableWriteItems( tableName );
+				int items = Math.min( i + BATCH_WRITE_LIMIT, total ) - i;
+				for ( int j = i; j < i + items; j++ ) {
+					
+					if ( j < puts.size() ) {
+						request.addItemToPut( puts.get( j ) );
+					} else {
+						request.addPrimaryKeyToDelete( deletes.get( j - puts.size() ) );
+					}
+					
+				}
+				
+				batchWrites.acquire(); // Wait until a request finishes, if too many are running.
+				try {
+					requests.add( BATCH_WRITER.submit( () -> {
+						
+						try {
+							batchWrite( tableName, request, items );
+						} finally {
+							batchWrites.release();
+						}
+						
+					} ) );
+				} catch ( RejectedExecutionException e ) { // Executor unavailable. Write in this thread.
+					try {
+						batchWrite( tableName, request, items );
+					} finally {
+						batchWrites.release();
+					}
+				}
+				
+			}
+			
+			for ( Future<?> request : requests ) { // Wait for all requests.
+				
+				request.get();
+				
+			}
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new DatabaseException( "Interrupted while writing items.", e );
+		} catch ( ExecutionException e ) {
+			if ( e.getCause() instanceof DatabaseException ) {
+				throw (DatabaseException) e.getCause();
+			}
+			throw new DatabaseException( "Failed to write items.", e.getCause() );
+		}
+		
+	}
+
+	@Override
+	protected <K,V> Map<K,V> newMap( String dataName, Translator<K> keyTranslator,
+			Translator<V> valueTranslator ) throws DatabaseException {
+
+		LOG.debug( "Retrieving table of name '{}'.", dataName );
+		
+		TableMap<K,V> map = new TableMap<>( getTable( dataName ), keyTranslator, valueTranslator );
+		tableMaps.add( map );
+		return map;
+		
+	}
+	
+	/**
+	 * Uses the {@link TreeLayout layout} of this database (by default, the one
+	 * specified by the {@link #TREE_LAYOUT_SETTING tree layout setting}).
+	 */
+	@Override
+	protected <K,V> Tree<K,V> newTree( String dataName, Translator<K> keyTranslator,
+			Translator<V> valueTranslator ) throws DatabaseException {
+		
+		if ( treeLayout != TreeLayout.PARTITIONED ) {
+			return super.newTree( dataName, keyTranslator, valueTranslator );
+		}
+		
+		LOG.debug( "Retrieving partitioned table of name '{}'.", dataName );
+		
+		PartitionedMap<K,V> map = new PartitionedMap<>( getTable( dataName, PARTITIONED_KEY_SCHEMA,
+				PARTITIONED_ATTRIBUTE_DEFINITIONS ), keyTranslator, valueTranslator );
+		tableMaps.add( map );
+		return new PartitionedTree<>( map );
+		
+	}
+	
+	/**
+	 * Read and write capacity limiters of a table.
+	 * 
+	 * @version 1.0
+	 * @author ThiagoTGM
+	 * @since 2018-09-17
+	 */
+	private static class TableCapacity {
+		
+		/**
+		 * The read limiter, or <tt>null</tt> if reads are not limited.
+		 */
+		public final CapacityLimiter reads;
+		/**
+		 * The write limiter, or <tt>null</tt> if writes are not limited.
+		 */
+		public final CapacityLimiter writes;
+		
+		/**
+		 * Creates the limiters for the given capacity.
+		 * 
+		 * @param readUnits The provisioned read capacity units. If <tt>null</tt> or
+		 *                  0, reads are not limited.
+		 * @param writeUnits The provisioned write capacity units. If <tt>null</tt>
+		 *                   or 0, writes are not limited.
+		 */
+		public TableCapacity( Long readUnits, Long writeUnits ) {
+			
+			this.reads = ( readUnits == null || readUnits <= 0 ) ? null : new CapacityLimiter( readUnits );
+			this.writes = ( writeUnits == null || writeUnits <= 0 ) ? null : new CapacityLimiter( writeUnits );
+			
+		}
+		
+	}
+	
+	/**
+	 * Map that is backed by a DynamoDB table.
+	 * <p>
+	 * If the {@link SizeMode size mode} of the database is
+	 * {@link SizeMode#COUNTER COUNTER}, every write that may add or remove items
+	 * also updates the item counter of the table. For bulk writes, this requires
+	 * checking which of the keys exist beforehand. {@link #set(Object, Object)}
+	 * and {@link #delete(Object)} never decode the previous value of the item:
+	 * in that case, <tt>set</tt> only checks whether previous attributes were
+	 * returned, and <tt>delete</tt> uses a conditional write.
+	 * <p>
+	 * The {@link AsyncMap asynchronous} operations use the low-level requests of
+	 * the {@link DynamoDBDatabase#asyncClient asynchronous client}.
+	 * <p>
+	 * {@link #compute(Object, BiFunction)} is implemented with a conditional write
+	 * on the {@value DynamoDBDatabase#VERSION_ATTRIBUTE version} of the item, and
+	 * the other atomic operations are implemented with it, so they are atomic
+	 * even with writers in other processes.
+	 * 
+	 * @version 1.9
+	 * @author ThiagoTGM
+	 * @since 2018-08-29
+	 * @param <K> The type of the keys in the map.
+	 * @param <V> The type of the values in the map.
+	 */
+	private class TableMap<K,V> extends AbstractTableMap<K,V> implements AsyncMap<K,V> {
+		
+		protected Table table;
+		private final Translator<K> keyTranslator;
+		private final Translator<V> valueTranslator;
+		
+		/**
+		 * Initializes a map backed by the given table that uses the
+		 * given translators.
+		 * 
+		 * @param backing The table that should back this map.
+		 * @param keyTranslator The translator to be used for keys.
+		 * @param valueTranslator The translator to be used for values.
+		 */
+		public TableMap( Table backing, Translator<K> keyTranslator,
+				Translator<V> valueTranslator ) {
+			
+			this.table = backing;
+			this.keyTranslator = keyTranslator;
+			this.valueTranslator = valueTranslator;
+			
+			// Retrieve the capacities now, so asynchronous requests never have to.
+			getLimiter( backing.getTableName(), false );
+			if ( sizeMode == SizeMode.COUNTER ) {
+				getLimiter( getCountsTable().getTableName(), true );
+			}
+			
+		}
+		
+		/**
+		 * Reads the item counter of the table.
+		 * 
+		 * @param consistent Whether to use a strongly consistent read.
+		 * @return The value of the counter, or -1 if it does not exist yet.
+		 * @throws DatabaseException if an error occurred while reading the counter.
+		 */
+		private long readCount( boolean consistent ) throws DatabaseException {
+			
+			Item item;
+			try {
+				item = readItem( getCountsTable(), new GetItemSpec()
+						.withPrimaryKey( KEY_ATTRIBUTE, table.getTableName() )
+						.withConsistentRead( consistent ) );
+			} catch ( AmazonClientException e ) {
+				throw new DatabaseException( "Failed to read item count.", e );
+			}
+			return ( item == null || !item.hasAttribute( COUNT_ATTRIBUTE ) ) ? -1
+					: Math.max( item.getLong( COUNT_ATTRIBUTE ), 0 );
+			
+		}
+		
+		/**
+		 * Sets the item counter of the table.
+		 * 
+		 * @param count The value to set.
+		 * @param onlyIfAbsent If <tt>true</tt>, the counter is only set if it does
+		 *                     not exist yet.
+		 * @return <tt>true</tt> if the counter was set, <tt>false</tt> if
+		 *         <tt>onlyIfAbsent</tt> was <tt>true</tt> and it already existed.
+		 * @throws DatabaseException if an error occurred while setting the counter.
+		 */
+		private boolean storeCount( long count, boolean onlyIfAbsent ) throws DatabaseException {
+			
+			UpdateItemSpec updateSpec = new UpdateItemSpec()
+					.withPrimaryKey( KEY_ATTRIBUTE, table.getTableName() )
+					.withUpdateExpression( "set #count = :count" )
+					.withNameMap( new NameMap().with( "#count", COUNT_ATTRIBUTE ) )
+					.withValueMap( new ValueMap().withNumber( ":count", count ) );
+			if ( onlyIfAbsent ) {
+				updateSpec.withConditionExpression( "attribute_not_exists(#count)" );
+			}
+			try {
+				updateItem( getCountsTable(), updateSpec );
+				return true;
+			} catch ( ConditionalCheckFailedException e ) {
+				return false; // Already exists.
+			} catch ( AmazonClientException e ) {
+				throw new DatabaseException( "Failed to store item count.", e );
+			}
+			
+		}
+		
+		/**
+		 * Initializes the item counter of the table with the amount of items
+		 * found by a scan.
+		 * <p>
+		 * The counter is created (at 0) before the scan, and the amount of items
+		 * found is then added to it, so writes made during the scan keep updating
+		 * the counter instead of being overwritten by the result of the scan. Only
+		 * items that are added or removed right as the scan passes them may be
+		 * counted twice (or not at all). Until the scan finishes, the counter only
+		 * reflects the writes made since it started.
+		 * 
+		 * @param reset If <tt>true</tt> and the counter already exists, it is
+		 *              corrected by the difference between the scanned amount and
+		 *              its value before the scan. Otherwise it is kept.
+		 * @throws DatabaseException if an error occurred while counting.
+		 */
+		private void initCount( boolean reset ) throws DatabaseException {
+			
+			long before = reset ? readCount( true ) : -1;
+			if ( before < 0 ) { // Create it first, so writes start being counted.
+				if ( !storeCount( 0, true ) ) {
+					LOG.debug( "Item count of table '{}' was initialized concurrently.", table.getTableName() );
+					return;
+				}
+				before = 0;
+			}
+			LOG.info( "Counting items in table '{}'.", table.getTableName() );
+			addCount( scanCount() - before );
+			
+		}
+		
+		/**
+		 * Adds the given amount to the item counter of the table, if items are
+		 * being counted and the counter was already initialized (otherwise, the
+		 * item is counted when the counter is initialized).
+		 * <p>
+		 * The write that changed the amount of items was already made, so a failure
+		 * to update the counter is only logged (the counter can be fixed later with
+		 * {@link DynamoDBDatabase#recount()}).
+		 * 
+		 * @param delta The amount of items added (or removed, if negative).
+		 */
+		private void addCount( long delta ) {
+			
+			if ( ( sizeMode != SizeMode.COUNTER ) || ( delta == 0 ) ) {
+				return; // Nothing to do.
+			}
+			try {
+				updateItem( getCountsTable(), new UpdateItemSpec()
+						.withPrimaryKey( KEY_ATTRIBUTE, table.getTableName() )
+						.withUpdateExpression( "add #count :delta" )
+						.withConditionExpression( "attribute_exists(#count)" )
+						.withNameMap( new NameMap().with( "#count", COUNT_ATTRIBUTE ) )
+						.withValueMap( new ValueMap().withNumber( ":delta", delta ) ) );
+			} catch ( ConditionalCheckFailedException e ) {
+				LOG.trace( "Item count of table '{}' not initialized yet.", table.getTableName() );
+			} catch ( AmazonClientException e ) {
+				LOG.warn( "Failed to update item count of table '" + table.getTableName()
+						+ "'. It will be inaccurate until recounted.", e );
+			}
+			
+		}
+		
+		/**
+		 * Deletes the item counter of the table, if items are being counted, after
+		 * a write that failed may have added or removed an unknown amount of items.
+		 * The counter is then initialized again the next time that the size is
+		 * requested.
+		 */
+		private void dropCount() {
+			
+			if ( sizeMode != SizeMode.COUNTER ) {
+				return; // Nothing to do.
+			}
+			LOG.warn( "Item count of table '{}' is unknown after a failed write. It will be recounted.",
+					table.getTableName() );
+			try {
+				updateItem( getCountsTable(), new UpdateItemSpec()
+						.withPrimaryKey( KEY_ATTRIBUTE, table.getTableName() )
+						.withUpdateExpression( "remove #count" )
+						.withNameMap( new NameMap().with( "#count", COUNT_ATTRIBUTE ) ) );
+			} catch ( AmazonClientException e ) {
+				LOG.warn( "Failed to delete item count of table '" + table.getTableName()
+						+ "'. It will be inaccurate until recounted.", e );
+			}
+			
+		}
+		
+		/**
+		 * Writes the given items and deletes the given keys with
+		 * {@link DynamoDBDatabase#batchWrite(String, List, List) BatchWriteItem
+		 * requests}, then adds the given amount to the item counter. If the write
+		 * fails, some of the items may have been written anyway, so the counter is
+		 * {@link #dropCount() deleted} instead.
+		 * 
+		 * @param puts The items to put.
+		 * @param deletes The primary keys of the items to delete.
+		 * @param delta The amount of items that the write adds (or removes, if
+		 *              negative).
+		 * @throws DatabaseException if an error occurred while writing the items.
+		 */
+		private void writeItems( List<Item> puts, List<PrimaryKey> deletes, long delta )
+				throws DatabaseException {
+			
+			try {
+				batchWrite( table.getTableName(), puts, deletes );
+			} catch ( RuntimeException e ) {
+				dropCount();
+				throw e;
+			}
+			addCount( delta );
+			
+		}
+		
+		/**
+		 * Same as {@link #addCount(long)}, but the counter is updated with the
+		 * {@link DynamoDBDatabase#asyncClient asynchronous client}.
+		 * 
+		 * @param delta The amount of items added (or removed, if negative).
+		 * @return A future that completes once the counter is updated (or failed to
+		 *         be updated). Never completes exceptionally.
+		 */
+		private CompletableFuture<Void> addCountAsync( long delta ) {
+			
+			if ( ( sizeMode != SizeMode.COUNTER ) || ( delta == 0 ) ) {
+				return CompletableFuture.completedFuture( null ); // Nothing to do.
+			}
+			UpdateItemRequest request = new UpdateItemRequest().withTableName( COUNTS_TABLE )
+					.withKey( ItemUtils.toAttributeValueMap( new PrimaryKey( KEY_ATTRIBUTE, table.getTableName() ) ) )
+					.withUpdateExpression( "add #count :delta" )
+					.withConditionExpression( "attribute_exists(#count)" )
+					.withExpressionAttributeNames( new NameMap().with( "#count", COUNT_ATTRIBUTE ) )
+					.withExpressionAttributeValues( ItemUtils.fromSimpleMap( new ValueMap()
+							.withNumber( ":delta", delta ) ) )
+					.withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL );
+			
+			return requestAsync( COUNTS_TABLE, true, request,
+					( q, h ) -> asyncClient.updateItemAsync( q, h ), UpdateItemResult::getConsumedCapacity )
+					.handle( ( r, e ) -> {
+						
+						Throwable cause = ( e instanceof CompletionException ) ? e.getCause() : e;
+						if ( cause instanceof ConditionalCheckFailedException ) {
+							LOG.trace( "Item count of table '{}' not initialized yet.", table.getTableName() );
+						} else if ( cause != null ) {
+							LOG.warn( "Failed to update item count of table '" + table.getTableName()
+									+ "'. It will be inaccurate until recounted.", cause );
+						}
+						return null;
+						
+					} );
+			
+		}
+
+		/**
+		 * Determines the size as specified by the {@link SizeMode size mode} of the
+		 * database.
+		 */
+		@Override
+		public int size() {
+			
+			switch ( sizeMode ) {
+				
+				case COUNTER:
+					try {
+						long count = readCount( false );
+						if ( count < 0 ) { // Counter not initialized yet (or was deleted).
+							initCount( false );
+							count = readCount( true );
+						}
+						return (int) Math.min( count, Integer.MAX_VALUE );
+					} catch ( DatabaseException e ) {
+						LOG.warn( "Failed to read item count.", e );
+						return 0;
+					}
+					
+				case APPROXIMATE:
+					try {
+						Long count = table.describe().getItemCount();
+						return count == null ? 0 : (int) Math.min( count, Integer.MAX_VALUE );
+					} catch ( AmazonClientException e ) {
+						LOG.warn( "Failed to describe table.", e );
+						return 0;
+					}
+					
+				default:
+					return scanCount();
+				
+			}
+			
+		}
+		
+		/**
+		 * Scans the given segments of the table.
+		 * <p>
+		 * If more than one segment is given, the segments are scanned in parallel by
+		 * the {@link DynamoDBDatabase#SCANNER scanner pool}. Otherwise, the segment
+		 * is scanned by the thread that consumes the returned iterator.
+		 * 
+		 * @param spec Supplies the request to use for each segment. The segment
+		 *             parameters are set by this method.
+		 * @param first The first segment to scan.
+		 * @param last The segment after the last segment to scan.
+		 * @return The iterator over the items found.
+		 * @throws DatabaseException if an error occurred while starting the scan.
+		 */
+		private Iterator<Item> scan( Supplier<ScanSpec> spec, int first, int last )
+				throws DatabaseException {
+			
+			if ( last - first > 1 ) {
+				return new ParallelScan( spec, first, last );
+			}
+			
+			ScanSpec scanSpec = spec.get();
+			if ( SCAN_SEGMENTS > 1 ) {
+				scanSpec.withSegment( first ).withTotalSegments( SCAN_SEGMENTS );
+			}
+			try {
+	            return scanItems( scanSpec, Priority.BACKGROUND );
+	        } catch ( Exception e ) {
+	        	throw new DatabaseException( "Failed to scan table.", e );
+	        }
+			
+		}
+		
+		/**
+		 * Stops a scan started by {@link #scan(Supplier, int, int)}, if it is a
+		 * {@link ParallelScan parallel scan}. Has no effect if the scan already
+		 * finished.
+		 * 
+		 * @param items The iterator returned by the scan.
+		 */
+		private void closeScan( Iterator<Item> items ) {
+			
+			if ( items instanceof TableMap.ParallelScan ) {
+				@SuppressWarnings( "unchecked" ) // Started by this map.
+				ParallelScan scan = (ParallelScan) items;
+				scan.close();
+			}
+			
+		}
+		
+		/**
+		 * Starts a scan of the table, whose pages are read as allowed by the read
+		 * {@link CapacityLimiter limiter} of the table.
+		 * 
+		 * @param scanSpec The scan request.
+		 * @param priority The priority of the requests for each page.
+		 * @return The iterator over the items found.
+		 * @see DynamoDBDatabase#pages(String, Priority, ItemCollection, Function)
+		 */
+		private Iterator<Item> scanItems( ScanSpec scanSpec, Priority priority ) {
+			
+			return pages( table.getTableName(), priority,
+					table.scan( scanSpec.withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL ) ),
+					outcome -> outcome.getScanResult().getConsumedCapacity() );
+			
+		}
+		
+		/**
+		 * Iterator over the items found by a parallel scan of some segments of the
+		 * table.
+		 * <p>
+		 * Each segment is scanned by a separate task in the
+		 * {@link DynamoDBDatabase#SCANNER scanner pool}, which places the items
+		 * found into a buffer of limited size. When the buffer is full, the tasks
+		 * wait for the consumer of the iterator to catch up, so the items are not
+		 * read faster than they are used.
+		 * <p>
+		 * If the consumer stops early, it should {@link #close() close} the scan, so
+		 * that the tasks stop right away. Otherwise, the tasks (which only hold the
+		 * shared {@link ScanState state}) stop once the iterator is
+		 * garbage-collected, or once the consumer does not take an item for
+		 * {@value DynamoDBDatabase#SCAN_ABANDON_TIMEOUT} milliseconds.
+		 * <p>
+		 * The items are returned in no particular order.
+		 * 
+		 * @version 1.1
+		 * @author ThiagoTGM
+		 * @since 2018-09-17
+		 */
+		private class ParallelScan implements Iterator<Item>, AutoCloseable {
+			
+			private final ScanState state;
+			private Item next;
+			
+			/**
+			 * Starts scanning the given segments.
+			 * 
+			 * @param spec Supplies the request to use for each segment.
+			 * @param first The first segment to scan.
+			 * @param last The segment after the last segment to scan.
+			 */
+			public ParallelScan( Supplier<ScanSpec> spec, int first, int last ) {
+				
+				ScanState state = new ScanState( last - first );
+				WeakReference<ParallelScan> owner = new WeakReference<>( this );
+				this.state = state;
+				for ( int i = first; i < last; i++ ) {
+					
+					ScanSpec scanSpec = spec.get().withSegment( i ).withTotalSegments( SCAN_SEGMENTS );
+					try { // Task must not reference this iterator.
+						SCANNER.execute( () -> state.scanSegment( scanSpec, owner ) );
+					} catch ( RejectedExecutionException e ) {
+						state.error = e;
+						state.running.decrementAndGet();
+					}
+					
+				}
+				
+			}
+
+			@Override
+			public boolean hasNext() {
+
+				try {
+					while ( next == null ) {
+						
+						if ( state.error != null ) {
+							state.abandoned = true; // Stop other segments.
+							throw new DatabaseException( "Failed to scan table.", state.error );
+						}
+						if ( state.abandoned ) {
+							throw new DatabaseException( "Scan was abandoned." );
+						}
+						// If all segments already ended, all their items are in the buffer.
+						boolean ended = state.running.get() == 0;
+						Item item = state.buffer.poll( SCAN_POLL_INTERVAL, TimeUnit.MILLISECONDS );
+						if ( item == null && ended ) {
+							return false; // No more items.
+						}
+						if ( item != END_OF_SEGMENT ) {
+							next = item;
+						}
+						
+					}
+				} catch ( InterruptedException e ) {
+					state.abandoned = true;
+					Thread.currentThread().interrupt();
+					throw new DatabaseException( "Interrupted while scanning table.", e );
+				}
+				return true;
+				
+			}
+
+			@Override
+			public Item next() throws NoSuchElementException {
+
+				if ( !hasNext() ) {
+					throw new NoSuchElementException( "No more items." );
+				}
+				Item item = next;
+				next = null;
+				return item;
+				
+			}
+			
+			/**
+			 * Stops the scan. The tasks that are still scanning segments stop as soon
+			 * as they read another item, and the items already buffered are
+			 * discarded.
+			 */
+			@Override
+			public void close() {
+				
+				state.abandoned = true;
+				state.buffer.clear(); // Wakes up tasks waiting for space.
+				
+			}
+			
+		}
+		
+		/**
+		 * State of a {@link ParallelScan} that is shared with the tasks that scan
+		 * its segments.
+		 * 
+		 * @version 1.0
+		 * @author ThiagoTGM
+		 * @since 2018-09-17
+		 */
+		private class ScanState {
+			
+			private final BlockingQueue<Item> buffer = new ArrayBlockingQueue<>( SCAN_BUFFER_SIZE );
+			private final AtomicInteger running;
+			private volatile boolean abandoned;
+			private volatile Exception error;
+			
+			/**
+			 * Instantiates the state of a scan.
+			 * 
+			 * @param segments The amount of segments being scanned.
+			 */
+			public ScanState( int segments ) {
+				
+				running = new AtomicInteger( segments );
+				
+			}
+			
+			/**
+			 * Scans a segment, placing each item found in the buffer.
+			 * <p>
+			 * While the buffer is full, checks every
+			 * {@value DynamoDBDatabase#SCAN_POLL_INTERVAL} milliseconds whether the
+			 * scan was closed or its iterator was garbage-collected.
+			 * 
+			 * @param scanSpec The request for the segment.
+			 * @param owner The iterator of the scan.
+			 */
+			private void scanSegment( ScanSpec scanSpec, WeakReference<ParallelScan> owner ) {
+				
+				try {
+					for ( Iterator<Item> items = scanItems( scanSpec, Priority.BACKGROUND ); items.hasNext(); ) {
+						
+						Item item = items.next();
+						long waited = 0;
+						while ( !abandoned && !buffer.offer( item, SCAN_POLL_INTERVAL, TimeUnit.MILLISECONDS ) ) {
+							
+							if ( owner.get() == null ) {
+								LOG.debug( "Scan of table '{}' was dropped without being closed.",
+										table.getTableName() );
+								abandoned = true;
+							} else if ( ( waited += SCAN_POLL_INTERVAL ) >= SCAN_ABANDON_TIMEOUT ) {
+								LOG.warn( "Scan of table '{}' was abandoned.", table.getTableName() );
+								abandoned = true;
+							}
+							
+						}
+						if ( abandoned ) {
+							return; // Scan was stopped.
+						}
+						
+					}
+				} catch ( InterruptedException e ) {
+					error = e;
+					Thread.currentThread().interrupt();
+				} catch ( Exception e ) {
+					error = e;
+				} finally {
+					running.decrementAndGet();
+					buffer.offer( END_OF_SEGMENT ); // Wake up consumer if waiting.
+				}
+				
+			}
+			
+		}
+		
+		/**
+		 * Spliterator over the items found by a scan of the table, that splits along
+		 * the segments of the scan.
+		 * <p>
+		 * Once traversal starts, the segments covered by the spliterator are
+		 * scanned as by {@link TableMap#scan(Supplier, int, int)}, and it can no
+		 * longer be split. {@link #close() Closing} the spliterator stops the
+		 * parallel scans started by it and by the spliterators split from it.
+		 * 
+		 * @version 1.0
+		 * @author ThiagoTGM
+		 * @since 2018-09-17
+		 * @param <E> The type of elements obtained from the items.
+		 */
+		private class ScanSpliterator<E> implements Spliterator<E> {
+			
+			private final Supplier<ScanSpec> spec;
+			private final Function<Item,E> decoder;
+			private final int characteristics;
+			private int first;
+			private final int last;
+			private final Queue<ParallelScan> scans;
+			private Iterator<Item> items;
+			
+			/**
+			 * Instantiates a spliterator over all the segments.
+			 * 
+			 * @param spec Supplies the request to use for each segment.
+			 * @param decoder Obtains the element that corresponds to an item.
+			 * @param characteristics The characteristics of the elements.
+			 */
+			public ScanSpliterator( Supplier<ScanSpec> spec, Function<Item,E> decoder, int characteristics ) {
+				
+				this( spec, decoder, characteristics, 0, SCAN_SEGMENTS, new ConcurrentLinkedQueue<>() );
+				
+			}
+			
+			/**
+			 * Instantiates a spliterator over the given segments.
+			 * 
+			 * @param spec Supplies the request to use for each segment.
+			 * @param decoder Obtains the element that corresponds to an item.
+			 * @param characteristics The characteristics of the elements.
+			 * @param first The first segment.
+			 * @param last The segment after the last segment.
+			 * @param scans The parallel scans started by the spliterators split from
+			 *              the same spliterator.
+			 */
+			private ScanSpliterator( Supplier<ScanSpec> spec, Function<Item,E> decoder, int characteristics,
+					int first, int last, Queue<ParallelScan> scans ) {
+				
+				this.spec = spec;
+				this.decoder = decoder;
+				this.characteristics = characteristics;
+				this.first = first;
+				this.last = last;
+				this.scans = scans;
+				
+			}
+
+			@Override
+			public boolean tryAdvance( Consumer<? super E> action ) {
+
+				if ( items == null ) {
+					items = scan( spec, first, last );
+					if ( items instanceof TableMap.ParallelScan ) {
+						@SuppressWarnings( "unchecked" ) // Started by this map.
+						ParallelScan scan = (ParallelScan) items;
+						scans.add( scan );
+					}
+				}
+				if ( !items.hasNext() ) {
+					return false;
+				}
+				action.accept( decoder.apply( items.next() ) );
+				return true;
+				
+			}
+
+			@Override
+			public Spliterator<E> trySplit() {
+
+				if ( items != null || last - first < 2 ) {
+					return null; // Already started or only one segment.
+				}
+				int middle = ( first + last ) >>> 1;
+				Spliterator<E> prefix = new ScanSpliterator<>( spec, decoder, characteristics, first, middle,
+						scans );
+				first = middle;
+				return prefix;
+				
+			}
+
+			@Override
+			public long estimateSize() {
+
+				return Long.MAX_VALUE; // Unknown.
+				
+			}
+
+			@Override
+			public int characteristics() {
+
+				return characteristics;
+				
+			}
+			
+			/**
+			 * Stops the parallel scans started so far by this spliterator and the
+			 * spliterators split from the same spliterator.
+			 */
+			public void close() {
+				
+				for ( ParallelScan scan = scans.poll(); scan != null; scan = scans.poll() ) {
+					
+					scan.close();
+					
+				}
+				
+			}
+			
+		}
+		
+		/**
+		 * Creates a stream over the given spliterator. If it is a
+		 * {@link ScanSpliterator}, closing the stream stops the scan.
+		 * 
+		 * @param spliterator The spliterator.
+		 * @param parallel Whether the stream should be parallel.
+		 * @param <E> The type of the elements.
+		 * @return The stream.
+		 */
+		protected <E> Stream<E> scanStream( Spliterator<E> spliterator, boolean parallel ) {
+			
+			Stream<E> stream = StreamSupport.stream( spliterator, parallel );
+			if ( spliterator instanceof TableMap.ScanSpliterator ) {
+				@SuppressWarnings( "unchecked" ) // Created by this map.
+				ScanSpliterator<E> scan = (ScanSpliterator<E>) spliterator;
+				stream = stream.onClose( scan::close );
+			}
+			return stream;
+			
+		}
+		
+		/**
+		 * Retrieves the projection expression that selects the key attributes of
+		 * an item. The names used in it are given by {@link #keyNames()}.
+		 * 
+		 * @return The projection expression.
+		 */
+		protected String keyProjection() {
+			
+			return "#k";
+			
+		}
+		
+		/**
+		 * Retrieves the attribute names used by {@link #keyProjection()}.
+		 * 
+		 * @return The name map (a new instance on each call).
+		 */
+		protected NameMap keyNames() {
+			
+			return new NameMap().with( "#k", KEY_ATTRIBUTE );
+			
+		}
+		
+		/**
+		 * Obtains the primary key of the item that stores the given encoded key.
+		 * 
+		 * @param encoded The encoded key.
+		 * @return The primary key.
+		 */
+		protected PrimaryKey primaryKey( String encoded ) {
+			
+			return new PrimaryKey( KEY_ATTRIBUTE, encoded );
+			
+		}
+		
+		/**
+		 * Obtains the primary keys of the items that store the given encoded keys.
+		 * 
+		 * @param encoded The encoded keys.
+		 * @return The primary keys.
+		 */
+		private List<PrimaryKey> primaryKeys( List<String> encoded ) {
+			
+			List<PrimaryKey> keys = new ArrayList<>( encoded.size() );
+			for ( String key : encoded ) {
+				
+				keys.add( primaryKey( key ) );
+				
+			}
+			return keys;
+			
+		}
+		
+		/**
+		 * Obtains the encoded key stored by an item.
+		 * 
+		 * @param item The item.
+		 * @return The encoded key, or <tt>null</tt> if the item is missing the key
+		 *         attributes.
+		 */
+		protected String encodedKey( Item item ) {
+			
+			return item.getString( KEY_ATTRIBUTE );
+			
+		}
+		
+		/**
+		 * Creates a request for scanning the keys of the table.
+		 * 
+		 * @return The request.
+		 */
+		private ScanSpec keyScan() {
+			
+			return new ScanSpec().withProjectionExpression( keyProjection() )
+					             .withNameMap( keyNames() );
+			
+		}
+		
+		/**
+		 * Creates a request for scanning the keys and values of the table.
+		 * 
+		 * @return The request.
+		 */
+		private ScanSpec entryScan() {
+			
+			return new ScanSpec().withProjectionExpression( keyProjection() + ",#val" )
+					             .withNameMap( keyNames().with( "#val", VALUE_ATTRIBUTE ) );
+			
+		}
+		
+		/**
+		 * Obtains the key of a scanned item.
+		 * 
+		 * @param item The item.
+		 * @return The key.
+		 * @throws DatabaseException if the item is missing the key attribute.
+		 */
+		protected K itemKey( Item item ) throws DatabaseException {
+			
+			String encoded = encodedKey( item );
+			if ( encoded == null ) {
+				throw new DatabaseException( "Missing key attribute." );
+			}
+			return decodeKey( encoded );
+			
+		}
+		
+		/**
+		 * Obtains the value of a scanned item.
+		 * 
+		 * @param item The item.
+		 * @return The value.
+		 * @throws DatabaseException if the item is missing the value attribute.
+		 */
+		protected V itemValue( Item item ) throws DatabaseException {
+			
+			if ( !item.hasAttribute( VALUE_ATTRIBUTE ) ) {
+				throw new DatabaseException( "Missing value attribute." );
+			}
+			return decodeValue( item.get( VALUE_ATTRIBUTE ) );
+			
+		}
+		
+		/**
+		 * Counts the items in the table with a scan of the whole table.
+		 * 
+		 * @return The amount of items.
+		 */
+		private int scanCount() {
+			
+			int count = 0;
+			Iterator<Item> iter = null;
+			try {
+				iter = scan( () -> new ScanSpec().withProjectionExpression( INVALID_ATTRIBUTE ),
+						0, SCAN_SEGMENTS );
+				while ( iter.hasNext() ) {
+					iter.next();
+					count++;
+				}
+			} catch ( Exception e ) {
+				LOG.warn( "Failed to scan database.", e );
+				return 0;
+			} finally { // Stops the scan if it failed.
+				closeScan( iter );
+			}
+
+			return count;
+			
+		}
+
+		/**
+		 * Scans the table for a single item, regardless of the size mode.
+		 */
+		@Override
+		public boolean isEmpty() {
+
+			ScanSpec scanSpec = new ScanSpec().withProjectionExpression( INVALID_ATTRIBUTE )
+					                          .withMaxResultSize( 1 );
+			try {
+				return !scanItems( scanSpec, Priority.INTERACTIVE ).hasNext();
+			} catch ( Exception e ) {
+				LOG.warn( "Failed to scan database.", e );
+				return true;
+			}
+			
+		}
+		
+		/**
+		 * Encodes a key.
+		 * Errors encountered during encoding are automatically
+		 * converted to a DatabaseException.
+		 * 
+		 * @param key The key to encode.
+		 * @return The encoded key, or <tt>null</tt> if the given object
+		 *         is not of the type supported by the key encoder.
+		 * @throws DatabaseException if an error occurred while encoding.
+		 */
+		protected String encodeKey( Object key ) throws DatabaseException {
+			
+			try {
+				return Utils.sanitize( keyTranslator.encodeObj( key ) );
+			} catch ( TranslationException e ) {
+				throw new DatabaseException( "Failed to encode key.", e );
+			}
+			
+		}
+		
+		/**
+		 * Decodes a key.
+		 * Errors encountered during decoding are automatically
+		 * converted to a DatabaseException.
+		 * 
+		 * @param encoded The string to decode.
+		 * @return The decoded key.
+		 * @throws DatabaseException if an error occurred while decoding.
+		 */
+		protected K decodeKey( String encoded ) throws DatabaseException {
+			
+			try {
+				return keyTranslator.decode( Utils.desanitize( encoded ) );
+			} catch ( TranslationException e ) {
+				throw new DatabaseException( "Failed to decode key.", e );
+			}
+			
+		}
+		
+		/**
+		 * Extracts a Data value into an object that is able to be used as a
+		 * value in DynamoDB.
+		 * 
+		 * @param data The data to extract.
+		 * @return The DynamoDB-compatible object.
+		 */
+		private Object extractData( Data data ) {
+			
+			switch ( data.getType() ) {
+			
+			case STRING:
+				return Utils.sanitize( data.getString() );
+				
+			case NUMBER:
+				if ( data.isFloat() ) {
+					return data.getNumberFloat();
+				} else {
+					return data.getNumberInteger();
+				}
+				
+			case BOOLEAN:
+				return data.getBoolean();
+				
+			default:
+			case NULL:
+				return null;
+				
+			case LIST:
+				List<Object> list = new ArrayList<>( data.getList().size() );
+				for ( Data elem : data.getList() ) { // Extract each element.
+					
+					list.add( extractData( elem ) );
+					
+				}
+				return list;
+				
+			case MAP:
+				Map<String,Object> map = new HashMap<>( data.getMap().size() );
+				for ( Map.Entry<String,Data> entry : data.getMap().entrySet() ) {
+					// Extract each mapping.
+					map.put( entry.getKey(), extractData( entry.getValue() ) );
+					
+				}
+				return map;
+				
+			}
+		
+		}
+		
+		/**
+		 * Encodes a value into an object that can be stored into DynamoDB.
+		 * Errors encountered during encoding are automatically
+		 * converted to a DatabaseException.
+		 * 
+		 * @param value The value to encode.
+		 * @return The encoded value.
+		 * @throws DatabaseException if an error occurred while encoding.
+		 */
+		private Object encodeValue( V value ) throws DatabaseException {
+			
+			try {
+				return extractData( valueTranslator.toData( value ) );
+			} catch ( TranslationException e ) {
+				throw new DatabaseException( "Failed to encode value.", e );
+			}
+			
+		}
+		
+		/**
+		 * Stores data received from DynamoDB into a Data instance.
+		 * <p>
+		 * Inverse of {@link #extractData(Data)}.
+		 * 
+		 * @param obj The DynamoDB-supported object.
+		 * @return The Data representation.
+		 */
+		private Data storeData( Object obj ) {
+			
+			if ( obj instanceof String ) {
+				return Data.stringData( Utils.desanitize( (String) obj ) );
+			} else if ( obj instanceof Number ) {
+				return Data.numberData( obj.toString() );
+			} else if ( obj instanceof Boolean ) {
+				return Data.booleanData( (Boolean) obj );
+			} else if ( obj == null ) {
+				return Data.nullData();
+			} else if ( obj instanceof List ) {
+				List<Data> list = new LinkedList<>();
+				for ( Object elem : (List<?>) obj ) { // Store each element.
+					
+					list.add( storeData( elem ) );
+					
+				}
+				return Data.listData( list );
+			} else if ( obj instanceof Map ) {
+				Map<String,Data> map = new HashMap<>();
+				@SuppressWarnings("unchecked")
+				Map<String,?> extracted = (Map<String,?>) obj;
+				for ( Map.Entry<String,?> entry : extracted.entrySet() ) {
+					// Store each mapping.
+					map.put( entry.getKey(), storeData( entry.getValue() ) );
+					
+				}
+				return Data.mapData( map );
+			} else {
+				throw new DatabaseException( "Unsupported data type received from database." );
+			}
+			
+		}
+		
+		/**
+		 * Decodes a value.
+		 * Errors encountered during decoding are automatically
+		 * converted to a DatabaseException.
+		 * 
+		 * @param encoded The data to decode.
+		 * @return The decoded value.
+		 * @throws DatabaseException if an error occurred while decoding.
+		 */
+		private V decodeValue( Object encoded ) throws DatabaseException {
+			
+			try {
+				return valueTranslator.fromData( storeData( encoded ) );
+			} catch ( TranslationException e ) {
+				throw new DatabaseException( "Failed to decode value.", e );
+			}
+			
+		}
+		
+		/**
+		 * Attempts to retrieve the Item that has the given key.
+		 *
+		 * @param key The key.
+		 * @param loadData Whether the item data (attributes) should be loaded, if it
+		 *                 is found. If this is <tt>false</tt>, then if the returned item
+		 *                 (if any) will not contain any attributes, and is only good for
+		 *                 checking if there exists an item with the given key.
+		 * @return The item under the given key, or <tt>null</tt> if there is
+		 *         no such item.
+		 * @throws DatabaseException if an error occurred while retrieving the item
+		 *                           (including if the request was still throttled
+		 *                           after all retries).
+		 */
+		protected Item getItem( Object key, boolean loadData ) throws DatabaseException {
+			
+			String translated = encodeKey( key );
+			if ( translated == null ) {
+				return null; // Incorrect type.
+			}
+		
+			GetItemSpec getSpec = new GetItemSpec().withPrimaryKey( primaryKey( translated ) );
+			if ( !loadData ) { // Should not load data.
+				getSpec.withProjectionExpression( INVALID_ATTRIBUTE );
+			}
+			
+			try {
+				return readItem( table, getSpec );
+			} catch ( AmazonClientException e ) {
+				throw new DatabaseException( "Failed to retrieve item of key '" + translated + "'.", e );
+			}
+			
+		}
+
+		/**
+		 * Asynchronously retrieves the attributes of the item that has the given key.
+		 *
+		 * @param key The key.
+		 * @param loadData Whether the item data (attributes) should be loaded, if it
+		 *                 is found.
+		 * @return The future attributes of the item under the given key, or
+		 *         <tt>null</tt> if there is no such item. Completes exceptionally
+		 *         with a {@link DatabaseException} if an error occurred while
+		 *         retrieving the item.
+		 * @throws DatabaseException if the key could not be encoded.
+		 * @see #getItem(Object, boolean)
+		 */
+		protected CompletableFuture<Map<String,AttributeValue>> getItemAsync( Object key, boolean loadData )
+				throws DatabaseException {
+			
+			String translated = encodeKey( key );
+			if ( translated == null ) {
+				return CompletableFuture.completedFuture( null ); // Incorrect type.
+			}
+			
+			GetItemRequest request = new GetItemRequest().withTableName( table.getTableName() )
+					.withKey( ItemUtils.toAttributeValueMap( primaryKey( translated ) ) )
+					.withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL );
+			if ( !loadData ) { // Should not load data.
+				request.withProjectionExpression( INVALID_ATTRIBUTE );
+			}
+			
+			return requestAsync( table.getTableName(), false, request,
+					( q, h ) -> asyncClient.getItemAsync( q, h ), GetItemResult::getConsumedCapacity )
+					.handle( ( result, e ) -> {
+						
+						if ( e != null ) {
+							throw new DatabaseException( "Failed to retrieve item of key '" + translated + "'.",
+									( e instanceof CompletionException ) ? e.getCause() : e );
+						}
+						return result.getItem();
+						
+					} );
+			
+		}
+
+		@Override
+		public boolean containsKey( Object key ) {
+			
+			return getItem( key, false ) != null;
+			
+		}
+
+		@Override
+		public CompletableFuture<Boolean> containsKeyAsync( Object key ) {
+			
+			return getItemAsync( key, false ).thenApply( item -> item != null );
+			
+		}
+
+		@Override
+		public boolean containsValue( Object value ) {
+			
+			Data data = null;
+			try {
+				data = valueTranslator.objToData( value );
+			} catch ( TranslationException e ) {
+				throw new DatabaseException( "Failed to translate value." );
+			}
+			if ( data == null ) {
+				return false; // Incorrect type.
+			}
+			
+			Object translated = extractData( data );
 			
 			// Construct scan request.
-			ScanSpec scanSpec = new ScanSpec().withProjectionExpression( INVALID_ATTRIBUTE );
+			ScanSpec scanSpec = new ScanSpec().withProjectionExpression( INVALID_ATTRIBUTE )
+					                          .withFilterExpression( "#value = :value" )
+					                          .withNameMap( new NameMap().with( "#value", VALUE_ATTRIBUTE ) )
+					                          .withValueMap( new ValueMap().with( ":value", translated ) );
+			
+			try { // Return if there is at least one match.
+	            return scanItems( scanSpec, Priority.BACKGROUND ).hasNext();
+	        } catch ( Exception e ) {
+	        	LOG.warn( "Failed to scan for value '" + translated + "'.", e );
+				return false;
+	        }
+			
+		}
 
-			int count = 0;
-			try {
-				ItemCollection<ScanOutcome> items = table.scan( scanSpec ); // Run scan.
-				Iterator<Item> iter = items.iterator();
-				while ( iter.hasNext() ) {
-					iter.next();
-					count++;
-				}
-			} catch ( Exception e ) {
-				LOG.warn( "Failed to scan database.", e );
-				return 0;
+		@Override
+		public V get( Object key ) {
+			
+			Item result = getItem( key, true );
+			
+			if ( result == null ) {
+				return null; // No item found.
 			}
-
-			return count;
+			
+			if ( !result.hasAttribute( VALUE_ATTRIBUTE ) ) { // Missing value attribute.
+				throw new DatabaseException( "Item is missing value attribute." );
+			}
+			
+			return decodeValue( result.get( VALUE_ATTRIBUTE ) );
 			
 		}
-
+		
 		@Override
-		public boolean isEmpty() {
-
-			return size() == 0;
+		public CompletableFuture<V> getAsync( Object key ) {
+			
+			return getItemAsync( key, true ).thenApply( item -> {
+				
+				if ( item == null ) {
+					return null; // No item found.
+				}
+				
+				if ( !item.containsKey( VALUE_ATTRIBUTE ) ) { // Missing value attribute.
+					throw new DatabaseException( "Item is missing value attribute." );
+				}
+				
+				return decodeValue( ItemUtils.toSimpleValue( item.get( VALUE_ATTRIBUTE ) ) );
+				
+			} );
 			
 		}
 		
 		/**
-		 * Encodes a key.
-		 * Errors encountered during encoding are automatically
-		 * converted to a DatabaseException.
+		 * Retrieves the items with the given keys using BatchGetItem requests of up to
+		 * {@value DynamoDBDatabase#BATCH_GET_LIMIT} keys each. Keys that a request
+		 * leaves unprocessed (for example, due to exceeding the provisioned
+		 * throughput) are requested again after an exponential backoff (up to
+		 * {@value DynamoDBDatabase#THROTTLE_RETRIES} times), and reported to the read
+		 * {@link CapacityLimiter limiter} of the table as throttling.
 		 * 
-		 * @param key The key to encode.
-		 * @return The encoded key, or <tt>null</tt> if the given object
-		 *         is not of the type supported by the key encoder.
-		 * @throws DatabaseException if an error occurred while encoding.
+		 * @param keys The encoded keys. Must not contain repeated keys.
+		 * @param loadData Whether the item data (attributes) should be loaded. If this
+		 *                 is <tt>false</tt>, the items only contain the key attribute.
+		 * @param priority The priority of the requests.
+		 * @param action The action to run for each item found.
+		 * @throws DatabaseException if an error occurred while retrieving the items,
+		 *                           or some of them were still unprocessed after all
+		 *                           the retries.
 		 */
-		private String encodeKey( Object key ) throws DatabaseException {
+		private void batchGet( List<String> keys, boolean loadData, Priority priority, Consumer<Item> action )
+				throws DatabaseException {
 			
-			try {
-				return Utils.sanitize( keyTranslator.encodeObj( key ) );
-			} catch ( TranslationException e ) {
-				throw new DatabaseException( "Failed to encode key.", e );
+			String tableName = table.getTableName();
+			for ( int i = 0; i < keys.size(); i += BATCH_GET_LIMIT ) {
+				
+				List<PrimaryKey> batch = primaryKeys( keys.subList( i, Math.min( i + BATCH_GET_LIMIT, keys.size() ) ) );
+				TableKeysAndAttributes request = new TableKeysAndAttributes( tableName )
+						.addPrimaryKeys( batch.toArray( new PrimaryKey[batch.size()] ) );
+				if ( !loadData ) { // Only load the keys.
+					request.withProjectionExpression( keyProjection() ).withNameMap( keyNames() );
+				}
+				BatchGetItemSpec spec = new BatchGetItemSpec().withTableKeyAndAttributes( request );
+				int requested = batch.size();
+				try {
+					long backoff = RETRY_BACKOFF;
+					for ( int retries = 0; true; retries++ ) {
+						
+						BatchGetItemSpec current = spec.withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL );
+						BatchGetItemOutcome outcome = request( tableName, false, priority, requested,
+								() -> dynamoDB.batchGetItem( current ),
+								o -> units( o.getBatchGetItemResult().getConsumedCapacity() ) );
+						
+						List<Item> items = outcome.getTableItems().get( tableName );
+						if ( items != null ) {
+							items.forEach( action );
+						}
+						
+						Map<String,KeysAndAttributes> unprocessed = outcome.getUnprocessedKeys();
+						if ( unprocessed == null || unprocessed.isEmpty() ) {
+							break; // All done.
+						}
+						CapacityLimiter limiter = getLimiter( tableName, false );
+						if ( limiter != null ) {
+							limiter.throttled( 0 );
+						}
+						requested = 0;
+						for ( KeysAndAttributes keysAndAttributes : unprocessed.values() ) {
+							
+							requested += keysAndAttributes.getKeys().size();
+							
+						}
+						if ( retries == THROTTLE_RETRIES ) { // Give up.
+							throw new DatabaseException( requested + " keys were still unprocessed after "
+									+ THROTTLE_RETRIES + " retries." );
+						}
+						LOG.trace( "Retrying {} unprocessed keys in {} ms.", requested, backoff );
+						Thread.sleep( backoff );
+						backoff = Math.min( backoff * 2, RETRY_MAX_BACKOFF );
+						spec = new BatchGetItemSpec().withUnprocessedKeys( unprocessed );
+						
+					}
+				} catch ( AmazonClientException e ) {
+					throw new DatabaseException( "Failed to retrieve items.", e );
+				} catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					throw new DatabaseException( "Interrupted while retrieving items.", e );
+				}
+				
 			}
 			
 		}
 		
 		/**
-		 * Decodes a key.
-		 * Errors encountered during decoding are automatically
-		 * converted to a DatabaseException.
+		 * Encodes the given keys, ignoring keys of incorrect type.
 		 * 
-		 * @param encoded The string to decode.
-		 * @return The decoded key.
-		 * @throws DatabaseException if an error occurred while decoding.
+		 * @param keys The keys to encode.
+		 * @return The encoded keys, without repeated keys.
+		 * @throws DatabaseException if an error occurred while encoding.
 		 */
-		private K decodeKey( String encoded ) throws DatabaseException {
+		private List<String> encodeKeys( Collection<?> keys ) throws DatabaseException {
 			
-			try {
-				return keyTranslator.decode( Utils.desanitize( encoded ) );
-			} catch ( TranslationException e ) {
-				throw new DatabaseException( "Failed to decode key.", e );
+			Set<String> encoded = new LinkedHashSet<>(); // Removes repeated keys.
+			for ( Object key : keys ) {
+				
+				String translated = encodeKey( key );
+				if ( translated != null ) { // Ignore keys of incorrect type.
+					encoded.add( translated );
+				}
+				
 			}
+			return new ArrayList<>( encoded );
 			
 		}
 		
 		/**
-		 * Extracts a Data value into an object that is able to be used as a
-		 * value in DynamoDB.
+		 * Retrieves the items using BatchGetItem requests of up to
+		 * {@value DynamoDBDatabase#BATCH_GET_LIMIT} keys each. Keys that a request
+		 * leaves unprocessed (for example, due to exceeding the provisioned
+		 * throughput) are requested again after an exponential backoff.
 		 * 
-		 * @param data The data to extract.
-		 * @return The DynamoDB-compatible object.
+		 * @throws DatabaseException if an error occurred while retrieving the items.
 		 */
-		private Object extractData( Data data ) {
-			
-			switch ( data.getType() ) {
+		@Override
+		public Map<K,V> getAll( Collection<? extends K> keys ) throws DatabaseException {
 			
-			case STRING:
-				return Utils.sanitize( data.getString() );
+			Map<String,K> encoded = new LinkedHashMap<>(); // Also removes repeated keys.
+			for ( K key : keys ) {
 				
-			case NUMBER:
-				if ( data.isFloat() ) {
-					return data.getNumberFloat();
-				} else {
-					return data.getNumberInteger();
+				String translated = encodeKey( key );
+				if ( translated != null ) { // Ignore keys of incorrect type.
+					encoded.put( translated, key );
 				}
 				
-			case BOOLEAN:
-				return data.getBoolean();
-				
-			default:
-			case NULL:
-				return null;
-				
-			case LIST:
-				List<Object> list = new ArrayList<>( data.getList().size() );
-				for ( Data elem : data.getList() ) { // Extract each element.
-					
-					list.add( extractData( elem ) );
-					
-				}
-				return list;
+			}
+			
+			Map<K,V> found = new HashMap<>();
+			batchGet( new ArrayList<>( encoded.keySet() ), true, Priority.INTERACTIVE, item -> { // Decode each item found.
 				
-			case MAP:
-				Map<String,Object> map = new HashMap<>( data.getMap().size() );
-				for ( Map.Entry<String,Data> entry : data.getMap().entrySet() ) {
-					// Extract each mapping.
-					map.put( entry.getKey(), extractData( entry.getValue() ) );
-					
+				if ( !item.hasAttribute( VALUE_ATTRIBUTE ) ) { // Missing value attribute.
+					throw new DatabaseException( "Item is missing value attribute." );
 				}
-				return map;
+				found.put( encoded.get( encodedKey( item ) ),
+						decodeValue( item.get( VALUE_ATTRIBUTE ) ) );
 				
+			} );
+			return found;
+			
+		}
+
+		@Override
+		public V put( K key, V value ) {
+			
+			String translatedKey = encodeKey( key );
+			Object translatedValue = encodeValue( value );
+			
+			if ( translatedKey == null ) {
+				throw new DatabaseException( "Failed to translate key." );
 			}
-		
+
+			UpdateItemSpec updateItemSpec = new UpdateItemSpec()
+					.withPrimaryKey( primaryKey( translatedKey ) )
+					.withUpdateExpression( "set #value = :val, #version = :version" )
+					.withNameMap( new NameMap().with( "#value", VALUE_ATTRIBUTE )
+							                   .with( "#version", VERSION_ATTRIBUTE ) )
+		            .withValueMap( new ValueMap().with( ":val", translatedValue )
+		            		                     .with( ":version", newVersion() ) )
+		            .withReturnValues( ReturnValue.UPDATED_OLD );
+			
+			Map<String,AttributeValue> result = updateItem( table, updateItemSpec ).getUpdateItemResult()
+					                                 .getAttributes();
+			
+			if ( result == null ) {
+				addCount( 1 ); // New item.
+				return null; // No old value.
+			}
+			
+			if ( !result.containsKey( VALUE_ATTRIBUTE ) ) { // Missing value attribute.
+				throw new DatabaseException( "Item was missing value attribute." );
+			}
+			
+			return decodeValue( ItemUtils.toSimpleValue( result.get( VALUE_ATTRIBUTE ) ) );
+			
 		}
-		
+
 		/**
-		 * Encodes a value into an object that can be stored into DynamoDB.
-		 * Errors encountered during encoding are automatically
-		 * converted to a DatabaseException.
+		 * Writes an item unconditionally, without decoding its previous value.
 		 * 
-		 * @param value The value to encode.
-		 * @return The encoded value.
-		 * @throws DatabaseException if an error occurred while encoding.
+		 * @param encoded The encoded key.
+		 * @param encodedValue The encoded value.
+		 * @param checkExisted Whether to request the previous attributes back, to
+		 *                     determine if the item already existed.
+		 * @return <tt>true</tt> if the item did not exist before (or if
+		 *         <tt>checkExisted</tt> is <tt>false</tt>). <tt>false</tt> if it did.
+		 * @throws AmazonClientException if the request failed.
+		 * @throws DatabaseException if interrupted while waiting for capacity.
 		 */
-		private Object encodeValue( V value ) throws DatabaseException {
+		private boolean setItem( String encoded, Object encodedValue, boolean checkExisted )
+				throws AmazonClientException, DatabaseException {
 			
-			try {
-				return extractData( valueTranslator.toData( value ) );
-			} catch ( TranslationException e ) {
-				throw new DatabaseException( "Failed to encode value.", e );
+			UpdateItemSpec updateItemSpec = new UpdateItemSpec()
+					.withPrimaryKey( primaryKey( encoded ) )
+					.withUpdateExpression( "set #value = :val, #version = :version" )
+					.withNameMap( new NameMap().with( "#value", VALUE_ATTRIBUTE )
+							                   .with( "#version", VERSION_ATTRIBUTE ) )
+		            .withValueMap( new ValueMap().with( ":val", encodedValue )
+		            		                     .with( ":version", newVersion() ) )
+		            .withReturnValues( checkExisted ? ReturnValue.UPDATED_OLD : ReturnValue.NONE );
+			
+			Map<String,AttributeValue> result = updateItem( table, updateItemSpec ).getUpdateItemResult()
+					                                 .getAttributes();
+			return ( result == null ) || !result.containsKey( VALUE_ATTRIBUTE ); // Only checks presence.
+			
+		}
+
+		/**
+		 * Writes the item with a single unconditional write. The previous value is
+		 * never decoded.
+		 * <p>
+		 * With the {@link SizeMode#COUNTER COUNTER} size mode, the previous
+		 * attributes are requested back only to check whether the item is new.
+		 */
+		@Override
+		public void set( K key, V value ) throws DatabaseException {
+			
+			String translatedKey = encodeKey( key );
+			Object translatedValue = encodeValue( value );
+			
+			if ( translatedKey == null ) {
+				throw new DatabaseException( "Failed to translate key." );
+			}
+
+			boolean counted = sizeMode == SizeMode.COUNTER;
+			if ( setItem( translatedKey, translatedValue, counted ) && counted ) {
+				addCount( 1 ); // New item.
 			}
 			
 		}
-		
+
+		@Override
+		public CompletableFuture<V> putAsync( K key, V value ) {
+			
+			String translatedKey = encodeKey( key );
+			Object translatedValue = encodeValue( value );
+			
+			if ( translatedKey == null ) {
+				throw new DatabaseException( "Failed to translate key." );
+			}
+			
+			UpdateItemRequest request = new UpdateItemRequest().withTableName( table.getTableName() )
+					.withKey( ItemUtils.toAttributeValueMap( primaryKey( translatedKey ) ) )
+					.withUpdateExpression( "set #value = :val, #version = :version" )
+					.withExpressionAttributeNames( new NameMap().with( "#value", VALUE_ATTRIBUTE )
+							                                    .with( "#version", VERSION_ATTRIBUTE ) )
+					.withExpressionAttributeValues( ItemUtils.fromSimpleMap( new ValueMap()
+							.with( ":val", translatedValue ).with( ":version", newVersion() ) ) )
+					.withReturnValues( ReturnValue.UPDATED_OLD )
+					.withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL );
+			
+			return requestAsync( table.getTableName(), true, request,
+					( q, h ) -> asyncClient.updateItemAsync( q, h ), UpdateItemResult::getConsumedCapacity )
+					.thenCompose( r -> {
+						
+						Map<String,AttributeValue> result = r.getAttributes();
+						if ( result == null ) { // New item. No old value.
+							return addCountAsync( 1 ).thenApply( v -> null );
+						}
+						
+						if ( !result.containsKey( VALUE_ATTRIBUTE ) ) { // Missing value attribute.
+							throw new DatabaseException( "Item was missing value attribute." );
+						}
+						
+						return CompletableFuture.completedFuture(
+								decodeValue( ItemUtils.toSimpleValue( result.get( VALUE_ATTRIBUTE ) ) ) );
+						
+					} );
+			
+		}
+
+		@Override
+		public V remove( Object key ) {
+			
+			String translated = encodeKey( key );
+			if ( translated == null ) {
+				return null; // Incorrect type.
+			}
+			
+			Map<String,AttributeValue> result = deleteItem( table,
+					new DeleteItemSpec().withPrimaryKey( primaryKey( translated ) )
+					                    .withReturnValues( ReturnValue.ALL_OLD ) )
+					.getDeleteItemResult().getAttributes();
+			
+			if ( result == null ) {
+				return null; // No old value.
+			}
+			addCount( -1 ); // Removed item.
+			
+			if ( !result.containsKey( VALUE_ATTRIBUTE ) ) { // Missing value attribute.
+				throw new DatabaseException( "Item was missing value attribute." );
+			}
+			
+			return decodeValue( ItemUtils.toSimpleValue( result.get( VALUE_ATTRIBUTE ) ) );
+			
+		}
+
 		/**
-		 * Stores data received from DynamoDB into a Data instance.
+		 * Deletes the item without requesting its previous attributes back. The
+		 * previous value is never decoded.
 		 * <p>
-		 * Inverse of {@link #extractData(Data)}.
+		 * With the {@link SizeMode#COUNTER COUNTER} size mode, whether the item
+		 * existed is determined by conditioning the delete on the item existing.
+		 */
+		@Override
+		public void delete( Object key ) {
+			
+			String translated = encodeKey( key );
+			if ( translated == null ) {
+				return; // Incorrect type.
+			}
+			
+			DeleteItemSpec deleteSpec = new DeleteItemSpec().withPrimaryKey( primaryKey( translated ) )
+					.withReturnValues( ReturnValue.NONE );
+			if ( sizeMode != SizeMode.COUNTER ) {
+				deleteItem( table, deleteSpec );
+				return;
+			}
+			
+			try {
+				deleteItem( table, deleteSpec.withConditionExpression( "attribute_exists(#value)" )
+						                     .withNameMap( new NameMap().with( "#value", VALUE_ATTRIBUTE ) ) );
+				addCount( -1 ); // Removed item.
+			} catch ( ConditionalCheckFailedException e ) {
+				// Item did not exist.
+			}
+			
+		}
+
+		/**
+		 * Reads the current state of the item that has the given encoded key, with a
+		 * strongly consistent read, before an
+		 * {@link #writeIfUnchanged(String, Item, Object) atomic write}.
 		 * 
-		 * @param obj The DynamoDB-supported object.
-		 * @return The Data representation.
+		 * @param encoded The encoded key.
+		 * @return The item, or <tt>null</tt> if there is no such item.
+		 * @throws DatabaseException if an error occurred while reading the item.
 		 */
-		private Data storeData( Object obj ) {
+		private Item readCurrent( String encoded ) throws DatabaseException {
 			
-			if ( obj instanceof String ) {
-				return Data.stringData( Utils.desanitize( (String) obj ) );
-			} else if ( obj instanceof Number ) {
-				return Data.numberData( obj.toString() );
-			} else if ( obj instanceof Boolean ) {
-				return Data.booleanData( (Boolean) obj );
-			} else if ( obj == null ) {
-				return Data.nullData();
-			} else if ( obj instanceof List ) {
-				List<Data> list = new LinkedList<>();
-				for ( Object elem : (List<?>) obj ) { // Store each element.
-					
-					list.add( storeData( elem ) );
-					
-				}
-				return Data.listData( list );
-			} else if ( obj instanceof Map ) {
-				Map<String,Data> map = new HashMap<>();
-				@SuppressWarnings("unchecked")
-				Map<String,?> extracted = (Map<String,?>) obj;
-				for ( Map.Entry<String,?> entry : extracted.entrySet() ) {
-					// Store each mapping.
-					map.put( entry.getKey(), storeData( entry.getValue() ) );
-					
-				}
-				return Data.mapData( map );
-			} else {
-				throw new DatabaseException( "Unsupported data type received from database." );
+			try {
+				return readItem( table, new GetItemSpec().withPrimaryKey( primaryKey( encoded ) )
+						                                 .withConsistentRead( true ) );
+			} catch ( AmazonClientException e ) {
+				throw new DatabaseException( "Failed to retrieve item of key '" + encoded + "'.", e );
 			}
 			
 		}
 		
 		/**
-		 * Decodes a value.
-		 * Errors encountered during decoding are automatically
-		 * converted to a DatabaseException.
+		 * Writes (or deletes) the item that has the given encoded key, only if it did
+		 * not change since it was {@link #readCurrent(String) read}. The write is
+		 * conditioned on the item still having the same
+		 * {@value DynamoDBDatabase#VERSION_ATTRIBUTE version} (or still not existing,
+		 * if there was no item), and gives the item a new version.
+		 * <p>
+		 * Items written before versions were stored have no version. In that case,
+		 * the write is conditioned on the item still not having one, since any other
+		 * write would have given it one.
 		 * 
-		 * @param encoded The data to decode.
-		 * @return The decoded value.
-		 * @throws DatabaseException if an error occurred while decoding.
+		 * @param encoded The encoded key.
+		 * @param read The item as it was read, or <tt>null</tt> if there was no item.
+		 * @param value The value to write. If <tt>null</tt>, the item is deleted
+		 *              instead (in which case the item must exist).
+		 * @return <tt>true</tt> if the item was written (or deleted). <tt>false</tt>
+		 *         if it was changed since it was read.
+		 * @throws DatabaseException if an error occurred while writing the item.
 		 */
-		private V decodeValue( Object encoded ) throws DatabaseException {
+		private boolean writeIfUnchanged( String encoded, Item read, V value ) throws DatabaseException {
+			
+			boolean delete = value == null;
+			boolean versioned = ( read != null ) && read.hasAttribute( VERSION_ATTRIBUTE );
+			NameMap names = new NameMap().with( "#version", VERSION_ATTRIBUTE );
+			ValueMap values = new ValueMap();
+			String condition;
+			if ( read == null ) { // Item must still not exist.
+				condition = "attribute_not_exists(#value)";
+			} else if ( versioned ) { // Version must not have changed.
+				condition = "#version = :expected";
+				values.with( ":expected", read.get( VERSION_ATTRIBUTE ) );
+			} else { // Written before versions were stored, so must still have no version.
+				condition = "attribute_exists(#value) AND attribute_not_exists(#version)";
+			}
+			if ( !delete || !versioned ) { // Only names that are used may be given.
+				names.with( "#value", VALUE_ATTRIBUTE );
+			}
 			
 			try {
-				return valueTranslator.fromData( storeData( encoded ) );
-			} catch ( TranslationException e ) {
-				throw new DatabaseException( "Failed to decode value.", e );
+				if ( delete ) {
+					DeleteItemSpec deleteSpec = new DeleteItemSpec().withPrimaryKey( primaryKey( encoded ) )
+							.withConditionExpression( condition )
+							.withNameMap( names );
+					if ( !values.isEmpty() ) { // Values may not be empty if given.
+						deleteSpec.withValueMap( values );
+					}
+					deleteItem( table, deleteSpec );
+					addCount( -1 ); // Removed item.
+				} else {
+					updateItem( table, new UpdateItemSpec().withPrimaryKey( primaryKey( encoded ) )
+							.withUpdateExpression( "set #value = :val, #version = :version" )
+							.withConditionExpression( condition )
+							.withNameMap( names )
+							.withValueMap( values.with( ":val", encodeValue( value ) )
+									             .with( ":version", newVersion() ) ) );
+					if ( read == null ) {
+						addCount( 1 ); // New item.
+					}
+				}
+				return true;
+			} catch ( ConditionalCheckFailedException e ) {
+				return false; // Changed concurrently.
+			} catch ( AmazonClientException e ) {
+				throw new DatabaseException( "Failed to write item of key '" + encoded + "'.", e );
 			}
 			
 		}
 		
 		/**
-		 * Attempts to retrieve the Item that has the given key.
-		 *
-		 * @param key The key.
-		 * @param loadData Whether the item data (attributes) should be loaded, if it
-		 *                 is found. If this is <tt>false</tt>, then if the returned item
-		 *                 (if any) will not contain any attributes, and is only good for
-		 *                 checking if there exists an item with the given key.
-		 * @return The item under the given key, or <tt>null</tt> if there is
-		 *         no such item.
+		 * Computes the new value with a
+		 * {@link #writeIfUnchanged(String, Item, Object) conditional write}, so that
+		 * it is atomic even with writers in other processes. If the item was changed
+		 * by another writer between being read and written, it is read and the
+		 * value computed again, up to {@value DynamoDBDatabase#CONFLICT_RETRIES}
+		 * times. The function may thus be called more than once.
+		 * <p>
+		 * If the function returns the same instance that it was given, nothing is
+		 * written.
+		 * 
+		 * @throws DatabaseException if the item was still being changed concurrently
+		 *                           after all the retries, or an error occurred.
 		 */
-		protected Item getItem( Object key, boolean loadData ) {
+		@Override
+		public V compute( K key, BiFunction<? super K,? super V,? extends V> remappingFunction )
+				throws DatabaseException {
 			
 			String translated = encodeKey( key );
 			if ( translated == null ) {
-				return null; // Incorrect type.
-			}
-		
-			GetItemSpec getSpec = new GetItemSpec().withPrimaryKey( KEY_ATTRIBUTE, translated );
-			if ( !loadData ) { // Should not load data.
-				getSpec.withProjectionExpression( INVALID_ATTRIBUTE );
+				throw new DatabaseException( "Failed to translate key." );
 			}
 			
-			try {
-				return table.getItem( getSpec );
-			} catch ( Exception e ) {
-				LOG.warn( "Failed to retrieve item of key '" + translated + "'.", e );
-				return null;
+			long backoff = RETRY_BACKOFF;
+			for ( int retries = 0; ; retries++ ) {
+				
+				Item item = readCurrent( translated );
+				V current = ( item == null ) ? null : itemValue( item );
+				V value = remappingFunction.apply( key, current );
+				if ( ( item == null ) ? ( value == null ) : ( ( value != null ) && ( value == current ) ) ) {
+					return value; // Nothing to change.
+				}
+				if ( writeIfUnchanged( translated, item, value ) ) {
+					return value;
+				}
+				
+				if ( retries >= CONFLICT_RETRIES ) {
+					throw new DatabaseException( "Item of key '" + translated + "' was still being changed "
+							+ "concurrently after " + CONFLICT_RETRIES + " retries." );
+				}
+				LOG.debug( "Item of key '{}' was changed concurrently. Retrying.", translated );
+				try {
+					Thread.sleep( ThreadLocalRandom.current().nextLong( backoff ) + 1 );
+				} catch ( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+					throw new DatabaseException( "Interrupted while retrying write.", e );
+				}
+				backoff = Math.min( backoff * 2, RETRY_MAX_BACKOFF );
+				
 			}
 			
 		}
-
+		
 		@Override
-		public boolean containsKey( Object key ) {
+		public V computeIfAbsent( K key, Function<? super K,? extends V> mappingFunction )
+				throws DatabaseException {
 			
-			return getItem( key, false ) != null;
+			return compute( key, ( k, current ) -> ( current == null ) ? mappingFunction.apply( k ) : current );
 			
 		}
-
+		
 		@Override
-		public boolean containsValue( Object value ) {
-			
-			Data data = null;
-			try {
-				data = valueTranslator.objToData( value );
-			} catch ( TranslationException e ) {
-				throw new DatabaseException( "Failed to translate value." );
-			}
-			if ( data == null ) {
-				return false; // Incorrect type.
-			}
+		public V computeIfPresent( K key, BiFunction<? super K,? super V,? extends V> remappingFunction )
+				throws DatabaseException {
 			
-			Object translated = extractData( data );
-			
-			// Construct scan request.
-			ScanSpec scanSpec = new ScanSpec().withProjectionExpression( INVALID_ATTRIBUTE )
-					                          .withFilterExpression( "#value = :value" )
-					                          .withNameMap( new NameMap().with( "#value", VALUE_ATTRIBUTE ) )
-					                          .withValueMap( new ValueMap().with( ":value", translated ) );
-			
-			try {
-	            ItemCollection<ScanOutcome> items = table.scan( scanSpec ); // Run scan.
-	            return items.iterator().hasNext(); // Return if there is at least one match.
-	        } catch ( Exception e ) {
-	        	LOG.warn( "Failed to scan for value '" + translated + "'.", e );
-				return false;
-	        }
+			return compute( key, ( k, current ) -> ( current == null ) ? null
+					                                                   : remappingFunction.apply( k, current ) );
 			
 		}
-
+		
 		@Override
-		public V get( Object key ) {
+		public V merge( K key, V value, BiFunction<? super V,? super V,? extends V> remappingFunction )
+				throws DatabaseException {
 			
-			Item result = getItem( key, true );
-			
-			if ( result == null ) {
-				return null; // No item found.
-			}
+			Objects.requireNonNull( value );
+			return compute( key, ( k, current ) -> ( current == null ) ? value
+					                                                   : remappingFunction.apply( current, value ) );
 			
-			if ( !result.hasAttribute( VALUE_ATTRIBUTE ) ) { // Missing value attribute.
-				throw new DatabaseException( "Item is missing value attribute." );
-			}
+		}
+		
+		@Override
+		public V putIfAbsent( K key, V value ) throws DatabaseException {
 			
-			return decodeValue( result.get( VALUE_ATTRIBUTE ) );
+			AtomicReference<V> previous = new AtomicReference<>();
+			compute( key, ( k, current ) -> {
+				
+				previous.set( current );
+				return ( current == null ) ? value : current;
+				
+			} );
+			return previous.get();
 			
 		}
-
+		
 		@Override
-		public V put( K key, V value ) {
+		public V replace( K key, V value ) throws DatabaseException {
 			
-			String translatedKey = encodeKey( key );
-			Object translatedValue = encodeValue( value );
+			AtomicReference<V> previous = new AtomicReference<>();
+			compute( key, ( k, current ) -> {
+				
+				previous.set( current );
+				return ( current == null ) ? null : value;
+				
+			} );
+			return previous.get();
 			
-			if ( translatedKey == null ) {
-				throw new DatabaseException( "Failed to translate key." );
-			}
-
-			UpdateItemSpec updateItemSpec = new UpdateItemSpec()
-					.withPrimaryKey( KEY_ATTRIBUTE, translatedKey )
-					.withUpdateExpression( "set #value = :val" )
-					.withNameMap( new NameMap().with( "#value", VALUE_ATTRIBUTE ) )
-		            .withValueMap( new ValueMap().with(":val", translatedValue ) )
-		            .withReturnValues( ReturnValue.UPDATED_OLD );
+		}
+		
+		/**
+		 * Replaces the value with a {@link #compute(Object, BiFunction) conditional
+		 * write}, so the value that is compared is the one that is replaced, even
+		 * with writers in other processes.
+		 * 
+		 * @throws DatabaseException if an error occurred.
+		 */
+		@Override
+		public boolean replace( K key, V oldValue, V newValue ) throws DatabaseException {
 			
-			Map<String,AttributeValue> result = table.updateItem( updateItemSpec ).getUpdateItemResult()
-					                                 .getAttributes();
+			AtomicBoolean replaced = new AtomicBoolean();
+			compute( key, ( k, current ) -> {
+				
+				replaced.set( ( current != null ) && current.equals( oldValue ) );
+				return replaced.get() ? newValue : current;
+				
+			} );
+			return replaced.get();
 			
-			if ( result == null ) {
-				return null; // No old value.
-			}
+		}
+		
+		@Override
+		public boolean remove( Object key, Object value ) throws DatabaseException {
 			
-			if ( !result.containsKey( VALUE_ATTRIBUTE ) ) { // Missing value attribute.
-				throw new DatabaseException( "Item was missing value attribute." );
+			if ( encodeKey( key ) == null ) {
+				return false; // Incorrect type.
 			}
+			@SuppressWarnings( "unchecked" ) // Translator accepted it.
+			K k = (K) key;
 			
-			return decodeValue( ItemUtils.toSimpleValue( result.get( VALUE_ATTRIBUTE ) ) );
+			AtomicBoolean removed = new AtomicBoolean();
+			compute( k, ( ignored, current ) -> {
+				
+				removed.set( ( current != null ) && current.equals( value ) );
+				return removed.get() ? null : current;
+				
+			} );
+			return removed.get();
 			
 		}
 
 		@Override
-		public V remove( Object key ) {
+		public CompletableFuture<V> removeAsync( Object key ) {
 			
 			String translated = encodeKey( key );
 			if ( translated == null ) {
-				return null; // Incorrect type.
-			}
-			
-			Map<String,AttributeValue> result = table.deleteItem( 
-					new DeleteItemSpec().withPrimaryKey( KEY_ATTRIBUTE, translated )
-					                    .withReturnValues( ReturnValue.ALL_OLD ) )
-					.getDeleteItemResult().getAttributes();
-			
-			if ( result == null ) {
-				return null; // No old value.
+				return CompletableFuture.completedFuture( null ); // Incorrect type.
 			}
 			
-			if ( !result.containsKey( VALUE_ATTRIBUTE ) ) { // Missing value attribute.
-				throw new DatabaseException( "Item was missing value attribute." );
-			}
+			DeleteItemRequest request = new DeleteItemRequest().withTableName( table.getTableName() )
+					.withKey( ItemUtils.toAttributeValueMap( primaryKey( translated ) ) )
+					.withReturnValues( ReturnValue.ALL_OLD )
+					.withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL );
 			
-			return decodeValue( ItemUtils.toSimpleValue( result.get( VALUE_ATTRIBUTE ) ) );
+			return requestAsync( table.getTableName(), true, request,
+					( q, h ) -> asyncClient.deleteItemAsync( q, h ), DeleteItemResult::getConsumedCapacity )
+					.thenCompose( r -> {
+						
+						Map<String,AttributeValue> result = r.getAttributes();
+						if ( result == null ) {
+							return CompletableFuture.completedFuture( null ); // No old value.
+						}
+						CompletableFuture<Void> counted = addCountAsync( -1 ); // Removed item.
+						
+						if ( !result.containsKey( VALUE_ATTRIBUTE ) ) { // Missing value attribute.
+							throw new DatabaseException( "Item was missing value attribute." );
+						}
+						
+						V old = decodeValue( ItemUtils.toSimpleValue( result.get( VALUE_ATTRIBUTE ) ) );
+						return counted.thenApply( v -> old );
+						
+					} );
 			
 		}
 
+		/**
+		 * Writes the entries using BatchWriteItem requests of up to
+		 * {@value DynamoDBDatabase#BATCH_WRITE_LIMIT} items each, several of which may
+		 * run concurrently. Unlike {@link #put(Object, Object)}, the previous values
+		 * are not retrieved.
+		 * <p>
+		 * With the {@link SizeMode#COUNTER COUNTER} size mode, which keys already
+		 * exist is checked before the write, so keys that other writers create or
+		 * delete in between are miscounted. If the write fails, the counter is
+		 * deleted, to be recounted when the size is next requested.
+		 * 
+		 * @throws DatabaseException if an error occurred while writing the entries.
+		 *                           In this case, some of them may have been written.
+		 */
 		@Override
-		public void putAll( Map<? extends K,? extends V> m ) {
+		public void putAll( Map<? extends K,? extends V> m ) throws DatabaseException {
 
-			// Put each entry.
+			Map<String,Item> items = new LinkedHashMap<>(); // Also removes repeated keys.
 			for ( Map.Entry<? extends K,? extends V> entry : m.entrySet() ) {
 				
-				put( entry.getKey(), entry.getValue() );
+				String translatedKey = encodeKey( entry.getKey() );
+				if ( translatedKey == null ) {
+					throw new DatabaseException( "Failed to translate key." );
+				}
+				items.put( translatedKey, new Item().withPrimaryKey( primaryKey( translatedKey ) )
+						.with( VALUE_ATTRIBUTE, encodeValue( entry.getValue() ) )
+						.with( VERSION_ATTRIBUTE, newVersion() ) );
 				
 			}
+			int existing = ( sizeMode == SizeMode.COUNTER )
+					? findPresent( new ArrayList<>( items.keySet() ) ).size() : 0;
+			writeItems( new ArrayList<>( items.values() ), Collections.emptyList(), items.size() - existing );
+			
+		}
+		
+		/**
+		 * Determines which of the given keys exist in the table.
+		 * 
+		 * @param keys The encoded keys. Must not contain repeated keys.
+		 * @return The keys that exist.
+		 * @throws DatabaseException if an error occurred while checking the keys.
+		 */
+		private List<String> findPresent( List<String> keys ) throws DatabaseException {
+			
+			List<String> present = new ArrayList<>();
+			batchGet( keys, false, Priority.BACKGROUND, item -> present.add( encodedKey( item ) ) );
+			return present;
+			
+		}
+		
+		/**
+		 * Deletes the given keys that exist in the table.
+		 * <p>
+		 * Like in {@link #putAll(Map)}, keys that other writers create or delete
+		 * between the check and the write are miscounted.
+		 * 
+		 * @param keys The keys to delete.
+		 * @return <tt>true</tt> if any of the keys existed.
+		 * @throws DatabaseException if an error occurred while deleting the keys.
+		 */
+		private boolean deletePresent( Collection<?> keys ) throws DatabaseException {
+			
+			List<String> present = findPresent( encodeKeys( keys ) );
+			writeItems( Collections.emptyList(), primaryKeys( present ), -present.size() );
+			return !present.isEmpty();
+			
+		}
+		
+		/**
+		 * Deletes the keys using BatchWriteItem requests of up to
+		 * {@value DynamoDBDatabase#BATCH_WRITE_LIMIT} keys each, several of which may
+		 * run concurrently.
+		 * 
+		 * @throws DatabaseException if an error occurred while deleting the keys.
+		 *                           In this case, some of them may have been deleted.
+		 */
+		@Override
+		public void removeAll( Collection<?> keys ) throws DatabaseException {
+			
+			if ( sizeMode == SizeMode.COUNTER ) { // Need to know how many are removed.
+				deletePresent( keys );
+			} else {
+				batchWrite( table.getTableName(), Collections.emptyList(), primaryKeys( encodeKeys( keys ) ) );
+			}
 			
 		}
 
+		/**
+		 * Deletes all the items found by a scan of the table, with BatchWriteItem
+		 * requests. The table remains available during the process, but items
+		 * that are written concurrently may or may not be deleted.
+		 * <p>
+		 * If the {@value DynamoDBDatabase#RECREATE_ON_CLEAR_SETTING} setting is
+		 * enabled, deletes and recreates the table instead.
+		 */
 		@Override
 		public void clear() {
+			
+			if ( Settings.getBooleanSetting( RECREATE_ON_CLEAR_SETTING ) ) {
+				recreate();
+				return;
+			}
+			
+			String tableName = table.getTableName();
+			LOG.debug( "Deleting all items in table '{}'.", tableName );
+			Iterator<Item> items = scan( this::keyScan, 0, SCAN_SEGMENTS );
+			int deleted;
+			try {
+				deleted = deleteItems( items );
+			} finally { // Stops the scan if the deletion failed.
+				closeScan( items );
+			}
+			LOG.info( "Table '{}' cleared ({} items deleted).", tableName, deleted );
+			
+		}
+		
+		/**
+		 * Deletes the given items with BatchWriteItem requests, in chunks of up to
+		 * {@value DynamoDBDatabase#CLEAR_CHUNK_SIZE} items (so the items are deleted
+		 * while they are still being found).
+		 * 
+		 * @param items The items to delete. Only their key attributes are used.
+		 * @return The amount of items deleted.
+		 * @throws DatabaseException if an error occurred while deleting the items.
+		 */
+		protected int deleteItems( Iterator<Item> items ) throws DatabaseException {
+			
+			int deleted = 0;
+			List<PrimaryKey> chunk = new ArrayList<>( CLEAR_CHUNK_SIZE );
+			while ( items.hasNext() ) {
+				
+				String key = encodedKey( items.next() );
+				if ( key == null ) {
+					throw new DatabaseException( "Missing key attribute." );
+				}
+				chunk.add( primaryKey( key ) );
+				if ( chunk.size() == CLEAR_CHUNK_SIZE ) { // Delete while search continues.
+					writeItems( Collections.emptyList(), chunk, -chunk.size() );
+					deleted += chunk.size();
+					chunk = new ArrayList<>( CLEAR_CHUNK_SIZE );
+				}
+				
+			}
+			writeItems( Collections.emptyList(), chunk, -chunk.size() );
+			deleted += chunk.size();
+			return deleted;
+			
+		}
+		
+		/**
+		 * Creates a table with the key schema used by this map.
+		 * 
+		 * @param tableName The name of the table.
+		 * @return The table.
+		 */
+		protected Table newTable( String tableName ) {
+			
+			return getTable( tableName );
+			
+		}
+		
+		/**
+		 * Clears the table by deleting and recreating it.
+		 * <p>
+		 * The table is unavailable until it is recreated, and the new table uses
+		 * the {@link DynamoDBDatabase#DEFAULT_READ_UNITS default} read and write
+		 * capacity.
+		 */
+		private void recreate() {
 
 			String tableName = table.getTableName();
 			
@@ -652,7 +3413,11 @@ public class DynamoDBDatabase extends TableDatabase {
 			}
 			LOG.info( "Table cleared." );
 			
-			table = getTable( tableName ); // Recreate table.
+			table = newTable( tableName ); // Recreate table.
+			capacities.remove( tableName ); // Capacity was reset.
+			if ( sizeMode == SizeMode.COUNTER ) {
+				storeCount( 0, false );
+			}
 			
 		}
 		
@@ -683,23 +3448,22 @@ public class DynamoDBDatabase extends TableDatabase {
 
 			final Map<K,V> thisMap = this;
 			return new KeySet() {
+				
+				/**
+				 * Checks which keys exist with BatchGetItem requests, then deletes them
+				 * with BatchWriteItem requests.
+				 */
+				@Override
+				public boolean removeAll( Collection<?> c ) {
+					
+					return deletePresent( c );
+					
+				}
 
 				@Override
 				public Iterator<K> iterator() {
 
-					// Construct scan request.
-					ScanSpec scanSpec = new ScanSpec().withProjectionExpression( "#k" )
-							                          .withNameMap( new NameMap().with( "#k", KEY_ATTRIBUTE ) );
-					
-					Iterator<Item> itemIter;
-					try {
-			            ItemCollection<ScanOutcome> items = table.scan( scanSpec ); // Run scan.
-			            itemIter = items.iterator(); // Get iterator.
-			        } catch ( Exception e ) {
-			        	throw new DatabaseException( "Failed to scan table.", e );
-			        }
-					
-					final Iterator<Item> backing = itemIter;
+					final Iterator<Item> backing = scan( TableMap.this::keyScan, 0, SCAN_SEGMENTS );
 					return new Iterator<K>() {
 						
 						private K lastKey = null;
@@ -714,12 +3478,7 @@ public class DynamoDBDatabase extends TableDatabase {
 						@Override
 						public K next() {
 
-							Item next = backing.next();
-							if ( !next.hasAttribute( KEY_ATTRIBUTE ) ) {
-								throw new DatabaseException( "Missing key attribute." );
-							}
-							
-							K key = decodeKey( next.getString( KEY_ATTRIBUTE ) );
+							K key = itemKey( backing.next() );
 							
 							lastKey = key; // Store last key.
 							return key;
@@ -742,9 +3501,79 @@ public class DynamoDBDatabase extends TableDatabase {
 					
 				}
 				
+				/**
+				 * Splits along the segments of the scan.
+				 */
+				@Override
+				public Spliterator<K> spliterator() {
+					
+					return new ScanSpliterator<>( TableMap.this::keyScan, TableMap.this::itemKey,
+							Spliterator.DISTINCT | Spliterator.NONNULL );
+					
+				}
+
+				/**
+				 * Closing the stream stops the scan.
+				 */
+				@Override
+				public Stream<K> stream() {
+					
+					return scanStream( spliterator(), false );
+					
+				}
+				
+				/**
+				 * Closing the stream stops the scan.
+				 */
+				@Override
+				public Stream<K> parallelStream() {
+					
+					return scanStream( spliterator(), true );
+					
+				}
+				
 			};  // End of anonymous KeySet.
 			
 		}
+		
+		@Override
+		public Collection<V> values() {
+			
+			return new ValueCollection() {
+				
+				/**
+				 * Splits along the segments of the scan.
+				 */
+				@Override
+				public Spliterator<V> spliterator() {
+					
+					return new ScanSpliterator<>( TableMap.this::entryScan, TableMap.this::itemValue, 0 );
+					
+				}
+
+				/**
+				 * Closing the stream stops the scan.
+				 */
+				@Override
+				public Stream<V> stream() {
+					
+					return scanStream( spliterator(), false );
+					
+				}
+				
+				/**
+				 * Closing the stream stops the scan.
+				 */
+				@Override
+				public Stream<V> parallelStream() {
+					
+					return scanStream( spliterator(), true );
+					
+				}
+				
+			};  // End of anonymous ValueCollection.
+			
+		}
 
 		@Override
 		public Set<Entry<K,V>> entrySet() {
@@ -775,23 +3604,56 @@ public class DynamoDBDatabase extends TableDatabase {
 					
 				}
 
+				/**
+				 * Obtains the entry that corresponds to a scanned item. Setting the value of
+				 * the entry writes it to the map.
+				 * 
+				 * @param item The item.
+				 * @return The entry.
+				 * @throws DatabaseException if the item is missing the key or value attribute.
+				 */
+				private Entry<K,V> itemEntry( Item item ) throws DatabaseException {
+					
+					final K key = thisMap.itemKey( item );
+					final V value = thisMap.itemValue( item );
+					return new AbstractEntry() {
+						
+						private V entryValue = value; // Current value.
+	
+						@Override
+						public K getKey() {
+	
+							return key;
+							
+						}
+	
+						@Override
+						public V getValue() {
+	
+							return entryValue;
+							
+						}
+	
+						@Override
+						public V setValue( V value ) {
+	
+							thisMap.put( key, value ); // Set value.
+							
+							V previousValue = entryValue;
+							entryValue = value; // Update stored value.
+							
+							return previousValue;
+							
+						}
+						
+					};  // End of anonymous Entry.
+					
+				}
+
 				@Override
 				public Iterator<Entry<K,V>> iterator() {
 
-					// Construct scan request.
-					ScanSpec scanSpec = new ScanSpec().withProjectionExpression( "#k,#val" )
-							                          .withNameMap( new NameMap().with( "#k", KEY_ATTRIBUTE )
-							                        		  .with( "#val", VALUE_ATTRIBUTE ) );
-					
-					Iterator<Item> itemIter;
-					try {
-			            ItemCollection<ScanOutcome> items = table.scan( scanSpec ); // Run scan.
-			            itemIter = items.iterator(); // Get iterator.
-			        } catch ( Exception e ) {
-			        	throw new DatabaseException( "Failed to scan table.", e );
-			        }
-					
-					final Iterator<Item> backing = itemIter;
+					final Iterator<Item> backing = scan( thisMap::entryScan, 0, SCAN_SEGMENTS );
 					return new Iterator<Entry<K,V>>() {
 						
 						private K lastKey = null;
@@ -806,49 +3668,10 @@ public class DynamoDBDatabase extends TableDatabase {
 						@Override
 						public Entry<K,V> next() {
 
-							Item next = backing.next();
-							if ( !next.hasAttribute( KEY_ATTRIBUTE ) ) {
-								throw new DatabaseException( "Missing key attribute." );
-							}
-							if ( !next.hasAttribute( VALUE_ATTRIBUTE ) ) {
-								throw new DatabaseException( "Missing value attribute." );
-							}
-							
-							final K key = decodeKey( next.getString( KEY_ATTRIBUTE ) );
-							final V value = decodeValue( next.get( VALUE_ATTRIBUTE ) );
+							Entry<K,V> next = itemEntry( backing.next() );
 							
-							lastKey = key; // Store last key.
-							return new AbstractEntry() {
-								
-								private V entryValue = value; // Current value.
-
-								@Override
-								public K getKey() {
-
-									return key;
-									
-								}
-
-								@Override
-								public V getValue() {
-
-									return entryValue;
-									
-								}
-
-								@Override
-								public V setValue( V value ) {
-
-									thisMap.put( key, value ); // Set value.
-									
-									V previousValue = entryValue;
-									entryValue = value; // Update stored value.
-									
-									return previousValue;
-									
-								}
-								
-							};  // End of anonymous Entry.
+							lastKey = next.getKey(); // Store last key.
+							return next;
 							
 						}
 						
@@ -867,6 +3690,37 @@ public class DynamoDBDatabase extends TableDatabase {
 					}; // End of anonymous Iterator.
 					
 				}
+				
+				/**
+				 * Splits along the segments of the scan.
+				 */
+				@Override
+				public Spliterator<Entry<K,V>> spliterator() {
+					
+					return new ScanSpliterator<>( thisMap::entryScan, this::itemEntry,
+							Spliterator.DISTINCT | Spliterator.NONNULL );
+					
+				}
+
+				/**
+				 * Closing the stream stops the scan.
+				 */
+				@Override
+				public Stream<Entry<K,V>> stream() {
+					
+					return scanStream( spliterator(), false );
+					
+				}
+				
+				/**
+				 * Closing the stream stops the scan.
+				 */
+				@Override
+				public Stream<Entry<K,V>> parallelStream() {
+					
+					return scanStream( spliterator(), true );
+					
+				}
 
 				@Override
 				public boolean remove( Object o ) {
@@ -893,15 +3747,19 @@ public class DynamoDBDatabase extends TableDatabase {
 					}
 					final Object value = extractData( data );
 					
-					DeleteItemSpec deleteSpec = new DeleteItemSpec().withPrimaryKey( KEY_ATTRIBUTE, key )
+					DeleteItemSpec deleteSpec = new DeleteItemSpec().withPrimaryKey( primaryKey( key ) )
 							.withConditionExpression( "#val = :val" )
 							.withNameMap( new NameMap().with( "#val", VALUE_ATTRIBUTE ) )
 							.withValueMap( new ValueMap().with( ":val", value ) )
 							.withReturnValues( ReturnValue.ALL_OLD );
 					
 					try {
-						return table.deleteItem( deleteSpec ).getDeleteItemResult()
-								.getAttributes() != null; // Check if found item and deleted.
+						if ( deleteItem( table, deleteSpec ).getDeleteItemResult()
+								.getAttributes() == null ) { // Check if found item and deleted.
+							return false;
+						}
+						addCount( -1 );
+						return true;
 					} catch ( ConditionalCheckFailedException e ) {
 						return false; // Value didn't match.
 					}
@@ -913,5 +3771,348 @@ public class DynamoDBDatabase extends TableDatabase {
 		}
 		
 	}
+	
+	/**
+	 * Map from paths to values that is backed by a DynamoDB table in the
+	 * {@link TreeLayout#PARTITIONED partitioned layout}.
+	 * <p>
+	 * Each element of a path is encoded with the key translator and
+	 * {@link Utils#sanitize(String, BiMap) sanitized} so that it does not contain
+	 * the {@link Utils#SEPARATOR separator}. The first element is the partition
+	 * key, and the sort key is the separator followed by each of the other
+	 * elements, each also followed by the separator (so the sort key of a path
+	 * with a single element is just the separator). Internally, the encoded key of
+	 * a path is the partition key followed by the sort key.
+	 * <p>
+	 * Empty paths are treated like keys of the wrong type.
+	 * 
+	 * @version 1.1
+	 * @author ThiagoTGM
+	 * @since 2018-09-17
+	 * @param <K> The type of the elements in the paths.
+	 * @param <V> The type of the values in the map.
+	 */
+	private class PartitionedMap<K,V> extends TableMap<List<K>,V> {
+		
+		private final Translator<K> elementTranslator;
+		
+		/**
+		 * Initializes a map backed by the given table that uses the
+		 * given translators.
+		 * 
+		 * @param backing The table that should back this map. Must use the
+		 *                partitioned key schema.
+		 * @param keyTranslator The translator to be used for the elements of the
+		 *                      paths.
+		 * @param valueTranslator The translator to be used for values.
+		 */
+		public PartitionedMap( Table backing, Translator<K> keyTranslator,
+				Translator<V> valueTranslator ) {
+			
+			super( backing, new ListTranslator<>( keyTranslator ), valueTranslator );
+			this.elementTranslator = keyTranslator;
+			
+		}
+		
+		@Override
+		protected String encodeKey( Object key ) throws DatabaseException {
+			
+			if ( !( key instanceof List ) || ( (List<?>) key ).isEmpty() ) {
+				return null; // Not a valid path.
+			}
+			
+			StringBuilder encoded = new StringBuilder();
+			for ( Object element : (List<?>) key ) {
+				
+				String translated;
+				try {
+					translated = elementTranslator.encodeObj( element );
+				} catch ( TranslationException e ) {
+					throw new DatabaseException( "Failed to encode key.", e );
+				}
+				if ( translated == null ) {
+					return null; // Incorrect type.
+				}
+				encoded.append( Utils.sanitize( translated, PATH_SPECIAL_CHARACTERS ) ).append( Utils.SEPARATOR );
+				
+			}
+			return encoded.toString();
+			
+		}
+		
+		@Override
+		protected List<K> decodeKey( String encoded ) throws DatabaseException {
+			
+			List<K> path = new ArrayList<>();
+			for ( String element : encoded.split( String.valueOf( Utils.SEPARATOR ) ) ) {
+				
+				try {
+					path.add( elementTranslator.decode( Utils.desanitize( element, PATH_SPECIAL_CHARACTERS ) ) );
+				} catch ( TranslationException e ) {
+					throw new DatabaseException( "Failed to decode key.", e );
+				}
+				
+			}
+			return path;
+			
+		}
+		
+		@Override
+		protected String keyProjection() {
+			
+			return "#k,#s";
+			
+		}
+		
+		@Override
+		protected NameMap keyNames() {
+			
+			return super.keyNames().with( "#s", SORT_ATTRIBUTE );
+			
+		}
+		
+		@Override
+		protected PrimaryKey primaryKey( String encoded ) {
+			
+			int split = encoded.indexOf( Utils.SEPARATOR );
+			return new PrimaryKey( KEY_ATTRIBUTE, encoded.substring( 0, split ),
+					SORT_ATTRIBUTE, encoded.substring( split ) );
+			
+		}
+		
+		@Override
+		protected String encodedKey( Item item ) {
+			
+			String partition = item.getString( KEY_ATTRIBUTE );
+			String sort = item.getString( SORT_ATTRIBUTE );
+			return ( partition == null || sort == null ) ? null : partition + sort;
+			
+		}
+		
+		@Override
+		protected Table newTable( String tableName ) {
+			
+			return getTable( tableName, PARTITIONED_KEY_SCHEMA, PARTITIONED_ATTRIBUTE_DEFINITIONS );
+			
+		}
+		
+		/**
+		 * Queries the items of the paths that start with the given path.
+		 * 
+		 * @param encoded The encoded prefix path.
+		 * @param loadData Whether the values should be loaded. If <tt>false</tt>,
+		 *                 only the key attributes are loaded.
+		 * @param priority The priority of the requests for each page.
+		 * @return The items found.
+		 * @throws DatabaseException if an error occurred while starting the query.
+		 */
+		private Iterator<Item> query( String encoded, boolean loadData, Priority priority )
+				throws DatabaseException {
+			
+			int split = encoded.indexOf( Utils.SEPARATOR );
+			String sortPrefix = encoded.substring( split );
+			
+			String condition = "#k = :p";
+			ValueMap values = new ValueMap().withString( ":p", encoded.substring( 0, split ) );
+			if ( sortPrefix.length() > 1 ) { // Only part of the partition.
+				condition += " and begins_with(#s, :s)";
+				values.withString( ":s", sortPrefix );
+			}
+			
+			NameMap names = keyNames();
+			String projection = keyProjection();
+			if ( loadData ) {
+				projection += ",#val";
+				names.with( "#val", VALUE_ATTRIBUTE );
+			}
+			QuerySpec querySpec = new QuerySpec().withKeyConditionExpression( condition )
+					                             .withProjectionExpression( projection )
+					                             .withNameMap( names )
+					                             .withValueMap( values )
+					                             .withReturnConsumedCapacity( ReturnConsumedCapacity.TOTAL );
+			try {
+				return pages( table.getTableName(), priority, table.query( querySpec ),
+						outcome -> outcome.getQueryResult().getConsumedCapacity() );
+			} catch ( AmazonClientException e ) {
+				throw new DatabaseException( "Failed to query table.", e );
+			}
+			
+		}
+		
+		/**
+		 * Retrieves the mappings of the paths that start with the given prefix with
+		 * a single Query (or a scan, if the prefix is empty).
+		 * 
+		 * @param prefix The prefix.
+		 * @return The mappings found.
+		 * @throws DatabaseException if an error occurred while retrieving the
+		 *                           mappings.
+		 * @see BulkTree#getSubtree(List)
+		 */
+		public Map<List<K>,V> getSubtree( List<?> prefix ) throws DatabaseException {
+			
+			Map<List<K>,V> found = new LinkedHashMap<>();
+			if ( prefix.isEmpty() ) { // Whole tree.
+				for ( Map.Entry<List<K>,V> entry : entrySet() ) {
+					
+					found.put( entry.getKey(), entry.getValue() );
+					
+				}
+				return found;
+			}
+			
+			String encoded = encodeKey( prefix );
+			if ( encoded == null ) {
+				return found; // Incorrect type.
+			}
+			for ( Iterator<Item> iter = query( encoded, true, Priority.INTERACTIVE ); iter.hasNext(); ) {
+				
+				Item item = iter.next();
+				found.put( itemKey( item ), itemValue( item ) );
+				
+			}
+			return found;
+			
+		}
+		
+		/**
+		 * Removes the mappings of the paths that start with the given prefix, finding
+		 * them with a single Query (or a scan, if the prefix is empty).
+		 * 
+		 * @param prefix The prefix.
+		 * @return <tt>true</tt> if any mapping was removed.
+		 * @throws DatabaseException if an error occurred while removing the mappings.
+		 * @see BulkTree#removeSubtree(List)
+		 */
+		public boolean removeSubtree( List<?> prefix ) throws DatabaseException {
+			
+			if ( prefix.isEmpty() ) { // Whole tree.
+				boolean changed = !isEmpty();
+				clear();
+				return changed;
+			}
+			
+			String encoded = encodeKey( prefix );
+			if ( encoded == null ) {
+				return false; // Incorrect type.
+			}
+			return deleteItems( query( encoded, false, Priority.BACKGROUND ) ) > 0;
+			
+		}
+		
+	}
+	
+	/**
+	 * Tree backed by a map in the {@link TreeLayout#PARTITIONED partitioned
+	 * layout}, whose subtree operations use a single Query.
+	 * 
+	 * @version 1.3
+	 * @author ThiagoTGM
+	 * @since 2018-09-17
+	 * @param <K> The type of keys in the path.
+	 * @param <V> The type of values being stored.
+	 */
+	private static class PartitionedTree<K,V> extends TableTree<K,V> {
+		
+		private final DynamoDBDatabase.PartitionedMap<K,V> backing;
+		
+		/**
+		 * Instantiates a tree backed by the given map.
+		 * 
+		 * @param backing The backing map.
+		 */
+		public PartitionedTree( DynamoDBDatabase.PartitionedMap<K,V> backing ) {
+			
+			super( backing );
+			this.backing = backing;
+			
+		}
+		
+		/**
+		 * @throws IllegalArgumentException if the path is empty.
+		 */
+		@Override
+		public V put( List<K> path, V value )
+				throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+			
+			if ( path.isEmpty() ) {
+				throw new IllegalArgumentException( "Partitioned trees do not support a value at the root." );
+			}
+			return super.put( path, value );
+			
+		}
+		
+		/**
+		 * @throws IllegalArgumentException if the path is empty.
+		 */
+		@Override
+		public void set( List<K> path, V value )
+				throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+			
+			if ( path.isEmpty() ) {
+				throw new IllegalArgumentException( "Partitioned trees do not support a value at the root." );
+			}
+			super.set( path, value );
+			
+		}
+		
+		/**
+		 * @throws IllegalArgumentException if the path is empty.
+		 */
+		@Override
+		public V putIfAbsent( List<K> path, V value )
+				throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+			
+			if ( path.isEmpty() ) {
+				throw new IllegalArgumentException( "Partitioned trees do not support a value at the root." );
+			}
+			return super.putIfAbsent( path, value );
+			
+		}
+		
+		@Override
+		public V replace( List<K> path, V value )
+				throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+			
+			return path.isEmpty() ? null : super.replace( path, value ); // Root never has a value.
+			
+		}
+		
+		@Override
+		public boolean replace( List<K> path, V oldValue, V newValue )
+				throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+			
+			return !path.isEmpty() && super.replace( path, oldValue, newValue ); // Root never has a value.
+			
+		}
+		
+		/**
+		 * @throws IllegalArgumentException if the path is empty.
+		 */
+		@Override
+		public CompletableFuture<V> putAsync( List<K> path, V value ) throws IllegalArgumentException {
+			
+			if ( path.isEmpty() ) {
+				throw new IllegalArgumentException( "Partitioned trees do not support a value at the root." );
+			}
+			return super.putAsync( path, value );
+			
+		}
+		
+		@Override
+		public Map<List<K>,V> getSubtree( List<?> prefix ) throws NullPointerException {
+			
+			return backing.getSubtree( prefix );
+			
+		}
+		
+		@Override
+		public boolean removeSubtree( List<?> prefix ) throws NullPointerException {
+			
+			return backing.removeSubtree( prefix );
+			
+		}
+		
+	}
 
 }
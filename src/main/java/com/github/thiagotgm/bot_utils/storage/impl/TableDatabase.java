@@ -17,23 +17,43 @@
 
 package com.github.thiagotgm.bot_utils.storage.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import com.github.thiagotgm.bot_utils.storage.AsyncMap;
+import com.github.thiagotgm.bot_utils.storage.AsyncTree;
+import com.github.thiagotgm.bot_utils.storage.BulkMap;
+import com.github.thiagotgm.bot_utils.storage.BulkTree;
 import com.github.thiagotgm.bot_utils.storage.Translator;
 import com.github.thiagotgm.bot_utils.storage.translate.ListTranslator;
+import com.github.thiagotgm.bot_utils.utils.graph.AbstractGraph;
+import com.github.thiagotgm.bot_utils.utils.graph.Graph;
 import com.github.thiagotgm.bot_utils.utils.graph.Graphs;
 import com.github.thiagotgm.bot_utils.utils.graph.Tree;
 
 /**
  * Superclass for table-based databases. Provides an implementation of Tree that
  * is backed by a map from the database.
+ * <p>
+ * If the maps of the database are {@link BulkMap bulk maps} (such as subclasses
+ * of {@link AbstractTableMap}), the trees retrieve several paths at once through
+ * a single bulk call to the backing map. Likewise, if they are {@link AsyncMap
+ * asynchronous maps}, the asynchronous operations of the trees are passed
+ * through to the backing map.
+ * <p>
+ * The atomic operations of the trees ({@link Tree#putIfAbsent(List, Object) putIfAbsent}
+ * and {@link Tree#replace(List, Object, Object) replace}) use the corresponding
+ * operations of the backing map, so they are as atomic as those of the maps.
  * 
- * @version 1.0
+ * @version 1.3
  * @author ThiagoTGM
  * @since 2018-08-10
  */
@@ -43,27 +63,293 @@ public abstract class TableDatabase extends AbstractDatabase {
 	protected <K,V> Tree<K,V> newTree( String dataName, Translator<K> keyTranslator,
 			Translator<V> valueTranslator ) throws DatabaseException {
 
-		return Graphs.mappedTree( newMap( dataName, new ListTranslator<>( keyTranslator ), valueTranslator ) );
+		return new TableTree<>( newMap( dataName, new ListTranslator<>( keyTranslator ), valueTranslator ) );
+		
+	}
+	
+	/**
+	 * Tree that is backed by a map from the database, using the path list as a key.
+	 * <p>
+	 * All calls are delegated to a {@link Graphs#mappedTree(Map) mapped tree} over
+	 * the backing map, except for {@link #getPaths(Collection)}, which uses
+	 * {@link BulkMap#getAll(Collection)} if the backing map supports it,
+	 * {@link #getAll(List)}, which retrieves all the steps of the path with a
+	 * single call to {@link #getPaths(Collection)}, and {@link #putAll(Graph)},
+	 * which uses {@link Map#putAll(Map)} on the backing map.
+	 * <p>
+	 * The {@link AsyncTree asynchronous} operations use the corresponding
+	 * operations of the backing map if it is an {@link AsyncMap}, and
+	 * {@link #set(List, Object)} and {@link #delete(List)} use
+	 * {@link BulkMap#set(Object, Object)} and {@link BulkMap#delete(Object)} if it
+	 * is a {@link BulkMap}. {@link #putIfAbsent(List, Object)},
+	 * {@link #replace(List, Object)} and {@link #replace(List, Object, Object)}
+	 * use the corresponding operations of the backing map.
+	 * <p>
+	 * Subclasses may override the {@link #getSubtree(List) subtree} operations if
+	 * the backing map can find the paths with a given prefix directly.
+	 * 
+	 * @version 1.6
+	 * @author ThiagoTGM
+	 * @since 2018-09-17
+	 * @param <K> The type of keys in the path.
+	 * @param <V> The type of values being stored.
+	 */
+	protected static class TableTree<K,V> extends AbstractGraph<K,V> implements BulkTree<K,V>, AsyncTree<K,V> {
+		
+		private final Map<List<K>,V> backing;
+		private final Tree<K,V> tree;
+		
+		/**
+		 * Instantiates a tree backed by the given map.
+		 * 
+		 * @param backing The backing map.
+		 */
+		public TableTree( Map<List<K>,V> backing ) {
+			
+			this.backing = backing;
+			this.tree = Graphs.mappedTree( backing );
+			
+		}
+
+		@Override
+		public Map<List<K>,V> getPaths( Collection<? extends List<K>> paths ) {
+
+			if ( backing instanceof BulkMap ) { // Get all at once.
+				@SuppressWarnings("unchecked")
+				BulkMap<List<K>,V> bulk = (BulkMap<List<K>,V>) backing;
+				return bulk.getAll( paths );
+			}
+			
+			Map<List<K>,V> found = new HashMap<>();
+			for ( List<K> path : paths ) { // Get each path.
+				
+				V value = backing.get( path );
+				if ( value != null || backing.containsKey( path ) ) {
+					found.put( path, value );
+				}
+				
+			}
+			return found;
+			
+		}
+
+		@Override
+		public boolean containsPath( List<?> path ) {
+
+			return tree.containsPath( path );
+			
+		}
+
+		@Override
+		public boolean containsValue( Object value ) {
+
+			return tree.containsValue( value );
+			
+		}
+
+		@Override
+		public V get( List<?> path ) throws IllegalArgumentException {
+
+			return tree.get( path );
+			
+		}
+
+		@Override
+		public List<V> getAll( List<?> path ) throws IllegalArgumentException {
+
+			List<List<K>> steps = new ArrayList<>( path.size() + 1 );
+			for ( int i = 0; i <= path.size(); i++ ) {
+				
+				@SuppressWarnings( "unchecked" ) // Paths of the wrong type are not found.
+				List<K> step = (List<K>) path.subList( 0, i );
+				steps.add( step );
+				
+			}
+			Map<List<K>,V> found = getPaths( steps );
+			
+			List<V> values = new ArrayList<>( steps.size() );
+			for ( List<K> step : steps ) { // Keep the order of the steps.
+				
+				V value = found.get( step );
+				if ( value != null ) {
+					values.add( value );
+				}
+				
+			}
+			return values;
+			
+		}
+
+		@Override
+		public V put( List<K> path, V value )
+				throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+
+			return tree.put( path, value );
+			
+		}
+
+		@Override
+		public V remove( List<?> path ) throws UnsupportedOperationException, IllegalArgumentException {
+
+			return tree.remove( path );
+			
+		}
+
+		@Override
+		public void set( List<K> path, V value )
+				throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+
+			if ( backing instanceof BulkMap ) {
+				( (BulkMap<List<K>,V>) backing ).set( path, value );
+			} else {
+				tree.put( path, value );
+			}
+			
+		}
+
+		@Override
+		public void delete( List<?> path ) throws UnsupportedOperationException, IllegalArgumentException {
+
+			if ( backing instanceof BulkMap ) {
+				( (BulkMap<List<K>,V>) backing ).delete( path );
+			} else {
+				tree.remove( path );
+			}
+			
+		}
+
+		@Override
+		public V putIfAbsent( List<K> path, V value )
+				throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+
+			return backing.putIfAbsent( path, value );
+			
+		}
+
+		@Override
+		public V replace( List<K> path, V value )
+				throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+
+			return backing.replace( path, value );
+			
+		}
+
+		@Override
+		public boolean replace( List<K> path, V oldValue, V newValue )
+				throws UnsupportedOperationException, NullPointerException, IllegalArgumentException {
+
+			return backing.replace( path, oldValue, newValue );
+			
+		}
+
+		@Override
+		public CompletableFuture<V> getAsync( List<?> path ) {
+
+			return ( backing instanceof AsyncMap ) ? ( (AsyncMap<List<K>,V>) backing ).getAsync( path )
+					: AsyncTree.super.getAsync( path );
+			
+		}
+
+		@Override
+		public CompletableFuture<Boolean> containsPathAsync( List<?> path ) {
+
+			return ( backing instanceof AsyncMap ) ? ( (AsyncMap<List<K>,V>) backing ).containsKeyAsync( path )
+					: AsyncTree.super.containsPathAsync( path );
+			
+		}
+
+		@Override
+		public CompletableFuture<V> putAsync( List<K> path, V value ) {
+
+			return ( backing instanceof AsyncMap ) ? ( (AsyncMap<List<K>,V>) backing ).putAsync( path, value )
+					: AsyncTree.super.putAsync( path, value );
+			
+		}
+
+		@Override
+		public CompletableFuture<V> removeAsync( List<?> path ) {
+
+			return ( backing instanceof AsyncMap ) ? ( (AsyncMap<List<K>,V>) backing ).removeAsync( path )
+					: AsyncTree.super.removeAsync( path );
+			
+		}
+		
+		@Override
+		public void putAll( Graph<? extends K,? extends V> g )
+				throws UnsupportedOperationException, NullPointerException {
+			
+			Map<List<K>,V> mappings = new LinkedHashMap<>();
+			for ( Graph.Entry<? extends K,? extends V> entry : g.entrySet() ) {
+				
+				mappings.put( new ArrayList<>( entry.getPath() ), entry.getValue() );
+				
+			}
+			backing.putAll( mappings ); // Put all at once.
+			
+		}
+
+		@Override
+		public Set<List<K>> pathSet() {
+
+			return tree.pathSet();
+			
+		}
+
+		@Override
+		public Collection<V> values() {
+
+			return tree.values();
+			
+		}
+
+		@Override
+		public Set<Entry<K,V>> entrySet() {
+
+			return tree.entrySet();
+			
+		}
+
+		@Override
+		public int size() {
+
+			return tree.size();
+			
+		}
+
+		@Override
+		public boolean isEmpty() {
+
+			return backing.isEmpty();
+			
+		}
+
+		@Override
+		public void clear() {
+
+			tree.clear();
+			
+		}
 		
 	}
 	
 	/* Partial implementation of the map. */
 	
 	/**
-	 * Base implementation of the Map interface.
+	 * Base implementation of the Map interface, with support for
+	 * {@link BulkMap#getAll(Collection) bulk retrieval}.
 	 * <p>
 	 * All the methods provided here are based on using other methods
 	 * of the Map interface. Implementations are heavily encouraged to override
 	 * these with algorithms that are more optimized for the specific database
 	 * service they use (in terms of speed and/or memory and/or network use).
 	 * 
-     * @version 1.0
+     * @version 1.1
      * @author ThiagoTGM
      * @since 2018-09-04
 	 * @param <K> The type of keys used by the Map.
 	 * @param <V> The type of values stored by the Map.
 	 */
-	protected abstract class AbstractTableMap<K,V> implements Map<K,V> {
+	protected abstract class AbstractTableMap<K,V> implements BulkMap<K,V> {
 
 		@Override
 		public boolean isEmpty() {
@@ -93,6 +379,22 @@ public abstract class TableDatabase extends AbstractDatabase {
 			
 		}
 
+		@Override
+		public Map<K,V> getAll( Collection<? extends K> keys ) {
+			
+			Map<K,V> found = new HashMap<>();
+			for ( K key : keys ) { // Get each key.
+				
+				V value = get( key );
+				if ( value != null || containsKey( key ) ) {
+					found.put( key, value );
+				}
+				
+			}
+			return found;
+			
+		}
+
 		@Override
 		public void putAll( Map<? extends K,? extends V> m ) {
 
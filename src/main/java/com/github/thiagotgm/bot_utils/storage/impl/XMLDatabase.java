@@ -43,6 +43,7 @@ import org.slf4j.LoggerFactory;
 
 import com.github.thiagotgm.bot_utils.SaveManager;
 import com.github.thiagotgm.bot_utils.SaveManager.Saveable;
+import com.github.thiagotgm.bot_utils.storage.OperationTracer;
 import com.github.thiagotgm.bot_utils.storage.TranslationException;
 import com.github.thiagotgm.bot_utils.storage.Translator;
 import com.github.thiagotgm.bot_utils.storage.xml.XMLElement;
@@ -55,8 +56,11 @@ import com.github.thiagotgm.bot_utils.utils.graph.XMLHashTree;
 
 /**
  * Database that saves data in local XML files.
+ * <p>
+ * Loading and saving each file is {@link OperationTracer traced} as the
+ * <tt>load</tt> and <tt>save</tt> operations.
  * 
- * @version 1.0
+ * @version 1.2
  * @author ThiagoTGM
  * @since 2018-07-16
  */
@@ -78,6 +82,28 @@ public class XMLDatabase extends AbstractDatabase implements Saveable {
 	 */
 	private final Collection<XMLEntry> storage = new LinkedList<>();
 	
+	/**
+	 * Instantiates a database that uses the {@link #OFF_HEAP_CACHE_SIZE off-heap
+	 * cache size} given by the settings.
+	 */
+	public XMLDatabase() {
+		
+		super();
+		
+	}
+	
+	/**
+	 * Instantiates a database with an off-heap cache tier of the given size,
+	 * instead of the one given by the settings.
+	 * 
+	 * @param offHeapCacheSize The size of the off-heap tier, in bytes. If 0, there is no off-heap tier.
+	 */
+	public XMLDatabase( long offHeapCacheSize ) {
+		
+		super( offHeapCacheSize );
+		
+	}
+	
 	@Override
 	public List<Parameter> getLoadParams() {
 
@@ -136,7 +162,7 @@ public class XMLDatabase extends AbstractDatabase implements Saveable {
 		
 		SaveManager.unregisterListener( this ); // Unregister for autosave events.
 
-		save(); // Save state.
+		save(); // Save state (including buffered writes).
 		
 		closed = true;
 		
@@ -168,7 +194,8 @@ public class XMLDatabase extends AbstractDatabase implements Saveable {
 		File file = path.resolve( filename ).toFile();
 		if ( file.exists() ) {
 			FileInputStream in;
-			try {
+			try ( OperationTracer.Trace trace = OperationTracer.start( "load", getMetricsName(), dataName )
+					.valueSize( file.length() ) ) {
 				in = new FileInputStream( file );
 				Utils.readXMLDocument( in, element );
 			} catch ( FileNotFoundException | XMLStreamException e ) {
@@ -223,6 +250,7 @@ public class XMLDatabase extends AbstractDatabase implements Saveable {
 			return; // Already closed, abort.
 		}
 		
+		flushWriteBehind(); // Include buffered writes.
 		LOG.info( "Saving database files." );
 		
 		for ( XMLEntry data : storage ) { // Save each storage element.
@@ -230,10 +258,11 @@ public class XMLDatabase extends AbstractDatabase implements Saveable {
 			String filename = data.getName() + ".xml";
 			LOG.debug( "Saving file {}.", filename );
 			File file = path.resolve( filename ).toFile();
-			try {
+			try ( OperationTracer.Trace trace = OperationTracer.start( "save", getMetricsName(), data.getName() ) ) {
 				FileOutputStream out = new FileOutputStream( file );
 				Utils.writeXMLDocument( out, data.getElement() );
 				out.close();
+				trace.valueSize( file.length() );
 			} catch ( FileNotFoundException e1 ) {
 				LOG.error( "Could not open database file " + file.toString() + ".", e1 );
 			} catch ( XMLStreamException e2 ) {
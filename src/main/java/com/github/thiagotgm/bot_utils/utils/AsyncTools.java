@@ -26,7 +26,7 @@ import java.util.concurrent.ThreadFactory;
 /**
  * Tools for making asynchronous execution algorithms.
  *
- * @version 1.0
+ * @version 1.1
  * @author ThiagoTGM
  * @since 2017-08-14
  */
@@ -257,6 +257,9 @@ public class AsyncTools {
     /**
      * Creates a keyed executor that uses a fixed amount of threads, where the threads
      * used have the given settings.
+     * <p>
+     * The {@link KeyedExecutorMXBean management interface} of the executor is registered
+     * under the name of the thread group until the executor is shut down.
      * 
      * @param nThreads The amount of threads to use.
      * @param group The group to place the threads in.
@@ -269,7 +272,7 @@ public class AsyncTools {
             UncaughtExceptionHandler handler, boolean daemon ) throws IllegalArgumentException {
     	
     	ThreadFactory factory = createThreadFactory( group, handler, daemon );
-        return new KeyedThreadPoolExecutor( nThreads, factory );
+        return new KeyedThreadPoolExecutor( nThreads, factory, group.getName() );
     	
     }
     
@@ -0,0 +1,92 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.utils;
+
+/**
+ * Management interface of a {@link KeyedThreadPoolExecutor}, which exposes the
+ * load of each of its threads (stripes).
+ * <p>
+ * Since tasks with the same key always run in the same thread, a single hot key
+ * shows up as one stripe with a long queue while the others are idle.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ * @see Management
+ */
+public interface KeyedExecutorMXBean {
+
+	/**
+	 * Retrieves the amount of threads (stripes) used by the executor.
+	 *
+	 * @return The amount of threads.
+	 */
+	int getThreadCount();
+
+	/**
+	 * Retrieves the amount of tasks waiting to be executed by each thread.
+	 *
+	 * @return The queue sizes, where the i-th element is the size of the queue
+	 *         of the i-th thread.
+	 */
+	int[] getQueueSizes();
+
+	/**
+	 * Retrieves the total amount of tasks waiting to be executed.
+	 *
+	 * @return The amount of waiting tasks.
+	 */
+	int getQueueSize();
+
+	/**
+	 * Retrieves the amount of threads that are currently executing a task.
+	 *
+	 * @return The amount of active threads.
+	 */
+	int getActiveCount();
+
+	/**
+	 * Retrieves the amount of tasks that each thread finished executing.
+	 *
+	 * @return The amounts of completed tasks, where the i-th element is the
+	 *         amount completed by the i-th thread.
+	 */
+	long[] getCompletedTaskCounts();
+
+	/**
+	 * Retrieves the total amount of tasks that finished executing.
+	 *
+	 * @return The amount of completed tasks.
+	 */
+	long getCompletedTaskCount();
+
+	/**
+	 * Determines whether the executor was shut down.
+	 *
+	 * @return <tt>true</tt> if the executor was shut down.
+	 */
+	boolean isShutdown();
+
+	/**
+	 * Determines whether all tasks finished after the executor was shut down.
+	 *
+	 * @return <tt>true</tt> if the executor terminated.
+	 */
+	boolean isTerminated();
+
+}
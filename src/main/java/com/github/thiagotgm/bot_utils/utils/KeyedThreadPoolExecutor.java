@@ -25,10 +25,13 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.ObjectName;
+
 /**
  * Executor that functions similarly to a {@link ThreadPoolExecutor} in that
  * submitted tasks are executed in one of multiple threads, but instead
@@ -39,14 +42,20 @@ import java.util.concurrent.TimeUnit;
  * by the same thread (and thus one at at time), which allows the use of
  * parallelization for executing a number of tasks while ensuring that certain
  * groups of these tasks are synchronized as necessary.
+ * <p>
+ * The load of each thread can be monitored through the
+ * {@link KeyedExecutorMXBean management interface}, which is registered in the
+ * platform MBean server if the executor is given a name.
  * 
- * @version 1.0
+ * @version 1.1
  * @author ThiagoTGM
  * @since 2018-09-04
  */
-public class KeyedThreadPoolExecutor extends AbstractExecutorService implements KeyedExecutorService {
+public class KeyedThreadPoolExecutor extends AbstractExecutorService
+		implements KeyedExecutorService, KeyedExecutorMXBean {
 	
-	private final ExecutorService[] executors;
+	private final ThreadPoolExecutor[] executors;
+	private final ObjectName objectName;
 	
 	/**
 	 * Initializes an executor with the given amount of threads obtained from
@@ -59,18 +68,42 @@ public class KeyedThreadPoolExecutor extends AbstractExecutorService implements
 	public KeyedThreadPoolExecutor( int nThreads, ThreadFactory threadFactory )
 			throws IllegalArgumentException {
 		
+		this( nThreads, threadFactory, null );
+		
+	}
+	
+	/**
+	 * Initializes an executor with the given amount of threads obtained from
+	 * the given factory, and registers its {@link KeyedExecutorMXBean management
+	 * interface} under the given name. The interface is unregistered when the
+	 * executor is shut down.
+	 * 
+	 * @param nThreads The number of threads that the executor should use.
+	 * @param threadFactory The factory to obtain threads from.
+	 * @param name The name to register the management interface under, or
+	 *             <tt>null</tt> to not register it.
+	 * @throws IllegalArgumentException if <tt>nThreads {@literal <}= 0</tt>.
+	 * @since 2018-09-17
+	 */
+	public KeyedThreadPoolExecutor( int nThreads, ThreadFactory threadFactory, String name )
+			throws IllegalArgumentException {
+		
 		if ( nThreads <= 0 ) {
 			throw new IllegalArgumentException( "Invalid number of threads." );
 		}
 		
-		executors = new ExecutorService[nThreads];
+		executors = new ThreadPoolExecutor[nThreads];
 		for ( int i = 0; i < nThreads; i++ ) {
 			
-			executors[i] = Executors.newSingleThreadExecutor( threadFactory );
+			// Same as a single thread executor, but exposes the queue.
+			executors[i] = new ThreadPoolExecutor( 1, 1, 0, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<>(), threadFactory );
 			executors[i].execute( () -> { return; } ); // Create numbered thread;
 			
 		}
 		
+		objectName = name == null ? null : Management.register( "KeyedExecutor", name, this );
+		
 	}
 
 	@Override
@@ -81,6 +114,7 @@ public class KeyedThreadPoolExecutor extends AbstractExecutorService implements
 			executor.shutdown(); // Shutdown all executors.
 			
 		}
+		Management.unregister( objectName );
 
 	}
 
@@ -93,6 +127,7 @@ public class KeyedThreadPoolExecutor extends AbstractExecutorService implements
 			pending.addAll( executor.shutdownNow() ); // Shutdown all executors.
 			
 		}
+		Management.unregister( objectName );
 		return pending;
 		
 	}
@@ -137,6 +172,80 @@ public class KeyedThreadPoolExecutor extends AbstractExecutorService implements
 		
 	}
 	
+	/* Monitoring methods */
+	
+	@Override
+	public int getThreadCount() {
+		
+		return executors.length;
+		
+	}
+	
+	@Override
+	public int[] getQueueSizes() {
+		
+		int[] sizes = new int[executors.length];
+		for ( int i = 0; i < executors.length; i++ ) {
+			
+			sizes[i] = executors[i].getQueue().size();
+			
+		}
+		return sizes;
+		
+	}
+	
+	@Override
+	public int getQueueSize() {
+		
+		int size = 0;
+		for ( ThreadPoolExecutor executor : executors ) {
+			
+			size += executor.getQueue().size();
+			
+		}
+		return size;
+		
+	}
+	
+	@Override
+	public int getActiveCount() {
+		
+		int active = 0;
+		for ( ThreadPoolExecutor executor : executors ) {
+			
+			active += executor.getActiveCount();
+			
+		}
+		return active;
+		
+	}
+	
+	@Override
+	public long[] getCompletedTaskCounts() {
+		
+		long[] counts = new long[executors.length];
+		for ( int i = 0; i < executors.length; i++ ) {
+			
+			counts[i] = executors[i].getCompletedTaskCount();
+			
+		}
+		return counts;
+		
+	}
+	
+	@Override
+	public long getCompletedTaskCount() {
+		
+		long count = 0;
+		for ( ThreadPoolExecutor executor : executors ) {
+			
+			count += executor.getCompletedTaskCount();
+			
+		}
+		return count;
+		
+	}
+	
 	/* Keyed submission methods */
 	
 	/**
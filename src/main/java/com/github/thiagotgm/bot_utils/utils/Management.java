@@ -0,0 +1,154 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.utils;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers the MXBeans that expose the runtime state of BotUtils in the
+ * platform MBean server, so that it can be inspected (and some actions
+ * triggered) with tools such as JConsole or Java Mission Control.
+ * <p>
+ * All beans are registered under the {@value #DOMAIN} domain, with a
+ * <tt>type</tt> key and, if there may be more than one bean of that type, a
+ * <tt>name</tt> key.
+ * <p>
+ * Monitoring should never stop the bot from working, so failures to register or
+ * unregister a bean are logged and otherwise ignored.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class Management {
+
+    private static final Logger LOG = LoggerFactory.getLogger( Management.class );
+
+    /**
+     * Domain that the beans are registered under.
+     */
+    public static final String DOMAIN = "com.github.thiagotgm.bot_utils";
+
+    /**
+     * Should not be instantiated.
+     */
+    private Management() {}
+
+    /**
+     * Obtains the name that a bean is registered under.
+     *
+     * @param type
+     *            The type of the bean.
+     * @param name
+     *            The name of the bean, or <tt>null</tt> if there is only one bean
+     *            of that type.
+     * @return The object name of the bean.
+     * @throws NullPointerException
+     *             if the type is <tt>null</tt>.
+     * @throws IllegalArgumentException
+     *             if the type is not a valid value for an object name key.
+     */
+    public static ObjectName getObjectName( String type, String name )
+            throws NullPointerException, IllegalArgumentException {
+
+        if ( type == null ) {
+            throw new NullPointerException( "Type cannot be null." );
+        }
+
+        String objectName = DOMAIN + ":type=" + type;
+        if ( name != null ) {
+            objectName += ",name=" + ObjectName.quote( name );
+        }
+        try {
+            return new ObjectName( objectName );
+        } catch ( MalformedObjectNameException e ) {
+            throw new IllegalArgumentException( "Invalid bean type.", e );
+        }
+
+    }
+
+    /**
+     * Registers a bean in the platform MBean server.
+     *
+     * @param type
+     *            The type of the bean.
+     * @param name
+     *            The name of the bean, or <tt>null</tt> if there is only one bean
+     *            of that type.
+     * @param bean
+     *            The bean. Must be a compliant MXBean.
+     * @return The name that the bean was registered under, or <tt>null</tt> if it
+     *         could not be registered (for example, if there is already a bean
+     *         with that name).
+     * @throws NullPointerException
+     *             if the type or the bean is <tt>null</tt>.
+     * @throws IllegalArgumentException
+     *             if the type is not a valid value for an object name key.
+     */
+    public static ObjectName register( String type, String name, Object bean )
+            throws NullPointerException, IllegalArgumentException {
+
+        if ( bean == null ) {
+            throw new NullPointerException( "Bean cannot be null." );
+        }
+
+        ObjectName objectName = getObjectName( type, name );
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean( bean, objectName );
+            LOG.debug( "Registered MXBean {}.", objectName );
+            return objectName;
+        } catch ( JMException | RuntimeException e ) {
+            LOG.warn( "Could not register MXBean {}.", objectName, e );
+            return null;
+        }
+
+    }
+
+    /**
+     * Unregisters a bean from the platform MBean server.
+     *
+     * @param objectName
+     *            The name that the bean was registered under. If <tt>null</tt>
+     *            or not registered, nothing happens.
+     */
+    public static void unregister( ObjectName objectName ) {
+
+        if ( objectName == null ) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean( objectName );
+            LOG.debug( "Unregistered MXBean {}.", objectName );
+        } catch ( InstanceNotFoundException e ) {
+            // Already gone.
+        } catch ( JMException | RuntimeException e ) {
+            LOG.warn( "Could not unregister MXBean {}.", objectName, e );
+        }
+
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.thiagotgm.bot_utils.storage.DatabaseMetrics;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMetrics.Operation;
+import com.github.thiagotgm.bot_utils.storage.TranslationException;
+import com.github.thiagotgm.bot_utils.storage.TranslatorMetrics;
+import com.github.thiagotgm.bot_utils.storage.translate.IntegerTranslator;
+import com.github.thiagotgm.bot_utils.utils.AsyncTools;
+import com.github.thiagotgm.bot_utils.utils.KeyedExecutorService;
+
+/**
+ * Unit tests for {@link MetricsExporter}, served on an ephemeral port on
+ * localhost.
+ *
+ * @version 1.1
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class MetricsExporterTest {
+
+    @Before
+    public void setUp() {
+
+        assertTrue( MetricsExporter.start( "127.0.0.1", 0 ) );
+
+    }
+
+    @After
+    public void tearDown() {
+
+        MetricsExporter.stop();
+        assertEquals( -1, MetricsExporter.getPort() );
+
+    }
+
+    /**
+     * Opens a connection to the exporter.
+     *
+     * @param path
+     *            The path to request.
+     * @return The connection.
+     * @throws IOException
+     *             if the connection failed.
+     */
+    private static HttpURLConnection connect( String path ) throws IOException {
+
+        URL url = new URL( "http", "127.0.0.1", MetricsExporter.getPort(), path );
+        return (HttpURLConnection) url.openConnection();
+
+    }
+
+    /**
+     * Scrapes the exporter.
+     *
+     * @return The served metrics.
+     * @throws IOException
+     *             if the request failed.
+     */
+    private static String scrape() throws IOException {
+
+        HttpURLConnection connection = connect( MetricsExporter.PATH );
+        assertEquals( 200, connection.getResponseCode() );
+        assertEquals( MetricsExporter.CONTENT_TYPE, connection.getContentType() );
+        try ( InputStream in = connection.getInputStream() ) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ( ( read = in.read( buffer ) ) != -1 ) {
+
+                out.write( buffer, 0, read );
+
+            }
+            return new String( out.toByteArray(), StandardCharsets.UTF_8 );
+        }
+
+    }
+
+    @Test
+    public void testDatabaseMetrics() throws IOException {
+
+        DatabaseMetrics metrics = DatabaseMetrics.get( "ExporterTest", "sample\"map" );
+        metrics.addCacheHit();
+        metrics.addCacheHit();
+        metrics.recordOperation( Operation.GET, 2000000 ); // 2ms.
+
+        String text = scrape();
+        String labels = "{database=\"ExporterTest\",structure=\"sample\\\"map\"";
+        assertTrue( text.contains( "# TYPE botutils_cache_hits_total counter\n" ) );
+        assertTrue( text.contains( "botutils_cache_hits_total" + labels + "} 2\n" ) );
+        assertTrue( text.contains( "botutils_cache_misses_total" + labels + "} 0\n" ) );
+        assertTrue( text.contains( "# TYPE botutils_operation_duration_seconds summary\n" ) );
+        assertTrue( text.contains( "botutils_operation_duration_seconds_count" + labels
+                + ",operation=\"get\"} 1\n" ) );
+        assertTrue( text.contains( "botutils_operation_duration_seconds_sum" + labels
+                + ",operation=\"get\"} 0.002\n" ) );
+        assertTrue( text.contains( "botutils_operation_duration_seconds" + labels
+                + ",operation=\"get\",quantile=\"0.99\"} 0.002" ) );
+        assertTrue( text.contains( "# TYPE botutils_saves_total counter\n" ) );
+
+    }
+
+    @Test
+    public void testTranslatorMetrics() throws IOException, TranslationException {
+
+        IntegerTranslator translator = new IntegerTranslator();
+        long encodes = TranslatorMetrics.get( IntegerTranslator.class ).getEncodes().getCount();
+        translator.decode( translator.encode( 42 ) );
+
+        String text = scrape();
+        String labels = "{translator=\"" + IntegerTranslator.class.getName() + "\"";
+        assertTrue( text.contains( "# TYPE botutils_translator_duration_seconds summary\n" ) );
+        assertTrue( text.contains( "botutils_translator_duration_seconds_count" + labels
+                + ",operation=\"encode\"} " + ( encodes + 1 ) + "\n" ) );
+        assertTrue( text.contains( "botutils_translator_duration_seconds_count" + labels
+                + ",operation=\"decode\"}" ) );
+
+    }
+
+    @Test
+    public void testExecutorMetrics() throws IOException, InterruptedException, ExecutionException {
+
+        KeyedExecutorService executor = AsyncTools.createKeyedThreadPool( 2, new ThreadGroup( "Exporter Test" ),
+                ( t, e ) -> {} );
+        try {
+            executor.submit( "key", () -> {} ).get();
+            String text = scrape();
+            assertTrue( text.contains( "botutils_executor_queue_size{executor=\"Exporter Test\",stripe=\"1\"} 0\n" ) );
+            assertTrue( text.contains( "botutils_executor_completed_tasks_total{executor=\"Exporter Test\"}" ) );
+        } finally {
+            executor.shutdown();
+        }
+        assertFalse( scrape().contains( "Exporter Test" ) ); // Unregistered.
+
+    }
+
+    @Test
+    public void testOtherRequests() throws IOException {
+
+        assertEquals( 404, connect( "/other" ).getResponseCode() );
+        HttpURLConnection connection = connect( MetricsExporter.PATH );
+        connection.setRequestMethod( "POST" );
+        assertEquals( 405, connection.getResponseCode() );
+
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void testAlreadyRunning() {
+
+        MetricsExporter.start( "127.0.0.1", 0 );
+
+    }
+
+}
@@ -0,0 +1,275 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Contention benchmark for {@link Cache}.
+ * <p>
+ * Measures the throughput of a read-heavy workload (reads over a skewed key
+ * distribution with occasional writes) with 1 to 32 threads, both for
+ * {@link Cache} and for a fully synchronized LRU map (the way the cache used to
+ * be implemented), to show how each of them scales with the amount of threads.
+ * <p>
+ * Not a unit test. Run it manually with <tt>main</tt>. The optional arguments
+ * are the duration of each run in milliseconds (default 2000) and the
+ * percentage of operations that are writes (default 5).
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-16
+ */
+public class CacheContentionBenchmark {
+
+    private static final int CAPACITY = 1000;
+    private static final int KEY_RANGE = 5000;
+    private static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16, 32 };
+
+    /**
+     * Minimal interface over the implementations being compared.
+     *
+     * @version 1.0
+     * @author ThiagoTGM
+     * @since 2018-09-16
+     */
+    private interface Target {
+
+        /**
+         * Reads a key.
+         *
+         * @param key
+         *            The key.
+         * @return The value.
+         */
+        Object get( Integer key );
+
+        /**
+         * Writes a key.
+         *
+         * @param key
+         *            The key.
+         */
+        void put( Integer key );
+
+    }
+
+    /**
+     * Creates a target backed by {@link Cache}.
+     *
+     * @return The target.
+     */
+    private static Target cache() {
+
+        final Cache<Integer, Integer> cache = new Cache<>( CAPACITY );
+        return new Target() {
+
+            @Override
+            public Object get( Integer key ) {
+
+                return cache.get( key );
+
+            }
+
+            @Override
+            public void put( Integer key ) {
+
+                cache.put( key, key );
+
+            }
+
+        };
+
+    }
+
+    /**
+     * Creates a target backed by a synchronized access-ordered map.
+     *
+     * @return The target.
+     */
+    private static Target synchronizedLRU() {
+
+        final Map<Integer, Integer> map = Collections.synchronizedMap(
+                new LinkedHashMap<Integer, Integer>( CAPACITY, 0.75f, true ) {
+
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry( Map.Entry<Integer, Integer> eldest ) {
+
+                        return size() > CAPACITY;
+
+                    }
+
+                } );
+        return new Target() {
+
+            @Override
+            public Object get( Integer key ) {
+
+                return map.get( key );
+
+            }
+
+            @Override
+            public void put( Integer key ) {
+
+                map.put( key, key );
+
+            }
+
+        };
+
+    }
+
+    /**
+     * Generates a skewed sequence of keys, where low keys are much more common
+     * than high keys (approximately Zipfian).
+     *
+     * @param size
+     *            The length of the sequence.
+     * @param seed
+     *            The random seed.
+     * @return The keys.
+     */
+    private static Integer[] keys( int size, long seed ) {
+
+        Random random = new Random( seed );
+        Integer[] keys = new Integer[size];
+        for ( int i = 0; i < size; i++ ) {
+
+            double u = random.nextDouble();
+            keys[i] = (int) ( Math.pow( u, 3 ) * KEY_RANGE );
+
+        }
+        return keys;
+
+    }
+
+    /**
+     * Runs the workload with the given amount of threads.
+     *
+     * @param factory
+     *            Creates the target to use.
+     * @param threadCount
+     *            The amount of threads.
+     * @param duration
+     *            How long to run, in milliseconds.
+     * @param writePercent
+     *            The percentage of operations that are writes.
+     * @return The throughput, in operations per second.
+     * @throws InterruptedException
+     *             if interrupted while waiting for the threads.
+     */
+    private static long run( Function<Void, Target> factory, int threadCount, long duration, int writePercent )
+            throws InterruptedException {
+
+        final Target target = factory.apply( null );
+        for ( int i = 0; i < KEY_RANGE; i++ ) { // Warm up.
+
+            target.put( i );
+
+        }
+
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final LongAdder ops = new LongAdder();
+        final long[] deadline = new long[1];
+        List<Thread> threads = new ArrayList<>( threadCount );
+        for ( int t = 0; t < threadCount; t++ ) {
+
+            final Integer[] keys = keys( 1 << 16, t );
+            Thread thread = new Thread( () -> {
+
+                try {
+                    start.await();
+                } catch ( InterruptedException e ) {
+                    return;
+                }
+                int i = 0;
+                long count = 0;
+                while ( System.nanoTime() < deadline[0] ) {
+
+                    for ( int j = 0; j < 256; j++, i++ ) {
+
+                        Integer key = keys[i & ( keys.length - 1 )];
+                        if ( ( i % 100 ) < writePercent ) {
+                            target.put( key );
+                        } else {
+                            target.get( key );
+                        }
+
+                    }
+                    count += 256;
+
+                }
+                ops.add( count );
+
+            } );
+            thread.start();
+            threads.add( thread );
+
+        }
+
+        deadline[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( duration );
+        start.countDown();
+        for ( Thread thread : threads ) {
+
+            thread.join();
+
+        }
+        return ops.sum() * 1000 / duration;
+
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args
+     *            Duration of each run in milliseconds, and percentage of writes
+     *            (both optional).
+     * @throws InterruptedException
+     *             if interrupted.
+     */
+    public static void main( String[] args ) throws InterruptedException {
+
+        long duration = args.length > 0 ? Long.parseLong( args[0] ) : 2000;
+        int writePercent = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+
+        System.out.printf( "Capacity %d, key range %d, %d%% writes, %d ms per run.%n", CAPACITY, KEY_RANGE,
+                writePercent, duration );
+        System.out.printf( "%8s %20s %20s%n", "threads", "Cache (ops/s)", "synchronized (ops/s)" );
+        for ( int threads : THREAD_COUNTS ) {
+
+            long cache = run( v -> cache(), threads, duration, writePercent );
+            long sync = run( v -> synchronizedLRU(), threads, duration, writePercent );
+            System.out.printf( "%8d %20d %20d%n", threads, cache, sync );
+
+        }
+
+    }
+
+}
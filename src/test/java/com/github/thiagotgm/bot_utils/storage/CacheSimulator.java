@@ -0,0 +1,195 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Trace-driven simulator for the {@link Cache.Policy eviction policies} of
+ * {@link Cache}.
+ * <p>
+ * Replays traces of key accesses against a cache of each policy (a miss is
+ * followed by a put, as the database caches do) and reports the hit ratio of
+ * each policy for each trace.
+ * <p>
+ * Not a unit test. Run it manually with <tt>main</tt>. The arguments are the
+ * capacity of the caches followed by the paths of the trace files to replay,
+ * where each line of a trace file is one accessed key (for example, extracted
+ * from the logs of a bot). If no trace files are given, a few synthetic traces
+ * are generated instead (a skewed workload, the same workload interrupted by
+ * scans over many one-off keys, and a loop slightly larger than the cache). If
+ * no capacity is given either, uses 1000.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-16
+ */
+public class CacheSimulator {
+
+    private static final int DEFAULT_CAPACITY = 1000;
+    private static final int SYNTHETIC_LENGTH = 1000000;
+
+    /**
+     * Replays a trace against a cache with the given policy.
+     *
+     * @param trace
+     *            The keys accessed, in order.
+     * @param capacity
+     *            The capacity of the cache.
+     * @param policy
+     *            The eviction policy.
+     * @return The hit ratio.
+     */
+    public static double simulate( List<String> trace, int capacity, Cache.Policy policy ) {
+
+        Cache<String, Boolean> cache = new Cache<>( capacity, policy );
+        long hits = 0;
+        for ( String key : trace ) {
+
+            if ( cache.get( key ) != null ) {
+                hits++;
+            } else {
+                cache.put( key, true );
+            }
+
+        }
+        return trace.isEmpty() ? 0 : (double) hits / trace.size();
+
+    }
+
+    /**
+     * Generates a skewed (approximately Zipfian) key.
+     *
+     * @param random
+     *            The random number generator.
+     * @param range
+     *            The amount of distinct keys.
+     * @return The key.
+     */
+    private static String skewedKey( Random random, int range ) {
+
+        return "hot" + (int) ( Math.pow( random.nextDouble(), 4 ) * range );
+
+    }
+
+    /**
+     * Generates the synthetic traces.
+     *
+     * @param capacity
+     *            The capacity of the simulated caches.
+     * @return The traces, by name.
+     */
+    private static Map<String, List<String>> syntheticTraces( int capacity ) {
+
+        Map<String, List<String>> traces = new LinkedHashMap<>();
+        Random random = new Random( 42 );
+
+        List<String> skewed = new ArrayList<>( SYNTHETIC_LENGTH );
+        for ( int i = 0; i < SYNTHETIC_LENGTH; i++ ) {
+
+            skewed.add( skewedKey( random, capacity * 20 ) );
+
+        }
+        traces.put( "skewed", skewed );
+
+        List<String> scans = new ArrayList<>( SYNTHETIC_LENGTH );
+        int scanned = 0;
+        while ( scans.size() < SYNTHETIC_LENGTH ) {
+
+            for ( int i = 0; i < capacity * 10; i++ ) {
+
+                scans.add( skewedKey( random, capacity * 20 ) );
+
+            }
+            for ( int i = 0; i < capacity * 2; i++ ) { // Scan over one-off keys.
+
+                scans.add( "scan" + scanned++ );
+
+            }
+
+        }
+        traces.put( "skewed + scans", scans );
+
+        List<String> loop = new ArrayList<>( SYNTHETIC_LENGTH );
+        int loopSize = capacity + ( capacity / 4 );
+        for ( int i = 0; i < SYNTHETIC_LENGTH; i++ ) {
+
+            loop.add( "loop" + ( i % loopSize ) );
+
+        }
+        traces.put( "loop", loop );
+
+        return traces;
+
+    }
+
+    /**
+     * Runs the simulator.
+     *
+     * @param args
+     *            The capacity of the caches, followed by the trace files (all
+     *            optional).
+     * @throws IOException
+     *             if an error occurred while reading a trace file.
+     */
+    public static void main( String[] args ) throws IOException {
+
+        int capacity = args.length > 0 ? Integer.parseInt( args[0] ) : DEFAULT_CAPACITY;
+        Map<String, List<String>> traces;
+        if ( args.length > 1 ) {
+            traces = new LinkedHashMap<>();
+            for ( int i = 1; i < args.length; i++ ) {
+
+                traces.put( args[i], Files.readAllLines( Paths.get( args[i] ), StandardCharsets.UTF_8 ) );
+
+            }
+        } else {
+            traces = syntheticTraces( capacity );
+        }
+
+        System.out.printf( "Capacity %d.%n", capacity );
+        System.out.printf( "%-30s", "trace" );
+        for ( Cache.Policy policy : Cache.Policy.values() ) {
+
+            System.out.printf( " %12s", policy );
+
+        }
+        System.out.println();
+        for ( Map.Entry<String, List<String>> trace : traces.entrySet() ) {
+
+            System.out.printf( "%-30s", trace.getKey() );
+            for ( Cache.Policy policy : Cache.Policy.values() ) {
+
+                System.out.printf( " %11.2f%%", simulate( trace.getValue(), capacity, policy ) * 100 );
+
+            }
+            System.out.println();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CacheSpec}.
+ *
+ * @version 1.1
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class CacheSpecTest {
+
+    @Test
+    public void testBuild() {
+
+        CacheSpec spec = CacheSpec.DEFAULT.maximumSize( 50000 ).policy( Cache.Policy.W_TINY_LFU )
+                .expireAfterWrite( 10, TimeUnit.MINUTES );
+        assertTrue( spec.isEnabled() );
+        assertEquals( 50000, spec.getMaximumSize() );
+        assertEquals( Cache.Policy.W_TINY_LFU, spec.getPolicy() );
+        assertEquals( 600, spec.getExpireAfterWrite( TimeUnit.SECONDS ) );
+        assertEquals( CacheSpec.UNSET, spec.getExpireAfterAccess( TimeUnit.SECONDS ) );
+        assertEquals( CacheSpec.UNSET, spec.getRefreshAfterWrite( TimeUnit.SECONDS ) );
+
+        assertFalse( CacheSpec.DISABLED.isEnabled() );
+        assertTrue( CacheSpec.DISABLED.maximumSize( 10 ).isEnabled() );
+
+    }
+
+    @Test
+    public void testParse() {
+
+        CacheSpec spec = CacheSpec.parse( " maximumSize=100, policy=W-TinyLFU,expireAfterAccess=90,"
+                + "refreshAfterWrite=500ms " );
+        assertEquals( CacheSpec.DEFAULT.maximumSize( 100 ).policy( Cache.Policy.W_TINY_LFU )
+                .expireAfterAccess( 90, TimeUnit.SECONDS ).refreshAfterWrite( 500, TimeUnit.MILLISECONDS ), spec );
+
+        assertEquals( CacheSpec.DISABLED, CacheSpec.parse( "Disabled" ) );
+        assertEquals( CacheSpec.DEFAULT, CacheSpec.parse( "" ) );
+        assertEquals( 2, CacheSpec.parse( "expireAfterWrite=2h" ).getExpireAfterWrite( TimeUnit.HOURS ) );
+        assertEquals( 1, CacheSpec.parse( "expireAfterWrite=1d" ).getExpireAfterWrite( TimeUnit.DAYS ) );
+
+    }
+
+    @Test
+    public void testToString() {
+
+        CacheSpec[] specs = { CacheSpec.DEFAULT, CacheSpec.DISABLED,
+                CacheSpec.DEFAULT.maximumSize( 10 ).expireAfterWrite( 90, TimeUnit.SECONDS ),
+                CacheSpec.DEFAULT.policy( Cache.Policy.LRU ).refreshAfterWrite( 1500, TimeUnit.MILLISECONDS )
+                        .expireAfterAccess( 0, TimeUnit.SECONDS ) };
+        for ( CacheSpec spec : specs ) {
+
+            assertEquals( spec, CacheSpec.parse( spec.toString() ) );
+
+        }
+        assertEquals( "maximumSize=10,expireAfterWrite=90s", specs[2].toString() );
+        assertEquals( "disabled", specs[1].toString() );
+
+    }
+
+    @Test
+    public void testOrElse() {
+
+        CacheSpec defaults = CacheSpec.DEFAULT.policy( Cache.Policy.LRU ).expireAfterWrite( 1, TimeUnit.MINUTES );
+        CacheSpec spec = CacheSpec.DEFAULT.policy( Cache.Policy.W_TINY_LFU ).orElse( defaults );
+        assertEquals( Cache.Policy.W_TINY_LFU, spec.getPolicy() );
+        assertEquals( 1, spec.getExpireAfterWrite( TimeUnit.MINUTES ) );
+        assertEquals( CacheSpec.UNSET, spec.getMaximumSize() );
+
+        assertSame( defaults, CacheSpec.DEFAULT.orElse( defaults ) );
+        assertSame( CacheSpec.DISABLED, CacheSpec.DISABLED.orElse( defaults ) );
+        assertSame( CacheSpec.DISABLED, CacheSpec.DEFAULT.orElse( CacheSpec.DISABLED ) );
+
+    }
+
+    @Test
+    public void testWriteBehind() {
+
+        CacheSpec spec = CacheSpec.DISABLED.writeBehind( 500, TimeUnit.MILLISECONDS );
+        assertFalse( spec.isEnabled() ); // Does not enable caching.
+        assertEquals( 500, spec.getWriteBehind( TimeUnit.MILLISECONDS ) );
+        assertEquals( "disabled,writeBehind=500ms", spec.toString() );
+        assertEquals( spec, CacheSpec.parse( spec.toString() ) );
+
+        CacheSpec defaults = CacheSpec.DEFAULT.maximumSize( 10 ).writeBehind( 1, TimeUnit.SECONDS );
+        CacheSpec resolved = CacheSpec.DISABLED.orElse( defaults );
+        assertFalse( resolved.isEnabled() );
+        assertEquals( 1, resolved.getWriteBehind( TimeUnit.SECONDS ) );
+        assertEquals( CacheSpec.UNSET, resolved.getMaximumSize() );
+        assertSame( spec, spec.orElse( defaults ) );
+
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testParseDisabledWithProperty() {
+
+        CacheSpec.parse( "disabled,maximumSize=10" );
+
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testParseUnknownProperty() {
+
+        CacheSpec.parse( "maximumWeight=10" );
+
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testParseInvalidValue() {
+
+        CacheSpec.parse( "maximumSize=lots" );
+
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testInvalidSize() {
+
+        CacheSpec.DEFAULT.maximumSize( 0 );
+
+    }
+
+}
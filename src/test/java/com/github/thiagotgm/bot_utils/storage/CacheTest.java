@@ -0,0 +1,640 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Cache}.
+ *
+ * @version 1.6
+ * @author ThiagoTGM
+ * @since 2018-09-16
+ */
+public class CacheTest {
+
+    private static final int CAPACITY = 4;
+
+    private Cache<String, Integer> cache;
+
+    @Before
+    public void setUp() {
+
+        cache = new Cache<>( CAPACITY );
+
+    }
+
+    @Test
+    public void testPutAndGet() {
+
+        assertNull( cache.put( "one", 1 ) );
+        assertNull( cache.put( "two", 2 ) );
+        assertEquals( new Integer( 1 ), cache.get( "one" ) );
+        assertEquals( new Integer( 2 ), cache.get( "two" ) );
+        assertNull( cache.get( "three" ) );
+
+        assertEquals( new Integer( 1 ), cache.put( "one", 10 ) );
+        assertEquals( new Integer( 10 ), cache.get( "one" ) );
+        assertEquals( 2, cache.size() );
+
+    }
+
+    @Test
+    public void testNulls() {
+
+        assertNull( cache.put( null, 1 ) );
+        assertTrue( cache.containsKey( null ) );
+        assertEquals( new Integer( 1 ), cache.get( null ) );
+
+        assertNull( cache.put( "null", null ) );
+        assertTrue( cache.containsKey( "null" ) );
+        assertNull( cache.get( "null" ) );
+        assertTrue( cache.containsValue( null ) );
+
+        assertEquals( new Integer( 1 ), cache.remove( null ) );
+        assertFalse( cache.containsKey( null ) );
+
+    }
+
+    @Test
+    public void testLRUEviction() {
+
+        cache.put( "one", 1 );
+        cache.put( "two", 2 );
+        cache.put( "three", 3 );
+        cache.put( "four", 4 );
+
+        cache.get( "one" ); // "two" is now least recently used.
+        cache.put( "five", 5 );
+
+        assertEquals( CAPACITY, cache.size() );
+        assertFalse( cache.containsKey( "two" ) );
+        assertTrue( cache.containsKey( "one" ) );
+        assertTrue( cache.containsKey( "three" ) );
+        assertTrue( cache.containsKey( "four" ) );
+        assertTrue( cache.containsKey( "five" ) );
+
+        cache.put( "six", 6 ); // "three" is now least recently used.
+        assertFalse( cache.containsKey( "three" ) );
+        assertTrue( cache.containsKey( "one" ) );
+
+    }
+
+    @Test
+    public void testUpdate() {
+
+        assertNull( cache.update( "one", 1 ) );
+        assertFalse( cache.containsKey( "one" ) );
+
+        cache.put( "one", 1 );
+        cache.put( "two", 2 );
+        cache.put( "three", 3 );
+        cache.put( "four", 4 );
+
+        assertEquals( new Integer( 1 ), cache.update( "one", 10 ) );
+        cache.put( "five", 5 ); // Update does not change LRU order.
+        assertFalse( cache.containsKey( "one" ) );
+
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+
+        cache.put( "one", 1 );
+        cache.put( "two", 2 );
+        cache.put( "three", 3 );
+
+        assertEquals( new Integer( 2 ), cache.remove( "two" ) );
+        assertNull( cache.remove( "two" ) );
+        assertEquals( 2, cache.size() );
+
+        /* Removed mappings must not count towards the capacity */
+        cache.put( "four", 4 );
+        cache.put( "five", 5 );
+        assertEquals( CAPACITY, cache.size() );
+        assertTrue( cache.containsKey( "one" ) );
+
+        cache.clear();
+        assertTrue( cache.isEmpty() );
+        assertEquals( 0, cache.size() );
+
+        for ( int i = 0; i < CAPACITY; i++ ) {
+
+            cache.put( String.valueOf( i ), i );
+
+        }
+        assertEquals( CAPACITY, cache.size() );
+
+    }
+
+    @Test
+    public void testPolicyParse() {
+
+        assertEquals( Cache.Policy.LRU, Cache.Policy.parse( "lru" ) );
+        assertEquals( Cache.Policy.W_TINY_LFU, Cache.Policy.parse( "W-TinyLFU" ) );
+        assertEquals( Cache.Policy.W_TINY_LFU, Cache.Policy.parse( " W_TINY_LFU " ) );
+
+    }
+
+    @Test
+    public void testTinyLfuBasics() {
+
+        Cache<String, Integer> cache = new Cache<>( CAPACITY, Cache.Policy.W_TINY_LFU );
+        assertEquals( Cache.Policy.W_TINY_LFU, cache.policy() );
+
+        for ( int i = 0; i < 100; i++ ) {
+
+            cache.put( String.valueOf( i ), i );
+            assertTrue( cache.size() <= CAPACITY );
+
+        }
+        assertEquals( CAPACITY, cache.size() );
+
+        cache.put( "one", 1 );
+        assertEquals( new Integer( 1 ), cache.get( "one" ) ); // New mapping enters the window.
+        assertEquals( new Integer( 1 ), cache.remove( "one" ) );
+        assertFalse( cache.containsKey( "one" ) );
+
+        cache.clear();
+        assertTrue( cache.isEmpty() );
+        for ( int i = 0; i < CAPACITY; i++ ) {
+
+            cache.put( String.valueOf( i ), i );
+
+        }
+        assertEquals( CAPACITY, cache.size() );
+
+    }
+
+    @Test
+    public void testTinyLfuScanResistance() {
+
+        final int capacity = 100;
+        Cache<String, Integer> lru = new Cache<>( capacity, Cache.Policy.LRU );
+        Cache<String, Integer> tinyLfu = new Cache<>( capacity, Cache.Policy.W_TINY_LFU );
+
+        for ( int round = 0; round < 10; round++ ) { // Make hot keys frequent.
+
+            for ( int i = 0; i < 50; i++ ) {
+
+                String key = "hot" + i;
+                for ( Cache<String, Integer> cache : Arrays.asList( lru, tinyLfu ) ) {
+
+                    if ( cache.get( key ) == null ) {
+                        cache.put( key, i );
+                    }
+
+                }
+
+            }
+
+        }
+
+        for ( int i = 0; i < 1000; i++ ) { // Scan over one-off keys.
+
+            lru.put( "scan" + i, i );
+            tinyLfu.put( "scan" + i, i );
+
+        }
+
+        int lruHot = 0;
+        int tinyLfuHot = 0;
+        for ( int i = 0; i < 50; i++ ) {
+
+            lruHot += lru.containsKey( "hot" + i ) ? 1 : 0;
+            tinyLfuHot += tinyLfu.containsKey( "hot" + i ) ? 1 : 0;
+
+        }
+        assertEquals( 0, lruHot ); // LRU was flushed by the scan.
+        assertEquals( 50, tinyLfuHot ); // W-TinyLFU kept the hot keys.
+
+    }
+
+    @Test
+    public void testExpireAfterWrite() throws InterruptedException {
+
+        Cache<String, Integer> cache = new Cache<>( CAPACITY, Cache.Policy.LRU, 100, 0, 0,
+                TimeUnit.MILLISECONDS );
+        cache.put( "one", 1 );
+        cache.put( "two", 2 );
+        assertEquals( new Integer( 1 ), cache.get( "one" ) );
+
+        Thread.sleep( 60 );
+        cache.update( "two", 20 ); // Writing resets the time.
+        assertEquals( new Integer( 1 ), cache.get( "one" ) ); // Reading does not.
+
+        Thread.sleep( 60 );
+        assertNull( cache.get( "one" ) );
+        assertFalse( cache.containsKey( "one" ) );
+        assertEquals( new Integer( 20 ), cache.get( "two" ) );
+
+        Thread.sleep( 60 );
+        assertFalse( cache.containsKey( "two" ) );
+        assertNull( cache.update( "two", 2 ) ); // Expired mappings are not updated.
+        assertTrue( cache.isEmpty() );
+
+        cache.put( "one", 1 ); // Can be added again.
+        assertEquals( new Integer( 1 ), cache.get( "one" ) );
+
+    }
+
+    @Test
+    public void testExpireAfterAccess() throws InterruptedException {
+
+        Cache<String, Integer> cache = new Cache<>( CAPACITY, Cache.Policy.W_TINY_LFU, 0, 100, 0,
+                TimeUnit.MILLISECONDS );
+        cache.put( "one", 1 );
+        cache.put( "two", 2 );
+        for ( int i = 0; i < 3; i++ ) {
+
+            Thread.sleep( 60 );
+            assertEquals( new Integer( 1 ), cache.get( "one" ) ); // Reading resets the time.
+
+        }
+        assertTrue( cache.containsKey( "one" ) );
+        assertFalse( cache.containsKey( "two" ) );
+
+        Thread.sleep( 120 );
+        cache.cleanUp();
+        assertTrue( cache.isEmpty() );
+
+    }
+
+    @Test
+    public void testRefreshAfterWrite() throws InterruptedException {
+
+        final List<String> refreshed = new ArrayList<>();
+        Cache<String, Integer> cache = new Cache<String, Integer>( CAPACITY, Cache.Policy.LRU, 0, 0, 50,
+                TimeUnit.MILLISECONDS ) {
+
+            @Override
+            protected void refresh( String key ) {
+
+                refreshed.add( key );
+
+            }
+
+        };
+        cache.put( "one", 1 );
+        cache.get( "one" );
+        assertTrue( refreshed.isEmpty() ); // Not due yet.
+
+        Thread.sleep( 60 );
+        assertEquals( new Integer( 1 ), cache.get( "one" ) ); // Still returns current value.
+        assertEquals( new Integer( 1 ), cache.get( "one" ) );
+        assertEquals( Arrays.asList( "one" ), refreshed ); // Only refreshed once.
+
+        cache.update( "one", 10 ); // Refreshed value written.
+        cache.get( "one" );
+        assertEquals( 1, refreshed.size() );
+
+        Thread.sleep( 60 );
+        cache.get( "one" );
+        assertEquals( Arrays.asList( "one", "one" ), refreshed ); // Due again.
+
+    }
+
+    @Test
+    public void testInvalidateAll() {
+
+        cache.put( "one", 1 );
+        cache.put( "two", 2 );
+        cache.put( "three", 3 );
+
+        cache.invalidateAll( Arrays.asList( "one", "three", "four" ) );
+        assertEquals( 1, cache.size() );
+        assertTrue( cache.containsKey( "two" ) );
+
+        /* Removed mappings must not count towards the capacity */
+        for ( int i = 0; i < CAPACITY - 1; i++ ) {
+
+            cache.put( String.valueOf( i ), i );
+
+        }
+        assertEquals( CAPACITY, cache.size() );
+        assertTrue( cache.containsKey( "two" ) );
+
+    }
+
+    @Test
+    public void testRemoveIf() {
+
+        for ( int i = 0; i < CAPACITY; i++ ) {
+
+            cache.put( String.valueOf( i ), i );
+
+        }
+
+        cache.removeIf( ( k, v ) -> v % 2 == 0 );
+        assertEquals( CAPACITY / 2, cache.size() );
+        for ( int i = 0; i < CAPACITY; i++ ) {
+
+            assertEquals( i % 2 != 0, cache.containsKey( String.valueOf( i ) ) );
+
+        }
+
+        cache.removeIf( ( k, v ) -> true );
+        assertTrue( cache.isEmpty() );
+        assertEquals( 0, cache.weightedSize() );
+
+    }
+
+    @Test
+    public void testHottest() {
+
+        for ( int i = 0; i < CAPACITY; i++ ) {
+
+            cache.put( String.valueOf( i ), i );
+
+        }
+        cache.get( "1" );
+        assertEquals( Arrays.asList( "1", "3", "2", "0" ), cache.hottest( CAPACITY ) );
+        assertEquals( Arrays.asList( "1", "3" ), cache.hottest( 2 ) );
+        assertTrue( cache.hottest( 0 ).isEmpty() );
+
+        Cache<String, Integer> lfu = new Cache<>( 100, Cache.Policy.W_TINY_LFU );
+        for ( int i = 0; i < 100; i++ ) {
+
+            lfu.put( String.valueOf( i ), i );
+
+        }
+        for ( int i = 0; i < 10; i++ ) {
+
+            lfu.put( "new" + i, i ); // Push some into the main area.
+
+        }
+        List<String> hottest = lfu.hottest( 200 );
+        assertEquals( lfu.size(), hottest.size() );
+
+    }
+
+    @Test
+    public void testOnEviction() {
+
+        List<String> evicted = new ArrayList<>();
+        cache = new Cache<String, Integer>( CAPACITY ) {
+
+            @Override
+            protected void onEviction( String key, Integer value ) {
+
+                evicted.add( key + "=" + value );
+
+            }
+
+        };
+        for ( int i = 0; i < CAPACITY; i++ ) {
+
+            cache.put( String.valueOf( i ), i );
+
+        }
+        cache.remove( "1" ); // Removals are not evictions.
+        cache.put( "1", 1 );
+        assertTrue( evicted.isEmpty() );
+
+        cache.put( "new", 10 );
+        assertEquals( Arrays.asList( "0=0" ), evicted );
+        cache.clear();
+        assertEquals( 1, evicted.size() );
+
+    }
+
+    @Test
+    public void testWeigher() {
+
+        Cache<String, Integer> cache = new Cache<>( 10, ( k, v ) -> v, Cache.Policy.LRU, 0, 0, 0,
+                TimeUnit.SECONDS );
+        cache.put( "one", 4 );
+        cache.put( "two", 4 );
+        assertEquals( 8, cache.weightedSize() );
+
+        cache.put( "three", 4 ); // "one" is evicted to fit.
+        assertFalse( cache.containsKey( "one" ) );
+        assertEquals( 8, cache.weightedSize() );
+
+        cache.update( "two", 1 ); // Weight changes when the value changes.
+        assertEquals( 5, cache.weightedSize() );
+        cache.put( "four", 5 );
+        assertEquals( 3, cache.size() );
+        assertEquals( 10, cache.weightedSize() );
+
+        cache.put( "big", 20 ); // Heavier than the whole cache, so cannot stay.
+        assertFalse( cache.containsKey( "big" ) );
+        assertTrue( cache.weightedSize() <= 10 );
+
+        cache.remove( "four" );
+        assertTrue( cache.weightedSize() <= 5 );
+        cache.clear();
+        assertEquals( 0, cache.weightedSize() );
+
+    }
+
+    @Test
+    public void testBudget() {
+
+        Cache.Budget budget = new Cache.Budget( 100 );
+        Cache<Integer, Integer> first = new Cache<>( budget, ( k, v ) -> 1, Cache.Policy.LRU, 0, 0, 0,
+                TimeUnit.SECONDS );
+        assertEquals( 1, budget.cacheCount() );
+        for ( int i = 0; i < 100; i++ ) {
+
+            first.put( i, i );
+
+        }
+        assertEquals( 100, first.size() ); // A single cache can use the whole budget.
+
+        Cache<Integer, Integer> second = new Cache<>( budget, ( k, v ) -> 1, Cache.Policy.W_TINY_LFU, 0, 0, 0,
+                TimeUnit.SECONDS );
+        assertEquals( 2, budget.cacheCount() );
+        for ( int i = 0; i < 100; i++ ) {
+
+            second.put( i, i );
+            assertTrue( budget.weightedSize() <= budget.maximumWeight() );
+
+        }
+        assertEquals( 100, budget.weightedSize() );
+        assertTrue( first.size() >= 50 ); // The first cache keeps at least its fair share.
+        assertTrue( second.size() >= 50 );
+
+    }
+
+    @Test
+    public void testBudgetDropsCollectedCaches() throws InterruptedException {
+
+        Cache.Budget budget = new Cache.Budget( 100 );
+        Cache<Integer, Integer> kept = new Cache<>( budget, ( k, v ) -> 1, Cache.Policy.LRU, 0, 0, 0,
+                TimeUnit.SECONDS );
+        Cache<Integer, Integer> dropped = new Cache<>( budget, ( k, v ) -> 1, Cache.Policy.LRU, 0, 0, 0,
+                TimeUnit.SECONDS );
+        dropped.put( 0, 0 );
+        assertEquals( 2, budget.cacheCount() );
+
+        dropped = null;
+        for ( int i = 0; ( i < 100 ) && ( budget.cacheCount() > 1 ); i++ ) {
+
+            System.gc();
+            Thread.sleep( 10 );
+
+        }
+        assertEquals( 1, budget.cacheCount() ); // Not held by the budget.
+        for ( int i = 0; i < 100; i++ ) {
+
+            kept.put( i, i );
+
+        }
+        assertEquals( 100, kept.size() ); // Whole budget is available again.
+
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+
+        final int threadCount = 8;
+        final int keyRange = 64;
+        final Cache<Integer, Integer> cache = new Cache<>( 16 );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>( threadCount );
+        for ( int i = 0; i < threadCount; i++ ) {
+
+            final long seed = i;
+            Thread thread = new Thread( () -> {
+
+                Random random = new Random( seed );
+                try {
+                    start.await();
+                    for ( int j = 0; j < 20000; j++ ) {
+
+                        Integer key = random.nextInt( keyRange );
+                        int op = random.nextInt( 10 );
+                        if ( op < 6 ) {
+                            Integer value = cache.get( key );
+                            if ( ( value != null ) && !value.equals( key ) ) {
+                                throw new AssertionError( "Wrong value for key " + key );
+                            }
+                        } else if ( op < 9 ) {
+                            cache.put( key, key );
+                        } else {
+                            cache.remove( key );
+                        }
+
+                    }
+                } catch ( Throwable e ) {
+                    error.compareAndSet( null, e );
+                }
+
+            } );
+            thread.start();
+            threads.add( thread );
+
+        }
+
+        start.countDown();
+        for ( Thread thread : threads ) {
+
+            thread.join();
+
+        }
+
+        assertNull( String.valueOf( error.get() ), error.get() );
+        assertTrue( cache.size() <= cache.capacity() );
+
+        /* Cache must still be consistent after the storm */
+        cache.clear();
+        for ( int i = 0; i < 32; i++ ) {
+
+            cache.put( i, i );
+
+        }
+        assertEquals( cache.capacity(), cache.size() );
+        for ( int i = 16; i < 32; i++ ) {
+
+            assertEquals( new Integer( i ), cache.get( i ) );
+
+        }
+
+    }
+
+    @Test
+    public void testConcurrentExpiration() throws InterruptedException {
+
+        final int threadCount = 8;
+        final Cache<Integer, Integer> cache = new Cache<>( 1 << 20, ( k, v ) -> 3, Cache.Policy.LRU, 1, 0, 0,
+                TimeUnit.MILLISECONDS );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        List<Thread> threads = new ArrayList<>( threadCount );
+        for ( int i = 0; i < threadCount; i++ ) {
+
+            final long seed = i;
+            Thread thread = new Thread( () -> {
+
+                Random random = new Random( seed );
+                try {
+                    start.await();
+                    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( 500 );
+                    while ( System.nanoTime() < end ) {
+
+                        Integer key = random.nextInt( 256 );
+                        if ( random.nextBoolean() ) {
+                            cache.get( key ); // Expires old mappings while others do maintenance.
+                        } else {
+                            cache.put( key, key );
+                        }
+
+                    }
+                } catch ( Throwable e ) {
+                    error.compareAndSet( null, e );
+                }
+
+            } );
+            thread.start();
+            threads.add( thread );
+
+        }
+
+        start.countDown();
+        for ( Thread thread : threads ) {
+
+            thread.join();
+
+        }
+        assertNull( String.valueOf( error.get() ), error.get() );
+
+        /* Weight of every expired mapping must be released */
+        Thread.sleep( 5 );
+        cache.cleanUp();
+        cache.hottest( 0 ); // Runs maintenance.
+        assertTrue( cache.isEmpty() );
+        assertEquals( 0, cache.weightedSize() );
+
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Checks that a reported percentile is within the precision of the
+     * histogram.
+     *
+     * @param expected
+     *            The exact value.
+     * @param actual
+     *            The reported value.
+     */
+    private static void assertClose( long expected, long actual ) {
+
+        assertTrue( "Expected " + expected + " but was " + actual, actual >= expected );
+        assertTrue( "Expected " + expected + " but was " + actual,
+                actual <= expected + expected / LatencyHistogram.SUB_BUCKETS );
+
+    }
+
+    @Test
+    public void testEmpty() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals( 0, histogram.getCount() );
+        assertEquals( 0, histogram.getMax() );
+        assertEquals( 0, histogram.getPercentile( 99 ) );
+        assertEquals( 0, histogram.getMean(), 0 );
+
+    }
+
+    @Test
+    public void testPercentiles() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for ( long i = 1; i <= 1000; i++ ) {
+
+            histogram.record( i * 1000 );
+
+        }
+        histogram.record( 5000000000L ); // One slow outlier.
+
+        assertEquals( 1001, histogram.getCount() );
+        assertEquals( 5000000000L, histogram.getMax() );
+        assertClose( 501000, histogram.getPercentile( 50 ) );
+        assertClose( 991000, histogram.getPercentile( 99 ) );
+        assertEquals( 5000000000L, histogram.getPercentile( 100 ) );
+        assertClose( 1000, histogram.getPercentile( 0 ) );
+
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record( -5 ); // Counted as 0.
+        histogram.record( 3 );
+        histogram.record( 7 );
+
+        assertEquals( 0, histogram.getPercentile( 30 ) );
+        assertEquals( 3, histogram.getPercentile( 50 ) );
+        assertEquals( 7, histogram.getPercentile( 99.9 ) );
+        assertEquals( 10, histogram.getSum() );
+
+    }
+
+    @Test
+    public void testOverflowValues() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record( Long.MAX_VALUE );
+        assertEquals( 1, histogram.getCount() );
+        assertEquals( Long.MAX_VALUE, histogram.getMax() );
+        assertTrue( histogram.getPercentile( 50 ) >= LatencyHistogram.MAX_TRACKED - 1 );
+
+        histogram.reset();
+        assertEquals( 0, histogram.getCount() );
+
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testInvalidPercentile() {
+
+        new LatencyHistogram().getPercentile( 101 );
+
+    }
+
+}
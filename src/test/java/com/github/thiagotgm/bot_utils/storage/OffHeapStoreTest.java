@@ -0,0 +1,131 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link OffHeapStore}.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class OffHeapStoreTest {
+
+    private static final int SEGMENT_SIZE = 64;
+
+    private OffHeapStore store;
+
+    @Before
+    public void setUp() {
+
+        store = new OffHeapStore( SEGMENT_SIZE * OffHeapStore.SEGMENT_COUNT );
+
+    }
+
+    private static byte[] bytes( String str ) {
+
+        return str.getBytes( StandardCharsets.UTF_8 );
+
+    }
+
+    private static String string( byte[] bytes ) {
+
+        return bytes == null ? null : new String( bytes, StandardCharsets.UTF_8 );
+
+    }
+
+    @Test
+    public void testPutGetRemove() {
+
+        assertTrue( store.put( "one", bytes( "first" ) ) );
+        assertTrue( store.put( "two", bytes( "" ) ) );
+        assertEquals( "first", string( store.get( "one" ) ) );
+        assertEquals( "", string( store.get( "two" ) ) );
+        assertNull( store.get( "three" ) );
+        assertEquals( 2, store.size() );
+
+        assertTrue( store.put( "one", bytes( "replaced" ) ) );
+        assertEquals( "replaced", string( store.get( "one" ) ) );
+        assertEquals( "replaced", string( store.remove( "one" ) ) );
+        assertNull( store.get( "one" ) );
+        assertEquals( 1, store.size() );
+
+    }
+
+    @Test
+    public void testTooLarge() {
+
+        store.put( "key", bytes( "small" ) );
+        assertFalse( store.put( "key", new byte[SEGMENT_SIZE] ) );
+        assertNull( store.get( "key" ) ); // Old value is not kept.
+
+    }
+
+    @Test
+    public void testFifoEviction() {
+
+        int perSegment = SEGMENT_SIZE / ( Integer.BYTES + 12 );
+        int total = perSegment * OffHeapStore.SEGMENT_COUNT;
+        for ( int i = 0; i < total; i++ ) {
+
+            assertTrue( store.put( i, new byte[12] ) );
+
+        }
+        assertEquals( total, store.size() );
+
+        store.put( total, new byte[12] ); // Reuses the oldest segment.
+        assertEquals( total - perSegment + 1, store.size() );
+        for ( int i = 0; i < perSegment; i++ ) {
+
+            assertNull( store.get( i ) );
+
+        }
+        assertNotNull( store.get( perSegment ) );
+        assertNotNull( store.get( total ) );
+
+    }
+
+    @Test
+    public void testRemoveIf() {
+
+        for ( int i = 0; i < 10; i++ ) {
+
+            store.put( i, bytes( String.valueOf( i % 2 ) ) );
+
+        }
+        store.removeIf( ( k, v ) -> string( v ).equals( "0" ) );
+        assertEquals( 5, store.size() );
+        store.removeKeysIf( k -> (Integer) k < 5 );
+        assertEquals( 3, store.size() );
+        assertNotNull( store.get( 9 ) );
+
+        store.clear();
+        assertEquals( 0, store.size() );
+        assertTrue( store.put( 1, bytes( "again" ) ) );
+        assertEquals( "again", string( store.get( 1 ) ) );
+
+    }
+
+}
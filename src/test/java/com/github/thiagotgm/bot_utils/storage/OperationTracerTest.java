@@ -0,0 +1,170 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.thiagotgm.bot_utils.storage.OperationTracer.SlowOperation;
+import com.github.thiagotgm.bot_utils.storage.OperationTracer.Trace;
+
+/**
+ * Unit tests for {@link OperationTracer}.
+ * <p>
+ * Operations are made slow by using a threshold of 1 nanosecond.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class OperationTracerTest {
+
+    private static final OperationTracer.Sizer SIZER = new OperationTracer.Sizer() {
+
+        @Override
+        public long keySize( Object key ) {
+
+            return key.toString().length();
+
+        }
+
+        @Override
+        public long valueSize( Object value ) {
+
+            return 10 * value.toString().length();
+
+        }
+
+    };
+
+    @After
+    public void tearDown() {
+
+        OperationTracer.setThreshold( "testSlow", -1, TimeUnit.NANOSECONDS );
+        OperationTracer.setThreshold( "testInner", -1, TimeUnit.NANOSECONDS );
+        OperationTracer.clearRecent();
+
+    }
+
+    /**
+     * Retrieves the most recent slow operation with the given name.
+     *
+     * @param operation
+     *            The operation name.
+     * @return The slow operation, or <tt>null</tt> if none.
+     */
+    private static SlowOperation getRecent( String operation ) {
+
+        SlowOperation found = null;
+        for ( SlowOperation slow : OperationTracer.getRecent() ) {
+
+            if ( slow.getOperation().equals( operation ) ) {
+                found = slow;
+            }
+
+        }
+        return found;
+
+    }
+
+    @Test
+    public void testSlowOperation() {
+
+        OperationTracer.setThreshold( "testSlow", 1, TimeUnit.NANOSECONDS );
+        assertEquals( 1, OperationTracer.getThreshold( "testSlow", TimeUnit.NANOSECONDS ) );
+        List<SlowOperation> reported = new ArrayList<>();
+        Consumer<SlowOperation> listener = reported::add;
+        OperationTracer.addListener( listener );
+
+        DatabaseMetrics metrics = DatabaseMetrics.get( "TracerTest", "map" );
+        try ( Trace trace = OperationTracer.start( "testSlow", metrics, SIZER ).key( "key" ) ) {
+            assertEquals( "value", trace.value( "value" ) );
+            metrics.recordBackendCall( 1000 );
+            metrics.recordBackendCall( 1000 );
+        } finally {
+            OperationTracer.removeListener( listener );
+        }
+
+        SlowOperation slow = getRecent( "testSlow" );
+        assertNotNull( slow );
+        assertEquals( 1, reported.size() );
+        assertSame( slow, reported.get( 0 ) );
+        assertEquals( "TracerTest", slow.getDatabase() );
+        assertEquals( "map", slow.getStructure() );
+        assertEquals( 3, slow.getKeySize() );
+        assertEquals( 50, slow.getValueSize() );
+        assertEquals( -1, slow.getItems() );
+        assertEquals( 2, slow.getBackendCalls() );
+        assertEquals( Thread.currentThread().getName(), slow.getThread() );
+        assertTrue( slow.toString().contains( "operation=testSlow database=TracerTest structure=map" ) );
+
+    }
+
+    @Test
+    public void testFastOperation() {
+
+        OperationTracer.setThreshold( "testSlow", 1, TimeUnit.HOURS );
+        try ( Trace trace = OperationTracer.start( "testSlow", "TracerTest", "map" ) ) {
+            trace.keySize( 1 );
+        }
+        assertNull( getRecent( "testSlow" ) );
+
+        OperationTracer.setThreshold( "testSlow", 0, TimeUnit.NANOSECONDS ); // Disabled.
+        try ( Trace trace = OperationTracer.start( "testSlow", "TracerTest", "map" ) ) {
+            trace.keySize( 1 );
+        }
+        assertNull( getRecent( "testSlow" ) );
+
+    }
+
+    @Test
+    public void testNested() {
+
+        OperationTracer.setThreshold( "testSlow", 1, TimeUnit.NANOSECONDS );
+        OperationTracer.setThreshold( "testInner", 1, TimeUnit.NANOSECONDS );
+        DatabaseMetrics metrics = DatabaseMetrics.get( "TracerTest", "tree" );
+        try ( Trace outer = OperationTracer.start( "testSlow", "TracerTest", "tree" ).items( 5 ) ) {
+            metrics.recordBackendCall( 1000 );
+            try ( Trace inner = OperationTracer.start( "testInner" ).detail( "inner" ) ) {
+                metrics.recordBackendCall( 1000 );
+            }
+        }
+
+        SlowOperation inner = getRecent( "testInner" );
+        assertEquals( "TracerTest", inner.getDatabase() ); // Inherited.
+        assertEquals( "tree", inner.getStructure() );
+        assertEquals( "inner", inner.getDetail() );
+        assertEquals( 1, inner.getBackendCalls() );
+        SlowOperation outer = getRecent( "testSlow" );
+        assertEquals( 5, outer.getItems() );
+        assertEquals( -1, outer.getKeySize() );
+        assertEquals( 2, outer.getBackendCalls() ); // Includes nested calls.
+
+        List<SlowOperation> recent = OperationTracer.getRecent();
+        assertTrue( recent.indexOf( inner ) < recent.indexOf( outer ) ); // Oldest first.
+
+    }
+
+}
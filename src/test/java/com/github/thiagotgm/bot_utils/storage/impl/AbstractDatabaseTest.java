@@ -0,0 +1,813 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage.impl;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.thiagotgm.bot_utils.Settings;
+import com.github.thiagotgm.bot_utils.storage.AsyncMap;
+import com.github.thiagotgm.bot_utils.storage.AsyncTree;
+import com.github.thiagotgm.bot_utils.storage.BulkMap;
+import com.github.thiagotgm.bot_utils.storage.BulkTree;
+import com.github.thiagotgm.bot_utils.storage.Cache;
+import com.github.thiagotgm.bot_utils.storage.CacheSpec;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMXBean;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMXBean.CacheInfo;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMetrics;
+import com.github.thiagotgm.bot_utils.storage.DatabaseMetrics.Operation;
+import com.github.thiagotgm.bot_utils.storage.DatabaseStats;
+import com.github.thiagotgm.bot_utils.storage.translate.IntegerTranslator;
+import com.github.thiagotgm.bot_utils.storage.translate.StringTranslator;
+import com.github.thiagotgm.bot_utils.utils.Management;
+import com.github.thiagotgm.bot_utils.utils.graph.Graph;
+import com.github.thiagotgm.bot_utils.utils.graph.Tree;
+
+/**
+ * Unit tests for the caching wrappers of {@link AbstractDatabase}, using an
+ * {@link XMLDatabase} in a temporary folder as the backend.
+ *
+ * @version 1.13
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class AbstractDatabaseTest {
+
+    private static final int SIZE = 100;
+    private static final int HOT = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private XMLDatabase db;
+    private Map<Integer, String> map;
+
+    @Before
+    public void setUp() {
+
+        db = new XMLDatabase();
+        assertTrue( db.load( Arrays.asList( folder.getRoot().getPath() ) ) );
+        map = db.getDataMap( "map", new IntegerTranslator(), new StringTranslator(),
+                CacheSpec.DEFAULT.maximumSize( SIZE * 2 ) );
+        for ( int i = 0; i < SIZE; i++ ) {
+
+            map.put( i, "value" + i );
+
+        }
+
+    }
+
+    @After
+    public void tearDown() {
+
+        db.close();
+
+    }
+
+    /**
+     * Reads the hot keys, and checks how many of the reads were cache hits.
+     *
+     * @return The amount of cache hits.
+     */
+    private long readHotKeys() {
+
+        long hits = DatabaseStats.getCacheHits();
+        for ( int i = 0; i < HOT; i++ ) {
+
+            assertEquals( "value" + i, map.get( i ) );
+
+        }
+        return DatabaseStats.getCacheHits() - hits;
+
+    }
+
+    @Test
+    public void testIteratorRemoveKeepsCache() {
+
+        readHotKeys(); // Make sure hot keys are cached.
+        map.get( SIZE - 1 ); // Cache a key that will be removed.
+        assertEquals( HOT, readHotKeys() );
+
+        /* Cleanup job that removes every key outside the hot set */
+        Iterator<Integer> iter = map.keySet().iterator();
+        while ( iter.hasNext() ) {
+
+            if ( iter.next() >= HOT ) {
+                iter.remove();
+            }
+
+        }
+
+        assertEquals( HOT, readHotKeys() ); // Hot set survived the cleanup.
+        assertNull( map.get( SIZE - 1 ) ); // Removed key is not served from cache.
+        assertFalse( map.containsKey( SIZE - 1 ) );
+        assertEquals( HOT, map.size() );
+
+    }
+
+    @Test
+    public void testEntryIteratorRemove() {
+
+        readHotKeys();
+        Iterator<Map.Entry<Integer, String>> iter = map.entrySet().iterator();
+        while ( iter.hasNext() ) {
+
+            if ( iter.next().getKey() == 0 ) {
+                iter.remove();
+            }
+
+        }
+
+        assertNull( map.get( 0 ) );
+        long hits = DatabaseStats.getCacheHits();
+        for ( int i = 1; i < HOT; i++ ) {
+
+            assertEquals( "value" + i, map.get( i ) );
+
+        }
+        assertEquals( HOT - 1, DatabaseStats.getCacheHits() - hits );
+
+    }
+
+    @Test
+    public void testBulkRemove() {
+
+        readHotKeys();
+        List<Integer> removed = new ArrayList<>();
+        for ( int i = HOT / 2; i < SIZE; i++ ) {
+
+            removed.add( i );
+
+        }
+        map.keySet().removeAll( removed );
+
+        assertEquals( HOT / 2, map.size() );
+        for ( int i = HOT / 2; i < HOT; i++ ) {
+
+            assertNull( map.get( i ) );
+
+        }
+        long hits = DatabaseStats.getCacheHits();
+        for ( int i = 0; i < HOT / 2; i++ ) {
+
+            assertEquals( "value" + i, map.get( i ) );
+
+        }
+        assertEquals( HOT / 2, DatabaseStats.getCacheHits() - hits );
+
+    }
+
+    @Test
+    public void testValueRemove() {
+
+        readHotKeys();
+        assertTrue( map.values().remove( "value3" ) );
+        assertNull( map.get( 3 ) );
+        assertFalse( map.containsKey( 3 ) );
+
+        long hits = DatabaseStats.getCacheHits();
+        assertEquals( "value4", map.get( 4 ) ); // Other mappings stay cached.
+        assertEquals( 1, DatabaseStats.getCacheHits() - hits );
+
+    }
+
+    @Test
+    public void testRetainAll() {
+
+        readHotKeys();
+        Set<Map.Entry<Integer, String>> retained = new HashSet<>();
+        for ( int i = 0; i < HOT; i++ ) {
+
+            retained.add( new AbstractMap.SimpleEntry<>( i, i == 1 ? "changed" : "value" + i ) );
+
+        }
+        map.entrySet().retainAll( retained );
+
+        assertEquals( HOT - 1, map.size() );
+        assertNull( map.get( 1 ) ); // Value did not match, so was removed.
+        long hits = DatabaseStats.getCacheHits();
+        assertEquals( "value2", map.get( 2 ) );
+        assertEquals( 1, DatabaseStats.getCacheHits() - hits );
+
+    }
+
+    @Test
+    public void testTreePathRemove() {
+
+        Tree<String, Integer> tree = db.getDataTree( "tree", new StringTranslator(), new IntegerTranslator() );
+        tree.put( Arrays.asList( "a" ), 1 );
+        tree.put( Arrays.asList( "a", "b" ), 2 );
+        tree.put( Arrays.asList( "c" ), 3 );
+        assertEquals( new Integer( 1 ), tree.get( Arrays.asList( "a" ) ) );
+        assertEquals( new Integer( 2 ), tree.get( Arrays.asList( "a", "b" ) ) );
+
+        Iterator<Graph.Entry<String, Integer>> iter = tree.entrySet().iterator();
+        while ( iter.hasNext() ) {
+
+            if ( iter.next().getPath().size() > 1 ) {
+                iter.remove();
+            }
+
+        }
+
+        assertNull( tree.get( Arrays.asList( "a", "b" ) ) );
+        long hits = DatabaseStats.getCacheHits();
+        assertEquals( new Integer( 1 ), tree.get( Arrays.asList( "a" ) ) );
+        assertEquals( 1, DatabaseStats.getCacheHits() - hits );
+
+    }
+
+    @Test
+    public void testBulkGet() {
+
+        BulkMap<Integer, String> bulk = (BulkMap<Integer, String>) map;
+        readHotKeys(); // Cache the hot keys.
+        long hits = DatabaseStats.getCacheHits();
+        long misses = DatabaseStats.getCacheMisses();
+
+        Map<Integer, String> found = bulk.getAll( Arrays.asList( 0, 1, HOT, HOT + 1, SIZE, 0 ) );
+        assertEquals( 4, found.size() );
+        assertEquals( "value0", found.get( 0 ) );
+        assertEquals( "value1", found.get( 1 ) );
+        assertEquals( "value" + HOT, found.get( HOT ) );
+        assertEquals( "value" + ( HOT + 1 ), found.get( HOT + 1 ) );
+        assertFalse( found.containsKey( SIZE ) );
+        assertEquals( 2, DatabaseStats.getCacheHits() - hits );
+        assertEquals( 2, DatabaseStats.getCacheMisses() - misses );
+
+        hits = DatabaseStats.getCacheHits();
+        assertEquals( "value" + HOT, map.get( HOT ) ); // Cached by the bulk get.
+        assertEquals( 1, DatabaseStats.getCacheHits() - hits );
+
+        map.put( HOT, "changed" );
+        assertEquals( "changed", bulk.getAll( Arrays.asList( HOT ) ).get( HOT ) );
+
+    }
+
+    @Test
+    public void testBulkMapRemoveAll() {
+
+        BulkMap<Integer, String> bulk = (BulkMap<Integer, String>) map;
+        readHotKeys(); // Cache the hot keys.
+        bulk.removeAll( Arrays.asList( 0, 1, SIZE, 1, "wrong type" ) );
+
+        assertEquals( SIZE - 2, map.size() );
+        assertNull( map.get( 0 ) ); // Not served from cache.
+        assertFalse( map.containsKey( 1 ) );
+        assertEquals( "value2", map.get( 2 ) );
+
+    }
+
+    @Test
+    public void testTreeGetPaths() {
+
+        BulkTree<String, Integer> tree = (BulkTree<String, Integer>) db.getDataTree( "tree",
+                new StringTranslator(), new IntegerTranslator() );
+        tree.put( Arrays.asList( "a" ), 1 );
+        tree.put( Arrays.asList( "a", "b" ), 2 );
+        tree.put( Arrays.asList( "c" ), 3 );
+
+        Map<List<String>, Integer> found = tree.getPaths( Arrays.asList( Arrays.asList( "a", "b" ),
+                Arrays.asList( "c" ), Arrays.asList( "d" ) ) );
+        assertEquals( 2, found.size() );
+        assertEquals( new Integer( 2 ), found.get( Arrays.asList( "a", "b" ) ) );
+        assertEquals( new Integer( 3 ), found.get( Arrays.asList( "c" ) ) );
+
+    }
+
+    @Test
+    public void testTreeSubtree() {
+
+        BulkTree<String, Integer> tree = (BulkTree<String, Integer>) db.getDataTree( "tree",
+                new StringTranslator(), new IntegerTranslator() );
+        tree.put( Arrays.asList( "a" ), 1 );
+        tree.put( Arrays.asList( "a", "b" ), 2 );
+        tree.put( Arrays.asList( "a", "b", "c" ), 3 );
+        tree.put( Arrays.asList( "ab" ), 4 );
+        tree.put( Arrays.asList( "d", "a" ), 5 );
+
+        Map<List<String>, Integer> found = tree.getSubtree( Arrays.asList( "a" ) );
+        assertEquals( 3, found.size() );
+        assertEquals( new Integer( 3 ), found.get( Arrays.asList( "a", "b", "c" ) ) );
+        assertEquals( 5, tree.getSubtree( Arrays.asList() ).size() );
+        assertTrue( tree.getSubtree( Arrays.asList( "e" ) ).isEmpty() );
+
+        assertEquals( new Integer( 2 ), tree.get( Arrays.asList( "a", "b" ) ) ); // Cache it.
+        assertEquals( new Integer( 4 ), tree.get( Arrays.asList( "ab" ) ) );
+        assertTrue( tree.removeSubtree( Arrays.asList( "a", "b" ) ) );
+        assertFalse( tree.removeSubtree( Arrays.asList( "a", "b" ) ) );
+        assertNull( tree.get( Arrays.asList( "a", "b" ) ) ); // Not served from cache.
+        assertNull( tree.get( Arrays.asList( "a", "b", "c" ) ) );
+        assertEquals( new Integer( 1 ), tree.get( Arrays.asList( "a" ) ) );
+        assertEquals( new Integer( 4 ), tree.get( Arrays.asList( "ab" ) ) );
+        assertEquals( 3, tree.size() );
+
+    }
+
+    @Test
+    public void testStreams() {
+
+        DatabaseMetrics metrics = DatabaseMetrics.get( "XMLDatabase", "map" );
+        long iterations = metrics.getLatency( Operation.ITERATE ).getCount();
+        map.put( SIZE, "buffered" );
+
+        assertEquals( SIZE + 1, map.keySet().parallelStream().count() );
+        assertEquals( SIZE * ( SIZE + 1 ) / 2,
+                map.keySet().parallelStream().mapToInt( Integer::intValue ).sum() );
+        assertTrue( map.values().stream().anyMatch( "buffered"::equals ) ); // Flushed.
+        assertEquals( "value1", map.entrySet().stream().filter( e -> e.getKey() == 1 ).findAny().get()
+                .getValue() );
+        assertTrue( metrics.getLatency( Operation.ITERATE ).getCount() > iterations );
+
+        db.close();
+        try {
+            map.keySet().stream();
+            fail( "Should not stream a closed database." );
+        } catch ( IllegalStateException e ) {
+            // Expected.
+        }
+
+    }
+
+    @Test
+    public void testMetrics() {
+
+        DatabaseMetrics metrics = DatabaseMetrics.get( "XMLDatabase", "map" );
+        DatabaseMetrics other = DatabaseMetrics.get( "XMLDatabase", "other" );
+        db.getDataMap( "other", new IntegerTranslator(), new StringTranslator() );
+        long gets = metrics.getLatency( Operation.GET ).getCount();
+        long puts = metrics.getLatency( Operation.PUT ).getCount();
+        long iterations = metrics.getLatency( Operation.ITERATE ).getCount();
+        long calls = metrics.getBackendCalls().getCount();
+        long otherGets = other.getLatency( Operation.GET ).getCount();
+
+        map.get( 0 ); // Miss.
+        map.get( 0 ); // Hit.
+        map.put( SIZE, "new" );
+        map.keySet().iterator().next();
+
+        assertEquals( gets + 2, metrics.getLatency( Operation.GET ).getCount() );
+        assertEquals( puts + 1, metrics.getLatency( Operation.PUT ).getCount() );
+        assertEquals( iterations + 1, metrics.getLatency( Operation.ITERATE ).getCount() );
+        assertEquals( calls + 2, metrics.getBackendCalls().getCount() ); // Fetch and put.
+        assertEquals( otherGets, other.getLatency( Operation.GET ).getCount() );
+        assertTrue( metrics.getLatency( Operation.GET ).getMax() > 0 );
+        assertTrue( DatabaseMetrics.getAll().contains( metrics ) );
+
+    }
+
+    @Test
+    public void testDatabaseCachePolicy() {
+
+        Cache.Policy other = ( AbstractDatabase.CACHE_POLICY == Cache.Policy.LRU ) ? Cache.Policy.W_TINY_LFU
+                : Cache.Policy.LRU;
+        String setting = AbstractDatabase.CACHE_POLICY_SETTING_PREFIX + "XMLDatabase";
+        assertEquals( AbstractDatabase.CACHE_POLICY, db.getCachePolicy() );
+        Settings.setSetting( setting, other.name() );
+        try {
+            assertEquals( other, db.getCachePolicy() );
+            db.getDataMap( "policy", new IntegerTranslator(), new StringTranslator() );
+            db.getDataMap( "explicit", new IntegerTranslator(), new StringTranslator(),
+                    CacheSpec.DEFAULT.policy( AbstractDatabase.CACHE_POLICY ) );
+            int found = 0;
+            for ( CacheInfo info : db.getMXBean().getCaches() ) {
+
+                if ( info.getName().equals( "policy" ) ) {
+                    assertEquals( other.toString(), info.getPolicy() );
+                    found++;
+                } else if ( info.getName().equals( "explicit" ) ) { // Spec takes precedence.
+                    assertEquals( AbstractDatabase.CACHE_POLICY.toString(), info.getPolicy() );
+                    found++;
+                }
+
+            }
+            assertEquals( 2, found );
+
+            Settings.setSetting( setting, "invalid" );
+            assertEquals( AbstractDatabase.CACHE_POLICY, db.getCachePolicy() );
+        } finally {
+            Settings.setSetting( setting, AbstractDatabase.CACHE_POLICY.name() );
+        }
+
+    }
+
+    @Test
+    public void testManagementBean() {
+
+        readHotKeys();
+        ObjectName name = Management.register( "Database", "AbstractDatabaseTest", db.getMXBean() );
+        assertNotNull( name );
+        try { // Go through the MBean server to check that the bean is compliant.
+            DatabaseMXBean bean = JMX.newMXBeanProxy( ManagementFactory.getPlatformMBeanServer(), name,
+                    DatabaseMXBean.class );
+            assertEquals( "XMLDatabase", bean.getName() );
+            assertFalse( bean.isClosed() );
+
+            CacheInfo info = null;
+            for ( CacheInfo cache : bean.getCaches() ) {
+
+                if ( cache.getName().equals( "map" ) ) {
+                    info = cache;
+                }
+
+            }
+            assertNotNull( info );
+            assertFalse( info.isTree() );
+            assertTrue( info.isEnabled() );
+            assertEquals( HOT, info.getSize() );
+            assertEquals( SIZE * 2, info.getMaximumWeight() );
+
+            bean.flushCaches();
+            assertEquals( 0, readHotKeys() ); // All fetched again.
+        } finally {
+            Management.unregister( name );
+        }
+
+    }
+
+    /**
+     * Obtains a map that buffers writes for longer than any test takes.
+     *
+     * @return The map.
+     */
+    private Map<Integer, String> getBufferedMap() {
+
+        return db.getDataMap( "buffered", new IntegerTranslator(), new StringTranslator(),
+                CacheSpec.DEFAULT.writeBehind( 1, TimeUnit.HOURS ) );
+
+    }
+
+    @Test
+    public void testWriteBehindReads() {
+
+        Map<Integer, String> buffered = getBufferedMap();
+        long flushes = DatabaseStats.getWriteBehindFlushes();
+        long coalesced = DatabaseStats.getWriteBehindCoalesced();
+
+        assertNull( buffered.put( 1, "first" ) );
+        assertEquals( "first", buffered.put( 1, "second" ) ); // Replaces buffered write.
+        assertNull( buffered.put( 2, "other" ) );
+        assertEquals( "second", buffered.get( 1 ) );
+        assertTrue( buffered.containsKey( 2 ) );
+        assertEquals( "other", ( (BulkMap<Integer, String>) buffered ).getAll( Arrays.asList( 2 ) ).get( 2 ) );
+        assertEquals( coalesced + 1, DatabaseStats.getWriteBehindCoalesced() );
+        assertEquals( flushes, DatabaseStats.getWriteBehindFlushes() ); // Nothing written yet.
+
+        assertEquals( 2, buffered.size() ); // Flushes buffer first.
+        assertEquals( flushes + 1, DatabaseStats.getWriteBehindFlushes() );
+        assertEquals( "second", buffered.get( 1 ) );
+        assertEquals( "second", buffered.remove( 1 ) );
+        assertFalse( buffered.containsKey( 1 ) );
+
+        db.getMXBean().flushCaches(); // Key 2 is now only in the database.
+        long misses = DatabaseStats.getCacheMisses();
+        assertNull( buffered.put( 2, "changed" ) ); // Previous value is not read.
+        assertEquals( misses, DatabaseStats.getCacheMisses() );
+        assertEquals( "changed", buffered.put( 2, "again" ) ); // Buffered value.
+        assertEquals( "again", buffered.get( 2 ) );
+
+    }
+
+    @Test
+    public void testSetDelete() {
+
+        BulkMap<Integer, String> bulk = (BulkMap<Integer, String>) map;
+        long misses = DatabaseStats.getCacheMisses();
+        bulk.set( 0, "changed" );
+        bulk.set( SIZE, "new" );
+        bulk.delete( 1 );
+        bulk.delete( SIZE + 1 );
+        assertEquals( misses, DatabaseStats.getCacheMisses() ); // Nothing was read.
+
+        assertEquals( "changed", map.get( 0 ) );
+        assertEquals( "new", map.get( SIZE ) );
+        assertNull( map.get( 1 ) );
+        assertEquals( SIZE, map.size() );
+
+        BulkMap<Integer, String> buffered = (BulkMap<Integer, String>) getBufferedMap();
+        misses = DatabaseStats.getCacheMisses();
+        buffered.set( 1, "buffered" );
+        assertEquals( misses, DatabaseStats.getCacheMisses() ); // Not read before buffering.
+        assertEquals( "buffered", buffered.get( 1 ) );
+        buffered.delete( 1 ); // Flushes buffer first.
+        assertFalse( buffered.containsKey( 1 ) );
+
+        BulkTree<String, Integer> tree = (BulkTree<String, Integer>) db.getDataTree( "tree",
+                new StringTranslator(), new IntegerTranslator() );
+        tree.set( Arrays.asList( "a", "b" ), 1 );
+        assertEquals( new Integer( 1 ), tree.get( Arrays.asList( "a", "b" ) ) );
+        tree.delete( Arrays.asList( "a", "b" ) );
+        assertNull( tree.get( Arrays.asList( "a", "b" ) ) );
+
+    }
+
+    @Test
+    public void testAtomic() {
+
+        assertEquals( "value0", map.get( 0 ) ); // Cache it.
+        assertEquals( "value0!", map.compute( 0, ( k, v ) -> v + "!" ) );
+        assertEquals( "value0!", map.get( 0 ) );
+        assertEquals( "value0!?", map.merge( 0, "?", String::concat ) );
+        assertEquals( "value0!?", map.get( 0 ) );
+
+        assertEquals( "value1", map.get( 1 ) );
+        assertFalse( map.replace( 1, "other", "replaced" ) );
+        assertEquals( "value1", map.get( 1 ) );
+        assertTrue( map.replace( 1, "value1", "replaced" ) );
+        assertEquals( "replaced", map.get( 1 ) );
+
+        assertEquals( "replaced", map.putIfAbsent( 1, "absent" ) );
+        assertEquals( "replaced", map.get( 1 ) );
+        assertNull( map.putIfAbsent( SIZE, "absent" ) );
+        assertEquals( "absent", map.get( SIZE ) );
+        assertEquals( "absent", map.computeIfAbsent( SIZE, k -> "other" ) );
+
+        assertNull( map.computeIfPresent( 2, ( k, v ) -> null ) ); // Removes mapping.
+        assertFalse( map.containsKey( 2 ) );
+        assertNull( map.get( 2 ) );
+        assertEquals( SIZE, map.size() );
+
+        assertEquals( "value3", map.get( 3 ) ); // Cache it.
+        assertFalse( map.remove( 3, "other" ) );
+        long misses = DatabaseStats.getCacheMisses();
+        assertEquals( "value3", map.get( 3 ) );
+        assertEquals( misses + 1, DatabaseStats.getCacheMisses() ); // Cache was invalidated.
+        assertTrue( map.remove( 3, "value3" ) );
+        assertFalse( map.containsKey( 3 ) );
+
+        Tree<String, Integer> tree = db.getDataTree( "tree", new StringTranslator(), new IntegerTranslator() );
+        List<String> path = Arrays.asList( "a", "b" );
+        assertNull( tree.putIfAbsent( path, 1 ) );
+        assertEquals( new Integer( 1 ), tree.putIfAbsent( path, 2 ) );
+        assertFalse( tree.replace( path, 2, 3 ) );
+        assertTrue( tree.replace( path, 1, 3 ) );
+        assertEquals( new Integer( 3 ), tree.get( path ) );
+        assertFalse( tree.remove( path, 1 ) );
+        assertEquals( new Integer( 3 ), tree.get( path ) );
+        assertTrue( tree.remove( path, 3 ) );
+        assertNull( tree.get( path ) );
+
+    }
+
+    @Test
+    public void testWriteBehindFlushedOnClose() {
+
+        Map<Integer, String> buffered = getBufferedMap();
+        for ( int i = 0; i < SIZE; i++ ) {
+
+            buffered.put( i, "buffered" + i );
+
+        }
+        db.close();
+
+        db = new XMLDatabase(); // Reopen to check what was written.
+        assertTrue( db.load( Arrays.asList( folder.getRoot().getPath() ) ) );
+        Map<Integer, String> reloaded = db.getDataMap( "buffered", new IntegerTranslator(),
+                new StringTranslator() );
+        assertEquals( SIZE, reloaded.size() );
+        for ( int i = 0; i < SIZE; i++ ) {
+
+            assertEquals( "buffered" + i, reloaded.get( i ) );
+
+        }
+
+    }
+
+    @Test
+    public void testTreeWriteBehind() {
+
+        Tree<String, Integer> buffered = db.getDataTree( "bufferedTree", new StringTranslator(),
+                new IntegerTranslator(), CacheSpec.DEFAULT.writeBehind( 1, TimeUnit.HOURS ) );
+        long flushes = DatabaseStats.getWriteBehindFlushes();
+        buffered.put( Arrays.asList( "a" ), 1 );
+        buffered.put( Arrays.asList( "a", "b" ), 2 );
+        buffered.put( Arrays.asList( "c", "d", "e" ), 3 );
+        buffered.put( Arrays.asList( "a", "b" ), 4 ); // Coalesced.
+        assertEquals( new Integer( 4 ), buffered.get( Arrays.asList( "a", "b" ) ) );
+        assertEquals( flushes, DatabaseStats.getWriteBehindFlushes() );
+
+        assertEquals( 3, buffered.size() ); // Flushes buffer first.
+        assertEquals( flushes + 1, DatabaseStats.getWriteBehindFlushes() );
+        buffered.put( Arrays.asList( "f" ), 5 );
+        db.close();
+
+        db = new XMLDatabase(); // Reopen to check what was written.
+        assertTrue( db.load( Arrays.asList( folder.getRoot().getPath() ) ) );
+        Tree<String, Integer> reloaded = db.getDataTree( "bufferedTree", new StringTranslator(),
+                new IntegerTranslator() );
+        assertEquals( 4, reloaded.size() );
+        assertEquals( new Integer( 1 ), reloaded.get( Arrays.asList( "a" ) ) );
+        assertEquals( new Integer( 4 ), reloaded.get( Arrays.asList( "a", "b" ) ) );
+        assertEquals( new Integer( 3 ), reloaded.get( Arrays.asList( "c", "d", "e" ) ) );
+        assertEquals( new Integer( 5 ), reloaded.get( Arrays.asList( "f" ) ) );
+
+    }
+
+    @Test
+    public void testAsync() {
+
+        AsyncMap<Integer, String> async = (AsyncMap<Integer, String>) map;
+        assertEquals( "value0", async.getAsync( 0 ).join() );
+        long hits = DatabaseStats.getCacheHits();
+        CompletableFuture<String> cached = async.getAsync( 0 );
+        assertTrue( cached.isDone() ); // Cache hit completes immediately.
+        assertEquals( "value0", cached.join() );
+        assertEquals( 1, DatabaseStats.getCacheHits() - hits );
+
+        assertNull( async.getAsync( SIZE ).join() );
+        assertTrue( async.getAsync( SIZE ).isDone() ); // Known to not exist.
+        assertFalse( async.containsKeyAsync( SIZE ).join() );
+
+        assertNull( async.putAsync( SIZE, "new" ).join() );
+        assertEquals( "new", map.get( SIZE ) ); // Cached value was updated.
+        assertEquals( "value1", async.putAsync( 1, "changed" ).join() );
+        assertEquals( "changed", async.getAsync( 1 ).join() );
+        assertTrue( async.containsKeyAsync( SIZE ).join() );
+
+        assertEquals( "new", async.removeAsync( SIZE ).join() );
+        assertNull( async.getAsync( SIZE ).join() ); // Not served from cache.
+        assertNull( async.removeAsync( SIZE ).join() );
+        assertEquals( SIZE, map.size() );
+
+    }
+
+    @Test
+    public void testAsyncAfterBufferedWrites() {
+
+        Map<Integer, String> buffered = getBufferedMap();
+        AsyncMap<Integer, String> async = (AsyncMap<Integer, String>) buffered;
+        buffered.put( 1, "buffered" );
+        buffered.put( 2, "other" );
+
+        // Buffered writes are flushed before the asynchronous write is issued.
+        assertEquals( "buffered", async.putAsync( 1, "async" ).join() );
+        assertEquals( "async", buffered.get( 1 ) );
+        assertEquals( "other", async.removeAsync( 2 ).join() );
+        assertFalse( buffered.containsKey( 2 ) );
+
+    }
+
+    @Test
+    public void testTreeAsync() {
+
+        AsyncTree<String, Integer> tree = (AsyncTree<String, Integer>) db.getDataTree( "tree",
+                new StringTranslator(), new IntegerTranslator() );
+        assertNull( tree.putAsync( Arrays.asList( "a", "b" ), 1 ).join() );
+        assertEquals( new Integer( 1 ), tree.getAsync( Arrays.asList( "a", "b" ) ).join() );
+        assertTrue( tree.getAsync( Arrays.asList( "a", "b" ) ).isDone() );
+        assertTrue( tree.containsPathAsync( Arrays.asList( "a", "b" ) ).join() );
+        assertFalse( tree.containsPathAsync( Arrays.asList( "a", "c" ) ).join() );
+
+        assertEquals( new Integer( 1 ), tree.removeAsync( Arrays.asList( "a", "b" ) ).join() );
+        assertNull( tree.get( Arrays.asList( "a", "b" ) ) );
+
+    }
+
+    @Test
+    public void testWarmUp() throws InterruptedException {
+
+        readHotKeys();
+        Map<String, List<String>> hotKeys = db.getHotKeys( HOT / 2 );
+        assertEquals( HOT / 2, hotKeys.get( "map" ).size() );
+        db.close();
+
+        db = new XMLDatabase(); // Restart.
+        assertTrue( db.load( Arrays.asList( folder.getRoot().getPath() ) ) );
+        long misses = DatabaseStats.getCacheMisses();
+        db.warmUp( hotKeys, HOT );
+        map = db.getDataMap( "map", new IntegerTranslator(), new StringTranslator(),
+                CacheSpec.DEFAULT.maximumSize( SIZE * 2 ) ); // Starts prefetching.
+        for ( int i = 0; ( i < 100 ) && ( DatabaseStats.getCacheMisses() - misses < HOT / 2 ); i++ ) {
+
+            Thread.sleep( 50 ); // Wait for prefetch.
+
+        }
+
+        long hits = DatabaseStats.getCacheHits();
+        for ( int i = HOT / 2; i < HOT; i++ ) { // Most recently read.
+
+            assertEquals( "value" + i, map.get( i ) );
+
+        }
+        assertEquals( HOT / 2, DatabaseStats.getCacheHits() - hits );
+
+    }
+
+    /**
+     * Translator that blocks while encoding the value <tt>"old"</tt> in a given
+     * thread, to make moving it to the off-heap tier slow.
+     */
+    private static class BlockingTranslator extends StringTranslator {
+
+        final CountDownLatch blocked = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        volatile Thread blockedThread;
+
+        @Override
+        public String encode( String obj ) {
+
+            if ( "old".equals( obj ) && ( Thread.currentThread() == blockedThread ) ) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.encode( obj );
+
+        }
+
+    }
+
+    /**
+     * Evicts a key from the cache of a map that has an off-heap tier, and makes
+     * the given write while the evicted value is being moved to the tier.
+     *
+     * @param write
+     *            The write to make. The evicted key is 1, with the value
+     *            <tt>"old"</tt>.
+     * @return The map.
+     * @throws InterruptedException
+     *             if interrupted while waiting for the eviction.
+     */
+    private Map<Integer, String> raceEviction( Consumer<Map<Integer, String>> write )
+            throws InterruptedException {
+
+        db.close();
+        db = new XMLDatabase( 1 << 20 );
+        assertTrue( db.load( Arrays.asList( folder.getRoot().getPath() ) ) );
+        BlockingTranslator translator = new BlockingTranslator();
+        Map<Integer, String> tiered = db.getDataMap( "tiered", new IntegerTranslator(), translator,
+                CacheSpec.DEFAULT.maximumSize( 1 ).policy( Cache.Policy.LRU ) );
+        tiered.put( 1, "old" );
+        tiered.put( 2, "two" );
+        assertEquals( "old", tiered.get( 1 ) ); // Now cached.
+
+        Thread evictor = new Thread( () -> tiered.get( 2 ) ); // Evicts 1.
+        translator.blockedThread = evictor;
+        evictor.start();
+        assertTrue( translator.blocked.await( 10, TimeUnit.SECONDS ) );
+        write.accept( tiered );
+        translator.release.countDown();
+        evictor.join();
+        return tiered;
+
+    }
+
+    @Test
+    public void testEvictionRacesPut() throws InterruptedException {
+
+        Map<Integer, String> tiered = raceEviction( m -> m.put( 1, "new" ) );
+        assertEquals( "new", tiered.get( 1 ) ); // Old value not moved to the tier.
+        assertEquals( "new", tiered.get( 1 ) );
+
+    }
+
+    @Test
+    public void testEvictionRacesRemove() throws InterruptedException {
+
+        Map<Integer, String> tiered = raceEviction( m -> m.remove( 1 ) );
+        assertNull( tiered.get( 1 ) );
+        assertFalse( tiered.containsKey( 1 ) );
+
+    }
+
+}
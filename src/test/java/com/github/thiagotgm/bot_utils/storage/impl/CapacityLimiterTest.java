@@ -0,0 +1,146 @@
+/*
+ * This file is part of BotUtils.
+ *
+ * BotUtils is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BotUtils is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with BotUtils. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.github.thiagotgm.bot_utils.storage.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.github.thiagotgm.bot_utils.storage.impl.CapacityLimiter.Priority;
+
+/**
+ * Unit tests for {@link CapacityLimiter}.
+ *
+ * @version 1.0
+ * @author ThiagoTGM
+ * @since 2018-09-17
+ */
+public class CapacityLimiterTest {
+
+    private static final double DELTA = 0.5;
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testInvalidCapacity() {
+
+        new CapacityLimiter( 0 );
+
+    }
+
+    @Test
+    public void testEstimate() {
+
+        CapacityLimiter limiter = new CapacityLimiter( 100 );
+        assertEquals( 2, limiter.estimate( 2 ), 0 ); // Initially 1 unit per item.
+        assertEquals( 500, limiter.getAvailable(), DELTA ); // Starts full.
+
+        limiter.consumed( 2, Double.NaN, 2 ); // Unknown consumption.
+        assertEquals( 1, limiter.estimate( 1 ), 0 );
+        limiter.consumed( 2, 10, 2 ); // Used 5 per item.
+        assertEquals( 1.8, limiter.estimate( 1 ), 1e-9 );
+        assertEquals( 492, limiter.getAvailable(), DELTA ); // Estimate was corrected.
+        limiter.consumed( 1, 50, 0 ); // Not per item.
+        assertEquals( 1.8, limiter.estimate( 1 ), 1e-9 );
+        assertEquals( 443, limiter.getAvailable(), DELTA );
+
+    }
+
+    @Test
+    public void testDebt() throws InterruptedException {
+
+        CapacityLimiter limiter = new CapacityLimiter( 100 );
+        long start = System.nanoTime();
+        limiter.acquire( 550, Priority.INTERACTIVE ); // More than available.
+        assertTrue( limiter.getAvailable() < 0 );
+        limiter.acquire( 1, Priority.INTERACTIVE ); // Waits for the debt (0.5s).
+        long elapsed = ( System.nanoTime() - start ) / 1000000;
+        assertTrue( "Waited " + elapsed + "ms", elapsed >= 450 );
+
+    }
+
+    @Test
+    public void testTryAcquire() {
+
+        CapacityLimiter limiter = new CapacityLimiter( 100 );
+        assertEquals( 0, limiter.tryAcquire( 550, Priority.INTERACTIVE ) ); // More than available.
+        assertEquals( -50, limiter.getAvailable(), DELTA );
+
+        long wait = limiter.tryAcquire( 1, Priority.INTERACTIVE ); // Must wait for the debt (0.5s).
+        assertTrue( "Wait " + wait, wait > 0 && wait <= 500000000L );
+        assertEquals( -50, limiter.getAvailable(), DELTA ); // Nothing taken.
+
+        wait = limiter.tryAcquire( 1, Priority.BACKGROUND ); // Also waits for the reserve (1.5s).
+        assertTrue( "Wait " + wait, wait > 1000000000L && wait <= 1500000000L );
+
+    }
+
+    @Test
+    public void testThrottled() throws InterruptedException {
+
+        CapacityLimiter limiter = new CapacityLimiter( 100 );
+        limiter.throttled( 1 );
+        assertEquals( 1, limiter.getThrottles() );
+        assertEquals( 50, limiter.getRate(), DELTA );
+        assertEquals( 0, limiter.getAvailable(), DELTA );
+
+        for ( int i = 0; i < 10; i++ ) {
+
+            limiter.throttled( 0 );
+
+        }
+        assertEquals( 11, limiter.getThrottles() );
+        assertEquals( 100 * CapacityLimiter.MIN_RATE_FRACTION, limiter.getRate(), DELTA );
+
+        Thread.sleep( 200 ); // Recovers 10 units/s per second.
+        double rate = limiter.getRate();
+        assertTrue( "Rate " + rate, rate > 6 && rate < 10 );
+
+    }
+
+    @Test
+    public void testPriority() throws InterruptedException {
+
+        CapacityLimiter limiter = new CapacityLimiter( 1000 );
+        limiter.acquire( 5100, Priority.INTERACTIVE ); // In debt by 100.
+
+        List<Priority> order = new CopyOnWriteArrayList<>();
+        Thread background = new Thread( () -> {
+
+            try {
+                limiter.acquire( 1, Priority.BACKGROUND );
+                order.add( Priority.BACKGROUND );
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+
+        } );
+        background.start();
+        Thread.sleep( 10 ); // Let background request start waiting.
+
+        limiter.acquire( 1, Priority.INTERACTIVE );
+        order.add( Priority.INTERACTIVE );
+        background.join( 5000 );
+        assertFalse( background.isAlive() );
+        assertEquals( 2, order.size() );
+        assertEquals( Priority.INTERACTIVE, order.get( 0 ) ); // Served first.
+
+    }
+
+}
@@ -29,22 +29,32 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.github.thiagotgm.bot_utils.Settings;
+import com.github.thiagotgm.bot_utils.storage.AsyncTree;
+import com.github.thiagotgm.bot_utils.storage.BulkMap;
+import com.github.thiagotgm.bot_utils.storage.BulkTree;
 import com.github.thiagotgm.bot_utils.storage.Data;
+import com.github.thiagotgm.bot_utils.storage.Database.DatabaseException;
 import com.github.thiagotgm.bot_utils.storage.Translator;
 import com.github.thiagotgm.bot_utils.storage.impl.DynamoDBDatabase;
 import com.github.thiagotgm.bot_utils.storage.translate.DataTranslator;
 import com.github.thiagotgm.bot_utils.storage.translate.StringTranslator;
+import com.github.thiagotgm.bot_utils.utils.Utils;
 
 /**
  * Unit tests for {@link DynamoDBDatabase}.
  *
- * @version 1.0
+ * @version 1.2
  * @author ThiagoTGM
  * @since 2018-08-30
  */
@@ -225,6 +235,30 @@ public class DynamoDBDatabaseTest {
 
     }
 
+    @Test
+    public void testGetAll() {
+
+        List<String> keys = new ArrayList<>( TEST_DB_MAPPINGS.keySet() );
+        keys.add( "not here" );
+        keys.add( keys.get( 0 ) ); // Repeated key.
+
+        Map<String, Data> found = ( (BulkMap<String, Data>) map ).getAll( keys );
+        assertEquals( TEST_DB_MAPPINGS, found );
+
+        /* Check more keys than fit in a single request */
+
+        Map<String, Data> tempMap = getTempTable();
+        Map<String, Data> expected = new HashMap<>();
+        for ( int i = 0; i < DynamoDBDatabase.BATCH_GET_LIMIT + 10; i++ ) {
+
+            expected.put( "key" + i, Data.numberData( i ) );
+
+        }
+        tempMap.putAll( expected );
+        assertEquals( expected, ( (BulkMap<String, Data>) tempMap ).getAll( expected.keySet() ) );
+
+    }
+
     @Test
     @SuppressWarnings( "unlikely-arg-type" )
     public void testPutAndRemove() {
@@ -504,6 +538,24 @@ public class DynamoDBDatabaseTest {
 
     }
 
+    @Test
+    public void testAbandonedScan() {
+
+        for ( int i = 0; i < 10; i++ ) { // More than the scanner pool could hold if scans were pinned.
+
+            try ( Stream<String> keys = map.keySet().stream() ) {
+                assertTrue( TEST_DB_MAPPINGS.containsKey( keys.findFirst().get() ) );
+            }
+            try ( Stream<Data> values = map.values().parallelStream() ) {
+                assertTrue( values.anyMatch( TEST_DB_MAPPINGS::containsValue ) );
+            }
+            assertTrue( TEST_DB_MAPPINGS.containsKey( map.keySet().iterator().next() ) ); // Not closed.
+
+        }
+        assertEquals( TEST_DB_MAPPINGS.keySet(), map.keySet().stream().collect( Collectors.toSet() ) );
+
+    }
+
     @Test
     public void testKeySetIteratorRemove() {
 
@@ -1506,4 +1558,702 @@ public class DynamoDBDatabaseTest {
 
     }
 
+    /**
+     * Replaces the database being tested with a newly loaded one.
+     * 
+     * @param database
+     *            The new database.
+     */
+    private void useDatabase( DynamoDBDatabase database ) {
+
+        db.close();
+        db = database;
+        assumeTrue( db.load( Arrays.asList( "yes", "8000", "", "" ) ) );
+
+    }
+
+    /**
+     * Creates a temporary table with string keys and values, whose requests are
+     * not rate-limited (so that tests with many items do not wait for the
+     * capacity of the table).
+     * 
+     * @return The temporary table.
+     */
+    private Map<String, String> getUnlimitedTempTable() {
+
+        boolean rateLimiting = Settings.getBooleanSetting( DynamoDBDatabase.RATE_LIMITING_SETTING );
+        Settings.setSetting( DynamoDBDatabase.RATE_LIMITING_SETTING, false );
+        try {
+            Map<String, String> map = getTempTable( new StringTranslator(), new StringTranslator() );
+            map.isEmpty(); // Creates the limiters while disabled.
+            return map;
+        } finally {
+            Settings.setSetting( DynamoDBDatabase.RATE_LIMITING_SETTING, rateLimiting );
+        }
+
+    }
+
+    /**
+     * Creates mappings with keys made of the given prefix followed by a number.
+     * 
+     * @param prefix
+     *            The prefix of the keys.
+     * @param start
+     *            The first number (inclusive).
+     * @param end
+     *            The last number (exclusive).
+     * @return The mappings, from each key to itself.
+     */
+    private static Map<String, String> mappings( String prefix, int start, int end ) {
+
+        Map<String, String> mappings = new HashMap<>();
+        for ( int i = start; i < end; i++ ) {
+
+            mappings.put( prefix + i, prefix + i );
+
+        }
+        return mappings;
+
+    }
+
+    /* Batch writes */
+
+    @Test
+    public void testBatchPutAll() {
+
+        Map<String, String> map = getUnlimitedTempTable();
+        Map<String, String> expected = mappings( "key", 0, 60 ); // More than two batches.
+
+        map.putAll( expected );
+        assertEquals( expected, new HashMap<>( map ) );
+        assertEquals( expected.size(), map.size() );
+
+        Map<String, String> update = mappings( "key", 50, 80 ); // Present and absent keys.
+        update.replaceAll( ( k, v ) -> v + "!" );
+        map.putAll( update );
+        expected.putAll( update );
+        assertEquals( expected, new HashMap<>( map ) );
+        assertEquals( 80, map.size() );
+
+        map.putAll( new HashMap<>() );
+        assertEquals( 80, map.size() );
+
+    }
+
+    @Test
+    public void testBatchRemoveAll() {
+
+        Map<String, String> map = getUnlimitedTempTable();
+        Map<String, String> expected = mappings( "key", 0, 60 );
+        map.putAll( expected );
+
+        // Present and absent keys, and keys of the wrong type.
+        List<Object> keys = new ArrayList<>( mappings( "key", 0, 30 ).keySet() );
+        keys.addAll( mappings( "absent", 0, 20 ).keySet() );
+        keys.add( 42 );
+        ( (BulkMap<String, String>) map ).removeAll( keys );
+        expected.keySet().removeAll( keys );
+        assertEquals( expected, new HashMap<>( map ) );
+        assertEquals( 30, map.size() );
+
+        ( (BulkMap<String, String>) map ).removeAll( mappings( "absent", 0, 30 ).keySet() );
+        assertEquals( expected, new HashMap<>( map ) );
+
+        ( (BulkMap<String, String>) map ).removeAll( expected.keySet() );
+        assertTrue( map.isEmpty() );
+
+    }
+
+    @Test
+    public void testBatchKeySetRemoveAll() {
+
+        Map<String, String> map = getUnlimitedTempTable();
+        Map<String, String> expected = mappings( "key", 0, 60 );
+        map.putAll( expected );
+
+        List<Object> keys = new ArrayList<>( mappings( "key", 20, 50 ).keySet() );
+        keys.addAll( mappings( "absent", 0, 20 ).keySet() );
+        keys.add( 42 );
+        assertTrue( map.keySet().removeAll( keys ) );
+        expected.keySet().removeAll( keys );
+        assertEquals( expected, new HashMap<>( map ) );
+        assertEquals( 30, map.size() );
+
+        assertFalse( map.keySet().removeAll( keys ) ); // Already removed.
+        assertFalse( map.keySet().removeAll( mappings( "absent", 0, 30 ).keySet() ) );
+        assertEquals( expected, new HashMap<>( map ) );
+
+        assertTrue( map.keySet().removeAll( expected.keySet() ) );
+        assertTrue( map.isEmpty() );
+
+    }
+
+    /* Single writes without return values */
+
+    @Test
+    public void testSetAndDelete() {
+
+        BulkMap<String, String> map = (BulkMap<String, String>) getTempTable( new StringTranslator(),
+                new StringTranslator() );
+
+        map.set( "key", "a" );
+        assertEquals( "a", map.get( "key" ) );
+        map.set( "key", "b" );
+        assertEquals( "b", map.get( "key" ) );
+        map.set( "other", "c" );
+        assertEquals( 2, map.size() );
+
+        map.delete( "key" );
+        assertFalse( map.containsKey( "key" ) );
+        map.delete( "key" ); // Already deleted.
+        map.delete( "absent" );
+        map.delete( 42 ); // Wrong type.
+        assertEquals( 1, map.size() );
+        assertEquals( "c", map.get( "other" ) );
+
+    }
+
+    /* Clearing */
+
+    @Test
+    public void testClearScan() {
+
+        Map<String, String> temp = getUnlimitedTempTable();
+        Map<String, String> expected = mappings( "key", 0, 60 );
+        temp.putAll( expected );
+
+        temp.clear();
+        assertTrue( temp.isEmpty() );
+        assertEquals( 0, temp.size() );
+        assertFalse( temp.keySet().iterator().hasNext() );
+        assertEquals( TEST_DB_MAPPINGS, new HashMap<>( map ) ); // Other tables are not affected.
+
+        temp.clear(); // Already empty.
+        assertTrue( temp.isEmpty() );
+
+        temp.putAll( expected ); // Table still usable.
+        assertEquals( expected, new HashMap<>( temp ) );
+
+    }
+
+    /* Size modes */
+
+    @Test
+    public void testScanSize() {
+
+        Map<String, String> map = getTempTable( new StringTranslator(), new StringTranslator() );
+        Map<String, String> other = db.newMap( TEMP_TABLE, new StringTranslator(), new StringTranslator() );
+
+        assertEquals( 0, map.size() );
+        map.put( "key", "a" );
+        other.put( "other", "b" ); // Also seen by other maps.
+        assertEquals( 2, map.size() );
+        assertEquals( 2, other.size() );
+        map.remove( "other" );
+        assertEquals( 1, other.size() );
+
+    }
+
+    @Test
+    public void testCounterSize() {
+
+        useDatabase( new DynamoDBDatabase( DynamoDBDatabase.SizeMode.COUNTER ) );
+        Map<String, String> map = getUnlimitedTempTable();
+        db.recount(); // Counter may be left over from a previous run.
+        BulkMap<String, String> bulk = (BulkMap<String, String>) map;
+
+        assertEquals( 0, map.size() );
+        assertTrue( map.isEmpty() );
+
+        map.put( "key", "a" );
+        assertEquals( 1, map.size() );
+        map.put( "key", "b" ); // Replaced.
+        assertEquals( 1, map.size() );
+        bulk.set( "set", "c" );
+        assertEquals( 2, map.size() );
+        bulk.set( "set", "d" ); // Replaced.
+        assertEquals( 2, map.size() );
+        assertNull( map.putIfAbsent( "absent", "e" ) );
+        assertEquals( "e", map.putIfAbsent( "absent", "f" ) );
+        assertEquals( 3, map.size() );
+
+        map.putAll( mappings( "key", 0, 40 ) );
+        assertEquals( 43, map.size() );
+        map.putAll( mappings( "key", 30, 50 ) ); // Partially present.
+        assertEquals( 53, map.size() );
+
+        assertEquals( "b", map.remove( "key" ) );
+        assertNull( map.remove( "key" ) );
+        assertEquals( 52, map.size() );
+        bulk.delete( "set" );
+        bulk.delete( "set" ); // Already deleted.
+        assertEquals( 51, map.size() );
+        assertTrue( map.remove( "absent", "e" ) );
+        assertFalse( map.remove( "absent", "e" ) );
+        assertEquals( 50, map.size() );
+
+        List<Object> keys = new ArrayList<>( mappings( "key", 0, 20 ).keySet() );
+        keys.addAll( mappings( "missing", 0, 10 ).keySet() );
+        bulk.removeAll( keys );
+        assertEquals( 30, map.size() );
+        assertFalse( map.keySet().removeAll( keys ) ); // Already removed.
+        assertTrue( map.keySet().removeAll( mappings( "key", 20, 30 ).keySet() ) );
+        assertEquals( 20, map.size() );
+        assertEquals( 20, new HashSet<>( map.keySet() ).size() ); // Matches the actual items.
+
+        map.clear();
+        assertEquals( 0, map.size() );
+        assertTrue( map.isEmpty() );
+
+        // Writes from other processes are only counted after a recount.
+        putUnversioned( "outside", "g" );
+        assertEquals( 0, map.size() );
+        db.recount();
+        assertEquals( 1, map.size() );
+
+    }
+
+    /* Versioned writes */
+
+    /**
+     * Retrieves the version of an item in the temporary table, directly from the
+     * table.
+     * 
+     * @param key
+     *            The key of the item.
+     * @return The version, or <tt>null</tt> if the item does not exist or has no
+     *         version.
+     */
+    private Object getTempVersion( String key ) {
+
+        Item item = db.dynamoDB.getTable( TEMP_TABLE ).getItem( DynamoDBDatabase.KEY_ATTRIBUTE, key );
+        return item == null ? null : item.get( DynamoDBDatabase.VERSION_ATTRIBUTE );
+
+    }
+
+    /**
+     * Writes an item to the temporary table the way it was written before items
+     * had versions.
+     * 
+     * @param key
+     *            The key of the item.
+     * @param value
+     *            The value of the item.
+     */
+    private void putUnversioned( String key, String value ) {
+
+        db.dynamoDB.getTable( TEMP_TABLE ).putItem( new Item().withPrimaryKey( DynamoDBDatabase.KEY_ATTRIBUTE, key )
+                .withString( DynamoDBDatabase.VALUE_ATTRIBUTE, value ) );
+
+    }
+
+    @Test
+    public void testCompute() {
+
+        Map<String, String> map = getTempTable( new StringTranslator(), new StringTranslator() );
+
+        // New item.
+        assertEquals( "a", map.compute( "key", ( k, v ) -> v == null ? "a" : "wrong" ) );
+        assertEquals( "a", map.get( "key" ) );
+        Object version = getTempVersion( "key" );
+        assertNotNull( version );
+        assertEquals( 1, map.size() );
+
+        // Absent and still absent.
+        assertNull( map.compute( "other", ( k, v ) -> null ) );
+        assertFalse( map.containsKey( "other" ) );
+
+        // Existing item.
+        assertEquals( "ab", map.compute( "key", ( k, v ) -> v + "b" ) );
+        assertEquals( "ab", map.get( "key" ) );
+        assertNotEquals( version, getTempVersion( "key" ) );
+        version = getTempVersion( "key" );
+
+        // Same instance is not written.
+        assertEquals( "ab", map.compute( "key", ( k, v ) -> v ) );
+        assertEquals( version, getTempVersion( "key" ) );
+
+        // Removal.
+        assertNull( map.compute( "key", ( k, v ) -> null ) );
+        assertFalse( map.containsKey( "key" ) );
+        assertEquals( 0, map.size() );
+
+        // Item written before versions were stored.
+        putUnversioned( "old", "c" );
+        assertNull( getTempVersion( "old" ) );
+        assertEquals( "cd", map.compute( "old", ( k, v ) -> v + "d" ) );
+        assertEquals( "cd", map.get( "old" ) );
+        assertNotNull( getTempVersion( "old" ) );
+        putUnversioned( "old2", "e" );
+        assertNull( map.compute( "old2", ( k, v ) -> null ) );
+        assertFalse( map.containsKey( "old2" ) );
+
+    }
+
+    @Test
+    public void testComputeConflict() {
+
+        Map<String, String> map = getTempTable( new StringTranslator(), new StringTranslator() );
+        Map<String, String> other = db.newMap( TEMP_TABLE, new StringTranslator(), new StringTranslator() );
+        map.put( "key", "a" );
+
+        // Item changed by another writer between the read and the write.
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals( "b!", map.compute( "key", ( k, v ) -> {
+
+            if ( calls.incrementAndGet() == 1 ) {
+                assertEquals( "a", v );
+                other.put( "key", "b" );
+            }
+            return v + "!";
+
+        } ) );
+        assertEquals( 2, calls.get() );
+        assertEquals( "b!", map.get( "key" ) );
+
+        // Item created by another writer.
+        calls.set( 0 );
+        assertEquals( "c!", map.compute( "new", ( k, v ) -> {
+
+            if ( calls.incrementAndGet() == 1 ) {
+                assertNull( v );
+                other.put( "new", "c" );
+            }
+            return v + "!";
+
+        } ) );
+        assertEquals( 2, calls.get() );
+
+        // Item removed by another writer.
+        calls.set( 0 );
+        assertEquals( "gone", map.compute( "new", ( k, v ) -> {
+
+            if ( calls.incrementAndGet() == 1 ) {
+                assertEquals( "c!", v );
+                other.remove( "new" );
+            }
+            return ( v == null ) ? "gone" : v + "!";
+
+        } ) );
+        assertEquals( 2, calls.get() );
+
+        // Unversioned item changed by another writer.
+        putUnversioned( "old", "d" );
+        calls.set( 0 );
+        assertEquals( "e!", map.compute( "old", ( k, v ) -> {
+
+            if ( calls.incrementAndGet() == 1 ) {
+                assertEquals( "d", v );
+                other.put( "old", "e" );
+            }
+            return v + "!";
+
+        } ) );
+        assertEquals( 2, calls.get() );
+
+        // Item that keeps changing.
+        calls.set( 0 );
+        try {
+            map.compute( "key", ( k, v ) -> {
+
+                other.put( "key", "changed" + calls.incrementAndGet() );
+                return "never";
+
+            } );
+            fail( "Should have thrown an exception." );
+        } catch ( DatabaseException e ) {
+            // Normal.
+        }
+        assertTrue( calls.get() > 1 );
+        assertEquals( "changed" + calls.get(), map.get( "key" ) );
+
+    }
+
+    @Test
+    public void testPutIfAbsentAndReplace() {
+
+        Map<String, String> map = getTempTable( new StringTranslator(), new StringTranslator() );
+
+        assertNull( map.putIfAbsent( "key", "a" ) );
+        assertEquals( "a", map.get( "key" ) );
+        Object version = getTempVersion( "key" );
+        assertEquals( "a", map.putIfAbsent( "key", "b" ) );
+        assertEquals( "a", map.get( "key" ) );
+        assertEquals( version, getTempVersion( "key" ) ); // Not written.
+
+        assertNull( map.replace( "other", "c" ) );
+        assertFalse( map.containsKey( "other" ) );
+        assertEquals( "a", map.replace( "key", "c" ) );
+        assertEquals( "c", map.get( "key" ) );
+        assertNotEquals( version, getTempVersion( "key" ) );
+        version = getTempVersion( "key" );
+
+        assertFalse( map.replace( "key", "a", "d" ) );
+        assertEquals( "c", map.get( "key" ) );
+        assertEquals( version, getTempVersion( "key" ) );
+        assertFalse( map.replace( "other", "c", "d" ) );
+        assertFalse( map.containsKey( "other" ) );
+        assertTrue( map.replace( "key", "c", "d" ) );
+        assertEquals( "d", map.get( "key" ) );
+        assertNotEquals( version, getTempVersion( "key" ) );
+
+        putUnversioned( "old", "e" );
+        assertEquals( "e", map.putIfAbsent( "old", "f" ) );
+        assertTrue( map.replace( "old", "e", "f" ) );
+        assertEquals( "f", map.get( "old" ) );
+        assertNotNull( getTempVersion( "old" ) );
+        assertEquals( 2, map.size() );
+
+    }
+
+    @Test
+    public void testRemoveValue() {
+
+        Map<String, String> map = getTempTable( new StringTranslator(), new StringTranslator() );
+        map.put( "key", "a" );
+        Object version = getTempVersion( "key" );
+
+        assertFalse( map.remove( "key", "b" ) );
+        assertEquals( "a", map.get( "key" ) );
+        assertEquals( version, getTempVersion( "key" ) );
+        assertFalse( map.remove( "other", "a" ) );
+        assertFalse( map.remove( 42, "a" ) ); // Wrong type.
+        assertFalse( map.remove( "key", 42 ) );
+        assertTrue( map.remove( "key", "a" ) );
+        assertFalse( map.containsKey( "key" ) );
+        assertEquals( 0, map.size() );
+
+        putUnversioned( "old", "c" );
+        assertFalse( map.remove( "old", "d" ) );
+        assertTrue( map.remove( "old", "c" ) );
+        assertTrue( map.isEmpty() );
+
+    }
+
+    @Test
+    public void testWritesChangeVersion() {
+
+        Map<String, String> map = getTempTable( new StringTranslator(), new StringTranslator() );
+
+        map.put( "key", "a" );
+        Object version = getTempVersion( "key" );
+        assertNotNull( version );
+        map.put( "key", "a" ); // Same value still counts as a write.
+        assertNotEquals( version, getTempVersion( "key" ) );
+        version = getTempVersion( "key" );
+
+        ( (BulkMap<String, String>) map ).set( "key", "b" );
+        assertNotEquals( version, getTempVersion( "key" ) );
+        version = getTempVersion( "key" );
+
+        Map<String, String> toPut = new HashMap<>();
+        toPut.put( "key", "c" );
+        toPut.put( "other", "d" );
+        map.putAll( toPut );
+        assertNotEquals( version, getTempVersion( "key" ) );
+        assertNotNull( getTempVersion( "other" ) );
+        assertEquals( toPut, new HashMap<>( map ) );
+
+        putUnversioned( "old", "e" );
+        map.put( "old", "f" );
+        assertNotNull( getTempVersion( "old" ) );
+
+    }
+
+    /* Partitioned tree layout */
+
+    /**
+     * Switches to a database that uses the partitioned tree layout and creates a
+     * temporary tree in it.
+     * 
+     * @return The temporary tree.
+     */
+    @SuppressWarnings( "unchecked" )
+    private BulkTree<String, String> getTempPartitionedTree() {
+
+        useDatabase( new DynamoDBDatabase( DynamoDBDatabase.SizeMode.SCAN, DynamoDBDatabase.TreeLayout.PARTITIONED ) );
+        hasTempTable = true;
+        return (BulkTree<String, String>) db.newTree( TEMP_TABLE, new StringTranslator(),
+                new StringTranslator() );
+
+    }
+
+    /**
+     * Retrieves the item stored in the temporary table with the given keys.
+     * 
+     * @param partition
+     *            The partition key.
+     * @param sort
+     *            The sort key.
+     * @return The item, or <tt>null</tt> if there is none.
+     */
+    private Item getTempItem( String partition, String sort ) {
+
+        return db.dynamoDB.getTable( TEMP_TABLE ).getItem( DynamoDBDatabase.KEY_ATTRIBUTE, partition,
+                DynamoDBDatabase.SORT_ATTRIBUTE, sort );
+
+    }
+
+    @Test
+    public void testPartitionedKeys() {
+
+        BulkTree<String, String> tree = getTempPartitionedTree();
+
+        // Single element: the sort key is just the separator.
+        assertNull( tree.put( Arrays.asList( "a" ), "single" ) );
+        Item item = getTempItem( "a", ":" );
+        assertNotNull( item );
+        assertEquals( "single", tree.get( Arrays.asList( "a" ) ) );
+
+        // Several elements: each one followed by the separator.
+        assertNull( tree.put( Arrays.asList( "a", "b", "c" ), "deep" ) );
+        assertNotNull( getTempItem( "a", ":b:c:" ) );
+        assertEquals( "deep", tree.get( Arrays.asList( "a", "b", "c" ) ) );
+
+        // Empty elements are encoded, so they never make an empty key.
+        assertNull( tree.put( Arrays.asList( "", "" ), "empty" ) );
+        assertNotNull( getTempItem( Utils.EMPTY_MARKER, ":" + Utils.EMPTY_MARKER + ":" ) );
+        assertEquals( "empty", tree.get( Arrays.asList( "", "" ) ) );
+        assertNull( tree.put( Arrays.asList( "" ), "emptyOne" ) );
+        assertNotNull( getTempItem( Utils.EMPTY_MARKER, ":" ) );
+        assertEquals( "emptyOne", tree.get( Arrays.asList( "" ) ) );
+
+        // Elements that contain the separator are encoded.
+        assertNull( tree.put( Arrays.asList( "x:y", ":" ), "colon" ) );
+        assertNotNull( getTempItem( "x" + Utils.SEPARATOR_MARKER + "y", ":" + Utils.SEPARATOR_MARKER + ":" ) );
+        assertEquals( "colon", tree.get( Arrays.asList( "x:y", ":" ) ) );
+        assertNull( tree.get( Arrays.asList( "x", "y", ":" ) ) );
+
+        // Keys decode back to the original paths.
+        Set<List<String>> expected = new HashSet<>();
+        expected.add( Arrays.asList( "a" ) );
+        expected.add( Arrays.asList( "a", "b", "c" ) );
+        expected.add( Arrays.asList( "", "" ) );
+        expected.add( Arrays.asList( "" ) );
+        expected.add( Arrays.asList( "x:y", ":" ) );
+        assertEquals( expected, new HashSet<>( tree.pathSet() ) );
+        assertEquals( 5, tree.size() );
+
+        // Removal uses the same keys.
+        assertEquals( "emptyOne", tree.remove( Arrays.asList( "" ) ) );
+        assertNull( getTempItem( Utils.EMPTY_MARKER, ":" ) );
+        assertEquals( "empty", tree.get( Arrays.asList( "", "" ) ) );
+        assertEquals( 4, tree.size() );
+
+    }
+
+    @Test
+    public void testPartitionedGetSubtree() {
+
+        BulkTree<String, String> tree = getTempPartitionedTree();
+        tree.put( Arrays.asList( "a" ), "a" );
+        tree.put( Arrays.asList( "a", "b" ), "ab" );
+        tree.put( Arrays.asList( "a", "b", "c" ), "abc" );
+        tree.put( Arrays.asList( "a", "bc" ), "a-bc" );
+        tree.put( Arrays.asList( "a", "bc", "d" ), "a-bc-d" );
+        tree.put( Arrays.asList( "ab" ), "ab-root" );
+        tree.put( Arrays.asList( "b", "a", "b" ), "bab" );
+
+        // A prefix never matches an element that only starts with its last element.
+        Map<List<String>, String> expected = new HashMap<>();
+        expected.put( Arrays.asList( "a", "b" ), "ab" );
+        expected.put( Arrays.asList( "a", "b", "c" ), "abc" );
+        assertEquals( expected, tree.getSubtree( Arrays.asList( "a", "b" ) ) );
+
+        expected.clear();
+        expected.put( Arrays.asList( "a", "bc" ), "a-bc" );
+        expected.put( Arrays.asList( "a", "bc", "d" ), "a-bc-d" );
+        assertEquals( expected, tree.getSubtree( Arrays.asList( "a", "bc" ) ) );
+
+        // Whole partition.
+        expected.put( Arrays.asList( "a" ), "a" );
+        expected.put( Arrays.asList( "a", "b" ), "ab" );
+        expected.put( Arrays.asList( "a", "b", "c" ), "abc" );
+        assertEquals( expected, tree.getSubtree( Arrays.asList( "a" ) ) );
+
+        // Whole tree.
+        expected.put( Arrays.asList( "ab" ), "ab-root" );
+        expected.put( Arrays.asList( "b", "a", "b" ), "bab" );
+        assertEquals( expected, tree.getSubtree( Arrays.asList() ) );
+
+        // Nothing there.
+        assertTrue( tree.getSubtree( Arrays.asList( "a", "c" ) ).isEmpty() );
+        assertTrue( tree.getSubtree( Arrays.asList( "c" ) ).isEmpty() );
+        assertTrue( tree.getSubtree( Arrays.asList( 1, 2 ) ).isEmpty() ); // Wrong type.
+
+    }
+
+    @Test
+    public void testPartitionedRemoveSubtree() {
+
+        BulkTree<String, String> tree = getTempPartitionedTree();
+        tree.put( Arrays.asList( "a" ), "a" );
+        tree.put( Arrays.asList( "a", "b" ), "ab" );
+        tree.put( Arrays.asList( "a", "b", "c" ), "abc" );
+        tree.put( Arrays.asList( "a", "bc" ), "a-bc" );
+        tree.put( Arrays.asList( "ab" ), "ab-root" );
+
+        assertTrue( tree.removeSubtree( Arrays.asList( "a", "b" ) ) );
+        assertNull( tree.get( Arrays.asList( "a", "b" ) ) );
+        assertNull( tree.get( Arrays.asList( "a", "b", "c" ) ) );
+        assertEquals( "a-bc", tree.get( Arrays.asList( "a", "bc" ) ) );
+        assertEquals( "a", tree.get( Arrays.asList( "a" ) ) );
+        assertEquals( "ab-root", tree.get( Arrays.asList( "ab" ) ) );
+        assertEquals( 3, tree.size() );
+
+        assertFalse( tree.removeSubtree( Arrays.asList( "a", "b" ) ) );
+        assertFalse( tree.removeSubtree( Arrays.asList( "c" ) ) );
+        assertFalse( tree.removeSubtree( Arrays.asList( 1, 2 ) ) ); // Wrong type.
+
+        assertTrue( tree.removeSubtree( Arrays.asList( "a" ) ) );
+        assertEquals( 1, tree.size() );
+        assertEquals( "ab-root", tree.get( Arrays.asList( "ab" ) ) );
+
+        assertTrue( tree.removeSubtree( Arrays.asList() ) );
+        assertTrue( tree.isEmpty() );
+        assertFalse( tree.removeSubtree( Arrays.asList() ) );
+
+    }
+
+    @Test
+    public void testPartitionedRoot() {
+
+        BulkTree<String, String> tree = getTempPartitionedTree();
+        List<String> root = new ArrayList<>();
+
+        try {
+            tree.put( root, "root" );
+            fail( "Should have thrown an exception." );
+        } catch ( IllegalArgumentException e ) {
+            // Normal.
+        }
+        try {
+            tree.set( root, "root" );
+            fail( "Should have thrown an exception." );
+        } catch ( IllegalArgumentException e ) {
+            // Normal.
+        }
+        try {
+            tree.putIfAbsent( root, "root" );
+            fail( "Should have thrown an exception." );
+        } catch ( IllegalArgumentException e ) {
+            // Normal.
+        }
+        try {
+            ( (AsyncTree<String, String>) tree ).putAsync( root, "root" );
+            fail( "Should have thrown an exception." );
+        } catch ( IllegalArgumentException e ) {
+            // Normal.
+        }
+
+        // The root never has a value.
+        assertNull( tree.get( root ) );
+        assertFalse( tree.containsPath( root ) );
+        assertNull( tree.replace( root, "root" ) );
+        assertFalse( tree.replace( root, null, "root" ) );
+        assertNull( tree.remove( root ) );
+        assertTrue( tree.isEmpty() );
+
+    }
+
 }